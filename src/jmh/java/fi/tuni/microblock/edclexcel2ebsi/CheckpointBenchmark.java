@@ -0,0 +1,91 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the cost of the checkpoint journal when writing batch output.
+ *
+ * Each operation writes one credential as issueDiplomas does: to the output and, when checkpointing, to the journal with a group commit when one is due.
+ * Comparing the throughput with and without checkpointing gives the overhead of the journal. Signing is not included so the overhead relative to a real batch is much smaller.
+ * @author Otto Hylli
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CheckpointBenchmark {
+
+    private static final String CREDENTIAL = "{\"@context\":[\"https://www.w3.org/2018/credentials/v1\"],\"type\":[\"VerifiableCredential\",\"VerifiableDiploma\"],"
+            +"\"credentialSubject\":{\"familyName\":\"Makkara\",\"firstName\":\"Anna\",\"learningAchievement\":{\"title\":\"Data and Software Business module\"}}}";
+
+    @Param({ "directory", "ndjson" })
+    public String output;
+
+    @Param({ "false", "true" })
+    public boolean checkpoint;
+
+    private Path directory;
+    private CredentialSink sink;
+    private CheckpointJournal journal;
+    private long count;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("checkpoint-benchmark");
+        sink = output.equals("directory") ? new ShardedCredentialWriter(directory.resolve("out")) : new ArchiveCredentialWriter(directory.resolve("out.ndjson.gz"), 100);
+        journal = checkpoint ? new CheckpointJournal(CheckpointJournal.forOutput(directory), false) : null;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        sink.close();
+        if ( journal != null ) {
+            journal.close();
+        }
+
+        try ( var paths = Files.walk(directory)) {
+            for ( var path : (Iterable<Path>)paths.sorted(Comparator.reverseOrder())::iterator ) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void writeCredential() throws IOException {
+        var id = "urn:uuid:" +count++;
+        var email = "student" +count +"@tautest.edu";
+        sink.write(id, email, "Data and Software Business module", CREDENTIAL);
+        if ( journal != null ) {
+            journal.add(email, "Data and Software Business module", id);
+            if ( journal.isCommitDue()) {
+                sink.flush();
+                journal.commit();
+            }
+        }
+    }
+}
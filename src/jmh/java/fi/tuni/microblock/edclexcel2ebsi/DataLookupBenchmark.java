@@ -0,0 +1,93 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import id.walt.signatory.ProofConfig;
+import id.walt.signatory.ProofType;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Measures reading the excel data with workbooks of different sizes.
+ *
+ * The workbooks are created with the WorkbookGenerator and the lookups search for the last student so every row before it is scanned.
+ * The number of students is set with the rows parameter and the workbook storage with the storage parameter. No signing is done so the walt.id key store is not needed.
+ * @author Otto Hylli
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataLookupBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int rows;
+
+    @Param({ "sheet", "offHeap" })
+    public String storage;
+
+    private CredentialData data;
+    private String email;
+    private String title;
+    private ProofConfig proofConfig;
+
+    @Setup
+    public void setup() throws IOException {
+        var workbook = Files.createTempFile("generated-credentials", ".xlsx");
+        workbook.toFile().deleteOnExit();
+        var generator = new WorkbookGenerator(rows, 1, 1);
+        generator.write(workbook);
+        data = new CredentialData( workbook.toString(), WorkbookStorage.Type.fromConfig(storage), null );
+        email = WorkbookGenerator.email(rows -1);
+        title = WorkbookGenerator.credentialTitle(generator.achievementOf(rows -1));
+        proofConfig = new ProofConfig("did:ebsi:benchmark", "did:key:benchmark", null, null, ProofType.LD_PROOF, null, null, null, null, null, null, null, null );
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int getColumnNumForHeader() {
+        return data.personsTable.getColumnNumForHeader(PersonsTable.ACHIEVEMENT_COLUMN);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<DataTable.TableRow> getRowsWithValues() {
+        return data.personsTable.getRowsWithValues(Map.of( PersonsTable.EMAIL_COLUMN, email ));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public DataTable.TableRow getCredential() {
+        return data.getCredential(email, title);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public VerifiableCredential populate() {
+        return new DiplomaDataProvider(data, email, title).populate(CredentialTemplates.newEuropass(), proofConfig);
+    }
+}
@@ -0,0 +1,89 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import id.walt.auditor.VerificationResult;
+import id.walt.signatory.ProofType;
+
+/** Measures issuing an LD proof diploma, creating a presentation and verifying a diploma with workbooks of different sizes.
+ *
+ * The workbook is created with the WorkbookGenerator and the diplomas are issued to the last student.
+ * Uses the test configuration so the signing keys must have been imported to the key store used by the tests.
+ * @author Otto Hylli
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IssuanceBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int rows;
+
+    private CredentialLib credentials;
+    private String email;
+    private String title;
+    private String diploma;
+    private List<String> presentationCredentials;
+
+    @Setup
+    public void setup() throws IOException {
+        var workbook = Files.createTempFile("generated-credentials", ".xlsx");
+        workbook.toFile().deleteOnExit();
+        var generator = new WorkbookGenerator(rows, 1, 1);
+        generator.write(workbook);
+        var config = Files.createTempFile("benchmark-config", ".properties");
+        config.toFile().deleteOnExit();
+        var properties = Files.readString(Path.of("src", "test", "resources", "config.properties"));
+        // properties files treat backslashes as escapes so use forward slashes also on Windows.
+        Files.writeString(config, properties +"\ncredentials.file=" +workbook.toString().replace('\\', '/') +"\n");
+        credentials = new CredentialLib( config.toString());
+        email = WorkbookGenerator.email(rows -1);
+        title = WorkbookGenerator.credentialTitle(generator.achievementOf(rows -1));
+        diploma = credentials.createDiploma(email, title, ProofType.LD_PROOF);
+        presentationCredentials = List.of(diploma, credentials.createId(email, ProofType.LD_PROOF));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String createDiploma() {
+        return credentials.createDiploma(email, title, ProofType.LD_PROOF);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String createPresentation() {
+        return credentials.createPresentation(presentationCredentials);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public VerificationResult verifyDiploma() {
+        return credentials.verifyDiploma(diploma);
+    }
+}
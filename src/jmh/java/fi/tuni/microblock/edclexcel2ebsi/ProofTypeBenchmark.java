@@ -0,0 +1,77 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import id.walt.auditor.VerificationResult;
+import id.walt.signatory.ProofType;
+
+/** Compares issuing and verifying LD proof and JWT credentials.
+ *
+ * The issue benchmarks report credentials per second and the verify benchmarks the average verification latency.
+ * Uses the test configuration so the signing keys must have been imported to the key store used by the tests.
+ * @author Otto Hylli
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProofTypeBenchmark {
+
+    private static final String EMAIL = "anna.makkara@tautest.edu";
+    private static final String TITLE = "Data and Software Business module";
+
+    @Param({ "LD_PROOF", "JWT" })
+    public ProofType proofType;
+
+    private CredentialLib credentials;
+    private String diploma;
+    private String presentation;
+
+    @Setup
+    public void setup() {
+        credentials = new CredentialLib( Path.of("src", "test", "resources", "config.properties").toString());
+        diploma = credentials.createDiploma(EMAIL, TITLE, proofType);
+        presentation = credentials.createPresentation(List.of(diploma, credentials.createId(EMAIL, proofType)));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String issueDiploma() {
+        return credentials.createDiploma(EMAIL, TITLE, proofType);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public VerificationResult verifyDiploma() {
+        return credentials.verifyDiploma(diploma);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public VerificationResult verifyPresentation() {
+        return credentials.verifyDiploma(presentation);
+    }
+}
@@ -0,0 +1,92 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import id.walt.signatory.ProofConfig;
+import id.walt.signatory.ProofType;
+import id.walt.vclib.credentials.Europass;
+import id.walt.vclib.credentials.VerifiableId;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Compares building credential templates for every credential with copying the cached prototype.
+ *
+ * The populate benchmarks show the per credential saving in creating the unsigned credential contents.
+ * @author Otto Hylli
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    private static final String EMAIL = "anna.makkara@tautest.edu";
+    private static final String TITLE = "Data and Software Business module";
+
+    private CredentialData data;
+    private ProofConfig proofConfig;
+
+    @Setup
+    public void setup() {
+        data = new CredentialData();
+        proofConfig = new ProofConfig("did:ebsi:issuer", "did:ebsi:holder", null, null, ProofType.LD_PROOF, null, null, null, null, null, null, null, null );
+    }
+
+    @Benchmark
+    public Europass buildEuropassTemplate() {
+        return Europass.Companion.getTemplate().invoke();
+    }
+
+    @Benchmark
+    public Europass copyEuropassPrototype() {
+        return CredentialTemplates.newEuropass();
+    }
+
+    @Benchmark
+    public VerifiableId buildVerifiableIdTemplate() {
+        return VerifiableId.Companion.getTemplate().invoke();
+    }
+
+    @Benchmark
+    public VerifiableId copyVerifiableIdPrototype() {
+        return CredentialTemplates.newVerifiableId();
+    }
+
+    @Benchmark
+    public String schemaFromTemplate() {
+        return Europass.Companion.getTemplate().invoke().getCredentialSchema().getId();
+    }
+
+    @Benchmark
+    public String schemaFromCache() {
+        return DiplomaDataProvider.getCredentialSchema();
+    }
+
+    @Benchmark
+    public VerifiableCredential populateFromTemplate() {
+        return new DiplomaDataProvider(data, EMAIL, TITLE).populate(Europass.Companion.getTemplate().invoke(), proofConfig);
+    }
+
+    @Benchmark
+    public VerifiableCredential populateFromPrototype() {
+        return new DiplomaDataProvider(data, EMAIL, TITLE).populate(CredentialTemplates.newEuropass(), proofConfig);
+    }
+}
@@ -8,8 +8,9 @@ package fi.tuni.microblock.edclexcel2ebsi;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.OptionalInt;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /** DataTable for accessing information about achievements . 
  * @author hylli
@@ -17,6 +18,9 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  */
 public class AchievementsTable extends DataTable {
 
+    public static final String SHEET_NAME = "Achievements";
+    public static final int HEADER_ROW_NUM = 7;
+    
     // column heading names
     public final static String TITLE_COLUMN = "Title";
     public final static String PROVEN_BY_COLUMN = "Proven by";
@@ -27,6 +31,22 @@ public class AchievementsTable extends DataTable {
     public static final String LEARNING_SETTING_COLUMN = "Learning Setting";
     public static final String LEARNING_OPPORTUNITY_TYPE_COLUMN = "Learning Opportunity Type";
     public static final String ECTS_CREDIT_POINTS_COLUMN = "ECTS Credit Points";
+
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, HEADER_ROW_NUM,
+            Set.of( TITLE_COLUMN, PROVEN_BY_COLUMN, INFLUENCED_BY_COLUMN, SPECIFICATION_TITLE_COLUMN, LEARNING_OUTCOMES_COLUMN,
+                    LEARNING_SETTING_COLUMN, LEARNING_OPPORTUNITY_TYPE_COLUMN, ECTS_CREDIT_POINTS_COLUMN ),
+            Set.of());
+    
+    // the columns read by this table.
+    private final StringColumn title = stringColumn(TITLE_COLUMN);
+    private final StringColumn provenBy = stringColumn(PROVEN_BY_COLUMN);
+    private final LinkColumn influencedBy = linkColumn(INFLUENCED_BY_COLUMN, data -> data.activitiesTable, ActivitiesTable.TITLE_COLUMN);
+    private final StringColumn specificationTitle = stringColumn(SPECIFICATION_TITLE_COLUMN);
+    private final LinkColumn learningOutcomes = linkColumn(LEARNING_OUTCOMES_COLUMN, data -> data.outcomesTable, LearningOutcomesTable.TITLE_COLUMN);
+    private final StringColumn learningSetting = stringColumn(LEARNING_SETTING_COLUMN);
+    private final StringColumn learningOpportunityType = stringColumn(LEARNING_OPPORTUNITY_TYPE_COLUMN);
+    private final NumberColumn ectsCreditPoints = numberColumn(ECTS_CREDIT_POINTS_COLUMN);
     
     private VocabularyMapping learningSettingMapping;
     private VocabularyMapping learningOpportunityTypeMapping;
@@ -35,7 +55,7 @@ public class AchievementsTable extends DataTable {
      * @param data excel workbook containing the activities sheet.
      * @param credentials CredentialData this will be a part of.
      */
-    public AchievementsTable( XSSFWorkbook data, CredentialData credentials ) {
+    public AchievementsTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
         learningSettingMapping = new MapBasedVocabularyMapping( Map.of(
                 "formal learning", "http://data.europa.eu/snb/learning-setting/6fd4685715"
@@ -47,19 +67,24 @@ public class AchievementsTable extends DataTable {
 
     @Override
     public String getSheetName() {
-        return "Achievements";
+        return SHEET_NAME;
     }
 
     @Override
     public int getHeaderRowNum() {
-        return 7;
+        return HEADER_ROW_NUM;
+    }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
     }
     
     /** Get the title of the achievement on the current row.
      * @return achievement title.
      */
     public String getTitle() {
-        return getCellValueStringForCurrentRow(TITLE_COLUMN);
+        return title.getForCurrentRow();
     }
     
     /** Find the row number for the achievement with the given title.
@@ -70,52 +95,74 @@ public class AchievementsTable extends DataTable {
         return getRowWithValues(Map.of( TITLE_COLUMN, title)).getRowNum();
     }
     
+    /** Find the row number for the achievement with the given title without throwing if there is none.
+     * @param title achievement title.
+     * @return row number or empty if there is no such achievement.
+     */
+    public OptionalInt findRowForAchievement( String title ) {
+        return findRowNumWithValue( TITLE_COLUMN, title );
+    }
+    
     /** Get name of assessment for the achievement on the current row. 
      * @return assessment name
      */
     public String getAssessment() {
-        return getCellValueStringForCurrentRow(PROVEN_BY_COLUMN);
+        return provenBy.getForCurrentRow();
     }    
     
     /** Get names of learning activities for the achievement on the current row.
      * @return activity names
      */
     public List<String> getActivities() {
-        return getCellMultiValueStringForCurrentRow(INFLUENCED_BY_COLUMN);
+        return influencedBy.getForCurrentRow();
+    }
+    
+    /** Get the rows of the learning activities of the achievement on the current row.
+     * @return row numbers of the activities table in the same order as getActivities.
+     */
+    public int[] getActivityRows() {
+        return influencedBy.getLinkedRowsForCurrentRow();
     }
     
     /** Get title of the learning specification on the current row.
      * @return learning specification title.
      */
     public String getSpecificationTitle() {
-        return getCellValueStringForCurrentRow(SPECIFICATION_TITLE_COLUMN);
+        return specificationTitle.getForCurrentRow();
     }
     
     /** Get list of names of learning outcomes for the learning specification on the current row.
      * @return learning outcome names.
      */
     public List<String> getLearningOutcomes() {
-        return getCellMultiValueStringForCurrentRow(LEARNING_OUTCOMES_COLUMN);
+        return learningOutcomes.getForCurrentRow();
+    }
+    
+    /** Get the rows of the learning outcomes of the learning specification on the current row.
+     * @return row numbers of the learning outcomes table in the same order as getLearningOutcomes.
+     */
+    public int[] getLearningOutcomeRows() {
+        return learningOutcomes.getLinkedRowsForCurrentRow();
     }
     
     /** Get learning setting for the learning specification on the current row.
      * @return learning setting
      */
     public String getLearningSetting() {
-        return learningSettingMapping.getUri( getCellValueStringForCurrentRow(LEARNING_SETTING_COLUMN));
+        return learningSettingMapping.getUri( learningSetting.getForCurrentRow());
     }
     
     /** Get learning opportunity type for learning specification on the current row.
      * @return learning opportunity type.
      */
     public String getLearningOpportunityType() {
-        return learningOpportunityTypeMapping.getUri( getCellValueStringForCurrentRow(LEARNING_OPPORTUNITY_TYPE_COLUMN));
+        return learningOpportunityTypeMapping.getUri( learningOpportunityType.getForCurrentRow());
     }
     
     /** Get ects crdit points for the learning specification on the current row.
      * @return ects credit points.
      */
     public int getEctsCreditPoints() {
-        return (int) getCellValueNumberForCurrentRow( ECTS_CREDIT_POINTS_COLUMN);
+        return (int) ectsCreditPoints.getForCurrentRow();
     }
 }
\ No newline at end of file
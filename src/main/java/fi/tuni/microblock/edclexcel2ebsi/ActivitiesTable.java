@@ -7,8 +7,9 @@
 package fi.tuni.microblock.edclexcel2ebsi;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.OptionalInt;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /** DataTable for accessing information about learning activities. 
  * @author hylli
@@ -16,6 +17,9 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  */
 public class ActivitiesTable extends DataTable {
 
+    public static final String SHEET_NAME = "Activities";
+    public static final int HEADER_ROW_NUM = 7;
+    
     // column heading names
     public final static String TITLE_COLUMN = "Title";
     public final static String DESCRIPTION_COLUMN = "Description";
@@ -23,6 +27,20 @@ public class ActivitiesTable extends DataTable {
     public static final String SPECIFICATION_TYPE_COLUMN  = "Learning Activity Type";
     public static final String SPECIFICATION_DESCRIPTIONCOLUMN  = "Specification Description";
     public static final String MODE_OF_LEARNING_COLUMN = "Mode of Learning";
+
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, HEADER_ROW_NUM,
+            Set.of( TITLE_COLUMN, DESCRIPTION_COLUMN, SPECIFICATION_TITLE_COLUMN, SPECIFICATION_TYPE_COLUMN, SPECIFICATION_DESCRIPTIONCOLUMN,
+                    MODE_OF_LEARNING_COLUMN ),
+            Set.of());
+    
+    // the columns read by this table.
+    private final StringColumn title = stringColumn(TITLE_COLUMN);
+    private final StringColumn description = stringColumn(DESCRIPTION_COLUMN);
+    private final StringColumn specificationTitle = stringColumn(SPECIFICATION_TITLE_COLUMN);
+    private final StringColumn specificationType = stringColumn(SPECIFICATION_TYPE_COLUMN);
+    private final StringColumn specificationDescription = stringColumn(SPECIFICATION_DESCRIPTIONCOLUMN);
+    private final StringColumn modeOfLearning = stringColumn(MODE_OF_LEARNING_COLUMN);
     
     private VocabularyMapping activityTypeMapping;
     private VocabularyMapping learningModeMapping;
@@ -31,7 +49,7 @@ public class ActivitiesTable extends DataTable {
      * @param data excel workbook containing the activities sheet.
      * @param credentials CredentialData this will be a part of.
      */
-    public ActivitiesTable( XSSFWorkbook data, CredentialData credentials ) {
+    public ActivitiesTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
         learningModeMapping = new MapBasedVocabularyMapping( Map.of(
                 "Online", "http://data.europa.eu/snb/learning-assessment/920fbb3cbe"
@@ -43,54 +61,59 @@ public class ActivitiesTable extends DataTable {
 
     @Override
     public String getSheetName() {
-        return "Activities";
+        return SHEET_NAME;
     }
 
     @Override
     public int getHeaderRowNum() {
-        return 7;
+        return HEADER_ROW_NUM;
+    }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
     }
     
     /** Get the title of the learning activity on the current row.
      * @return learning activity title.
      */
     public String getTitle() {
-        return getCellValueStringForCurrentRow(TITLE_COLUMN);
+        return title.getForCurrentRow();
     }
     
     /** Title for the activity specification on the current row.
      * @return activity specification title
      */
     public String getSpecificationTitle() {
-        return getCellValueStringForCurrentRow(SPECIFICATION_TITLE_COLUMN);
+        return specificationTitle.getForCurrentRow();
     }
     
     /** description of learning activity specification for the activity specification on the current row.
      * @return learning activity specification description
      */
     public String getSpecificationDescription() {
-        return getCellValueStringForCurrentRow(SPECIFICATION_DESCRIPTIONCOLUMN);
+        return specificationDescription.getForCurrentRow();
     }
     
     /** Learning activity type for the activity specification on the current row.
      * @return learning activity type
      */
     public String getActivityType() {
-        return activityTypeMapping.getUri(getCellValueStringForCurrentRow(SPECIFICATION_TYPE_COLUMN));
+        return activityTypeMapping.getUri(specificationType.getForCurrentRow());
     }
     
     /** Mode of learning for the activity specification on the current row.
      * @return mode of learning
      */
     public String getModeOfLearning() {
-        return learningModeMapping.getUri( getCellValueStringForCurrentRow(MODE_OF_LEARNING_COLUMN));
+        return learningModeMapping.getUri( modeOfLearning.getForCurrentRow());
     }
     
     /** Get the description of the learning activity on the current row.
      * @return learning activity description.
      */
     public String getDescription() {
-        return getCellValueStringForCurrentRow(DESCRIPTION_COLUMN);
+        return description.getForCurrentRow();
     }
     
     /** Find the row number for the learning activity with the given title.
@@ -100,4 +123,12 @@ public class ActivitiesTable extends DataTable {
     public int getRowForActivity(String title) {
         return getRowWithValues(Map.of( TITLE_COLUMN, title)).getRowNum();
     }
+    
+    /** Find the row number for the learning activity with the given title without throwing if there is none.
+     * @param title learning activity title.
+     * @return row number or empty if there is no such learning activity.
+     */
+    public OptionalInt findRowForActivity( String title ) {
+        return findRowNumWithValue( TITLE_COLUMN, title );
+    }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/** Streams credentials back from an archive written by ArchiveCredentialWriter without extracting it.
+ *
+ * Credentials are read one at a time so memory use does not depend on the size of the archive.
+ * A gzip file cut short by an interrupted batch is read up to the last complete credential. A zip archive can only be read if its writer was closed.
+ * @author Otto Hylli
+ *
+ */
+public class ArchiveCredentialReader {
+
+    // size of the read buffer.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+
+    /** Create a reader for the given archive.
+     * @param file zip archive or gzip compressed NDJSON file.
+     */
+    public ArchiveCredentialReader( Path file ) {
+        this.file = file;
+    }
+
+    /** Check if the given file is gzip compressed NDJSON based on its name.
+     * @param file archive file
+     * @return true if the file name ends with .gz.
+     */
+    public static boolean isNdjson( Path file ) {
+        return file.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    /** Pass each credential in the archive to the given consumer in the order they were written.
+     * @param consumer receives the credentials.
+     * @throws IOException archive could not be read or is malformed.
+     */
+    public void forEach( Consumer<Entry> consumer ) throws IOException {
+        scan( entry -> {
+            consumer.accept(entry);
+            return true;
+        });
+    }
+
+    /** Find a credential by its id.
+     * @param credentialId id of the credential.
+     * @return the credential if it is in the archive.
+     * @throws IOException archive could not be read or is malformed.
+     */
+    public Optional<Entry> find( String credentialId ) throws IOException {
+        Entry[] found = new Entry[1];
+        scan( entry -> {
+            if ( entry.credentialId().equals(credentialId)) {
+                found[0] = entry;
+                return false;
+            }
+
+            return true;
+        });
+
+        return Optional.ofNullable(found[0]);
+    }
+
+    /** Find the latest credential with the given title issued to the given student.
+     * @param email student email address.
+     * @param title title of the credential.
+     * @return the credential if such a credential is in the archive.
+     * @throws IOException archive could not be read or is malformed.
+     */
+    public Optional<Entry> find( String email, String title ) throws IOException {
+        Entry[] found = new Entry[1];
+        scan( entry -> {
+            if ( entry.email().equals(email) && entry.title().equals(title)) {
+                found[0] = entry;
+            }
+
+            return true;
+        });
+
+        return Optional.ofNullable(found[0]);
+    }
+
+    /** Read credentials until the visitor returns false or the archive ends.
+     * @param visitor receives the credentials. Returns false to stop reading.
+     * @throws IOException archive could not be read or is malformed.
+     */
+    private void scan( Predicate<Entry> visitor ) throws IOException {
+        if ( isNdjson(file)) {
+            scanNdjson(visitor);
+        }
+
+        else {
+            scanZip(visitor);
+        }
+    }
+
+    private void scanNdjson( Predicate<Entry> visitor ) throws IOException {
+        // lines are split from the raw bytes since a reader decoding ahead would lose the lines before the end of a truncated file.
+        try ( var input = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            var buffer = new byte[BUFFER_SIZE];
+            var line = new ByteArrayOutputStream();
+            int lineNumber = 0;
+            while ( true ) {
+                int read;
+                try {
+                    read = input.read(buffer);
+                }
+
+                catch ( EOFException e ) {
+                    // the writer was interrupted before closing the file. Everything up to its last flush has been read.
+                    return;
+                }
+
+                if ( read < 0 ) {
+                    return;
+                }
+
+                int start = 0;
+                for ( int i = 0; i < read; i++ ) {
+                    if ( buffer[i] != '\n' ) {
+                        continue;
+                    }
+
+                    line.write(buffer, start, i -start);
+                    start = i +1;
+                    lineNumber++;
+                    var text = line.toString(StandardCharsets.UTF_8);
+                    line.reset();
+                    if ( text.isBlank()) {
+                        continue;
+                    }
+
+                    if ( !visitor.test(parseLine(text, lineNumber))) {
+                        return;
+                    }
+                }
+
+                line.write(buffer, start, read -start);
+            }
+        }
+    }
+
+    private Entry parseLine( String line, int lineNumber ) throws IOException {
+        JsonNode fields;
+        try {
+            fields = ArchiveCredentialWriter.JSON.readTree(line);
+        }
+
+        catch ( JsonProcessingException e ) {
+            throw new IOException("Malformed credential on line " +lineNumber +" of " +file +": " +e.getOriginalMessage(), e);
+        }
+
+        if ( !fields.isObject() || !fields.path("id").isTextual() || !fields.path("credential").isTextual()) {
+            throw new IOException("Malformed credential on line " +lineNumber +" of " +file);
+        }
+
+        return new Entry( fields.get("id").asText(), fields.path("email").asText(""), fields.path("title").asText(""), fields.get("credential").asText());
+    }
+
+    private void scanZip( Predicate<Entry> visitor ) throws IOException {
+        try ( var zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+            for ( var entries = zip.entries(); entries.hasMoreElements(); ) {
+                var zipEntry = entries.nextElement();
+                if ( zipEntry.isDirectory()) {
+                    continue;
+                }
+
+                String credential;
+                try ( var input = zip.getInputStream(zipEntry)) {
+                    credential = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                }
+
+                // entries without the metadata comment are identified by their name.
+                var comment = zipEntry.getComment();
+                var fields = comment == null ? new String[0] : comment.split("\t", -1);
+                var entry = new Entry( fields.length > 0 ? CredentialManifest.unescape(fields[0]) : zipEntry.getName(), fields.length > 1 ? CredentialManifest.unescape(fields[1]) : "", fields.length > 2 ? CredentialManifest.unescape(fields[2]) : "", credential );
+                if ( !visitor.test(entry)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** A credential read from an archive.
+     * @param credentialId id of the credential.
+     * @param email email address of the student.
+     * @param title title of the credential.
+     * @param credential the signed credential as JSON or JWT.
+     */
+    public static record Entry( String credentialId, String email, String title, String credential ) {
+    }
+}
@@ -0,0 +1,195 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** Streams issued credentials to a single compressed file as they are produced.
+ *
+ * The format is chosen by the file name: a file ending with .zip is a zip archive with one entry per credential and other files are gzip compressed NDJSON.
+ * In NDJSON each line is a JSON object with the string fields id, email, title and credential.
+ * In a zip archive the entry is named after the SHA-256 hash of the credential id and the entry comment has the id, email and title escaped and separated by tabs as in the manifest.
+ * Only a fixed size buffer is kept in memory. The output is flushed after every flushInterval credentials. For gzip this makes an interrupted batch readable up to the last flush.
+ * A zip archive is readable only after the writer has been closed since the index of its entries is written at the end.
+ * ArchiveCredentialReader reads the credentials back.
+ * @author Otto Hylli
+ *
+ */
+public class ArchiveCredentialWriter implements CredentialSink {
+
+    // size of the buffer between the compressor and the file.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // writes the NDJSON lines. Thread safe once configured.
+    static final ObjectMapper JSON = new ObjectMapper();
+
+    private final OutputStream output;
+    // the zip stream when writing a zip archive. Null for NDJSON.
+    private final ZipOutputStream zip;
+    private final int flushInterval;
+    private final MessageDigest digest;
+    // credentials written since the last flush.
+    private int unflushed;
+
+    /** Open a writer for the given file replacing its previous contents.
+     * @param file archive file. Ends with .zip for a zip archive for example credentials.zip or credentials.ndjson.gz.
+     * @param flushInterval number of credentials between flushes.
+     * @throws IOException file could not be created.
+     */
+    public ArchiveCredentialWriter( Path file, int flushInterval ) throws IOException {
+        if ( flushInterval < 1 ) {
+            throw new IllegalArgumentException("Flush interval must be at least one credential.");
+        }
+
+        this.flushInterval = flushInterval;
+        var fileOutput = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        if ( isZip(file)) {
+            zip = new ZipOutputStream(fileOutput, StandardCharsets.UTF_8);
+            output = zip;
+        }
+
+        else {
+            zip = null;
+            // sync flush makes everything written so far readable after a flush.
+            output = new GZIPOutputStream(fileOutput, BUFFER_SIZE, true);
+        }
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException("SHA-256 not supported.", e);
+        }
+    }
+
+    /** Open a writer that continues an archive of an earlier run.
+     *
+     * A compressed stream cannot be continued in place, so the credentials of the existing archive accepted by the filter are copied to a new archive
+     * which the writer then continues. The copy stops at the last flush of a gzip file whose writer was interrupted.
+     * The existing archive is kept as previous-NAME until it has been copied. If such a file exists the copy was interrupted and it is copied again.
+     * A zip archive whose writer was interrupted cannot be read and has to be issued again from the start.
+     * @param file archive file. Created if it does not exist.
+     * @param flushInterval number of credentials between flushes.
+     * @param keep decides by credential id which existing credentials are copied.
+     * @return writer positioned after the copied credentials.
+     * @throws IOException existing archive could not be read or the new archive could not be written.
+     */
+    public static ArchiveCredentialWriter resume( Path file, int flushInterval, Predicate<String> keep ) throws IOException {
+        // the prefix keeps the extension the format is recognised by.
+        var previous = file.resolveSibling("previous-" +file.getFileName());
+        if ( Files.exists(previous)) {
+            // an earlier resume was interrupted while copying so the file is only a partial copy of the previous archive.
+            Files.deleteIfExists(file);
+        }
+
+        else if ( !Files.exists(file)) {
+            return new ArchiveCredentialWriter( file, flushInterval );
+        }
+
+        else {
+            Files.move(file, previous);
+        }
+
+        var writer = new ArchiveCredentialWriter( file, flushInterval );
+        try {
+            new ArchiveCredentialReader(previous).forEach( entry -> {
+                if ( keep.test(entry.credentialId())) {
+                    try {
+                        writer.write( entry.credentialId(), entry.email(), entry.title(), entry.credential() );
+                    }
+
+                    catch ( IOException e ) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+
+            writer.flush();
+        }
+
+        catch ( IOException | UncheckedIOException e ) {
+            writer.close();
+            Files.move(previous, file, StandardCopyOption.REPLACE_EXISTING);
+            throw e instanceof UncheckedIOException ? ((UncheckedIOException)e).getCause() : (IOException)e;
+        }
+
+        Files.delete(previous);
+        return writer;
+    }
+
+    /** Check if the given file is a zip archive based on its name.
+     * @param file archive file
+     * @return true for zip and false for gzip compressed NDJSON.
+     */
+    public static boolean isZip( Path file ) {
+        return file.getFileName().toString().toLowerCase().endsWith(".zip");
+    }
+
+    @Override
+    public synchronized void write( String credentialId, String email, String title, String credential ) throws IOException {
+        if ( zip != null ) {
+            var entry = new ZipEntry(entryName(credentialId, credential));
+            entry.setComment(CredentialManifest.escape(credentialId) +'\t' +CredentialManifest.escape(email) +'\t' +CredentialManifest.escape(title));
+            zip.putNextEntry(entry);
+            zip.write(credential.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        else {
+            var line = JSON.createObjectNode()
+                .put("id", nonNull(credentialId))
+                .put("email", nonNull(email))
+                .put("title", nonNull(title))
+                .put("credential", nonNull(credential));
+            output.write(JSON.writeValueAsBytes(line));
+            output.write('\n');
+        }
+
+        if ( ++unflushed >= flushInterval ) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        output.flush();
+        unflushed = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    private String entryName( String credentialId, String credential ) {
+        var hash = digest.digest(credentialId.getBytes(StandardCharsets.UTF_8));
+        var name = new StringBuilder(hash.length * 2 +5);
+        for ( var b : hash ) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return name.append(CredentialLib.isJwt(credential) ? ".jwt" : ".json").toString();
+    }
+
+    private static String nonNull( String value ) {
+        return value == null ? "" : value;
+    }
+}
@@ -9,8 +9,9 @@ package fi.tuni.microblock.edclexcel2ebsi;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.OptionalInt;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /** DataTable for accessing information about assessments . 
  * @author hylli
@@ -18,44 +19,63 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  */
 public class AssessmentsTable extends DataTable {
 
+    public static final String SHEET_NAME = "Assessments";
+    public static final int HEADER_ROW_NUM = 7;
+    
     // column heading names
     public final static String TITLE_COLUMN = "Title";
     public final static String DESCRIPTION_COLUMN = "Description";
     public final static String SUB_ASSESSMENTS_COLUMN = "Sub-Assessments";
     public final static String SPECIFICATION_TITLE_COLUMN = "Assessment Specification Title";
     public final static String GRADING_SCHEME_TITLE_COLUMN  = "Grading Scheme Title";
+
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, HEADER_ROW_NUM,
+            Set.of( TITLE_COLUMN, SUB_ASSESSMENTS_COLUMN, SPECIFICATION_TITLE_COLUMN, GRADING_SCHEME_TITLE_COLUMN ),
+            Set.of());
+    
+    // the columns read by this table.
+    private final StringColumn title = stringColumn(TITLE_COLUMN);
+    private final LinkColumn subAssessments = linkColumn(SUB_ASSESSMENTS_COLUMN, data -> data.assessmentsTable, TITLE_COLUMN);
+    private final StringColumn specificationTitle = stringColumn(SPECIFICATION_TITLE_COLUMN);
+    private final StringColumn gradingSchemeTitle = stringColumn(GRADING_SCHEME_TITLE_COLUMN);
     
     /** Create a AssessmentsTable.
      * @param data excel workbook containing the assessments sheet.
      * @param credentials CredentialData this will be a part of.
      */
-    public AssessmentsTable( XSSFWorkbook data, CredentialData credentials ) {
+    public AssessmentsTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
     }
 
     @Override
     public String getSheetName() {
-        return "Assessments";
+        return SHEET_NAME;
     }
 
     @Override
     public int getHeaderRowNum() {
-        return 7;
+        return HEADER_ROW_NUM;
+    }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
     }
     
     /** Get the title of the assessment on the current row.
      * @return assessment title.
      */
     public String getTitle() {
-        return getCellValueStringForCurrentRow(TITLE_COLUMN);
+        return title.getForCurrentRow();
     }
     
     public String getSpecificationTitle() {
-        return getCellValueStringForCurrentRow(SPECIFICATION_TITLE_COLUMN);
+        return specificationTitle.getForCurrentRow();
     }
     
     public String getGradingSchemeTitle() {
-        return getCellValueStringForCurrentRow(GRADING_SCHEME_TITLE_COLUMN);
+        return gradingSchemeTitle.getForCurrentRow();
     }
     
     /** Find the row number for the assessment with the given title.
@@ -66,10 +86,25 @@ public class AssessmentsTable extends DataTable {
         return getRowWithValues(Map.of( TITLE_COLUMN, title)).getRowNum();
     }
     
+    /** Find the row number for the assessment with the given title without throwing if there is none.
+     * @param title assessment title.
+     * @return row number or empty if there is no such assessment.
+     */
+    public OptionalInt findRowForAssessment( String title ) {
+        return findRowNumWithValue( TITLE_COLUMN, title );
+    }
+    
     /** Get the names of subassessments the assessment on the current row has. 
      * @return List of subassessment names. An empty list if there are no subassessments.
      */
     public List<String> getSubAssessments() {
-           return getCellMultiValueStringForCurrentRow( SUB_ASSESSMENTS_COLUMN);
+           return subAssessments.getForCurrentRow();
+    }
+    
+    /** Get the rows of the subassessments the assessment on the current row has.
+     * @return row numbers in the same order as getSubAssessments.
+     */
+    public int[] getSubAssessmentRows() {
+        return subAssessments.getLinkedRowsForCurrentRow();
     }
 }
\ No newline at end of file
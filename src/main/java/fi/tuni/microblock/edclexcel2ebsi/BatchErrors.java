@@ -0,0 +1,93 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/** Collects the errors of the items of a batch run instead of throwing an exception for each failed item.
+ *
+ * Expected problems such as a missing student are recorded with a constant reason so recording them costs no more than a map insertion.
+ * Unexpected failures can be recorded with their exception. Items are identified by a key such as the student email and kept in the order they were recorded.
+ * Thread safe.
+ * @author Otto Hylli
+ *
+ */
+public class BatchErrors {
+
+    /** Reason used when the excel has no credential with the given title for a student. */
+    public static final String CREDENTIAL_NOT_FOUND = "credential not found";
+    /** Reason used when the excel has no organisation for the credential of a student. */
+    public static final String ORGANISATION_NOT_FOUND = "issuing organisation not found";
+    /** Reason used when the issuing organisation of the credential of a student has no issuer did. */
+    public static final String ISSUER_NOT_FOUND = "no issuer for organisation";
+
+    private final Map<String, Error> errors = new LinkedHashMap<>();
+
+    /** Record an expected error.
+     * @param key identifies the failed item.
+     * @param reason description of the problem. Preferably a constant.
+     */
+    public synchronized void add( String key, String reason ) {
+        errors.put(key, new Error( key, reason, null ));
+    }
+
+    /** Record an unexpected failure.
+     * @param key identifies the failed item.
+     * @param cause the exception that made the item fail.
+     */
+    public synchronized void add( String key, Throwable cause ) {
+        errors.put(key, new Error( key, String.valueOf(cause.getMessage()), cause ));
+    }
+
+    /** Get the error of the given item.
+     * @param key identifies the item.
+     * @return the error or empty if the item did not fail.
+     */
+    public synchronized Optional<Error> get( String key ) {
+        return Optional.ofNullable(errors.get(key));
+    }
+
+    /** Check if the given item failed.
+     * @param key identifies the item.
+     * @return true if an error was recorded for the item.
+     */
+    public synchronized boolean contains( String key ) {
+        return errors.containsKey(key);
+    }
+
+    /** Get the recorded errors.
+     * @return errors in the order they were recorded.
+     */
+    public synchronized List<Error> getErrors() {
+        return new ArrayList<>(errors.values());
+    }
+
+    /** Get the number of failed items.
+     * @return error count
+     */
+    public synchronized int size() {
+        return errors.size();
+    }
+
+    /** Check if no errors have been recorded.
+     * @return true if every item succeeded so far.
+     */
+    public synchronized boolean isEmpty() {
+        return errors.isEmpty();
+    }
+
+    /** Error of one item of a batch.
+     * @param key identifies the failed item.
+     * @param reason description of the problem.
+     * @param cause exception of an unexpected failure. Null for expected errors.
+     */
+    public static record Error( String key, String reason, Throwable cause ) {
+    }
+}
@@ -0,0 +1,142 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Aggregated results of verifying a batch of credentials and presentations.
+ *
+ * Collects the number of valid, invalid and unreadable documents, the number of failures for each verification policy and
+ * latency histograms for each policy and for whole documents. Documents can be added from multiple threads.
+ * @author Otto Hylli
+ *
+ */
+public class BatchVerificationReport {
+
+    private final LongAdder valid = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // histogram for each policy id in the order the policies are run.
+    private final Map<String, LatencyHistogram> policyLatencies = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, LongAdder> policyFailures = new ConcurrentHashMap<>();
+    private final LatencyHistogram documentLatency = new LatencyHistogram();
+    // names of documents that were invalid or could not be verified.
+    private final List<String> failedDocuments = Collections.synchronizedList(new ArrayList<>());
+    private long elapsedNanos;
+
+    /** Record the time a policy took to verify a document and whether the document passed the policy.
+     * @param policyId id of the verification policy
+     * @param nanos time used for the policy
+     * @param passed did the document pass the policy
+     */
+    public void recordPolicy( String policyId, long nanos, boolean passed ) {
+        policyLatencies.computeIfAbsent(policyId, id -> new LatencyHistogram()).record(nanos);
+        if ( !passed ) {
+            policyFailures.computeIfAbsent(policyId, id -> new LongAdder()).increment();
+        }
+    }
+
+    /** Record the result of verifying one document.
+     * @param name name of the document for example file name
+     * @param isValid overall verification result
+     * @param nanos time used for verifying the document
+     */
+    public void recordDocument( String name, boolean isValid, long nanos ) {
+        documentLatency.record(nanos);
+        if ( isValid ) {
+            valid.increment();
+        }
+
+        else {
+            invalid.increment();
+            failedDocuments.add(name);
+        }
+    }
+
+    /** Record a document that could not be read or parsed.
+     * @param name name of the document
+     * @param message reason for the error
+     */
+    public void recordError( String name, String message ) {
+        errors.increment();
+        failedDocuments.add(name +": " +message);
+    }
+
+    /** Set the wall clock time the whole batch took.
+     * @param elapsedNanos elapsed time in nanoseconds
+     */
+    void setElapsedNanos( long elapsedNanos ) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Get wall clock time the whole batch took.
+     * @return elapsed nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** Number of documents that passed all policies.
+     * @return valid count
+     */
+    public long getValidCount() {
+        return valid.sum();
+    }
+
+    /** Number of documents that failed at least one policy.
+     * @return invalid count
+     */
+    public long getInvalidCount() {
+        return invalid.sum();
+    }
+
+    /** Number of documents that could not be read or parsed.
+     * @return error count
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /** Get the latency histogram of each policy.
+     * @return Key is the policy id and value its latencies.
+     */
+    public Map<String, LatencyHistogram> getPolicyLatencies() {
+        synchronized ( policyLatencies ) {
+            return new LinkedHashMap<>(policyLatencies);
+        }
+    }
+
+    /** Get the number of documents that failed the given policy.
+     * @param policyId id of a policy
+     * @return failure count
+     */
+    public long getPolicyFailures( String policyId ) {
+        var failures = policyFailures.get(policyId);
+        return failures == null ? 0 : failures.sum();
+    }
+
+    /** Get the latency histogram for verifying whole documents.
+     * @return document latencies
+     */
+    public LatencyHistogram getDocumentLatency() {
+        return documentLatency;
+    }
+
+    /** Get names of documents that were invalid or could not be verified.
+     * @return document names
+     */
+    public List<String> getFailedDocuments() {
+        synchronized ( failedDocuments ) {
+            return new ArrayList<>(failedDocuments);
+        }
+    }
+}
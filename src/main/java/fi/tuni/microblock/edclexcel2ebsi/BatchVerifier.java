@@ -0,0 +1,263 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+import id.walt.auditor.VerificationPolicy;
+import id.walt.auditor.VerificationResult;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Verifies a directory, a zip archive or a gzip compressed NDJSON archive of credentials and presentations in parallel.
+ *
+ * Each document is parsed once and then checked with each verification policy separately so that the time used by each policy can be measured.
+ * Policies are run with a VerificationPolicyRunner so a batch can also be verified in fail fast or concurrent mode.
+ * @author Otto Hylli
+ *
+ */
+public class BatchVerifier {
+
+    // documents read from an archive ahead of the workers per worker thread.
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final VerificationPolicyRunner runner;
+    private final VerificationMode mode;
+    private final int threads;
+
+    /** Create a verifier using the given policies and number of worker threads that runs every policy for every document.
+     * @param policies verification policies every document is checked with.
+     * @param threads number of worker threads.
+     */
+    public BatchVerifier( List<VerificationPolicy> policies, int threads ) {
+        this( new VerificationPolicyRunner(policies), VerificationMode.FULL, threads );
+    }
+
+    /** Create a verifier that runs policies with the given runner and mode.
+     * @param runner runs the verification policies and keeps track of their costs.
+     * @param mode how policies are run for each document.
+     * @param threads number of worker threads.
+     */
+    public BatchVerifier( VerificationPolicyRunner runner, VerificationMode mode, int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.runner = runner;
+        this.mode = mode;
+        this.threads = threads;
+    }
+
+    /** Verify all documents in the given directory or archive.
+     *
+     * Directories are walked recursively and every regular file except a credential manifest or checkpoint journal is treated as a document. For zip files every file entry is a document.
+     * Files ending with .gz are read as NDJSON written by ArchiveCredentialWriter and each credential is named by its id.
+     * @param source directory, zip file or gzip compressed NDJSON file.
+     * @return aggregated results.
+     * @throws IOException source could not be read.
+     */
+    public BatchVerificationReport verify( Path source ) throws IOException {
+        if ( Files.isDirectory(source)) {
+            return verifyDirectory(source);
+        }
+
+        if ( ArchiveCredentialReader.isNdjson(source)) {
+            return verifyNdjson(source);
+        }
+
+        return verifyArchive(source);
+    }
+
+    /** Verify the given documents.
+     * @param documents Key is a name for the document used in reporting and value the credential or presentation.
+     * @return aggregated results
+     */
+    public BatchVerificationReport verify( Map<String, String> documents ) {
+        var report = new BatchVerificationReport();
+        long start = System.nanoTime();
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for ( var document : documents.entrySet() ) {
+                tasks.add( executor.submit(() -> verifyDocument( document.getKey(), document.getValue(), report )));
+            }
+
+            awaitAll(tasks);
+        }
+
+        finally {
+            executor.shutdown();
+        }
+
+        report.setElapsedNanos(System.nanoTime() -start);
+        return report;
+    }
+
+    /** Verify a single document timing each policy separately.
+     * @param document credential or presentation
+     * @param report report where policy timings are recorded. Can be null.
+     * @return Verification result in the same form the auditor produces.
+     */
+    public VerificationResult verify( String document, BatchVerificationReport report ) {
+        var credential = VerifiableCredential.Companion.fromString(document);
+        return runner.verify(credential, mode, report);
+    }
+
+    private void verifyDocument( String name, String document, BatchVerificationReport report ) {
+        long start = System.nanoTime();
+        try {
+            var result = verify(document, report);
+            report.recordDocument(name, result.getValid(), System.nanoTime() -start);
+        }
+
+        catch ( RuntimeException e ) {
+            report.recordError(name, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private BatchVerificationReport verifyDirectory( Path directory ) throws IOException {
+        List<Path> files;
+        try ( var paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).filter( file -> !isBookkeeping(file)).sorted().collect(Collectors.toList());
+        }
+
+        var report = new BatchVerificationReport();
+        long start = System.nanoTime();
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for ( var file : files ) {
+                tasks.add( executor.submit(() -> {
+                    var name = directory.relativize(file).toString();
+                    String document;
+                    try {
+                        document = Files.readString(file, StandardCharsets.UTF_8);
+                    }
+
+                    catch ( IOException e ) {
+                        report.recordError(name, "unable to read file: " +e.getMessage());
+                        return;
+                    }
+
+                    verifyDocument(name, document, report);
+                }));
+            }
+
+            awaitAll(tasks);
+        }
+
+        finally {
+            executor.shutdown();
+        }
+
+        report.setElapsedNanos(System.nanoTime() -start);
+        return report;
+    }
+
+    private BatchVerificationReport verifyArchive( Path archive ) throws IOException {
+        var report = new BatchVerificationReport();
+        long start = System.nanoTime();
+        var executor = Executors.newFixedThreadPool(threads);
+        // limits the entries read ahead of the workers as with NDJSON archives.
+        int maxInFlight = threads * IN_FLIGHT_PER_THREAD;
+        try ( var zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            Deque<Future<?>> tasks = new ArrayDeque<>();
+            // entries are read on this thread so that the zip file is read sequentially.
+            for ( var entries = zip.entries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                if ( entry.isDirectory()) {
+                    continue;
+                }
+
+                String document;
+                try ( var input = zip.getInputStream(entry)) {
+                    document = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                }
+
+                if ( tasks.size() >= maxInFlight ) {
+                    await(tasks.poll());
+                }
+
+                tasks.add( executor.submit(() -> verifyDocument(entry.getName(), document, report)));
+            }
+
+            awaitAll(tasks);
+        }
+
+        finally {
+            executor.shutdown();
+        }
+
+        report.setElapsedNanos(System.nanoTime() -start);
+        return report;
+    }
+
+    private BatchVerificationReport verifyNdjson( Path archive ) throws IOException {
+        var report = new BatchVerificationReport();
+        long start = System.nanoTime();
+        var executor = Executors.newFixedThreadPool(threads);
+        // limits the credentials read ahead of the workers so that neither memory use nor the pending tasks grow with the archive.
+        int maxInFlight = threads * IN_FLIGHT_PER_THREAD;
+        try {
+            Deque<Future<?>> tasks = new ArrayDeque<>();
+            new ArchiveCredentialReader(archive).forEach( entry -> {
+                if ( tasks.size() >= maxInFlight ) {
+                    await(tasks.poll());
+                }
+
+                tasks.add( executor.submit(() -> verifyDocument(entry.credentialId(), entry.credential(), report)));
+            });
+
+            awaitAll(tasks);
+        }
+
+        finally {
+            executor.shutdown();
+        }
+
+        report.setElapsedNanos(System.nanoTime() -start);
+        return report;
+    }
+
+    private static boolean isBookkeeping( Path file ) {
+        var name = file.getFileName().toString();
+        return name.equals(CredentialManifest.FILE_NAME) || name.equals(CheckpointJournal.FILE_NAME);
+    }
+
+    private static void awaitAll( Collection<Future<?>> tasks ) {
+        for ( var task : tasks ) {
+            await(task);
+        }
+    }
+
+    private static void await( Future<?> task ) {
+        try {
+            task.get();
+        }
+
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch verification interrupted.", e);
+        }
+
+        catch ( ExecutionException e ) {
+            throw new IllegalStateException("Batch verification failed: " +e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
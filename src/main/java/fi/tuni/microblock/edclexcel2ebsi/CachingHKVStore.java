@@ -0,0 +1,290 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import id.walt.services.hkvstore.FileSystemHKVStore;
+import id.walt.services.hkvstore.HKVKey;
+import id.walt.services.hkvstore.HKVStoreService;
+
+/** Hierarchical key value store that keeps values in memory in front of the walt.id file system store.
+ *
+ * Reads are served from memory after the first read of a key. The store can be preloaded at startup so that even the first reads do not touch the disk.
+ * Writes update memory immediately. They are either written to the file system store at once or collected and written in batches
+ * where only the latest value of a key written many times is written. Writes under the write through roots, by default the keystore,
+ * are always written at once so that a created key is on the disk when put returns.
+ * Deletes and listing child keys always go to the file system store after pending writes.
+ * Taken into use in service-matrix.properties as the HKVStoreService implementation with a properties file with the options:
+ * fsStoreConfig config file of the file system store, preload true to read the preloadRoots at startup,
+ * preloadRoots comma separated top level keys to preload, flushIntervalMillis how often pending writes are written, 0 or not given for writing at once,
+ * and writeThroughRoots comma separated top level keys whose writes are never batched.
+ * @author Otto Hylli
+ *
+ */
+public class CachingHKVStore extends HKVStoreService {
+
+    private final HKVStoreService store;
+    // cached values by key. An empty value means the key is known not to exist.
+    private final Map<String, Optional<byte[]>> values = new ConcurrentHashMap<>();
+    // incremented when keys are deleted so that a value read from the store during a delete is not cached.
+    private final AtomicLong generation = new AtomicLong();
+    // writes not yet written to the store in the order they were made. Access must be synchronized on the map.
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService flusher;
+    // top level keys whose writes are written at once even when other writes are batched.
+    private final Set<String> writeThroughRoots;
+
+    /** Top level keys written through by default. */
+    public static final Set<String> DEFAULT_WRITE_THROUGH_ROOTS = Set.of("keystore");
+
+    /** Create a caching store configured with the given properties file.
+     * @param configFile caching store configuration.
+     */
+    public CachingHKVStore( String configFile ) {
+        this( new Config(configFile));
+    }
+
+    private CachingHKVStore( Config config ) {
+        this( createStore(config), config );
+    }
+
+    private CachingHKVStore( HKVStoreService store, Config config ) {
+        this( store, getFlushInterval(config), getWriteThroughRoots(config));
+        if ( Boolean.TRUE.equals(config.is("preload"))) {
+            var roots = config.get("preloadRoots");
+            preload( roots == null ? new String[0] : roots.split(","));
+        }
+    }
+
+    /** Create a caching store in front of the given store writing the keystore through.
+     * @param store store values are read from and written to.
+     * @param flushIntervalMillis how often collected writes are written to the store. 0 if writes should be written at once.
+     */
+    public CachingHKVStore( HKVStoreService store, long flushIntervalMillis ) {
+        this( store, flushIntervalMillis, DEFAULT_WRITE_THROUGH_ROOTS );
+    }
+
+    /** Create a caching store in front of the given store.
+     * @param store store values are read from and written to.
+     * @param flushIntervalMillis how often collected writes are written to the store. 0 if writes should be written at once.
+     * @param writeThroughRoots top level keys whose writes are always written at once.
+     */
+    public CachingHKVStore( HKVStoreService store, long flushIntervalMillis, Set<String> writeThroughRoots ) {
+        this.store = store;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.writeThroughRoots = Set.copyOf(writeThroughRoots);
+        if ( flushIntervalMillis > 0 ) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "hkv-store-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            // the cli exits with System.exit so pending writes are written in a shutdown hook.
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "hkv-store-final-flush"));
+        }
+
+        else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void put( HKVKey key, byte[] value ) {
+        var name = key.toString();
+        values.put(name, Optional.of(value));
+        if ( flusher == null ) {
+            store.put(key, value);
+            return;
+        }
+
+        if ( isWriteThrough(name)) {
+            // synchronized with flush so that an earlier pending value of the key cannot be written after this one.
+            synchronized ( this ) {
+                synchronized ( pending ) {
+                    pending.remove(name);
+                }
+
+                store.put(key, value);
+            }
+
+            return;
+        }
+
+        synchronized ( pending ) {
+            // a later write replaces the earlier one which then never reaches the disk.
+            pending.remove(name);
+            pending.put(name, new PendingWrite(key, value));
+        }
+    }
+
+    @Override
+    public byte[] getAsByteArray( HKVKey key ) {
+        var name = key.toString();
+        var cached = values.get(name);
+        if ( cached != null ) {
+            return cached.orElse(null);
+        }
+
+        // read from the store outside of the map so that reading does not block access to the other keys.
+        long readGeneration = generation.get();
+        var value = Optional.ofNullable(store.getAsByteArray(key));
+        var existing = values.putIfAbsent(name, value);
+        if ( existing != null ) {
+            // written or read by another thread meanwhile.
+            return existing.orElse(null);
+        }
+
+        if ( generation.get() != readGeneration ) {
+            // keys were deleted while reading so the value may be out of date.
+            values.remove(name, value);
+        }
+
+        return value.orElse(null);
+    }
+
+    @Override
+    public Set<HKVKey> listChildKeys( HKVKey parent, boolean recursive ) {
+        flush();
+        return store.listChildKeys(parent, recursive);
+    }
+
+    @Override
+    public boolean delete( HKVKey key, boolean recursive ) {
+        flush();
+        var name = key.toString();
+        var deleted = store.delete(key, recursive);
+        generation.incrementAndGet();
+        values.remove(name);
+        if ( recursive ) {
+            values.keySet().removeIf(cached -> cached.startsWith(name +"/"));
+        }
+
+        return deleted;
+    }
+
+    /** Write the pending writes to the file system store.
+     *
+     * Synchronized so that batches are written in order.
+     */
+    public synchronized void flush() {
+        PendingWrite[] writes;
+        synchronized ( pending ) {
+            if ( pending.isEmpty()) {
+                return;
+            }
+
+            writes = pending.values().toArray(new PendingWrite[0]);
+            pending.clear();
+        }
+
+        for ( var write : writes ) {
+            store.put(write.key, write.value);
+        }
+    }
+
+    /** Get the number of writes waiting to be written.
+     * @return pending write count
+     */
+    public int getPendingCount() {
+        synchronized ( pending ) {
+            return pending.size();
+        }
+    }
+
+    /** Get the interval of batched writes.
+     * @return flush interval in milliseconds. 0 if values are written at once.
+     */
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /** Read all keys under the given top level keys to memory.
+     * @param roots top level keys for example keystore.
+     */
+    public void preload( String... roots ) {
+        for ( var root : roots ) {
+            Set<HKVKey> keys;
+            try {
+                keys = store.listChildKeys(new HKVKey(root.strip()), true);
+            }
+
+            catch ( RuntimeException e ) {
+                // nothing stored under the root yet.
+                continue;
+            }
+
+            if ( keys == null ) {
+                continue;
+            }
+
+            for ( var key : keys ) {
+                getAsByteArray(key);
+            }
+        }
+    }
+
+    /** Stop writing batches after writing the pending writes.
+     *
+     */
+    public void shutdown() {
+        if ( flusher != null ) {
+            flusher.shutdown();
+        }
+
+        flush();
+    }
+
+    private boolean isWriteThrough( String name ) {
+        int separator = name.indexOf('/');
+        return writeThroughRoots.contains( separator < 0 ? name : name.substring(0, separator));
+    }
+
+    private static HKVStoreService createStore( Config config ) {
+        var fsStoreConfig = config.get("fsStoreConfig");
+        return new FileSystemHKVStore( fsStoreConfig == null ? "fsStore.conf" : fsStoreConfig );
+    }
+
+    private static long getFlushInterval( Config config ) {
+        var interval = config.get("flushIntervalMillis");
+        return interval == null ? 0 : Long.parseLong(interval);
+    }
+
+    private static Set<String> getWriteThroughRoots( Config config ) {
+        var roots = config.get("writeThroughRoots");
+        if ( roots == null ) {
+            return DEFAULT_WRITE_THROUGH_ROOTS;
+        }
+
+        return Arrays.stream(roots.split(",")).map(String::strip).filter(root -> !root.isEmpty()).collect(Collectors.toSet());
+    }
+
+    /** A value waiting to be written.
+     *
+     */
+    private static class PendingWrite {
+        final HKVKey key;
+        final byte[] value;
+
+        PendingWrite( HKVKey key, byte[] value ) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
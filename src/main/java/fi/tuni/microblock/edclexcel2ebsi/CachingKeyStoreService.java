@@ -0,0 +1,121 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import id.walt.crypto.Key;
+import id.walt.crypto.KeyId;
+import id.walt.services.keystore.HKVKeyStoreService;
+import id.walt.services.keystore.KeyStoreService;
+import id.walt.services.keystore.KeyType;
+
+/** Key store that keeps loaded keys in memory in front of the walt.id file system key store.
+ *
+ * Without it every signing reads and parses the issuer key from the hkv store files. With it a key is read once and then served from memory.
+ * Changing or deleting keys goes to the underlying store and removes the cached keys.
+ * Taken into use in service-matrix.properties as the KeyStoreService implementation.
+ * @author Otto Hylli
+ *
+ */
+public class CachingKeyStoreService extends KeyStoreService {
+
+    private final KeyStoreService store;
+    // loaded keys by alias and key type.
+    private final Map<String, Key> keys = new ConcurrentHashMap<>();
+    // incremented when keys are changed so that a key loaded before the change is not cached.
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Create a caching key store in front of the hkv key store.
+     *
+     */
+    public CachingKeyStoreService() {
+        this( new HKVKeyStoreService());
+    }
+
+    /** Create a caching key store in front of the given store.
+     * @param store store keys are loaded from and saved to.
+     */
+    public CachingKeyStoreService( KeyStoreService store ) {
+        this.store = store;
+    }
+
+    @Override
+    public Key load( String alias, KeyType keyType ) {
+        var cacheKey = cacheKey(alias, keyType);
+        var key = keys.get(cacheKey);
+        if ( key != null ) {
+            return key;
+        }
+
+        // read from the store outside of the map so that loading does not block access to the other keys.
+        // Threads loading the same key at the same time may all read it but only the first one is cached.
+        long loadedGeneration = generation.get();
+        key = store.load(alias, keyType);
+        if ( key == null ) {
+            return null;
+        }
+
+        var existing = keys.putIfAbsent(cacheKey, key);
+        if ( existing != null ) {
+            return existing;
+        }
+
+        if ( generation.get() != loadedGeneration ) {
+            // keys were changed while loading so the loaded key may be out of date.
+            keys.remove(cacheKey, key);
+        }
+
+        return key;
+    }
+
+    @Override
+    public void store( Key key ) {
+        store.store(key);
+        invalidate();
+    }
+
+    @Override
+    public void addAlias( KeyId keyId, String alias ) {
+        store.addAlias(keyId, alias);
+        invalidate();
+    }
+
+    @Override
+    public void delete( String alias ) {
+        store.delete(alias);
+        invalidate();
+    }
+
+    @Override
+    public List<Key> listKeys() {
+        return store.listKeys();
+    }
+
+    @Override
+    public String getKeyId( String alias ) {
+        return store.getKeyId(alias);
+    }
+
+    /** Get the number of keys in memory.
+     * @return cached key count
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        keys.clear();
+    }
+
+    private static String cacheKey( String alias, KeyType keyType ) {
+        return keyType +":" +alias;
+    }
+}
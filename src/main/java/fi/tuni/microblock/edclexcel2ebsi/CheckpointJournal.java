@@ -0,0 +1,201 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Journal of the completed rows of a batch issuance run used for resuming an interrupted run.
+ *
+ * Each line has the tab separated student email, credential title and id of the issued credential escaped as in the CredentialManifest.
+ * Completed rows are kept in memory and written and forced to the disk together in a group commit when commitInterval rows have been added
+ * or commitIntervalMillis has passed since the previous commit, so the cost of forcing is shared by many credentials.
+ * The output the credentials are written to must be flushed before each commit so that the journal never lists a credential that is not in the output.
+ * A partially written last line left by an interrupted run is ignored.
+ * @author Otto Hylli
+ *
+ */
+public class CheckpointJournal implements Closeable {
+
+    /** Name of the journal in a batch output directory. */
+    public static final String FILE_NAME = "checkpoint.log";
+    /** Default number of rows between commits. */
+    public static final int DEFAULT_COMMIT_INTERVAL = 256;
+    /** Default maximum time between commits. */
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 1000;
+    private final FileChannel channel;
+    // rows added since the last commit. Kept in memory so that nothing reaches the file before the output has been flushed.
+    private final ByteArrayOutputStream pendingRows = new ByteArrayOutputStream(64 * 1024);
+    private final int commitInterval;
+    private final long commitIntervalNanos;
+    // credential id by student email and credential title for committed and pending rows.
+    private final Map<String, String> completed = new HashMap<>();
+    // ids of the credentials in the journal.
+    private final Set<String> credentialIds = new HashSet<>();
+    private int pending;
+    private long lastCommit = System.nanoTime();
+
+    /** Open the given journal with the default commit intervals.
+     * @param file journal file.
+     * @param resume true to keep the rows of an earlier run and false to start from an empty journal.
+     * @throws IOException journal could not be read or opened.
+     */
+    public CheckpointJournal( Path file, boolean resume ) throws IOException {
+        this( file, resume, DEFAULT_COMMIT_INTERVAL, DEFAULT_COMMIT_INTERVAL_MILLIS );
+    }
+
+    /** Open the given journal.
+     * @param file journal file.
+     * @param resume true to keep the rows of an earlier run and false to start from an empty journal.
+     * @param commitInterval number of rows between commits.
+     * @param commitIntervalMillis maximum time between commits when rows are added.
+     * @throws IOException journal could not be read or opened.
+     */
+    public CheckpointJournal( Path file, boolean resume, int commitInterval, long commitIntervalMillis ) throws IOException {
+        if ( commitInterval < 1 ) {
+            throw new IllegalArgumentException("Commit interval must be at least one row.");
+        }
+
+        this.commitInterval = commitInterval;
+        this.commitIntervalNanos = commitIntervalMillis * 1_000_000;
+        long validLength = 0;
+        if ( resume && Files.exists(file)) {
+            validLength = load(file);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+    }
+
+    /** Get the journal file used for the given batch output.
+     * @param output output directory or archive file of the batch.
+     * @return checkpoint.log in an output directory or the archive name with .checkpoint appended.
+     */
+    public static Path forOutput( Path output ) {
+        if ( Files.isDirectory(output)) {
+            return output.resolve(FILE_NAME);
+        }
+
+        return output.resolveSibling(output.getFileName() +".checkpoint");
+    }
+
+    /** Check if a credential has already been issued for the given row.
+     * @param email student email address.
+     * @param title credential title.
+     * @return true if the row is in the journal.
+     */
+    public synchronized boolean isCompleted( String email, String title ) {
+        return completed.containsKey(key(email, title));
+    }
+
+    /** Check if the given credential is in the journal.
+     * @param credentialId id of a credential.
+     * @return true if some row of the journal has the credential.
+     */
+    public synchronized boolean containsCredential( String credentialId ) {
+        return credentialIds.contains(credentialId);
+    }
+
+    /** Get the number of completed rows.
+     * @return row count including rows not yet committed.
+     */
+    public synchronized int size() {
+        return completed.size();
+    }
+
+    /** Add a completed row.
+     *
+     * The row is written to the disk in the next commit.
+     * @param email student email address.
+     * @param title credential title.
+     * @param credentialId id of the issued credential.
+     * @throws IOException writing failed.
+     */
+    public synchronized void add( String email, String title, String credentialId ) throws IOException {
+        var line = (CredentialManifest.escape(email) +'\t' +CredentialManifest.escape(title) +'\t' +CredentialManifest.escape(credentialId) +'\n').getBytes(StandardCharsets.UTF_8);
+        pendingRows.write(line, 0, line.length);
+        index(email, title, credentialId);
+        pending++;
+    }
+
+    /** Check if enough rows or time have accumulated for a commit.
+     * @return true if commit should be called after flushing the output.
+     */
+    public synchronized boolean isCommitDue() {
+        return pending >= commitInterval || ( pending > 0 && System.nanoTime() -lastCommit >= commitIntervalNanos );
+    }
+
+    /** Write the added rows and force them to the disk.
+     * @throws IOException writing failed.
+     */
+    public synchronized void commit() throws IOException {
+        var rows = ByteBuffer.wrap(pendingRows.toByteArray());
+        while ( rows.hasRemaining()) {
+            channel.write(rows);
+        }
+
+        pendingRows.reset();
+        channel.force(false);
+        pending = 0;
+        lastCommit = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            commit();
+        }
+
+        finally {
+            channel.close();
+        }
+    }
+
+    /** Read the rows of the given journal file.
+     * @param file journal file
+     * @return length of the complete lines in bytes.
+     * @throws IOException reading failed.
+     */
+    private long load( Path file ) throws IOException {
+        var content = Files.readAllBytes(file);
+        int start = 0;
+        for ( int i = 0; i < content.length; i++ ) {
+            if ( content[i] != '\n' ) {
+                continue;
+            }
+
+            var fields = new String(content, start, i -start, StandardCharsets.UTF_8).split("\t", -1);
+            if ( fields.length == 3 ) {
+                index( CredentialManifest.unescape(fields[0]), CredentialManifest.unescape(fields[1]), CredentialManifest.unescape(fields[2]));
+            }
+
+            start = i +1;
+        }
+
+        return start;
+    }
+
+    private void index( String email, String title, String credentialId ) {
+        completed.put(key(email, title), credentialId);
+        credentialIds.add(credentialId);
+    }
+
+    private static String key( String email, String title ) {
+        return email +'\t' +title;
+    }
+}
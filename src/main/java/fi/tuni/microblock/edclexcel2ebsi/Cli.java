@@ -5,18 +5,27 @@
 */
 package fi.tuni.microblock.edclexcel2ebsi;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.net.httpserver.HttpServer;
+
+import jdk.jfr.Recording;
+
 import id.walt.auditor.VerificationResult;
+import id.walt.signatory.ProofType;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.ScopeType;
 import picocli.CommandLine.Spec;
 
 /** Main class which implements the picocli based command line interface.
@@ -28,15 +37,35 @@ import picocli.CommandLine.Spec;
 public class Cli {
     
     @Spec CommandSpec spec;
-    /** Used for actual credential operations: issue, present verify
+    
+    @Option(names = { "--stats" }, scope = ScopeType.INHERIT, description = "Print the time spent in each stage and the counters of the command when it finishes.")
+    boolean stats;
+    
+    @Option(names = { "--metrics-file" }, scope = ScopeType.INHERIT, paramLabel = "FILE", description = "Write the metrics in the Prometheus text format to the file every 10 seconds and when the command finishes.")
+    Path metricsFile;
+    
+    @Option(names = { "--metrics-port" }, scope = ScopeType.INHERIT, paramLabel = "PORT", description = "Serve the metrics in the Prometheus text format from http://localhost:PORT/metrics while the command runs.")
+    Integer metricsPort;
+    
+    @Option(names = { "--jfr" }, scope = ScopeType.INHERIT, paramLabel = "FILE", description = "Record the command with Java Flight Recorder including the issuance and verification events to the file.")
+    Path jfrFile;
+    
+    private static final long METRICS_EXPORT_INTERVAL_MILLIS = 10000;
+    /** Used for actual credential operations: issue, present verify. Created by the first command that needs it.
      */
     private CredentialLib credentials;
 
-    /** Create the cli with a CredentialLib instance.
+    /** Get the CredentialLib creating it on first use.
      * 
+     * Creating it reads the configuration, key store and credentials workbook, which the workbook commands generate-workbook and footprint do not need.
+     * @return the credential lib
      */
-    public Cli() {
-        credentials = new CredentialLib();
+    private CredentialLib getCredentials() {
+        if ( credentials == null ) {
+            credentials = new CredentialLib();
+        }
+        
+        return credentials;
     }
     
     /** A convenience command for quicly issuing, presenting and veryfying.
@@ -49,19 +78,19 @@ public class Cli {
         logger.info("Starting ssikit test.");
         
         try {
-            var id = credentials.createId("anna.makkara@tautest.edu");
+            var id = getCredentials().createId("anna.makkara@tautest.edu");
             System.out.println("Student id:");
             System.out.println(id);
             CredentialLib.writeToFile("id.json", id);
-            var diploma = credentials.createDiploma( "anna.makkara@tautest.edu", "Data and Software Business module" );
+            var diploma = getCredentials().createDiploma( "anna.makkara@tautest.edu", "Data and Software Business module" );
             System.out.println("Diploma:");
             System.out.println(diploma);
             CredentialLib.writeToFile("diploma.json", diploma);
-            var diplomaVp = credentials.createPresentation( List.of(CredentialLib.readStringFromFile("diploma.json"), CredentialLib.readStringFromFile("id.json")) );
+            var diplomaVp = getCredentials().createPresentation( List.of(CredentialLib.readStringFromFile("diploma.json"), CredentialLib.readStringFromFile("id.json")) );
             System.out.println("Diploma presentation:");
             System.out.println(diplomaVp);
             CredentialLib.writeToFile("presentation.json", diplomaVp);
-            var result = credentials.verifyDiploma( CredentialLib.readStringFromFile("presentation.json") );
+            var result = getCredentials().verifyDiploma( CredentialLib.readStringFromFile("presentation.json") );
             printVerificationResult(result);
         }
         
@@ -79,6 +108,7 @@ public class Cli {
     
     /** Issue a diploma from the excel data.
      * @param fileName File where the created diploma should be saved to.
+     * @param proofType Proof type of the diploma. If null the configured proof type is used.
      * @param email Email address of the student the diploma should be issued for.
      * @param achievement Achievement i..e course of the student the diploma is for.
      */
@@ -86,13 +116,15 @@ public class Cli {
     public void issueDiploma(
             @Option(names = { "-f", "--file" }, required = true, paramLabel = "CREDENTIAL_FILE", description = "File name for the issued credential")
             String fileName,
+            @Option(names = { "-p", "--proof-type" }, paramLabel = "PROOF_TYPE", description = "Proof type of the credential: ${COMPLETION-CANDIDATES}. Defaults to the proofType config option.")
+            ProofType proofType,
             @Parameters( index = "0", paramLabel = "email", description = "The email address of the student the credential should be issued to." )
             String email,
             @Parameters( index = "1", paramLabel = "achievement", description = "Name of the course the diploma is issued for." )
             String achievement
             ) {
         try {
-            var diploma = credentials.createDiploma( email, achievement );
+            var diploma = getCredentials().createDiploma( email, achievement, proofType == null ? getCredentials().getProofType() : proofType );
             CredentialLib.writeToFile(fileName, diploma);
         } catch (IOException e) {
             System.out.println( "Unable to write diploma to file " +fileName +": " +e.getMessage());
@@ -107,20 +139,224 @@ public class Cli {
         }
     }
     
+    /** Issue diplomas for the given achievement to many students signing them in parallel.
+     * @param directory Directory the diplomas are saved to. The diplomas are saved to hashed subdirectories and listed in a manifest.
+     * @param archive Archive file the diplomas are streamed to instead of a directory. A .zip file is a zip archive and other files gzip compressed NDJSON.
+     * @param flushInterval Number of diplomas between archive flushes.
+     * @param resume Should an interrupted run be continued by skipping the students in its checkpoint journal.
+     * @param proofType Proof type of the diplomas. If null the configured proof type is used.
+     * @param achievement Achievement i.e. course the diplomas are for.
+     * @param emails Email addresses of the students.
+     */
+    @Command( name = "issue-batch", description = "Issue diplomas for an achievement to many students.")
+    public void issueBatch(
+            @Option(names = { "-d", "--directory" }, paramLabel = "DIRECTORY", description = "Directory the issued credentials are saved to.")
+            String directory,
+            @Option(names = { "-a", "--archive" }, paramLabel = "ARCHIVE", description = "Zip or .ndjson.gz file the issued credentials are streamed to.")
+            String archive,
+            @Option(names = { "--flush-interval" }, defaultValue = "100", paramLabel = "COUNT", description = "Number of credentials between archive flushes. Default: ${DEFAULT-VALUE}.")
+            int flushInterval,
+            @Option(names = { "-r", "--resume" }, description = "Continue an interrupted run skipping the students whose diplomas were already issued.")
+            boolean resume,
+            @Option(names = { "-p", "--proof-type" }, paramLabel = "PROOF_TYPE", description = "Proof type of the credentials: ${COMPLETION-CANDIDATES}. Defaults to the proofType config option.")
+            ProofType proofType,
+            @Parameters( index = "0", paramLabel = "achievement", description = "Name of the course the diplomas are issued for." )
+            String achievement,
+            @Parameters( index = "1..*", paramLabel = "email", description = "Email addresses of the students the diplomas should be issued to." )
+            List<String> emails
+            ) {
+        if (( directory == null ) == ( archive == null )) {
+            System.out.println( "Give either the output directory or the archive file.");
+            return;
+        }
+        
+        if ( proofType == null ) {
+            proofType = getCredentials().getProofType();
+        }
+        
+        var output = directory != null ? directory : archive;
+        try ( var batch = openBatchOutput( directory, archive, flushInterval, resume )) {
+            var journal = batch.journal();
+            int skipped = (int)emails.stream().filter( email -> journal.isCompleted(email, achievement)).count();
+            var failures = getCredentials().issueDiplomas(emails, achievement, proofType, batch.writer(), journal);
+            for ( var failure : failures.getErrors()) {
+                System.out.println( "Unable to create diploma for " +failure.key() +": " +failure.reason());
+            }
+            
+            if ( skipped > 0 ) {
+                System.out.println( "Skipped " +skipped +" diplomas issued by the interrupted run.");
+            }
+            
+            System.out.println( "Issued " +(emails.size() -skipped -failures.size()) +" of " +(emails.size() -skipped) +" diplomas.");
+        }
+        
+        catch ( IOException | IllegalArgumentException e ) {
+            System.out.println( "Unable to write diplomas to " +output +": " +e.getMessage());
+        }
+    }
+    
+    /** Open the output and checkpoint journal of issue-batch.
+     * @param directory Output directory or null.
+     * @param archive Output archive or null.
+     * @param flushInterval Number of diplomas between archive flushes.
+     * @param resume Should the journal and output of an earlier run be continued.
+     * @return the writer and the journal.
+     * @throws IOException output or journal could not be opened.
+     */
+    private static BatchOutput openBatchOutput( String directory, String archive, int flushInterval, boolean resume ) throws IOException {
+        var file = Path.of( directory != null ? directory : archive );
+        if ( directory != null ) {
+            // the journal is stored in the output directory.
+            Files.createDirectories(file);
+        }
+        
+        var journal = new CheckpointJournal( CheckpointJournal.forOutput(file), resume );
+        try {
+            // credentials written after the last journal commit are dropped and issued again.
+            CredentialSink writer;
+            if ( directory != null ) {
+                writer = resume ? ShardedCredentialWriter.resume( file, journal::containsCredential ) : new ShardedCredentialWriter( file );
+            }
+            
+            else {
+                writer = resume ? ArchiveCredentialWriter.resume( file, flushInterval, journal::containsCredential ) : new ArchiveCredentialWriter( file, flushInterval );
+            }
+            
+            return new BatchOutput( writer, journal );
+        }
+        
+        catch ( IOException | RuntimeException e ) {
+            journal.close();
+            throw e;
+        }
+    }
+    
+    /** Credential writer and checkpoint journal of a batch issuance run.
+     * 
+     * The writer is closed before the journal so that the journal is never committed ahead of the written credentials.
+     */
+    private static record BatchOutput( CredentialSink writer, CheckpointJournal journal ) implements AutoCloseable {
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.close();
+            }
+            
+            finally {
+                journal.close();
+            }
+        }
+    }
+    
+    /** Find an issued credential from the manifest of a batch output directory or from an archive.
+     *
+     * For a directory the file of the credential is printed and for an archive the credential itself.
+     * @param directory Output directory of issue-batch.
+     * @param archive Archive file of issue-batch.
+     * @param credentialId Id of the credential. If not given email and achievement are used.
+     * @param student Email address and achievement of the student.
+     */
+    @Command( name = "find-credential", description = "Find an issued credential in a batch output directory or archive.")
+    public void findCredential(
+            @Option(names = { "-d", "--directory" }, paramLabel = "DIRECTORY", description = "Directory the credentials were issued to.")
+            String directory,
+            @Option(names = { "-a", "--archive" }, paramLabel = "ARCHIVE", description = "Archive the credentials were issued to.")
+            String archive,
+            @Option(names = { "-i", "--id" }, paramLabel = "ID", description = "Id of the credential.")
+            String credentialId,
+            @Parameters( arity = "0..2", paramLabel = "email achievement", description = "Email address of the student and name of the achievement." )
+            List<String> student
+            ) {
+        if (( directory == null ) == ( archive == null )) {
+            System.out.println( "Give either the output directory or the archive file.");
+            return;
+        }
+        
+        if ( credentialId == null && ( student == null || student.size() != 2 )) {
+            System.out.println( "Give either the credential id or the email and achievement.");
+            return;
+        }
+        
+        if ( archive != null ) {
+            try {
+                var reader = new ArchiveCredentialReader(Path.of(archive));
+                var entry = credentialId != null ? reader.find(credentialId) : reader.find(student.get(0), student.get(1));
+                System.out.println( entry.isPresent() ? entry.get().credential() : "Credential not found.");
+            }
+            
+            catch ( IOException e ) {
+                System.out.println( "Unable to read " +archive +": " +e.getMessage());
+            }
+            
+            return;
+        }
+        
+        try ( var writer = new ShardedCredentialWriter(Path.of(directory))) {
+            var entry = credentialId != null ? writer.find(credentialId) : writer.find(student.get(0), student.get(1));
+            if ( entry.isEmpty()) {
+                System.out.println( "Credential not found.");
+                return;
+            }
+            
+            System.out.println( writer.resolve(entry.get()));
+        }
+        
+        catch ( IOException e ) {
+            System.out.println( "Unable to read " +directory +": " +e.getMessage());
+        }
+    }
+    
+    /** Assign holder dids to students ahead of issuing their credentials.
+     * @param emails Email addresses of the students.
+     */
+    @Command( name = "assign-holders", description = "Assign own holder dids to students from the did pool.")
+    public void assignHolders(
+            @Parameters( index = "0..*", arity = "1..*", paramLabel = "email", description = "Email addresses of the students." )
+            List<String> emails
+            ) {
+        try {
+            for ( var assignment : getCredentials().assignHolderDids(emails).entrySet()) {
+                System.out.println( assignment.getKey() +": " +assignment.getValue());
+            }
+        }
+        
+        catch ( IllegalStateException e ) {
+            System.out.println( e.getMessage());
+        }
+    }
+    
     /** Create a presentation of the given diploma.
      * @param presentationFile File where the presentation should be saved to.
-     * @param credentialFile File containing the credential that should be presented.
+     * @param archive Archive the credential is read from. If given the credential is identified by its id instead of a file.
+     * @param credential File containing the credential or id of the credential in the archive.
      */
     @Command( name = "present", description = "Create a presentation of the given credential.")
     public void present(
             @Option(names = { "-f", "--file" }, required = true, paramLabel = "PRESENTATION_FILE", description = "File name for the verifiable presentation.")
             String presentationFile,
-            @Parameters( index = "0", paramLabel = "CREDENTIAL_FILE", description = "File containing the credential the presentation is created for." )
-            String credentialFile
+            @Option(names = { "-a", "--archive" }, paramLabel = "ARCHIVE", description = "Archive written by issue-batch the credential is read from.")
+            String archive,
+            @Parameters( index = "0", paramLabel = "CREDENTIAL", description = "File containing the credential the presentation is created for or its id in the archive." )
+            String credential
             ) {
         try {
-            var credential = CredentialLib.readStringFromFile(credentialFile);
-            var presentation = credentials.createPresentation(List.of(credential));
+            String document;
+            if ( archive != null ) {
+                var entry = new ArchiveCredentialReader(Path.of(archive)).find(credential);
+                if ( entry.isEmpty()) {
+                    System.out.println("Credential " +credential +" not found in " +archive);
+                    return;
+                }
+                
+                document = entry.get().credential();
+            }
+            
+            else {
+                document = CredentialLib.readStringFromFile(credential);
+            }
+            
+            var presentation = getCredentials().createPresentation(List.of(document));
             CredentialLib.writeToFile(presentationFile, presentation);
         }
         
@@ -130,16 +366,19 @@ public class Cli {
     }
     
     /** Verify the given presentation or credential.
+     * @param failFast Should verification stop at the first failed policy.
      * @param fileName File containing the presentation or credential to be verified.
      */
     @Command( name = "verify", description = "Verify a verifiable presentation or credential.")
     public void verify(
+            @Option(names = { "--fail-fast" }, description = "Run the cheapest policies first and stop at the first failed policy.")
+            boolean failFast,
             @Parameters( index = "0", paramLabel = "FILE", description = "File containing the credential or presentation to verify." )
             String fileName
             ) {
         try {
             var credential = CredentialLib.readStringFromFile(fileName);
-            var result = credentials.verifyDiploma(credential);
+            var result = failFast ? getCredentials().verifyDiploma(credential, VerificationMode.FAIL_FAST) : getCredentials().verifyDiploma(credential);
             printVerificationResult(result);
         }
         
@@ -148,6 +387,146 @@ public class Cli {
         }
     }
     
+    /** Verify all credentials and presentations in a directory or zip archive in parallel.
+     * @param source Directory or zip file containing the documents.
+     * @param threads Number of worker threads.
+     * @param listFailed Should names of invalid documents be printed.
+     * @param mode How verification policies are run for each document.
+     */
+    @Command( name = "verify-batch", description = "Verify all credentials and presentations in a directory, zip archive or .ndjson.gz archive.")
+    public void verifyBatch(
+            @Option(names = { "-t", "--threads" }, paramLabel = "THREADS", description = "Number of worker threads. Defaults to the number of processors.")
+            Integer threads,
+            @Option(names = { "-l", "--list-failed" }, description = "Print the names of invalid documents.")
+            boolean listFailed,
+            @Option(names = { "-m", "--mode" }, defaultValue = "FULL", paramLabel = "MODE", description = "How policies are run for each document: ${COMPLETION-CANDIDATES}. Default: ${DEFAULT-VALUE}.")
+            VerificationMode mode,
+            @Parameters( index = "0", paramLabel = "SOURCE", description = "Directory, zip file or .ndjson.gz file containing the credentials or presentations to verify." )
+            String source
+            ) {
+        if ( threads == null ) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        
+        try {
+            var report = getCredentials().verifyBatch(Path.of(source), threads, mode);
+            printBatchVerificationReport(report, listFailed);
+        }
+        
+        catch ( IOException e ) {
+            System.out.println("Unable to read " +source +": " +e.getMessage());
+        }
+    }
+    
+    /** Generate a synthetic EDCL workbook for load testing.
+     * @param fileName xlsx file the workbook is written to.
+     * @param persons number of persons and credentials.
+     * @param achievements number of achievements.
+     * @param assessments number of sub-assessments of each achievement.
+     * @param activities number of learning activities of each achievement.
+     * @param outcomes number of learning outcomes of each achievement.
+     * @param organisations number of issuing organisations.
+     * @param seed seed for the generated names and grades.
+     */
+    @Command( name = "generate-workbook", description = "Generate an EDCL workbook with synthetic students for load testing.")
+    public void generateWorkbook(
+            @Option(names = { "-f", "--file" }, required = true, paramLabel = "XLSX_FILE", description = "File name for the generated workbook.")
+            String fileName,
+            @Option(names = { "-n", "--persons" }, defaultValue = "1000", paramLabel = "COUNT", description = "Number of persons each with a credential. Default: ${DEFAULT-VALUE}.")
+            int persons,
+            @Option(names = { "--achievements" }, defaultValue = "1", paramLabel = "COUNT", description = "Number of achievements. Default: ${DEFAULT-VALUE}.")
+            int achievements,
+            @Option(names = { "--assessments" }, defaultValue = "3", paramLabel = "COUNT", description = "Number of sub-assessments of each achievement. Default: ${DEFAULT-VALUE}.")
+            int assessments,
+            @Option(names = { "--activities" }, defaultValue = "3", paramLabel = "COUNT", description = "Number of learning activities of each achievement. Default: ${DEFAULT-VALUE}.")
+            int activities,
+            @Option(names = { "--outcomes" }, defaultValue = "3", paramLabel = "COUNT", description = "Number of learning outcomes of each achievement. Default: ${DEFAULT-VALUE}.")
+            int outcomes,
+            @Option(names = { "--organisations" }, defaultValue = "1", paramLabel = "COUNT", description = "Number of issuing organisations. Default: ${DEFAULT-VALUE}.")
+            int organisations,
+            @Option(names = { "--seed" }, defaultValue = "1", paramLabel = "SEED", description = "Seed for the generated names and grades. Default: ${DEFAULT-VALUE}.")
+            long seed
+            ) {
+        try {
+            var generator = new WorkbookGenerator(persons, achievements, assessments, activities, outcomes, organisations, seed);
+            generator.write(Path.of(fileName));
+            System.out.println( "Generated " +persons +" persons. First student: " +WorkbookGenerator.email(0) +" '" +WorkbookGenerator.credentialTitle(0) +"'");
+        }
+        
+        catch ( IllegalArgumentException e ) {
+            System.out.println( e.getMessage());
+        }
+        
+        catch ( IOException e ) {
+            System.out.println( "Unable to write workbook to file " +fileName +": " +e.getMessage());
+        }
+    }
+    
+    /** Report how much heap the credentials workbook retains when loaded.
+     * 
+     * @param fileName workbook to measure.
+     * @param storage storage the workbook is loaded to as the service loads it. If null the whole workbook is measured sheet by sheet.
+     * @param storageDirectory directory for the memory mapped files of the off heap storage.
+     * @param persons number of persons the heap is estimated for.
+     */
+    @Command( name = "footprint", description = "Report the heap retained by the sheets, shared strings and column lookups of a loaded credentials workbook.")
+    public void footprint(
+            @Option(names = { "-f", "--file" }, paramLabel = "XLSX_FILE", description = "Workbook to measure. Defaults to the credentials.file config option.")
+            String fileName,
+            @Option(names = { "-s", "--storage" }, paramLabel = "STORAGE", description = "Measure the workbook loaded to the sheet or offHeap storage as the service loads it instead of measuring each sheet of the whole workbook.")
+            String storage,
+            @Option(names = { "--storage-directory" }, paramLabel = "DIRECTORY", description = "Directory for the memory mapped files of the offHeap storage. Direct buffers are used by default.")
+            Path storageDirectory,
+            @Option(names = { "-n", "--persons" }, defaultValue = "0", paramLabel = "COUNT", description = "Also estimate the heap needed for this many persons.")
+            long persons
+            ) {
+        var file = fileName;
+        if ( file == null ) {
+            // only the config is read since measuring does not need the rest of the credential lib.
+            var configured = new Config().get("credentials.file");
+            file = configured == null ? CredentialData.DEFAULT_FILE_NAME : configured;
+        }
+        
+        try {
+            if ( storage == null ) {
+                System.out.print( HeapFootprint.measure(Path.of(file)).report(persons));
+            }
+            
+            else {
+                System.out.print( HeapFootprint.measure(Path.of(file), WorkbookStorage.Type.fromConfig(storage), storageDirectory).report(persons));
+            }
+        }
+        
+        catch ( IllegalArgumentException e ) {
+            System.out.println( e.getMessage());
+        }
+        
+        catch ( IOException e ) {
+            System.out.println( "Unable to read workbook " +file +": " +e.getMessage());
+        }
+    }
+    
+    /** Prints the valid and invalid counts and per policy latencies of a batch verification.
+     * @param report batch verification results
+     * @param listFailed should names of invalid documents be printed.
+     */
+    private void printBatchVerificationReport( BatchVerificationReport report, boolean listFailed ) {
+        System.out.println("Valid: " +report.getValidCount());
+        System.out.println("Invalid: " +report.getInvalidCount());
+        System.out.println("Errors: " +report.getErrorCount());
+        System.out.println(String.format("Elapsed: %.3fs", report.getElapsedNanos() / 1e9 ));
+        System.out.println("Document latency: " +report.getDocumentLatency().summary());
+        for ( var policy : report.getPolicyLatencies().entrySet() ) {
+            System.out.println("Verification policy " +policy.getKey() +" failures: " +report.getPolicyFailures(policy.getKey()) +" latency: " +policy.getValue().summary());
+        }
+        
+        if ( listFailed ) {
+            for ( var name : report.getFailedDocuments() ) {
+                System.out.println("Failed: " +name);
+            }
+        }
+    }
+    
     /** Prints information about the given verification result: the overall status and status of each policy.
      * @param result Verification result whose information should be printed.
      */
@@ -158,11 +537,76 @@ public class Cli {
         }
     }
      
+    /** Run the parsed command exporting its metrics and recording it with JFR as requested with the diagnostic options.
+     * @param parseResult the parsed command line.
+     * @return exit code of the command.
+     */
+    private int executeWithDiagnostics( CommandLine.ParseResult parseResult ) {
+        var metrics = Metrics.getDefault();
+        Closeable fileExport = null;
+        HttpServer server = null;
+        Recording recording = null;
+        if ( jfrFile != null ) {
+            try {
+                recording = JfrEvents.startRecording(jfrFile);
+            }
+            
+            catch ( IOException e ) {
+                System.out.println( "Unable to record to " +jfrFile +": " +e.getMessage());
+            }
+        }
+        
+        try {
+            if ( metricsFile != null ) {
+                fileExport = metrics.exportPeriodically(metricsFile, METRICS_EXPORT_INTERVAL_MILLIS);
+            }
+            
+            if ( metricsPort != null ) {
+                server = metrics.serve(metricsPort);
+            }
+        }
+        
+        catch ( IOException e ) {
+            System.out.println( "Unable to serve metrics from port " +metricsPort +": " +e.getMessage());
+        }
+        
+        try {
+            return new CommandLine.RunLast().execute(parseResult);
+        }
+        
+        finally {
+            if ( recording != null ) {
+                // stopping writes the recording to its destination.
+                recording.stop();
+                recording.close();
+            }
+            
+            if ( server != null ) {
+                server.stop(0);
+            }
+            
+            if ( fileExport != null ) {
+                try {
+                    fileExport.close();
+                }
+                
+                catch ( IOException e ) {
+                    System.out.println( "Unable to write metrics to " +metricsFile +": " +e.getMessage());
+                }
+            }
+            
+            if ( stats ) {
+                System.out.print(metrics.report());
+            }
+        }
+    }
+     
     /** Initialise the picocli application.
      * @param args command line arguments.
      */
     public static void main(String[] args) {
-         int exitCode = new CommandLine(new Cli()).execute(args);
+         var cli = new Cli();
+         int exitCode = new CommandLine(cli).setExecutionStrategy(cli::executeWithDiagnostics).execute(args);
          System.exit(exitCode);
     }
 }
\ No newline at end of file
@@ -9,6 +9,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /** Class for reading the configuration file of this application and for accessing the configuration values.
  * 
@@ -51,6 +53,14 @@ public class Config {
         return properties.getProperty(name);
     }
     
+    /** Get the names of the configuration options that start with the given prefix.
+     * @param prefix start of the option names for example organisation.
+     * @return option names
+     */
+    public Set<String> getNames( String prefix ) {
+        return properties.stringPropertyNames().stream().filter(name -> name.startsWith(prefix)).collect(Collectors.toSet());
+    }
+    
     /** Get value for a boolean config option.
      * @param name config name
      * @return The config value. Null if not set or incorrect value.
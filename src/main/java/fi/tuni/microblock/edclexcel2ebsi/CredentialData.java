@@ -5,16 +5,13 @@
 */
 package fi.tuni.microblock.edclexcel2ebsi;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import fi.tuni.microblock.edclexcel2ebsi.DiplomaDataProvider.ExcelStructureException;
@@ -27,47 +24,66 @@ import fi.tuni.microblock.edclexcel2ebsi.DiplomaDataProvider.RequiredDataNotFoun
  */
 public class CredentialData {
 
+    /** Name of the excel file read from the working directory by default. */
+    public static final String DEFAULT_FILE_NAME = "credentials.xlsm";
+    private static final LatencyHistogram LOAD_TIMER = Metrics.getDefault().timer("workbook.load");
+    private static final LatencyHistogram FIND_CREDENTIAL_TIMER = Metrics.getDefault().timer("credential.find");
+
+    // the columns the DataTables read. Only these are loaded from the workbook.
+    static final List<TableColumns> TABLE_COLUMNS = List.of( PersonsTable.COLUMNS, CredentialsTable.COLUMNS, OrganisationsTable.COLUMNS,
+            ActivitiesTable.COLUMNS, AssessmentsTable.COLUMNS, AchievementsTable.COLUMNS, LearningOutcomesTable.COLUMNS );
+    
     // the excel data
-    protected XSSFWorkbook credentialData;
-    // the sheet and DataTable instances for the different sheets of the excel.
-    protected XSSFSheet persons;
+    protected WorkbookStorage credentialData;
+    // the DataTable instances for the different sheets of the excel.
     protected PersonsTable personsTable;
     protected CredentialsTable credentialsTable;
     protected OrganisationsTable organisationsTable;
-    protected XSSFSheet credentials;
     protected ActivitiesTable activitiesTable;
     protected AssessmentsTable assessmentsTable;
     protected AchievementsTable achievementsTable;
     protected LearningOutcomesTable outcomesTable;
+    // distinct string values of the columns used in finding rows.
+    private final StringDictionary dictionary = new StringDictionary();
     
     /** Create from the default credentials.xlsm file.
      * 
      */
     public CredentialData() {
+        this( DEFAULT_FILE_NAME );
+    }
+    
+    /** Create from the given excel file.
+     * @param fileName excel file with the EDCL sheets.
+     */
+    public CredentialData( String fileName ) {
+        this( fileName, WorkbookStorage.Type.SHEET, null );
+    }
+    
+    /** Create from the given excel file using the given storage for the sheets.
+     * @param fileName excel file with the EDCL sheets.
+     * @param storage type of storage the sheets are loaded to.
+     * @param directory directory for the memory mapped files of the off heap storage. If null direct buffers are used.
+     */
+    public CredentialData( String fileName, WorkbookStorage.Type storage, Path directory ) {
+        long start = System.nanoTime();
+        var event = new JfrEvents.WorkbookLoad();
+        event.begin();
         try {
-            var fileName = "credentials.xlsm";
-            OPCPackage pkg = OPCPackage.open(new File(fileName));
-            credentialData = new XSSFWorkbook(pkg);
+            credentialData = WorkbookStorage.open(Path.of(fileName), storage, directory, TABLE_COLUMNS);
             /*for ( var i : credentialData.getAllNames()) {
                 System.out.println(i.getNameName() +" " +i.getRefersToFormula());
             }*/
-            persons = credentialData.getSheet("Persons");
-            personsTable = new PersonsTable( credentialData, this );
-            credentials = credentialData.getSheet("Europass Credentials");
-            organisationsTable = new OrganisationsTable( credentialData, this );
-            credentialsTable = new CredentialsTable( credentialData, this );
-            activitiesTable = new ActivitiesTable( credentialData, this );
-            assessmentsTable = new AssessmentsTable( credentialData, this );
-            achievementsTable = new AchievementsTable ( credentialData, this );
-            outcomesTable = new LearningOutcomesTable ( credentialData, this );
+            createTables();
+            LOAD_TIMER.recordSince(start);
+            if ( event.shouldCommit()) {
+                event.file = fileName;
+                event.commit();
+            }
             
             /*for ( var sheet : credentialData ) {
                 System.out.println( sheet.getSheetName() );
             }*/
-        } catch (InvalidFormatException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-            System.exit(1);
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -75,6 +91,52 @@ public class CredentialData {
         }
     }
     
+    /** Create from an already opened workbook.
+     * 
+     * Used by diagnostics that need access to the workbook itself. Loading is not recorded to the metrics.
+     * @param workbook excel workbook with the EDCL sheets.
+     */
+    CredentialData( XSSFWorkbook workbook ) {
+        this( new SheetStorage(workbook));
+    }
+    
+    /** Create from an already opened workbook storage.
+     * 
+     * Used by diagnostics that measure the storage. Loading is not recorded to the metrics.
+     * @param storage storage with the EDCL sheets.
+     */
+    CredentialData( WorkbookStorage storage ) {
+        credentialData = storage;
+        createTables();
+    }
+    
+    /** Create the DataTables for the sheets of the workbook.
+     * 
+     */
+    private void createTables() {
+        personsTable = new PersonsTable( credentialData, this );
+        organisationsTable = new OrganisationsTable( credentialData, this );
+        credentialsTable = new CredentialsTable( credentialData, this );
+        activitiesTable = new ActivitiesTable( credentialData, this );
+        assessmentsTable = new AssessmentsTable( credentialData, this );
+        achievementsTable = new AchievementsTable ( credentialData, this );
+        outcomesTable = new LearningOutcomesTable ( credentialData, this );
+    }
+    
+    /** Get the dictionary of the string values of the workbook.
+     * @return the dictionary shared by the DataTables.
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+    
+    /** Get the DataTables of all sheets.
+     * @return persons, credentials, organisations, activities, assessments, achievements and learning outcomes tables.
+     */
+    public List<DataTable> getTables() {
+        return List.of( personsTable, credentialsTable, organisationsTable, activitiesTable, assessmentsTable, achievementsTable, outcomesTable );
+    }
+    
     /** From the credentials sheet get row that has the given title and is related to the persons row with given email.
      * @param expectedEmail student email
      * @param expectedTitle title of a credential
@@ -82,33 +144,126 @@ public class CredentialData {
      * @throws ExcelStructureException There is something wrong with the excel.
      * @throws RequiredDataNotFoundException No row with the given email and achievement found.
      */
-    public XSSFRow getCredential(String expectedEmail, String expectedTitle ) throws DiplomaDataProvider.ExcelStructureException, DiplomaDataProvider.RequiredDataNotFoundException {
+    public DataTable.TableRow getCredential(String expectedEmail, String expectedTitle ) throws DiplomaDataProvider.ExcelStructureException, DiplomaDataProvider.RequiredDataNotFoundException {
+        var credential = findCredential(expectedEmail, expectedTitle);
+        if ( credential.isPresent()) {
+            return credential.get();
+        }
+        
+        throw new DiplomaDataProvider.RequiredDataNotFoundException( "Credential with title " +expectedTitle + " for student with email " +expectedEmail +" not found.");
+    }
+    
+    /** From the credentials sheet find the row that has the given title and is related to the persons row with given email.
+     * 
+     * Use this instead of getCredential when the credential may be missing.
+     * @param expectedEmail student email
+     * @param expectedTitle title of a credential
+     * @return row of the credential sheet which matches the parameters or empty if there is none.
+     * @throws ExcelStructureException There is something wrong with the excel.
+     */
+    public Optional<DataTable.TableRow> findCredential(String expectedEmail, String expectedTitle ) throws DiplomaDataProvider.ExcelStructureException {
+        long start = System.nanoTime();
         var values = Map.of( CredentialsTable.TITLE_COLUMN, expectedTitle );
         var credentials =  credentialsTable.getRowsWithValues( values );
-        for ( var credential : credentials ) {
-            var person = getPerson(credential);
-            var email = personsTable.getCellValueString(person.getRowNum(), PersonsTable.EMAIL_COLUMN );
-            if ( email.equals(expectedEmail)) {
-                return credential;
+        try {
+            for ( var credential : credentials ) {
+                var person = getPerson(credential);
+                var email = personsTable.getEmail(person.getRowNum());
+                if ( email.equals(expectedEmail)) {
+                    return Optional.of(credential);
+                }
             }
+            
+            return Optional.empty();
         }
         
-        throw new DiplomaDataProvider.RequiredDataNotFoundException( "Credential with title " +expectedTitle + " for student with email " +expectedEmail +" not found.");
+        finally {
+            FIND_CREDENTIAL_TIMER.recordSince(start);
+        }
+    }
+    
+    /** Get the legal identifier of the organisation issuing the given credential of the given student.
+     * @param email student email
+     * @param title title of a credential
+     * @return legal identifier from the organisations sheet.
+     * @throws RequiredDataNotFoundException No credential with the given email and title or no organisation for the credential.
+     */
+    public String getIssuingOrganisation( String email, String title ) throws DiplomaDataProvider.ExcelStructureException, DiplomaDataProvider.RequiredDataNotFoundException {
+        return getIssuingOrganisation(getCredential(email, title));
+    }
+    
+    /** Get the legal identifier of the organisation issuing the given credential.
+     * @param credential row of the credentials sheet
+     * @return legal identifier from the organisations sheet.
+     * @throws RequiredDataNotFoundException No organisation for the credential.
+     */
+    public String getIssuingOrganisation( DataTable.TableRow credential ) throws DiplomaDataProvider.ExcelStructureException, DiplomaDataProvider.RequiredDataNotFoundException {
+        var organisation = credentialsTable.organisationLink.getLinkedRow(credential.getRowNum());
+        return organisationsTable.getLegalIdentifier(organisation.getRowNum());
+    }
+    
+    /** Find the organisation issuing the given credential of the given student recording a missing credential or organisation to the given errors.
+     * @param email student email
+     * @param title title of a credential
+     * @param errors where a missing credential or organisation is recorded with the email as the key.
+     * @return legal identifier from the organisations sheet or empty if the credential or organisation was not found.
+     * @throws ExcelStructureException There is something wrong with the excel.
+     */
+    public Optional<String> findIssuingOrganisation( String email, String title, BatchErrors errors ) throws DiplomaDataProvider.ExcelStructureException {
+        var credential = findCredential(email, title, errors);
+        if ( credential.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        return findIssuingOrganisation(email, credential.get(), errors);
+    }
+    
+    /** Find the given credential of the given student recording a missing credential to the given errors.
+     * @param email student email
+     * @param title title of a credential
+     * @param errors where a missing credential is recorded with the email as the key.
+     * @return row of the credentials sheet or empty if there is none.
+     * @throws ExcelStructureException There is something wrong with the excel.
+     */
+    public Optional<DataTable.TableRow> findCredential( String email, String title, BatchErrors errors ) throws DiplomaDataProvider.ExcelStructureException {
+        var credential = findCredential(email, title);
+        if ( credential.isEmpty()) {
+            errors.add(email, BatchErrors.CREDENTIAL_NOT_FOUND);
+        }
+        
+        return credential;
+    }
+    
+    /** Find the organisation issuing the given credential recording a missing organisation to the given errors.
+     * @param email email of the student the credential belongs to.
+     * @param credential row of the credentials sheet
+     * @param errors where a missing organisation is recorded with the email as the key.
+     * @return legal identifier from the organisations sheet or empty if the organisation was not found.
+     * @throws ExcelStructureException There is something wrong with the excel.
+     */
+    public Optional<String> findIssuingOrganisation( String email, DataTable.TableRow credential, BatchErrors errors ) throws DiplomaDataProvider.ExcelStructureException {
+        var organisation = credentialsTable.organisationLink.findLinkedRow(credential.getRowNum());
+        if ( organisation.isEmpty()) {
+            errors.add(email, BatchErrors.ORGANISATION_NOT_FOUND);
+            return Optional.empty();
+        }
+        
+        return Optional.of( organisationsTable.getLegalIdentifier(organisation.get().getRowNum()));
     }
     
     /** Get the persons sheet row that corresponds to the given credentials row.
      * @param credential Row of the credentials sheet
      * @return Corresponding row of the credentials sheet.
      */
-    public XSSFRow getPerson(XSSFRow credential) {
-        return personsTable.getSheet().getRow(credential.getRowNum());
+    public DataTable.TableRow getPerson(DataTable.TableRow credential) {
+        return new DataTable.TableRow(personsTable, credential.getRowNum());
     }
     
     public List<String> listCredentialsForStudent( String email ) {
         var credentials = new ArrayList<String>();
         for ( int row = personsTable.getHeaderRowNum() +1; row <= personsTable.getLastRowNum(); row++ ) {
-            if ( email.equals( personsTable.getCellValueString(row, PersonsTable.EMAIL_COLUMN))) {
-                var title = credentialsTable.getCellValueString(row, CredentialsTable.TITLE_COLUMN);
+            if ( email.equals( personsTable.getEmail(row))) {
+                var title = credentialsTable.getTitle(row);
                 credentials.add( title );
             }
         }
@@ -121,13 +276,6 @@ public class CredentialData {
      * @return true if data is found, false if not.
      */
     public boolean studentExists( String email ) {
-        try {
-            personsTable.getRowForPerson(email);
-            return true;
-        }
-        
-        catch ( DiplomaDataProvider.RequiredDataNotFoundException e ) {
-            return false;
-        }
+        return personsTable.findRowForPerson(email).isPresent();
     }
 }
\ No newline at end of file
@@ -12,13 +12,19 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import id.walt.auditor.Auditor;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 import id.walt.auditor.JsonSchemaPolicy;
 import id.walt.auditor.TrustedIssuerRegistryPolicy;
 import id.walt.auditor.SignaturePolicy;
-import id.walt.auditor.TrustedIssuerDidPolicy;
-import id.walt.auditor.TrustedSubjectDidPolicy;
+import id.walt.auditor.VerificationPolicy;
 import id.walt.auditor.VerificationResult;
 import id.walt.crypto.KeyId;
 import id.walt.custodian.Custodian;
@@ -30,7 +36,7 @@ import id.walt.services.did.DidService;
 import id.walt.services.key.KeyService;
 import id.walt.signatory.ProofConfig;
 import id.walt.signatory.ProofType;
-import id.walt.signatory.Signatory;
+import id.walt.vclib.model.VerifiableCredential;
 
 /** Class for creating, presenting and verifying credentials based on EDCL excel data. 
  * @author Otto Hylli
@@ -40,8 +46,34 @@ public class CredentialLib {
 
     String holderDid;
     String issuerDid;
+    // timers and counters of the credential operations.
+    private static final LatencyHistogram ISSUE_DIPLOMA_TIMER = Metrics.getDefault().timer("issue.diploma");
+    private static final LatencyHistogram ISSUE_ID_TIMER = Metrics.getDefault().timer("issue.id");
+    private static final LatencyHistogram PRESENTATION_TIMER = Metrics.getDefault().timer("presentation.create");
+    private static final LatencyHistogram VERIFY_TIMER = Metrics.getDefault().timer("verify");
+    private static final LatencyHistogram OUTPUT_WRITE_TIMER = Metrics.getDefault().timer("output.write");
+    private static final LatencyHistogram OUTPUT_COMMIT_TIMER = Metrics.getDefault().timer("output.commit");
+    private static final LatencyHistogram FILE_WRITE_TIMER = Metrics.getDefault().timer("file.write");
+    private static final LongAdder ISSUED_COUNTER = Metrics.getDefault().counter("credentials.issued");
+    private static final LongAdder FAILED_COUNTER = Metrics.getDefault().counter("credentials.failed");
+    // diplomas submitted for signing at a time per signer thread when issuing to a sink.
+    private static final int IN_FLIGHT_PER_THREAD = 4;
     private Config config;
     private CredentialData credentialData;
+    // name of the excel file the credential data is read from.
+    private String credentialsFileName;
+    // proof type used when the caller does not give one.
+    private ProofType proofType;
+    // cache for resolved did documents used in importing dids and in verification.
+    private DidCache didCache;
+    // runs verification policies for the non default verification modes and learns their costs.
+    private VerificationPolicyRunner policyRunner;
+    // issuer did and signer of each issuing organisation.
+    private IssuerRegistry issuers;
+    // holder dids of students when each student has an own holder did. Null if the configured holder did is used for everyone.
+    private DidPool didPool;
+    // generates the ids of issued credentials.
+    private IdGenerator idGenerator;
     
     /** Create CredentialLib from the default config file location.
      * 
@@ -62,7 +94,50 @@ public class CredentialLib {
             new ServiceMatrix("service-matrix.properties");
         }
         
-        credentialData = new CredentialData();
+        try {
+            JsonLdContextCache.fromConfig(config).install();
+        }
+        
+        catch (IOException | IllegalStateException e) {
+            System.out.println( "Unable to read JSON-LD contexts: " +e.getMessage());
+            System.exit(1);
+        }
+        
+        var credentialsFile = config.get("credentials.file");
+        credentialsFileName = credentialsFile == null ? CredentialData.DEFAULT_FILE_NAME : credentialsFile;
+        WorkbookStorage.Type storage = null;
+        try {
+            storage = WorkbookStorage.Type.fromConfig(config.get("storage"));
+        }
+        
+        catch ( IllegalArgumentException e ) {
+            System.out.println( e.getMessage());
+            System.exit(1);
+        }
+        
+        var storageDirectory = config.get("storage.directory");
+        credentialData = new CredentialData( credentialsFileName, storage, storageDirectory == null ? null : Path.of(storageDirectory));
+        didCache = DidCache.fromConfig(config);
+        policyRunner = new VerificationPolicyRunner(getVerificationPolicies());
+        var proofTypeName = config.get("proofType");
+        try {
+            proofType = proofTypeName == null ? ProofType.LD_PROOF : ProofType.valueOf(proofTypeName);
+        }
+        
+        catch ( IllegalArgumentException e ) {
+            System.out.println("Unknown proof type " +proofTypeName +". Use LD_PROOF or JWT.");
+            System.exit(1);
+        }
+        
+        try {
+            idGenerator = IdGenerator.fromConfig(config);
+        }
+        
+        catch ( IllegalArgumentException e ) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        
         issuerDid = config.get("issuer.did");
         var createDids = config.is( "generateMissingDids" );
         if ( issuerDid == null ) {
@@ -88,6 +163,8 @@ public class CredentialLib {
             }
         }
         
+        var signerThreads = config.get("signer.threads");
+        issuers = IssuerRegistry.fromConfig( config, issuerDid, holderDid, signerThreads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(signerThreads));
         try {
             var issuerKeyFile = config.get("issuer.keyFile");
             if ( issuerKeyFile != null ) {
@@ -98,14 +175,27 @@ public class CredentialLib {
             if ( holderKeyFile != null ) {
                 importDid( holderDid, readStringFromFile( holderKeyFile ));
             }
+            
+            for ( var organisationIssuer : issuers.getKeyFiles().entrySet()) {
+                importDid( organisationIssuer.getKey(), readStringFromFile( organisationIssuer.getValue()));
+            }
         } catch (IOException e) {
             // TODO Auto-generated catch block
             System.out.println( "Unable to read key file: " +e.getMessage());
             System.exit(1);
         }
+        
+        // load the default issuer key before the first credential.
+        issuers.getSigner(issuerDid);
+        if ( Boolean.TRUE.equals(config.is("holder.perPerson"))) {
+            didPool = DidPool.fromConfig(config);
+            didPool.start();
+        }
     }
 
     /** Create diploma for student with given email who has the given achievement.
+     * 
+     * Uses the proof type set in the config.
      * @param email Email address of a student that should be in the excel file.
      * @param title Title of credential  that a student in the excel has.
      * @return The verifiable diploma created from the source data.
@@ -113,42 +203,370 @@ public class CredentialLib {
      * @throws DiplomaDataProvider.ExcelStructureException The structure of the excel file was not what was expected for example there is no column for student email address.
      */
     public String createDiploma( String email, String title ) throws DiplomaDataProvider.RequiredDataNotFoundException, DiplomaDataProvider.ExcelStructureException {
-        var signatory = Signatory.Companion.getService();
+        return createDiploma( email, title, proofType );
+    }
+    
+    /** Create diploma for student with given email who has the given achievement using the given proof type.
+     * 
+     * The diploma is issued by the issuer of the organisation the credential is linked to in the excel.
+     * @param email Email address of a student that should be in the excel file.
+     * @param title Title of credential  that a student in the excel has.
+     * @param proofType LD_PROOF for a JSON-LD signature or JWT for a JWT credential.
+     * @return The verifiable diploma created from the source data.
+     * @throws DiplomaDataProvider.RequiredDataNotFoundException Some required data was not found for example there is no student with given email.
+     * @throws DiplomaDataProvider.ExcelStructureException The structure of the excel file was not what was expected for example there is no column for student email address.
+     */
+    public String createDiploma( String email, String title, ProofType proofType ) throws DiplomaDataProvider.RequiredDataNotFoundException, DiplomaDataProvider.ExcelStructureException {
+        long start = System.nanoTime();
+        DataTable.TableRow credential;
+        String organisation;
+        // the excel data is not thread safe.
+        synchronized ( credentialData ) {
+            credential = credentialData.getCredential(email, title);
+            organisation = credentialData.getIssuingOrganisation(credential);
+        }
         
-        var proofConfig = new ProofConfig(issuerDid, holderDid, null, null, ProofType.LD_PROOF, null, null, null, null, null, null, null, null );
-        var diploma = signatory.issue("Europass", proofConfig, createDataProvider( email, title ));
+        var signer = issuers.getSignerForOrganisation(organisation);
+        var proofConfig = signer.getProofConfig( proofType, getHolderDid(email));
+        var diploma = signer.sign( populateDiploma( email, title, credential, proofConfig ), proofConfig );
+        ISSUE_DIPLOMA_TIMER.recordSince(start);
+        ISSUED_COUNTER.increment();
         return diploma;
     }
     
+    /** Create diplomas for the given achievement for all the given students concurrently.
+     * 
+     * The students are partitioned by the issuer of their credential. The credentials are populated one at a time from the excel data
+     * and each partition is signed in parallel with the others by the signer pool of its issuer whose size is set with the signer.threads config option.
+     * With per person holder dids the students without a holder did are assigned one from the did pool before signing.
+     * @param emails Email addresses of students that should be in the excel file.
+     * @param title Title of credential the students have.
+     * @param proofType LD_PROOF for a JSON-LD signature or JWT for a JWT credential.
+     * @return The diploma of each student in the order of the given emails. A diploma completes exceptionally if it could not be created for example if the student has no such credential.
+     */
+    public Map<String, CompletableFuture<String>> createDiplomas( List<String> emails, String title, ProofType proofType ) {
+        var errors = new BatchErrors();
+        var created = createDiplomas( emails, title, proofType, errors );
+        Map<String, CompletableFuture<String>> diplomas = new LinkedHashMap<>();
+        for ( var email : emails ) {
+            var diploma = created.get(email);
+            if ( diploma == null ) {
+                var error = errors.get(email).orElseThrow();
+                diploma = CompletableFuture.failedFuture( error.cause() != null ? error.cause() : new DiplomaDataProvider.RequiredDataNotFoundException( "Diploma " +title +" for " +email +": " +error.reason()));
+            }
+            
+            diplomas.put(email, diploma);
+        }
+        
+        return diplomas;
+    }
+    
+    /** Create diplomas for the given achievement for all the given students concurrently recording students whose diploma cannot be created to the given errors.
+     * 
+     * Works like createDiplomas but a student without the credential or its organisation in the excel or whose organisation has no issuer is only recorded to the errors without creating an exception.
+     * @param emails Email addresses of students that should be in the excel file.
+     * @param title Title of credential the students have.
+     * @param proofType LD_PROOF for a JSON-LD signature or JWT for a JWT credential.
+     * @param errors where students whose diploma cannot be created are recorded by email.
+     * @return The diploma of each student found from the excel in the order of the given emails. A diploma completes exceptionally if signing it fails.
+     */
+    public Map<String, CompletableFuture<String>> createDiplomas( List<String> emails, String title, ProofType proofType, BatchErrors errors ) {
+        Map<String, CompletableFuture<String>> diplomas = new LinkedHashMap<>();
+        Map<SignerPool, List<String>> partitions = new LinkedHashMap<>();
+        // credentials sheet row of each found student so that it is not looked up again when populating the diploma.
+        Map<String, DataTable.TableRow> found = new LinkedHashMap<>();
+        for ( var email : emails ) {
+            Optional<DataTable.TableRow> credential;
+            Optional<String> organisation = Optional.empty();
+            // the excel data is not thread safe.
+            synchronized ( credentialData ) {
+                credential = credentialData.findCredential(email, title, errors);
+                if ( credential.isPresent()) {
+                    organisation = credentialData.findIssuingOrganisation(email, credential.get(), errors);
+                }
+            }
+            
+            if ( organisation.isEmpty()) {
+                continue;
+            }
+            
+            var issuerDid = issuers.findIssuerDid(organisation.get());
+            if ( issuerDid.isEmpty()) {
+                errors.add(email, BatchErrors.ISSUER_NOT_FOUND);
+                continue;
+            }
+            
+            // reserve the place of the email so that the result is in the given order.
+            diplomas.put(email, null);
+            found.put(email, credential.get());
+            try {
+                partitions.computeIfAbsent(issuers.getSigner(issuerDid.get()), signer -> new ArrayList<>()).add(email);
+            }
+            
+            catch ( RuntimeException e ) {
+                diplomas.put(email, CompletableFuture.failedFuture(e));
+            }
+        }
+        
+        var holderDids = didPool == null ? Map.<String, String>of() : didPool.assignAll(List.copyOf(found.keySet()));
+        for ( var partition : partitions.entrySet()) {
+            var signer = partition.getKey();
+            for ( var email : partition.getValue()) {
+                var proofConfig = signer.getProofConfig( proofType, holderDids.get(email));
+                var credential = found.get(email);
+                diplomas.put(email, signer.submit(() -> populateDiploma( email, title, credential, proofConfig ), proofConfig ));
+            }
+        }
+        
+        return diplomas;
+    }
+    
+    /** Create diplomas for the given achievement for all the given students and write them to the given sink.
+     * 
+     * The diplomas are created concurrently as in createDiplomas and written in the order of the given emails.
+     * At most a few diplomas per signer thread are kept in memory at a time so that the memory use does not grow with the number of students.
+     * @param emails Email addresses of students that should be in the excel file.
+     * @param title Title of credential the students have.
+     * @param proofType LD_PROOF for a JSON-LD signature or JWT for a JWT credential.
+     * @param sink where the diplomas are written to. Flushed after the last diploma.
+     * @return the error of each student whose diploma could not be created by email. Empty if all diplomas were created.
+     * @throws IOException writing to the sink failed.
+     */
+    public BatchErrors issueDiplomas( List<String> emails, String title, ProofType proofType, CredentialSink sink ) throws IOException {
+        return issueDiplomas( emails, title, proofType, sink, null );
+    }
+    
+    /** Create diplomas for the students not yet in the given checkpoint journal and write them to the given sink.
+     * 
+     * Students whose diploma is already in the journal are skipped so that an interrupted run can be resumed without issuing their diplomas again.
+     * Each written diploma is added to the journal. When a group commit of the journal is due the sink is flushed first and then the journal is committed.
+     * @param emails Email addresses of students that should be in the excel file.
+     * @param title Title of credential the students have.
+     * @param proofType LD_PROOF for a JSON-LD signature or JWT for a JWT credential.
+     * @param sink where the diplomas are written to. Flushed after the last diploma.
+     * @param journal completed rows of the batch. Can be null in which case all diplomas are issued.
+     * @return the error of each student whose diploma could not be created by email. Empty if all diplomas were created.
+     * @throws IOException writing to the sink or the journal failed.
+     */
+    public BatchErrors issueDiplomas( List<String> emails, String title, ProofType proofType, CredentialSink sink, CheckpointJournal journal ) throws IOException {
+        var remaining = journal == null ? emails : emails.stream().filter( email -> !journal.isCompleted(email, title)).collect(Collectors.toList());
+        var errors = new BatchErrors();
+        // the diplomas are submitted a window at a time and the next window is signed while the previous one is written.
+        int window = issuers.getThreads() * IN_FLIGHT_PER_THREAD;
+        Map<String, CompletableFuture<String>> previous = new LinkedHashMap<>();
+        for ( int from = 0; from < remaining.size(); from += window ) {
+            var current = createDiplomas( remaining.subList(from, Math.min(from +window, remaining.size())), title, proofType, errors );
+            writeDiplomas( previous, title, sink, journal, errors );
+            previous = current;
+        }
+        
+        writeDiplomas( previous, title, sink, journal, errors );
+        long start = System.nanoTime();
+        sink.flush();
+        if ( journal != null ) {
+            journal.commit();
+        }
+        
+        OUTPUT_COMMIT_TIMER.recordSince(start);
+        FAILED_COUNTER.add(errors.size());
+        return errors;
+    }
+
+    /** Write the given diplomas to the sink and the journal in order as they complete.
+     * 
+     * Each diploma is removed from the given map after it has been written so that only the diplomas still being signed are kept.
+     * @param diplomas diplomas by email. Emptied.
+     * @param title Title of the credential.
+     * @param sink where the diplomas are written to.
+     * @param journal completed rows of the batch. Can be null.
+     * @param errors where students whose diploma could not be signed are recorded.
+     * @throws IOException writing to the sink or the journal failed.
+     */
+    private void writeDiplomas( Map<String, CompletableFuture<String>> diplomas, String title, CredentialSink sink, CheckpointJournal journal, BatchErrors errors ) throws IOException {
+        for ( var iterator = diplomas.entrySet().iterator(); iterator.hasNext(); ) {
+            var diploma = iterator.next();
+            iterator.remove();
+            String credential;
+            try {
+                credential = diploma.getValue().join();
+            }
+            
+            catch ( CompletionException e ) {
+                errors.add(diploma.getKey(), e.getCause());
+                continue;
+            }
+            
+            ISSUED_COUNTER.increment();
+            var credentialId = getCredentialId(credential);
+            long start = System.nanoTime();
+            sink.write( credentialId, diploma.getKey(), title, credential );
+            OUTPUT_WRITE_TIMER.recordSince(start);
+            if ( journal != null ) {
+                journal.add( diploma.getKey(), title, credentialId );
+                if ( journal.isCommitDue()) {
+                    start = System.nanoTime();
+                    sink.flush();
+                    journal.commit();
+                    OUTPUT_COMMIT_TIMER.recordSince(start);
+                }
+            }
+        }
+    }
+    
+    /** Create student id for student with given email.
+     * 
+     * Uses the proof type set in the config.
+     * @param email Email address of a student that should be in the excel file.
+     * @return The verifiable id created from the source data.
+     * @throws DiplomaDataProvider.RequiredDataNotFoundException No student with the given email.
+     * @throws DiplomaDataProvider.ExcelStructureException The structure of the excel file was not what was expected.
+     */
     public String createId( String email) throws DiplomaDataProvider.RequiredDataNotFoundException, DiplomaDataProvider.ExcelStructureException {
-        var signatory = Signatory.Companion.getService();
+        return createId( email, proofType );
+    }
+    
+    /** Create student id for student with given email using the given proof type.
+     * @param email Email address of a student that should be in the excel file.
+     * @param proofType LD_PROOF for a JSON-LD signature or JWT for a JWT credential.
+     * @return The verifiable id created from the source data.
+     * @throws DiplomaDataProvider.RequiredDataNotFoundException No student with the given email.
+     * @throws DiplomaDataProvider.ExcelStructureException The structure of the excel file was not what was expected.
+     */
+    public String createId( String email, ProofType proofType ) throws DiplomaDataProvider.RequiredDataNotFoundException, DiplomaDataProvider.ExcelStructureException {
+        long start = System.nanoTime();
+        var signer = issuers.getSigner(issuerDid);
+        var proofConfig = signer.getProofConfig( proofType, getHolderDid(email));
+        VerifiableCredential id;
+        // the excel data is not thread safe.
+        synchronized ( credentialData ) {
+            id = createDataProvider( email, null ).populate(CredentialTemplates.newVerifiableId(), proofConfig);
+        }
+        
+        var signed = signer.sign( id, proofConfig );
+        ISSUE_ID_TIMER.recordSince(start);
+        return signed;
+    }
+    
+    /** Populate a diploma from the excel data.
+     * 
+     * The credential is created from a cached template instead of letting the signatory load the template for every credential.
+     * @param email Email address of a student.
+     * @param title Title of credential the student has.
+     * @param credential credentials sheet row of the student and title.
+     * @param proofConfig proof config the diploma will be signed with.
+     * @return populated unsigned diploma.
+     */
+    private VerifiableCredential populateDiploma( String email, String title, DataTable.TableRow credential, ProofConfig proofConfig ) {
+        // the excel data is not thread safe.
+        synchronized ( credentialData ) {
+            return new DiplomaDataProvider( credentialData, email, title, credential, idGenerator ).populate(CredentialTemplates.newEuropass(), proofConfig);
+        }
+    }
+    
+    /** Get the holder did credentials for the given student are issued to.
+     * 
+     * With the holder.perPerson option each student is assigned an own did from the did pool. Otherwise the configured holder did is used.
+     * @param email student email address.
+     * @return holder did
+     */
+    public String getHolderDid( String email ) {
+        return didPool == null ? holderDid : didPool.getHolderDid(email);
+    }
+    
+    /** Assign holder dids to the given students ahead of issuing their credentials.
+     * @param emails student email addresses.
+     * @return holder did of each student in the given order.
+     * @throws IllegalStateException holder dids are not per person.
+     */
+    public Map<String, String> assignHolderDids( List<String> emails ) {
+        if ( didPool == null ) {
+            throw new IllegalStateException("Holder dids are not per person. Set holder.perPerson to true.");
+        }
         
-        var proofConfig = new ProofConfig(issuerDid, holderDid, null, null, ProofType.LD_PROOF, null, null, null, null, null, null, null, null );
-        var id = signatory.issue("VerifiableId", proofConfig, createDataProvider( email, null ));
-        return id;
+        return didPool.assignAll(emails);
     }
 
     /** Create a presentation of the given diploma credential.
      * 
      * Requires that holder did and key have been given in config.
-     * @param diploma The verifiable diploma json.
+     * The presentation has the same proof type as the credentials: a JWT presentation for JWT credentials and a JSON-LD presentation for LD proof credentials.
+     * @param credentials The verifiable credentials to present. All must have the same proof type.
      * @return The verifiable presentation of the diploma.
      */
     public String createPresentation( List<String> credentials) {
+        return createPresentation( credentials, holderDid );
+    }
+    
+    /** Create a presentation of the given credentials by the given holder.
+     * 
+     * Used with per person holder dids whose keys are in the key store.
+     * @param credentials The verifiable credentials to present. All must have the same proof type.
+     * @param holderDid did of the holder presenting the credentials.
+     * @return The verifiable presentation.
+     */
+    public String createPresentation( List<String> credentials, String holderDid ) {
+        var jwtCount = credentials.stream().filter(CredentialLib::isJwt).count();
+        if ( jwtCount != 0 && jwtCount != credentials.size()) {
+            throw new IllegalArgumentException("Cannot present JWT and LD proof credentials in the same presentation.");
+        }
+        
+        long start = System.nanoTime();
+        var event = new JfrEvents.PresentationCreate();
+        event.begin();
         var custodian = Custodian.Companion.getService();
         var diplomaVp = custodian.createPresentation(credentials, holderDid, null, null, null, null);
+        PRESENTATION_TIMER.recordSince(start);
+        if ( event.shouldCommit()) {
+            event.holder = holderDid;
+            event.credentials = credentials.size();
+            event.commit();
+        }
+
         return diplomaVp;
     }
     
+    /** Get the id of the given credential.
+     * @param credential credential as JSON or JWT.
+     * @return the id
+     */
+    public static String getCredentialId( String credential ) {
+        return VerifiableCredential.Companion.fromString(credential).getId();
+    }
+    
+    /** Check if the given credential or presentation is a JWT.
+     * @param credential credential or presentation.
+     * @return true if it is a JWT, false if it is JSON.
+     */
+    public static boolean isJwt( String credential ) {
+        var trimmed = credential.strip();
+        return !trimmed.startsWith("{") && trimmed.chars().filter(c -> c == '.').count() == 2;
+    }
+    
+    /** Get the name of the excel file the credential data is read from.
+     * @return file from the credentials.file config option or credentials.xlsm by default.
+     */
+    public String getCredentialsFileName() {
+        return credentialsFileName;
+    }
+    
+    /** Get the proof type used when no proof type is given.
+     * @return proof type from the config or LD_PROOF by default.
+     */
+    public ProofType getProofType() {
+        return proofType;
+    }
+    
     /** Import the given did and private key to be used with it.
      * @param didStr The ebsi did to be imported.
      * @param keyStr The key in the jwk format.
      */
     void importDid(String didStr, String keyStr) {
-        var ebsiDid = (DidEbsi)DidService.INSTANCE.loadOrResolveAnyDid(didStr);
-        if ( ebsiDid == null ) {
+        var did = didCache.resolve(didStr);
+        if ( !(did instanceof DidEbsi) ) {
             throw new IllegalArgumentException("could not resolve did.");
         }
+        
+        var ebsiDid = (DidEbsi)did;
     
         var keyId = new KeyId(ebsiDid.getVerificationMethod().get(0).getPublicKeyJwk().getKid());
         
@@ -191,10 +609,86 @@ public class CredentialLib {
      */
     public VerificationResult verifyDiploma(String diplomaVp) {
         //var result = Auditor.Companion.getService().verify(diplomaVp, List.of(new TrustedIssuerDidPolicy(), new TrustedSubjectDidPolicy(), new SignaturePolicy(), new JsonSchemaPolicy(), new TrustedIssuerRegistryPolicy() ));
-        var result = Auditor.Companion.getService().verify(diplomaVp, List.of(new TrustedIssuerDidPolicy(), new TrustedSubjectDidPolicy(), new SignaturePolicy() ));
+        return verifyDiploma(diplomaVp, VerificationMode.FULL);
+    }
+    
+    /** Verify the given diploma or presentation using the given mode.
+     * 
+     * In fail fast mode policies are run cheapest first and verification stops at the first failed policy.
+     * In concurrent mode the policies are run in parallel. 
+     * @param diplomaVp The credential to verify.
+     * @param mode how the verification policies are run.
+     * @return Verification result. In fail fast and concurrent modes contains only the policies that were completed.
+     */
+    public VerificationResult verifyDiploma(String diplomaVp, VerificationMode mode) {
+        long start = System.nanoTime();
+        var credential = VerifiableCredential.Companion.fromString(diplomaVp);
+        var result = policyRunner.verify(credential, mode, null);
+        VERIFY_TIMER.recordSince(start);
         return result;
     }
     
+    /** Check if the given diploma or presentation is valid stopping at the first failed policy.
+     * @param diplomaVp The credential to verify.
+     * @return true if valid.
+     */
+    public boolean isValid(String diplomaVp) {
+        return verifyDiploma(diplomaVp, VerificationMode.FAIL_FAST).getValid();
+    }
+    
+    /** Verify all credentials and presentations in the given directory or zip archive in parallel.
+     * 
+     * Uses the same policies as verifyDiploma.
+     * @param source directory or zip file containing the documents to verify.
+     * @param threads number of worker threads.
+     * @return valid and invalid counts and latencies of each verification policy.
+     * @throws IOException source could not be read.
+     */
+    public BatchVerificationReport verifyBatch( Path source, int threads ) throws IOException {
+        return verifyBatch( source, threads, VerificationMode.FULL );
+    }
+    
+    /** Verify all credentials and presentations in the given directory or archive in parallel using the given verification mode.
+     * @param source directory, zip file or gzip compressed NDJSON file containing the documents to verify.
+     * @param threads number of worker threads.
+     * @param mode how the policies are run for each document.
+     * @return valid and invalid counts and latencies of each verification policy.
+     * @throws IOException source could not be read.
+     */
+    public BatchVerificationReport verifyBatch( Path source, int threads, VerificationMode mode ) throws IOException {
+        return new BatchVerifier( policyRunner, mode, threads ).verify(source);
+    }
+    
+    /** Get the verification policies credentials and presentations are verified with.
+     * 
+     * The trusted did policies resolve dids through the did cache.
+     * @return trusted did policy for issuer and subject and signature policy.
+     */
+    public List<VerificationPolicy> getVerificationPolicies() {
+        return List.of(didCache.createTrustedIssuerDidPolicy(), didCache.createTrustedSubjectDidPolicy(), new SignaturePolicy() );
+    }
+    
+    /** Get the pool used for signing credentials of the default issuer.
+     * @return signer pool
+     */
+    public SignerPool getSignerPool() {
+        return issuers.getSigner(issuerDid);
+    }
+    
+    /** Get the issuer dids and signers of the issuing organisations.
+     * @return issuer registry
+     */
+    public IssuerRegistry getIssuers() {
+        return issuers;
+    }
+    
+    /** Get the cache used for resolving dids.
+     * @return did cache
+     */
+    public DidCache getDidCache() {
+        return didCache;
+    }
+    
     public List<String> listCredentialsForStudent( String email ) {
         return credentialData.listCredentialsForStudent(email);
     }
@@ -213,7 +707,7 @@ public class CredentialLib {
      * @return diploma data provider for the given parameters.
      */
     public DiplomaDataProvider createDataProvider( String email, String title ) {
-        return new DiplomaDataProvider( credentialData, email, title );
+        return new DiplomaDataProvider( credentialData, email, title, idGenerator );
     }
     
     /** Get the did of configured issuer.
@@ -229,9 +723,12 @@ public class CredentialLib {
      * @throws IOException Issue in writing to the file.
      */
     public static void writeToFile( String fileName, String content ) throws IOException {
+        long start = System.nanoTime();
         try ( BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, StandardCharsets.UTF_8))) {
             writer.write(content);
         }
+        
+        FILE_WRITE_TIMER.recordSince(start);
     }
     
     /** Helper utility method for reading contents of a file to a string.
@@ -0,0 +1,249 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/** Append only index of issued credentials kept in memory for lookups.
+ *
+ * Each line of the manifest file has the tab separated credential id, student email, credential title, file of the credential relative to the output directory
+ * and SHA-256 hash of the file contents. Tabs, line breaks and backslashes in the values are escaped with a backslash.
+ * The manifest is read to memory when opened so that a credential can be found by its id or by student and title without listing directories.
+ * A partially written last line left by an interrupted run is ignored.
+ * @author Otto Hylli
+ *
+ */
+public class CredentialManifest implements Closeable {
+
+    public static final String FILE_NAME = "manifest.tsv";
+    // size of the write buffer.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // entries by credential id.
+    private final Map<String, Entry> entries = new HashMap<>();
+    // credential id by student email and credential title.
+    private final Map<String, String> idsByStudent = new HashMap<>();
+
+    /** Open the manifest in the given directory creating it if needed.
+     * @param directory output directory of the credentials.
+     * @throws IOException manifest could not be read or opened.
+     */
+    public CredentialManifest( Path directory ) throws IOException {
+        var file = directory.resolve(FILE_NAME);
+        long validLength = 0;
+        if ( Files.exists(file)) {
+            validLength = load(file);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // drop a partial last line so that new entries start on their own line.
+        channel.truncate(validLength);
+        channel.position(validLength);
+    }
+
+    /** Add an entry to the manifest.
+     *
+     * The entry is in memory at once and in the file after the next flush.
+     * @param entry the entry
+     * @throws IOException writing failed.
+     */
+    public synchronized void add( Entry entry ) throws IOException {
+        var line = toLine(entry).getBytes(StandardCharsets.UTF_8);
+        if ( line.length > buffer.remaining()) {
+            writeBuffer();
+        }
+
+        if ( line.length > buffer.capacity()) {
+            channel.write(ByteBuffer.wrap(line));
+        }
+
+        else {
+            buffer.put(line);
+        }
+
+        index(entry);
+    }
+
+    /** Remove the entries whose credential is not accepted by the given filter from the manifest in the given directory.
+     *
+     * The manifest is rewritten with the remaining entries in their original order. Used when resuming an interrupted run to drop the credentials
+     * written after the last commit of the checkpoint journal.
+     * @param directory output directory of the credentials.
+     * @param keep decides by credential id which entries are kept.
+     * @return the kept entries. Empty if there is no manifest.
+     * @throws IOException manifest could not be read or written.
+     */
+    public static List<Entry> retain( Path directory, Predicate<String> keep ) throws IOException {
+        var file = directory.resolve(FILE_NAME);
+        List<Entry> kept = new ArrayList<>();
+        if ( !Files.exists(file)) {
+            return kept;
+        }
+
+        read( file, entry -> {
+            if ( keep.test(entry.credentialId())) {
+                kept.add(entry);
+            }
+        });
+
+        var temp = directory.resolve(FILE_NAME +".tmp");
+        try ( var writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for ( var entry : kept ) {
+                writer.write(toLine(entry));
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return kept;
+    }
+
+    /** Find a credential by its id.
+     * @param credentialId id of the credential.
+     * @return the entry if the credential is in the manifest.
+     */
+    public synchronized Optional<Entry> find( String credentialId ) {
+        return Optional.ofNullable(entries.get(credentialId));
+    }
+
+    /** Find the latest credential with the given title issued to the given student.
+     * @param email student email address.
+     * @param title title of the credential.
+     * @return the entry if such a credential is in the manifest.
+     */
+    public synchronized Optional<Entry> find( String email, String title ) {
+        var id = idsByStudent.get(studentKey(email, title));
+        return id == null ? Optional.empty() : find(id);
+    }
+
+    /** Get the number of credentials in the manifest.
+     * @return entry count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Write buffered entries to the file and force them to the disk.
+     * @throws IOException writing failed.
+     */
+    public synchronized void flush() throws IOException {
+        writeBuffer();
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        }
+
+        finally {
+            channel.close();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while ( buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    private void index( Entry entry ) {
+        entries.put(entry.credentialId(), entry);
+        idsByStudent.put(studentKey(entry.email(), entry.title()), entry.credentialId());
+    }
+
+    private long load( Path file ) throws IOException {
+        return read( file, this::index );
+    }
+
+    /** Read the entries of the given manifest file in order.
+     * @param file manifest file
+     * @param consumer receives the entries.
+     * @return length of the complete lines in bytes.
+     * @throws IOException reading failed.
+     */
+    private static long read( Path file, Consumer<Entry> consumer ) throws IOException {
+        var content = Files.readAllBytes(file);
+        int start = 0;
+        for ( int i = 0; i < content.length; i++ ) {
+            if ( content[i] != '\n' ) {
+                continue;
+            }
+
+            var fields = new String(content, start, i -start, StandardCharsets.UTF_8).split("\t", -1);
+            if ( fields.length == 5 ) {
+                consumer.accept( new Entry( unescape(fields[0]), unescape(fields[1]), unescape(fields[2]), unescape(fields[3]), fields[4] ));
+            }
+
+            start = i +1;
+        }
+
+        return start;
+    }
+
+    private static String toLine( Entry entry ) {
+        return escape(entry.credentialId()) +'\t' +escape(entry.email()) +'\t' +escape(entry.title()) +'\t' +escape(entry.file()) +'\t' +entry.sha256() +'\n';
+    }
+
+    private static String studentKey( String email, String title ) {
+        return email +'\t' +title;
+    }
+
+    static String escape( String value ) {
+        if ( value == null ) {
+            return "";
+        }
+
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape( String value ) {
+        var result = new StringBuilder(value.length());
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt(i);
+            if ( c == '\\' && i +1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append( next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next );
+            }
+
+            else {
+                result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+
+    /** An issued credential in the manifest.
+     * @param credentialId id of the credential.
+     * @param email email address of the student.
+     * @param title title of the credential.
+     * @param file file of the credential relative to the output directory.
+     * @param sha256 SHA-256 hash of the file contents as hex.
+     */
+    public static record Entry( String credentialId, String email, String title, String file, String sha256 ) {
+    }
+}
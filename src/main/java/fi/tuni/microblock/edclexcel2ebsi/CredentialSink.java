@@ -0,0 +1,30 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Destination for issued credentials in batch issuance.
+ * @author Otto Hylli
+ *
+ */
+public interface CredentialSink extends Closeable {
+
+    /** Write an issued credential.
+     * @param credentialId id of the credential.
+     * @param email email address of the student the credential was issued to.
+     * @param title title of the credential.
+     * @param credential the signed credential as JSON or JWT.
+     * @throws IOException writing failed.
+     */
+    public void write( String credentialId, String email, String title, String credential ) throws IOException;
+
+    /** Make the written credentials durable.
+     * @throws IOException writing failed.
+     */
+    public void flush() throws IOException;
+}
@@ -0,0 +1,238 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import id.walt.vclib.credentials.Europass;
+import id.walt.vclib.credentials.VerifiableId;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Prototype cache for the Europass and VerifiableId credential templates.
+ *
+ * Each template is built only once. New credentials are created as deep copies of the prototype which is much cheaper than building the template again.
+ * The vclib credential classes are Kotlin data classes, so a data class is copied by passing copies of the values of its componentN methods to its primary constructor.
+ * Lists and maps are copied and strings, numbers, enums and other immutable values are shared, so populating a copy never changes the prototype.
+ * If the template contains a value that cannot be copied a new template is built for every credential instead.
+ * @author Otto Hylli
+ *
+ */
+public final class CredentialTemplates {
+
+    // copiers of the classes found in the templates.
+    private static final Map<Class<?>, DataClassCopier> COPIERS = new ConcurrentHashMap<>();
+    private static final Prototype<Europass> EUROPASS = new Prototype<>( Europass.class, () -> Europass.Companion.getTemplate().invoke());
+    private static final Prototype<VerifiableId> VERIFIABLE_ID = new Prototype<>( VerifiableId.class, () -> VerifiableId.Companion.getTemplate().invoke());
+
+    private CredentialTemplates() {
+    }
+
+    /** Get a new Europass credential based on the template.
+     * @return a new credential that can be populated.
+     */
+    public static Europass newEuropass() {
+        return EUROPASS.newInstance();
+    }
+
+    /** Get a new VerifiableId credential based on the template.
+     * @return a new credential that can be populated.
+     */
+    public static VerifiableId newVerifiableId() {
+        return VERIFIABLE_ID.newInstance();
+    }
+
+    /** Get a new credential for the given template name.
+     * @param templateId Europass or VerifiableId
+     * @return a new credential that can be populated.
+     */
+    public static VerifiableCredential newCredential( String templateId ) {
+        switch ( templateId ) {
+        case "Europass":
+            return newEuropass();
+        case "VerifiableId":
+            return newVerifiableId();
+        default:
+            throw new IllegalArgumentException("Only Europass and VerifiableId are supported.");
+        }
+    }
+
+    /** Get the schema URI of the Europass template.
+     * @return schema URI
+     */
+    public static String getEuropassSchema() {
+        return EUROPASS.getSchema();
+    }
+
+    /** Get the schema URI of the VerifiableId template.
+     * @return schema URI
+     */
+    public static String getVerifiableIdSchema() {
+        return VERIFIABLE_ID.getSchema();
+    }
+
+    /** Make a deep copy of the given template value.
+     * @param value a value in a credential template
+     * @return the copy or the value itself if it is immutable.
+     * @throws IllegalStateException the value is of a type that cannot be copied.
+     */
+    static Object deepCopy( Object value ) {
+        if ( value == null || isImmutable(value.getClass())) {
+            return value;
+        }
+
+        if ( value instanceof List ) {
+            var copy = new ArrayList<Object>(((List<?>)value).size());
+            for ( var item : (List<?>)value ) {
+                copy.add(deepCopy(item));
+            }
+
+            return copy;
+        }
+
+        if ( value instanceof Map ) {
+            var copy = new LinkedHashMap<Object, Object>();
+            for ( var entry : ((Map<?, ?>)value).entrySet()) {
+                copy.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+
+            return copy;
+        }
+
+        var copier = COPIERS.computeIfAbsent(value.getClass(), DataClassCopier::find);
+        if ( copier.constructor() == null ) {
+            throw new IllegalStateException("Unable to copy template value of type " +value.getClass().getName());
+        }
+
+        return copier.copy(value);
+    }
+
+    private static boolean isImmutable( Class<?> type ) {
+        return type == String.class || Number.class.isAssignableFrom(type) || type == Boolean.class || type == Character.class
+                || type.isEnum() || type.getName().startsWith("java.time.") || type == URI.class || type == UUID.class;
+    }
+
+    /** Copies a Kotlin data class with its primary constructor.
+     * @param components componentN methods of the data class in order.
+     * @param constructor the matching primary constructor. Null if the class is not a data class.
+     */
+    private static record DataClassCopier( Method[] components, Constructor<?> constructor ) {
+
+        Object copy( Object value ) {
+            try {
+                var values = new Object[components.length];
+                for ( int i = 0; i < components.length; i++ ) {
+                    values[i] = deepCopy(components[i].invoke(value));
+                }
+
+                return constructor.newInstance(values);
+            }
+
+            catch ( InstantiationException | IllegalAccessException | InvocationTargetException e ) {
+                throw new IllegalStateException("Unable to copy template value of type " +value.getClass().getName() +": " +e.getMessage(), e);
+            }
+        }
+
+        static DataClassCopier find( Class<?> type ) {
+            List<Method> found = new ArrayList<>();
+            for ( var method : type.getMethods() ) {
+                if ( method.getName().matches("component\\d+") && method.getParameterCount() == 0 ) {
+                    found.add(method);
+                }
+            }
+
+            found.sort(Comparator.comparingInt(method -> Integer.parseInt(method.getName().substring("component".length()))));
+            for ( var candidate : type.getConstructors() ) {
+                if ( found.isEmpty() || candidate.getParameterCount() != found.size()) {
+                    continue;
+                }
+
+                var parameterTypes = candidate.getParameterTypes();
+                boolean matches = true;
+                for ( int i = 0; i < parameterTypes.length; i++ ) {
+                    if ( !parameterTypes[i].isAssignableFrom(found.get(i).getReturnType())) {
+                        matches = false;
+                        break;
+                    }
+                }
+
+                if ( matches ) {
+                    return new DataClassCopier(found.toArray(new Method[0]), candidate);
+                }
+            }
+
+            return new DataClassCopier(null, null);
+        }
+    }
+
+    /** A template built once and copied for each use.
+     * @param <T> credential class
+     */
+    private static class Prototype<T extends VerifiableCredential> {
+
+        private final Supplier<T> builder;
+        private final Class<T> type;
+        // built on first use. Written last in init so that the other fields are visible once this is.
+        private volatile T prototype;
+        private String schema;
+        // false if the template has values that cannot be copied.
+        private boolean copyable;
+
+        Prototype( Class<T> type, Supplier<T> builder ) {
+            this.type = type;
+            this.builder = builder;
+        }
+
+        T newInstance() {
+            init();
+            if ( !copyable ) {
+                return builder.get();
+            }
+
+            return type.cast(deepCopy(prototype));
+        }
+
+        String getSchema() {
+            init();
+            return schema;
+        }
+
+        private void init() {
+            if ( prototype != null ) {
+                return;
+            }
+
+            synchronized ( this ) {
+                if ( prototype != null ) {
+                    return;
+                }
+
+                var template = builder.get();
+                schema = template.getCredentialSchema().getId();
+                try {
+                    deepCopy(template);
+                    copyable = true;
+                }
+
+                catch ( IllegalStateException e ) {
+                    copyable = false;
+                }
+
+                prototype = template;
+            }
+        }
+    }
+}
@@ -5,10 +5,9 @@
 */
 package fi.tuni.microblock.edclexcel2ebsi;
 
-import java.util.Date;
+import java.util.Set;
 
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import java.util.Date;
 
 /** Represents the excel sheet which contains data about issued credentials.
  * @author Otto Hylli
@@ -25,14 +24,22 @@ public class CredentialsTable extends DataTable {
     public static final String TITLE_COLUMN = "Title";
     // column with valid from date.
     public static final String VALID_FROM_COLUMN  = "Valid from";  
+
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, HEADER_ROW_NUM,
+            Set.of( TITLE_COLUMN, ISSUER_COLUMN, VALID_FROM_COLUMN ),
+            Set.of());
     // relation link to organisations table
     protected DataTable.TableLink organisationLink;
+    // the columns read by this table.
+    private final StringColumn title = stringColumn(TITLE_COLUMN);
+    private final DateColumn validFrom = dateColumn(VALID_FROM_COLUMN);
     
     /** Create credentials table for the given workbook.
      * @param data the excel wokrbook
      * @param credentialData for accessing other tables.
      */
-    public CredentialsTable( XSSFWorkbook data, CredentialData credentials ) {
+    public CredentialsTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
         organisationLink = new DataTable.TableLink( this, CredentialsTable.ISSUER_COLUMN, credentials.organisationsTable, OrganisationsTable.LEGAL_NAME_COLUMN);
     }
@@ -46,18 +53,31 @@ public class CredentialsTable extends DataTable {
     public int getHeaderRowNum() {
         return HEADER_ROW_NUM;
     }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
+    }
     
     /** Get organisations table row which has information about the issuer of credential on the current row.
      * @return organisations sheet row
      */
-    public XSSFRow getLinkedOrganisation() {
+    public DataTable.TableRow getLinkedOrganisation() {
         return organisationLink.getLinkedRow(getCurrentRow());
     }
     
+    /** Get the title of the credential on the given row.
+     * @param row row number
+     * @return credential title
+     */
+    public String getTitle( int row ) {
+        return title.get(row);
+    }
+    
     /** Get the valid from date of the credential
      * @return valid from date
      */
     public Date getValidFrom() {
-        return getCellValueDateForCurrentRow(VALID_FROM_COLUMN);
+        return validFrom.getForCurrentRow();
     }
 }
\ No newline at end of file
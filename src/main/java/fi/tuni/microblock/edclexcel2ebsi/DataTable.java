@@ -10,11 +10,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.util.CellAddress;
 
 import com.fasterxml.jackson.annotation.JacksonInject.Value;
 
@@ -26,27 +28,38 @@ import com.fasterxml.jackson.annotation.JacksonInject.Value;
  */
 public abstract class DataTable {
     
-    // sheet this datatable corresponds to.
-    private XSSFSheet sheet;
+    // storage of the sheet this datatable corresponds to.
+    private TableStorage storage;
     // the row containing the column headers.
-    private XSSFRow headerRow;
+    private int headerRow;
     // credential data used to access other data tables.
     private CredentialData credentialData;
     // mapping of colun header names to colun number.
     private Map<String, Integer> headerColumns = new HashMap<>();
+    // dictionary codes of the values of the columns used in finding rows. null for columns with values that are not strings or numbers or with too many distinct values.
+    private Map<Integer, int[]> encodedColumns = new HashMap<>();
+    // a column is not encoded if it adds more strings to the dictionary than this part of its rows, for example the email addresses of the persons.
+    private static final int MAX_DISTINCT_DIVISOR = 4;
+    // strings a column can add to the dictionary regardless of its row count.
+    private static final int MIN_DISTINCT_LIMIT = 256;
     // current row that is being processed.
     private int currentRow = 0;
+    // time spent searching rows of this sheet.
+    private final LatencyHistogram lookupTimer;
+    private static final LongAdder ROWS_SCANNED_COUNTER = Metrics.getDefault().counter("lookup.rowsScanned");
     
     /** Create data table for a sheet.
      * 
      * Subclass methods are used to get the name of the sheet in the workbook and number of the row which contains the column headers.
-     * @param data The excel workbook that has the sheet. 
+     * @param data Storage of the excel workbook that has the sheet. 
      * @param credentialData credential data this is a part of.  
+     * @throws DiplomaDataProvider.ExcelStructureException the workbook does not have the sheet.
      */
-    public DataTable( XSSFWorkbook data, CredentialData credentialData ) {
-        sheet = data.getSheet(getSheetName());
-        this.headerRow = sheet.getRow(getHeaderRowNum());
+    public DataTable( WorkbookStorage data, CredentialData credentialData ) {
+        storage = data.getTable(getSheetName());
+        this.headerRow = getHeaderRowNum();
         this.credentialData = credentialData;
+        lookupTimer = Metrics.getDefault().timer("lookup." +getSheetName());
     }
     
     /** Name of the sheet in the workbook.
@@ -61,6 +74,11 @@ public abstract class DataTable {
      */
     public abstract int getHeaderRowNum();
     
+    /** The columns this table reads. The workbook storages load only these.
+     * @return columns of the table.
+     */
+    public abstract TableColumns getColumns();
+    
     /** The number of the row that is currently being processed.
      * @return number of current row.
      */
@@ -79,14 +97,14 @@ public abstract class DataTable {
      * @return row number
      */
     public int getLastRowNum() {
-        return sheet.getLastRowNum();
+        return storage.getLastRowNum();
     }
     
-    /** Get the excel sheet for this DataTable.
-     * @return the excel sheet
+    /** Get the storage of the excel sheet for this DataTable.
+     * @return the sheet storage
      */
-    public XSSFSheet getSheet() {
-        return sheet;
+    public TableStorage getStorage() {
+        return storage;
     }
 
     /** Get the number of the column that has the specified heading.
@@ -95,22 +113,53 @@ public abstract class DataTable {
      * @throws DiplomaDataProvider.ExcelStructureException No colun with the given name found from the headers row.
      */
     protected int getColumnNumForHeader( String name ) throws DiplomaDataProvider.ExcelStructureException {
+        var columnNum = findColumnNumForHeader(name);
+        if ( columnNum.isEmpty()) {
+            throw new DiplomaDataProvider.ExcelStructureException("sheet " +getSheetName() +" does not have column " +name +" on row " +headerRow );
+        }
+        
+        return columnNum.getAsInt();
+    }
+    
+    /** Find the number of the column that has the specified heading without throwing if there is no such column.
+     * @param name name of a column heading.
+     * @return Number of the column or empty if the header row has no such column.
+     */
+    public OptionalInt findColumnNumForHeader( String name ) {
         // check cache first and if not found search the header row.
         Integer columnNum = headerColumns.get(name);
-        if ( columnNum == null ) {
-            for ( var cell : headerRow ) {
-                if ( cell.toString().equals(name)) {
-                    headerColumns.put(name, cell.getColumnIndex());
-                    return cell.getColumnIndex();
-                }
+        if ( columnNum != null ) {
+            return OptionalInt.of(columnNum);
+        }
+        
+        int cellCount = storage.getCellCount(headerRow);
+        for ( int column = 0; column < cellCount; column++ ) {
+            if ( storage.getString(headerRow, column).equals(name)) {
+                headerColumns.put(name, column);
+                return OptionalInt.of(column);
             }
-            
-            throw new DiplomaDataProvider.ExcelStructureException("sheet " +sheet.getSheetName() +" does not have column " +name +" on row " +headerRow.getRowNum() );
         }
         
-        return columnNum;
+        return OptionalInt.empty();
     }
-    
+
+    /** Resolve the column numbers of all headings of the header row so that later lookups only use the cache.
+     *
+     * If a heading is on the header row more than once the first column is used like in findColumnNumForHeader.
+     * @return number of cached column headings.
+     */
+    public int resolveColumns() {
+        int cellCount = storage.getCellCount(headerRow);
+        for ( int column = 0; column < cellCount; column++ ) {
+            var name = storage.getString(headerRow, column);
+            if ( !name.isEmpty()) {
+                headerColumns.putIfAbsent(name, column);
+            }
+        }
+
+        return headerColumns.size();
+    }
+
     /** For the given row get the value for the colun with the given heading name as a string.
      * @param row number of row
      * @param columnHeading name of column
@@ -118,8 +167,14 @@ public abstract class DataTable {
      * @throws DiplomaDataProvider.ExcelStructureException There is no colun with the given heading.
      */
     public String getCellValueString( int row, String columnHeading ) throws DiplomaDataProvider.ExcelStructureException {
-        var value = getCellValue(row, columnHeading, false);
-        return value.toString(); 
+        // use the single copy of the value in the dictionary if the column has been encoded.
+        var codes = encodedColumns.get(getColumnNumForHeader(columnHeading));
+        int index = row -headerRow -1;
+        if ( codes != null && index >= 0 && index < codes.length ) {
+            return credentialData.getDictionary().get(codes[index]);
+        }
+        
+        return readString(row, getColumnNumForHeader(columnHeading)); 
     }
     
     /** For the given row get the value for the colun with the given heading name as a number.
@@ -129,14 +184,7 @@ public abstract class DataTable {
      * @throws DiplomaDataProvider.ExcelStructureException There is no colun with the given heading.
      */
     public double getCellValueNumber( int row, String columnHeading ) throws DiplomaDataProvider.ExcelStructureException {
-        var value = getCellValue(row, columnHeading, false);
-        try {
-            return (Double)value; 
-        }
-        
-        catch ( ClassCastException e ) {
-            throw new DiplomaDataProvider.ExcelStructureException( "Value for colun " +columnHeading +" at row " +row +" on sheet " +getSheetName() +" could not be converted to Double. Value was " +value +" of type " +value.getClass());
-        }
+        return readNumber(row, getColumnNumForHeader(columnHeading), columnHeading);
     }
     
     /** For the given row get the value for the colun with the given heading name as a date.
@@ -146,18 +194,7 @@ public abstract class DataTable {
      * @throws DiplomaDataProvider.ExcelStructureException There is no colun with the given heading or the value cannot be converted into a date.
      */
     public Date getCellValueDate( int row, String columnHeading ) throws DiplomaDataProvider.ExcelStructureException {
-        var value = getCellValue(row, columnHeading, true);
-        if ( value.equals("")) {
-            return null;
-        }
-        
-        try {
-            return (Date)value; 
-        }
-        
-        catch ( ClassCastException e ) {
-            throw new DiplomaDataProvider.ExcelStructureException( "Value for colun " +columnHeading +" at row " +row +" on sheet " +getSheetName() +" could not be converted to Date. Value was " +value +" of type " +value.getClass());
-        }
+        return readDate(row, getColumnNumForHeader(columnHeading), columnHeading);
     }
     
     /** For the current row get cell value for the given heading as a string.
@@ -187,74 +224,261 @@ public abstract class DataTable {
         return getCellValueDate(currentRow, columnHeading);
     }
     
-    /** Get the value of the cell on the given row for the given heading.
+    /** Get the value of the given cell as a string.
      * 
-     * Class of returned object depends on the type of the cell. It can be String, double or Date.
+     * Strings and blank cells are returned as is and numbers as the string value of a double.
      * @param row number of the row
-     * @param columnHeading name of the column
-     * @param numericAsDate if the cell type is numeric should it be interpreted as a Date.
+     * @param column number of the column
      * @return Value of the cell.
+     * @throws DiplomaDataProvider.ExcelStructureException the cell is not a string, blank or a number.
      */
-    private Object getCellValue( int row, String columnHeading, boolean numericAsDate  ) {
-        int column = getColumnNumForHeader(columnHeading);
-        var cell = sheet.getRow(row).getCell(column);
-        CellType type = cell.getCellType();
-        if ( type == CellType.FORMULA ) {
-            type = cell.getCachedFormulaResultType();          
+    private String readString( int row, int column ) {
+        // formulas are resolved to the type of their cached result by the storage.
+        CellType type = storage.getCellType(row, column);
+        if ( type == CellType.STRING || type == CellType.BLANK || type == CellType._NONE ) {
+            return storage.getString(row, column);
         }
         
-        if ( type == CellType.STRING || type == CellType.BLANK) {
-            return cell.getStringCellValue();
+        else if ( type == CellType.NUMERIC ) {
+            return Double.toString(storage.getNumber(row, column));
         }
         
-        else if ( type == CellType.NUMERIC) {
-            if ( numericAsDate) {
-                return cell.getDateCellValue();
-            }
-            
-            else {
-                return cell.getNumericCellValue();
-            }
+        throw unexpectedType(row, column, type);
+    }
+    
+    /** Get the value of the given cell as a number.
+     * @param row number of the row
+     * @param column number of the column
+     * @param columnHeading name of the column for error messages.
+     * @return Value of the cell.
+     * @throws DiplomaDataProvider.ExcelStructureException the cell is not a number.
+     */
+    private double readNumber( int row, int column, String columnHeading ) {
+        CellType type = storage.getCellType(row, column);
+        if ( type == CellType.NUMERIC ) {
+            return storage.getNumber(row, column);
         }
         
-        else {
-            throw new DiplomaDataProvider.ExcelStructureException("Cell value " +cell +" at " +cell.getAddress() +" on sheet " +sheet.getSheetName() +" has unexpected type of " +cell.getCellType() );
+        else if ( type == CellType.STRING || type == CellType.BLANK || type == CellType._NONE ) {
+            throw new DiplomaDataProvider.ExcelStructureException( "Value for colun " +columnHeading +" at row " +row +" on sheet " +getSheetName() +" could not be converted to Double. Value was " +storage.getString(row, column) +" of type " +type);
         }
         
+        throw unexpectedType(row, column, type);
+    }
+    
+    /** Get the value of the given cell as a date.
+     * @param row number of the row
+     * @param column number of the column
+     * @param columnHeading name of the column for error messages.
+     * @return Value of the cell or null if the cell is empty.
+     * @throws DiplomaDataProvider.ExcelStructureException the cell is not a number or empty.
+     */
+    private Date readDate( int row, int column, String columnHeading ) {
+        CellType type = storage.getCellType(row, column);
+        if ( type == CellType.NUMERIC ) {
+            return storage.getDate(row, column);
+        }
+        
+        else if ( type == CellType.STRING || type == CellType.BLANK || type == CellType._NONE ) {
+            var value = storage.getString(row, column);
+            if ( value.isEmpty()) {
+                return null;
+            }
+            
+            throw new DiplomaDataProvider.ExcelStructureException( "Value for colun " +columnHeading +" at row " +row +" on sheet " +getSheetName() +" could not be converted to Date. Value was " +value +" of type " +type);
+        }
+        
+        throw unexpectedType(row, column, type);
+    }
+    
+    private DiplomaDataProvider.ExcelStructureException unexpectedType( int row, int column, CellType type ) {
+        return new DiplomaDataProvider.ExcelStructureException("Cell value " +storage.getString(row, column) +" at " +new CellAddress(row, column) +" on sheet " +getSheetName() +" has unexpected type of " +type );
     }
     
     /** Find a row that has the given values for the given coluns.
      * @param values Values for colun headings. Key is a colun heading and value is a value for that colun.
      * @return The row that has the given values. If there are multiple matches the first row is returned.
+     * @throws DiplomaDataProvider.RequiredDataNotFoundException No row has the values.
     */
-    public XSSFRow getRowWithValues( Map<String, String> values ) throws DiplomaDataProvider.RequiredDataNotFoundException {
-        var rows = getRowsWithValues(values);
-        if ( rows.size() > 0 ) {
-            return rows.get(0);
+    public TableRow getRowWithValues( Map<String, String> values ) throws DiplomaDataProvider.RequiredDataNotFoundException {
+        var row = findRowWithValues(values);
+        if ( row.isPresent()) {
+            return row.get();
+        }
+        
+        throw new DiplomaDataProvider.RequiredDataNotFoundException( getSheetName() +" cannot find row ro values " +values );
+    }
+    
+    /** Find the first row that has the given values.
+     * 
+     * Stops at the first matching row. Use this instead of getRowWithValues when a missing row is expected.
+     * @param values Values for colun headings. Key is a colun heading and value is a value for that colun.
+     * @return The first row that has the given values or empty if there is no such row.
+     */
+    public Optional<TableRow> findRowWithValues( Map<String, String> values ) {
+        long start = System.nanoTime();
+        var filter = new RowFilter(values);
+        int first = headerRow +1;
+        int last = filter.canMatch() ? storage.getLastRowNum() : headerRow;
+        for ( int i = first; i <= last; i++ ) {
+            if ( filter.matches(i)) {
+                ROWS_SCANNED_COUNTER.add(i -first +1);
+                lookupTimer.recordSince(start);
+                return Optional.of(new TableRow(this, i));
+            }
         }
         
-        throw new DiplomaDataProvider.RequiredDataNotFoundException( sheet.getSheetName() +" cannot find row ro values " +values );
+        ROWS_SCANNED_COUNTER.add(last -first +1);
+        lookupTimer.recordSince(start);
+        return Optional.empty();
+    }
+    
+    /** Find the number of the first row that has the given value in the given column.
+     * @param columnHeading name of the column.
+     * @param value the value compared ignoring case.
+     * @return row number or empty if there is no such row.
+     */
+    public OptionalInt findRowNumWithValue( String columnHeading, String value ) {
+        var row = findRowWithValues( Map.of( columnHeading, value ));
+        return row.isPresent() ? OptionalInt.of(row.get().getRowNum()) : OptionalInt.empty();
     }
     
     /** Get rows that have the given values.
      * @param values Map where column heading is the key and value the desired value.
      * @return Rows that have the values.
      */
-    public List<XSSFRow> getRowsWithValues( Map<String, String> values ) {
-        List<XSSFRow> rows = new ArrayList<>();
-        rowLoop: for ( int i = headerRow.getRowNum() +1; i <= sheet.getLastRowNum(); i++ ) {
-            var row = sheet.getRow(i);
+    public List<TableRow> getRowsWithValues( Map<String, String> values ) {
+        long start = System.nanoTime();
+        List<TableRow> rows = new ArrayList<>();
+        var filter = new RowFilter(values);
+        int first = headerRow +1;
+        int last = filter.canMatch() ? storage.getLastRowNum() : headerRow;
+        for ( int i = first; i <= last; i++ ) {
+            if ( filter.matches(i)) {
+                rows.add( new TableRow(this, i));
+            }
+        }
+        
+        ROWS_SCANNED_COUNTER.add(last -first +1);
+        lookupTimer.recordSince(start);
+        return rows;
+    }
+    
+    /** Get the dictionary codes of the values of the given column.
+     * 
+     * The column is encoded the first time it is used in finding rows. Numbers are encoded as their string value from getCellValueString.
+     * Columns with mostly unique values are not encoded since the dictionary would keep a copy of each value on the heap.
+     * The strings a column added are removed from the dictionary if it is not encoded.
+     * @param column column number
+     * @return code for each row after the header row or null if the column has a value that is not a string or a number or too many distinct values.
+     */
+    private int[] getEncodedColumn( int column ) {
+        if ( encodedColumns.containsKey(column)) {
+            return encodedColumns.get(column);
+        }
+        
+        var dictionary = credentialData.getDictionary();
+        int first = headerRow +1;
+        int[] codes = new int[Math.max(0, storage.getLastRowNum() -headerRow)];
+        int mark = dictionary.size();
+        int limit = Math.max(MIN_DISTINCT_LIMIT, codes.length / MAX_DISTINCT_DIVISOR);
+        for ( int i = 0; i < codes.length; i++ ) {
+            CellType type = storage.getCellType(first +i, column);
+            if ( type == CellType.NUMERIC ) {
+                codes[i] = dictionary.encode(Double.toString(storage.getNumber(first +i, column)));
+            }
+            
+            else if ( type == CellType.STRING || type == CellType.BLANK || type == CellType._NONE ) {
+                codes[i] = dictionary.encode(storage.getString(first +i, column));
+            }
+            
+            else {
+                // getCellValueString reports these when they are compared.
+                codes = null;
+                break;
+            }
+            
+            if ( dictionary.size() -mark > limit ) {
+                codes = null;
+                break;
+            }
+        }
+        
+        if ( codes == null ) {
+            dictionary.truncate(mark);
+        }
+        
+        encodedColumns.put(column, codes);
+        return codes;
+    }
+    
+    /** Values to find from the rows of this table.
+     * 
+     * Values of encoded columns are compared by the dictionary codes of their lower case forms. Other columns are compared as strings ignoring case.
+     */
+    private class RowFilter {
+        
+        private final StringDictionary dictionary = credentialData.getDictionary();
+        private final String[] headings;
+        private final String[] values;
+        // codes of each column or null if the column is compared as strings.
+        private final int[][] columns;
+        // the code of the lower case form of each value.
+        private final int[] wanted;
+        private boolean canMatch = true;
+        
+        /** Create filter for the given values.
+         * @param values Map where column heading is the key and value the desired value.
+         * @throws DiplomaDataProvider.ExcelStructureException no column with a given heading.
+         */
+        RowFilter( Map<String, String> values ) {
+            int count = values.size();
+            headings = new String[count];
+            this.values = new String[count];
+            columns = new int[count][];
+            wanted = new int[count];
+            int i = 0;
             for ( var valueEntry : values.entrySet()) {
-                var value = getCellValueString(i, valueEntry.getKey() );
-                if ( !value.toLowerCase().equals(valueEntry.getValue().toLowerCase())) {
-                    continue rowLoop;
+                headings[i] = valueEntry.getKey();
+                this.values[i] = valueEntry.getValue().toLowerCase();
+                columns[i] = getEncodedColumn(getColumnNumForHeader(headings[i]));
+                if ( columns[i] != null ) {
+                    wanted[i] = dictionary.findFolded(this.values[i]);
+                    // no cell of the column has the value.
+                    canMatch &= wanted[i] >= 0;
                 }
+                
+                i++;
             }
-            
-            rows.add( row );
         }
         
-        return rows;
+        /** Check if any row can match.
+         * @return false if an encoded column does not have its value on any row.
+         */
+        boolean canMatch() {
+            return canMatch;
+        }
+        
+        /** Check if the given row has the values.
+         * @param row number of the row
+         * @return true if every value matches ignoring case.
+         */
+        boolean matches( int row ) {
+            int index = row -headerRow -1;
+            for ( int i = 0; i < headings.length; i++ ) {
+                if ( columns[i] != null ) {
+                    if ( dictionary.fold(columns[i][index]) != wanted[i] ) {
+                        return false;
+                    }
+                }
+                
+                else if ( !getCellValueString(row, headings[i]).toLowerCase().equals(values[i])) {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
     }
     
     /** Get a cell value consisting of multiple parts separated by ; and split it to its components on the current row. 
@@ -262,8 +486,15 @@ public abstract class DataTable {
      * @return Value separated to its parts.
      */
     public List<String> getCellMultiValueStringForCurrentRow( String columnName) {
+        return splitMultiValue(getCellValueStringForCurrentRow(columnName));
+    }
+    
+    /** Split a cell value consisting of multiple parts separated by ;.
+     * @param valueStr the cell value
+     * @return Value separated to its parts.
+     */
+    private static List<String> splitMultiValue( String valueStr ) {
         List<String> values = new ArrayList<>();
-        String valueStr = getCellValueStringForCurrentRow(columnName);
         if ( valueStr.length() == 0 ) {
             return values;
         }
@@ -274,6 +505,319 @@ public abstract class DataTable {
         return values;
     }
     
+    /** Create a handle for a column that must be on the header row.
+     * @param heading column heading
+     * @return the column
+     * @throws DiplomaDataProvider.ExcelStructureException the header row has no such column.
+     */
+    protected StringColumn stringColumn( String heading ) {
+        return new StringColumn(heading, true);
+    }
+    
+    /** Create a handle for a column that may be missing from the header row in which case its values are empty strings.
+     * @param heading column heading
+     * @return the column
+     */
+    protected StringColumn optionalStringColumn( String heading ) {
+        return new StringColumn(heading, false);
+    }
+    
+    /** Create a handle for a numeric column that must be on the header row.
+     * @param heading column heading
+     * @return the column
+     * @throws DiplomaDataProvider.ExcelStructureException the header row has no such column.
+     */
+    protected NumberColumn numberColumn( String heading ) {
+        return new NumberColumn(heading);
+    }
+    
+    /** Create a handle for a date column that must be on the header row.
+     * @param heading column heading
+     * @return the column
+     * @throws DiplomaDataProvider.ExcelStructureException the header row has no such column.
+     */
+    protected DateColumn dateColumn( String heading ) {
+        return new DateColumn(heading);
+    }
+    
+    /** Create a handle for a column with values separated by ; that must be on the header row.
+     * @param heading column heading
+     * @return the column
+     * @throws DiplomaDataProvider.ExcelStructureException the header row has no such column.
+     */
+    protected MultiValueColumn multiValueColumn( String heading ) {
+        return new MultiValueColumn(heading);
+    }
+    
+    /** Create a handle for a column with values separated by ; that name rows of another table.
+     * @param heading column heading
+     * @param targetTable gets the linked table from the credential data. The table does not have to exist yet when this is called.
+     * @param targetHeading column of the linked table the values are compared to ignoring case.
+     * @return the column
+     * @throws DiplomaDataProvider.ExcelStructureException the header row has no such column.
+     */
+    protected LinkColumn linkColumn( String heading, Function<CredentialData, DataTable> targetTable, String targetHeading ) {
+        return new LinkColumn(heading, targetTable, targetHeading);
+    }
+    
+    /** A column of this table whose number is resolved from the header row once when the column is created.
+     * 
+     * Subclasses create the columns they read when they are created so that a missing column is reported when the workbook is loaded.
+     * Reading a value through a column does not search the header row.
+     * @author Otto Hylli
+     *
+     */
+    public abstract class Column {
+        
+        private final String heading;
+        // number of the column or -1 if an optional column is missing.
+        protected final int number;
+        
+        /** Resolve the column with the given heading.
+         * @param heading column heading
+         * @param required must the header row have the column.
+         * @throws DiplomaDataProvider.ExcelStructureException a required column is missing.
+         * @throws IllegalStateException the table has not declared the column so it is not loaded.
+         */
+        Column( String heading, boolean required ) {
+            var columns = getColumns();
+            if ( !( required ? columns.required() : columns.optional()).contains(heading)) {
+                throw new IllegalStateException( getSheetName() +" does not declare the " +( required ? "required" : "optional" ) +" column " +heading );
+            }
+            
+            this.heading = heading;
+            number = required ? getColumnNumForHeader(heading) : findColumnNumForHeader(heading).orElse(-1);
+        }
+        
+        /** Get the column heading.
+         * @return heading name
+         */
+        public String getHeading() {
+            return heading;
+        }
+        
+        /** Get the number of the column.
+         * @return column number or -1 if an optional column is missing.
+         */
+        public int getNumber() {
+            return number;
+        }
+        
+        /** Check if the header row has this column.
+         * @return false if an optional column is missing.
+         */
+        public boolean isPresent() {
+            return number >= 0;
+        }
+    }
+    
+    /** A column with string values. Numbers are read as the string value of a double. */
+    public class StringColumn extends Column {
+        
+        StringColumn( String heading, boolean required ) {
+            super(heading, required);
+        }
+        
+        /** Get the value on the given row.
+         * @param row row number
+         * @return the value or an empty string if an optional column is missing.
+         * @throws DiplomaDataProvider.ExcelStructureException the cell is not a string or a number.
+         */
+        public String get( int row ) {
+            return number < 0 ? "" : readString(row, number);
+        }
+        
+        /** Get the value on the current row.
+         * @return the value
+         */
+        public String getForCurrentRow() {
+            return get(currentRow);
+        }
+    }
+    
+    /** A column with numeric values. */
+    public class NumberColumn extends Column {
+        
+        NumberColumn( String heading ) {
+            super(heading, true);
+        }
+        
+        /** Get the value on the given row.
+         * @param row row number
+         * @return the value
+         * @throws DiplomaDataProvider.ExcelStructureException the cell is not a number.
+         */
+        public double get( int row ) {
+            return readNumber(row, number, getHeading());
+        }
+        
+        /** Get the value on the current row.
+         * @return the value
+         */
+        public double getForCurrentRow() {
+            return get(currentRow);
+        }
+    }
+    
+    /** A column with date values. */
+    public class DateColumn extends Column {
+        
+        DateColumn( String heading ) {
+            super(heading, true);
+        }
+        
+        /** Get the value on the given row.
+         * @param row row number
+         * @return the value or null if the cell is empty.
+         * @throws DiplomaDataProvider.ExcelStructureException the cell is not a date.
+         */
+        public Date get( int row ) {
+            return readDate(row, number, getHeading());
+        }
+        
+        /** Get the value on the current row.
+         * @return the value
+         */
+        public Date getForCurrentRow() {
+            return get(currentRow);
+        }
+    }
+    
+    /** A column with values separated by ;.
+     * 
+     * The value of a row is split the first time it is read. The parts are kept as an immutable list that is shared by the rows with the same value
+     * and whose strings are from the dictionary of the workbook.
+     */
+    public class MultiValueColumn extends Column {
+        
+        // the parts of each row after the header row or null if the row has not been read.
+        private List<String>[] rows;
+        // the parts of each distinct value.
+        private final Map<String, List<String>> parsed = new HashMap<>();
+        
+        MultiValueColumn( String heading ) {
+            super(heading, true);
+        }
+        
+        /** Get the parts of the value on the given row.
+         * @param row row number
+         * @return the parts stripped of white space or an empty list if the cell is empty. The list cannot be modified.
+         */
+        @SuppressWarnings("unchecked")
+        public List<String> get( int row ) {
+            int index = row -headerRow -1;
+            if ( index < 0 || index >= getLastRowNum() -headerRow ) {
+                return parse(readString(row, number));
+            }
+            
+            if ( rows == null ) {
+                rows = new List[getLastRowNum() -headerRow];
+            }
+            
+            var values = rows[index];
+            if ( values == null ) {
+                values = parse(readString(row, number));
+                rows[index] = values;
+            }
+            
+            return values;
+        }
+        
+        private List<String> parse( String value ) {
+            var values = parsed.get(value);
+            if ( values == null ) {
+                var dictionary = credentialData.getDictionary();
+                var parts = splitMultiValue(value);
+                for ( int i = 0; i < parts.size(); i++ ) {
+                    parts.set(i, dictionary.get(dictionary.encode(parts.get(i))));
+                }
+                
+                values = List.copyOf(parts);
+                parsed.put(value, values);
+            }
+            
+            return values;
+        }
+        
+        /** Get the parts of the value on the current row.
+         * @return the parts
+         */
+        public List<String> getForCurrentRow() {
+            return get(currentRow);
+        }
+    }
+    
+    /** A column with values separated by ; that name rows of another table.
+     * 
+     * For example the influenced by column of achievements names rows of the activities table by their title.
+     * The rows a value names are found the first time they are needed and then kept with the row.
+     */
+    public class LinkColumn extends MultiValueColumn {
+        
+        private final Function<CredentialData, DataTable> targetTable;
+        private final String targetHeading;
+        // numbers of the linked rows for each row after the header row or null if not resolved yet.
+        private int[][] linkedRows;
+        
+        LinkColumn( String heading, Function<CredentialData, DataTable> targetTable, String targetHeading ) {
+            super(heading);
+            this.targetTable = targetTable;
+            this.targetHeading = targetHeading;
+        }
+        
+        /** Get the numbers of the rows of the linked table the value on the given row names.
+         * @param row row number
+         * @return row numbers in the same order as the parts of the value. The array is shared and must not be modified.
+         * @throws DiplomaDataProvider.RequiredDataNotFoundException a part does not name any row of the linked table.
+         */
+        public int[] getLinkedRows( int row ) {
+            int index = row -headerRow -1;
+            boolean cached = index >= 0 && index < getLastRowNum() -headerRow;
+            if ( cached && linkedRows != null && linkedRows[index] != null ) {
+                return linkedRows[index];
+            }
+            
+            var target = targetTable.apply(credentialData);
+            var names = get(row);
+            int[] linked = new int[names.size()];
+            for ( int i = 0; i < linked.length; i++ ) {
+                linked[i] = target.getRowWithValues(Map.of( targetHeading, names.get(i))).getRowNum();
+            }
+            
+            if ( cached ) {
+                if ( linkedRows == null ) {
+                    linkedRows = new int[getLastRowNum() -headerRow][];
+                }
+                
+                linkedRows[index] = linked;
+            }
+            
+            return linked;
+        }
+        
+        /** Get the numbers of the rows of the linked table the value on the current row names.
+         * @return row numbers
+         */
+        public int[] getLinkedRowsForCurrentRow() {
+            return getLinkedRows(currentRow);
+        }
+    }
+    
+    /** A row of a DataTable.
+     * @author Otto Hylli
+     * @param table the table the row is in.
+     * @param rowNum number of the row in the sheet.
+     */
+    public static record TableRow( DataTable table, int rowNum ) {
+        
+        /** Get the number of the row in the sheet.
+         * @return row number
+         */
+        public int getRowNum() {
+            return rowNum;
+        }
+    }
+    
     /** Reprsents a relationship between two DataTables based on a shared value on a row.
      * 
      * For example credentials and organisations are linked to each other by the name of the organisation which is under issuer in the credentials table and legal name in the organisations table.
@@ -290,15 +834,24 @@ public abstract class DataTable {
          * @param rowNum number of a row in the source table.
          * @return Linked row from target table.
          */
-        public XSSFRow getLinkedRow( int rowNum ) {
+        public TableRow getLinkedRow( int rowNum ) {
             var sourceValue = sourceTable.getCellValueString(rowNum, sourceHeading);
             return targetTable.getRowWithValues( Map.of( targetHeading, sourceValue ));
         }
         
+        /** From the target table find the row that is linked to the given row in the source table.
+         * @param rowNum number of a row in the source table.
+         * @return Linked row from target table or empty if the target table has no such row.
+         */
+        public Optional<TableRow> findLinkedRow( int rowNum ) {
+            var sourceValue = sourceTable.getCellValueString(rowNum, sourceHeading);
+            return targetTable.findRowWithValues( Map.of( targetHeading, sourceValue ));
+        }
+        
         /** From the target table get the row that is linked to the current row in the source table.  
          * @return The linked row from target table.
          */
-        public XSSFRow getLinkedRowForCurrentRow() {
+        public TableRow getLinkedRowForCurrentRow() {
             return getLinkedRow( sourceTable.getCurrentRow());
         }
     }
@@ -0,0 +1,457 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import id.walt.auditor.VerificationPolicy;
+import id.walt.model.Did;
+import id.walt.services.did.DidService;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Cache for resolved did documents in front of the walt.id did service.
+ *
+ * Keeps at most a given number of documents in memory evicting the least recently used ones, and resolves a document again when its time to live has passed.
+ * Concurrent requests for the same uncached did wait for a single resolution. Optionally the cache is persisted to a file so that it survives restarts.
+ * Newly resolved documents are appended to the file, which is rewritten with only the cached documents when it is loaded and after every maxEntries appends.
+ * @author Otto Hylli
+ *
+ */
+public class DidCache {
+
+    private final Resolver resolver;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Path storeFile;
+    private final Clock clock;
+    // resolved documents in least recently used order. Access must be synchronized on the map.
+    private final LinkedHashMap<String, Entry> entries;
+    // resolutions that are currently in progress.
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // guards writing the store file. Number of entries appended since the file was last rewritten.
+    private final Object storeLock = new Object();
+    private int appended;
+
+    /** Create a cache in front of the walt.id did service.
+     * @param maxEntries maximum number of documents kept in memory.
+     * @param ttl how long a resolved document is used.
+     * @param storeFile file the cache is persisted to. Null if the cache should not be persisted.
+     */
+    public DidCache( int maxEntries, Duration ttl, Path storeFile ) {
+        this( DidCache::resolveWithDidService, maxEntries, ttl, storeFile, Clock.systemUTC() );
+    }
+
+    /** Create a cache using the given resolver.
+     * @param resolver used to resolve dids that are not in the cache.
+     * @param maxEntries maximum number of documents kept in memory.
+     * @param ttl how long a resolved document is used.
+     * @param storeFile file the cache is persisted to. Null if the cache should not be persisted.
+     * @param clock used to check document expiration.
+     */
+    public DidCache( Resolver resolver, int maxEntries, Duration ttl, Path storeFile, Clock clock ) {
+        if ( maxEntries < 1 ) {
+            throw new IllegalArgumentException("Did cache must have room for at least one entry.");
+        }
+
+        this.resolver = resolver;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.storeFile = storeFile;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, DidCache.Entry> eldest ) {
+                return size() > DidCache.this.maxEntries;
+            }
+        };
+
+        if ( storeFile != null && Files.exists(storeFile)) {
+            load();
+            // drop expired and superseded entries appended by the previous run.
+            save();
+        }
+    }
+
+    /** Create a cache configured with the given config.
+     *
+     * Uses the options didCache.maxEntries, didCache.ttlSeconds and didCache.file.
+     * @param config application configuration.
+     * @return the cache.
+     */
+    public static DidCache fromConfig( Config config ) {
+        var maxEntries = config.get("didCache.maxEntries");
+        var ttlSeconds = config.get("didCache.ttlSeconds");
+        var file = config.get("didCache.file");
+        return new DidCache( maxEntries == null ? 1000 : Integer.parseInt(maxEntries),
+                Duration.ofSeconds( ttlSeconds == null ? 3600 : Long.parseLong(ttlSeconds)),
+                file == null ? null : Path.of(file));
+    }
+
+    /** Get the did document for the given did.
+     * @param did a did
+     * @return the did document as json. Null if the did could not be resolved.
+     */
+    public String resolveDocument( String did ) {
+        var entry = getEntry(did);
+        return entry == null ? null : entry.document;
+    }
+
+    /** Get the did for the given did string.
+     * @param did a did
+     * @return the resolved did. Null if the did could not be resolved.
+     */
+    public Did resolve( String did ) {
+        var entry = getEntry(did);
+        if ( entry == null ) {
+            return null;
+        }
+
+        // decoded once per entry. Decoding twice in a race is harmless.
+        var decoded = entry.did;
+        if ( decoded == null ) {
+            decoded = Did.Companion.decode(entry.document);
+            entry.did = decoded;
+        }
+
+        return decoded;
+    }
+
+    /** Remove the given did from the cache so that it is resolved again next time.
+     * @param did a did
+     */
+    public void invalidate( String did ) {
+        synchronized ( entries ) {
+            entries.remove(did);
+        }
+    }
+
+    /** Number of lookups answered from the cache.
+     * @return hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Number of lookups that required resolving the did.
+     * @return miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Number of documents in the cache.
+     * @return entry count
+     */
+    public int size() {
+        synchronized ( entries ) {
+            return entries.size();
+        }
+    }
+
+    /** Check if the given did can be resolved for the trust policies.
+     *
+     * As in the walt.id policies a did that is not valid or not found cannot be resolved. Other failures, for example network errors, are thrown
+     * so that they are reported as verification errors instead of untrusted dids.
+     * @param did a did
+     * @return true if the did document was found.
+     */
+    boolean canResolve( String did ) {
+        try {
+            return resolveDocument(did) != null;
+        }
+
+        catch ( RuntimeException e ) {
+            // waiting for another thread resolving the same did wraps its exception.
+            var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if ( isNotFound(cause)) {
+                return false;
+            }
+
+            throw e;
+        }
+    }
+
+    // messages of the walt.id and EBSI resolver errors the walt.id policies treat as an untrusted did.
+    private static boolean isNotFound( Throwable e ) {
+        var message = String.valueOf(e.getMessage());
+        return message.contains("did must be a valid DID") || message.contains("Identifier Not Found");
+    }
+
+    /** Create a policy that checks that the issuer did of a credential can be resolved using this cache.
+     * @return trusted issuer did policy
+     */
+    public VerificationPolicy createTrustedIssuerDidPolicy() {
+        return new TrustedIssuerDidPolicy(this);
+    }
+
+    /** Create a policy that checks that the subject did of a credential can be resolved using this cache.
+     * @return trusted subject did policy
+     */
+    public VerificationPolicy createTrustedSubjectDidPolicy() {
+        return new TrustedSubjectDidPolicy(this);
+    }
+
+    private Entry getEntry( String did ) {
+        long now = clock.millis();
+        synchronized ( entries ) {
+            var entry = entries.get(did);
+            if ( entry != null && entry.expiresAt > now ) {
+                hits.increment();
+                return entry;
+            }
+        }
+
+        misses.increment();
+        // only one thread resolves a did the others wait for its result.
+        var future = new CompletableFuture<String>();
+        var existing = inFlight.putIfAbsent(did, future);
+        if ( existing != null ) {
+            var document = existing.join();
+            return document == null ? null : new Entry(document, 0);
+        }
+
+        try {
+            // another thread may have finished resolving between the cache check and registering this resolution.
+            synchronized ( entries ) {
+                var entry = entries.get(did);
+                if ( entry != null && entry.expiresAt > clock.millis()) {
+                    future.complete(entry.document);
+                    return entry;
+                }
+            }
+
+            var document = resolver.resolve(did);
+            Entry entry = null;
+            if ( document != null ) {
+                entry = new Entry(document, clock.millis() +ttl.toMillis());
+                synchronized ( entries ) {
+                    entries.put(did, entry);
+                }
+
+                if ( storeFile != null ) {
+                    append(did, entry);
+                }
+            }
+
+            future.complete(document);
+            return entry;
+        }
+
+        catch ( RuntimeException e ) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+
+        finally {
+            inFlight.remove(did);
+        }
+    }
+
+    /** Write the cache to the store file replacing its previous contents.
+     *
+     */
+    public void save() {
+        var properties = new Properties();
+        synchronized ( entries ) {
+            for ( var entry : entries.entrySet() ) {
+                properties.setProperty(entry.getKey(), entry.getValue().expiresAt +" " +entry.getValue().document );
+            }
+        }
+
+        synchronized ( storeLock ) {
+            try {
+                var temp = Files.createTempFile(storeFile.toAbsolutePath().getParent(), storeFile.getFileName().toString(), ".tmp");
+                try ( OutputStream output = Files.newOutputStream(temp)) {
+                    properties.store(output, "did document cache");
+                }
+
+                Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                appended = 0;
+            }
+
+            catch ( IOException e ) {
+                System.out.println("Unable to save did cache to " +storeFile +": " +e.getMessage());
+            }
+        }
+    }
+
+    /** Append a newly resolved document to the store file.
+     * 
+     * A later line for the same did replaces the earlier one when the file is loaded.
+     * The file is rewritten after maxEntries appends so that it does not grow without limit.
+     * @param did the resolved did
+     * @param entry its cache entry
+     */
+    private void append( String did, Entry entry ) {
+        boolean compact;
+        synchronized ( storeLock ) {
+            try {
+                PropertiesLog.append(storeFile, Map.of( did, entry.expiresAt +" " +entry.document ));
+            }
+
+            catch ( IOException e ) {
+                System.out.println("Unable to save did cache to " +storeFile +": " +e.getMessage());
+            }
+
+            compact = ++appended >= maxEntries;
+        }
+
+        if ( compact ) {
+            save();
+        }
+    }
+
+    /** Read cached documents that have not expired from the store file.
+     *
+     */
+    private void load() {
+        var properties = new Properties();
+        try ( InputStream input = Files.newInputStream(storeFile)) {
+            properties.load(input);
+        }
+
+        catch ( IOException e ) {
+            System.out.println("Unable to read did cache from " +storeFile +": " +e.getMessage());
+            return;
+        }
+
+        long now = clock.millis();
+        synchronized ( entries ) {
+            for ( var did : properties.stringPropertyNames()) {
+                var value = properties.getProperty(did);
+                int separator = value.indexOf(' ');
+                if ( separator < 0 ) {
+                    continue;
+                }
+
+                long expiresAt = Long.parseLong(value.substring(0, separator));
+                if ( expiresAt > now ) {
+                    entries.put(did, new Entry(value.substring(separator +1), expiresAt));
+                }
+            }
+        }
+    }
+
+    private static String resolveWithDidService( String did ) {
+        var resolved = DidService.INSTANCE.loadOrResolveAnyDid(did);
+        return resolved == null ? null : resolved.encode();
+    }
+
+    /** Resolves a did to its did document.
+     * @author Otto Hylli
+     *
+     */
+    @FunctionalInterface
+    public static interface Resolver {
+
+        /** Resolve the given did.
+         * @param did a did
+         * @return the did document as json. Null if the did cannot be resolved.
+         */
+        public String resolve( String did );
+    }
+
+    /** A cached did document.
+     *
+     */
+    private static class Entry {
+        final String document;
+        final long expiresAt;
+        volatile Did did;
+
+        Entry( String document, long expiresAt ) {
+            this.document = document;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Checks that the issuer did of a credential can be resolved.
+     *
+     * Works like the walt.id TrustedIssuerDidPolicy and has the same id but resolves the did through the cache.
+     * @author Otto Hylli
+     *
+     */
+    public static class TrustedIssuerDidPolicy extends VerificationPolicy {
+
+        private final DidCache cache;
+
+        public TrustedIssuerDidPolicy( DidCache cache ) {
+            this.cache = cache;
+        }
+
+        @Override
+        public String getId() {
+            return "TrustedIssuerDidPolicy";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Verify by trusted issuer did";
+        }
+
+        @Override
+        protected boolean doVerify( VerifiableCredential vc ) {
+            return vc.getIssuer() != null && cache.canResolve(vc.getIssuer());
+        }
+    }
+
+    /** Checks that the subject did of a credential can be resolved.
+     *
+     * Works like the walt.id TrustedSubjectDidPolicy and has the same id but resolves the did through the cache.
+     * @author Otto Hylli
+     *
+     */
+    public static class TrustedSubjectDidPolicy extends VerificationPolicy {
+
+        private final DidCache cache;
+
+        public TrustedSubjectDidPolicy( DidCache cache ) {
+            this.cache = cache;
+        }
+
+        @Override
+        public String getId() {
+            return "TrustedSubjectDidPolicy";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Verify by trusted subject did";
+        }
+
+        @Override
+        protected boolean doVerify( VerifiableCredential vc ) {
+            var subject = vc.getSubject();
+            if ( subject == null ) {
+                return false;
+            }
+
+            if ( subject.isEmpty()) {
+                return true;
+            }
+
+            return cache.canResolve(subject);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import id.walt.model.DidMethod;
+import id.walt.services.did.DidService;
+
+/** Pool of pregenerated holder dids assigned one per student.
+ *
+ * Generating a did and its key is slow so dids are generated in background threads whenever the number of unassigned dids drops below the low watermark
+ * until there are high watermark dids available. Assigning a did to a student only takes a did from the pool.
+ * When a cohort needs more dids than are available the missing dids are generated in parallel by the background threads while the cohort waits for them.
+ * A did is generated on the calling thread only if nothing is being generated in the background, for example because generation failed. The unassigned dids and the assignments are saved to a file so that they survive restarts.
+ * Generated dids and new assignments are appended to the file, which is rewritten with the current state when the pool is loaded and shut down.
+ * The keys of the generated dids are stored in the walt.id key store.
+ * @author Otto Hylli
+ *
+ */
+public class DidPool {
+
+    // property name prefixes in the store file.
+    private static final String AVAILABLE_PREFIX = "available.";
+    private static final String ASSIGNED_PREFIX = "assigned.";
+    // how long to wait for a did being generated before checking that the generation is still going on.
+    private static final long TAKE_WAIT_MILLIS = 100;
+
+    private final Generator generator;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final Path storeFile;
+    private final LinkedBlockingQueue<String> available = new LinkedBlockingQueue<>();
+    // holder did of each student by email.
+    private final Map<String, String> assigned = new ConcurrentHashMap<>();
+    // dids being generated at the moment. Used to not start more generation than needed to reach the high watermark.
+    private final AtomicInteger generating = new AtomicInteger();
+    private final ExecutorService refillExecutor;
+
+    /** Create a pool generating ebsi dids with the walt.id did service.
+     * @param lowWatermark refill is started when fewer dids are available.
+     * @param highWatermark refill generates dids until this many are available.
+     * @param threads number of background threads generating dids.
+     * @param storeFile file the pool is persisted to. Null if the pool should not be persisted.
+     */
+    public DidPool( int lowWatermark, int highWatermark, int threads, Path storeFile ) {
+        this( () -> DidService.INSTANCE.create(DidMethod.ebsi, null, null), lowWatermark, highWatermark, threads, storeFile );
+    }
+
+    /** Create a pool using the given did generator.
+     * @param generator creates a new did with a key.
+     * @param lowWatermark refill is started when fewer dids are available.
+     * @param highWatermark refill generates dids until this many are available.
+     * @param threads number of background threads generating dids.
+     * @param storeFile file the pool is persisted to. Null if the pool should not be persisted.
+     */
+    public DidPool( Generator generator, int lowWatermark, int highWatermark, int threads, Path storeFile ) {
+        if ( lowWatermark < 0 || highWatermark < lowWatermark || highWatermark < 1 ) {
+            throw new IllegalArgumentException("Did pool watermarks must satisfy 0 <= low <= high and high >= 1.");
+        }
+
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException("Did pool must have at least one thread.");
+        }
+
+        this.generator = generator;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.storeFile = storeFile;
+        this.refillExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "did-pool-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if ( storeFile != null && Files.exists(storeFile)) {
+            load();
+            // drop the lines of dids that were assigned in the previous run.
+            save();
+        }
+    }
+
+    /** Create a pool configured with the given config.
+     *
+     * Uses the options didPool.lowWatermark, didPool.highWatermark, didPool.threads and didPool.file.
+     * @param config application configuration.
+     * @return the pool.
+     */
+    public static DidPool fromConfig( Config config ) {
+        var low = config.get("didPool.lowWatermark");
+        var high = config.get("didPool.highWatermark");
+        var threads = config.get("didPool.threads");
+        var file = config.get("didPool.file");
+        return new DidPool( low == null ? 10 : Integer.parseInt(low), high == null ? 50 : Integer.parseInt(high),
+                threads == null ? 1 : Integer.parseInt(threads), Path.of( file == null ? "didpool.properties" : file ));
+    }
+
+    /** Start generating dids in the background if fewer than low watermark dids are available.
+     *
+     */
+    public void start() {
+        refillIfNeeded();
+    }
+
+    /** Get the holder did of the given student assigning a did from the pool if the student does not have one yet.
+     * @param email email address of the student.
+     * @return holder did of the student.
+     */
+    public String getHolderDid( String email ) {
+        var existing = assigned.get(email);
+        if ( existing != null ) {
+            return existing;
+        }
+
+        Map<String, String> changes = new LinkedHashMap<>();
+        var did = assign(email, changes);
+        append(changes);
+        return did;
+    }
+
+    /** Assign holder dids to all the given students that do not have one yet.
+     *
+     * The new assignments are saved with one write after all assignments which makes onboarding a cohort cheaper than assigning the dids one by one.
+     * @param emails email addresses of the students.
+     * @return holder did of each student in the order of the given emails.
+     */
+    public Map<String, String> assignAll( List<String> emails ) {
+        Map<String, String> dids = new LinkedHashMap<>();
+        Map<String, String> changes = new LinkedHashMap<>();
+        // start generating the missing dids in parallel before taking any of them.
+        refill( (int)emails.stream().filter( email -> !assigned.containsKey(email)).count());
+        for ( var email : emails ) {
+            var did = assigned.get(email);
+            dids.put(email, did == null ? assign(email, changes) : did);
+        }
+
+        append(changes);
+        return dids;
+    }
+
+    /** Get the holder did of the given student without assigning one.
+     * @param email email address of the student.
+     * @return holder did. Null if the student has not been assigned a did.
+     */
+    public String findHolderDid( String email ) {
+        return assigned.get(email);
+    }
+
+    /** Get the number of generated dids waiting to be assigned.
+     * @return available did count
+     */
+    public int getAvailableCount() {
+        return available.size();
+    }
+
+    /** Get the number of students that have been assigned a did.
+     * @return assignment count
+     */
+    public int getAssignedCount() {
+        return assigned.size();
+    }
+
+    /** Stop the background generation.
+     *
+     */
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+        save();
+    }
+
+    /** Assign a did to the given student.
+     * 
+     * The did is taken, and generated if the pool is empty, outside of the assignment map so that other assignments are not blocked.
+     * @param email email address of the student.
+     * @param changes the new assignment, or the returned did if another thread assigned the student first, is added here.
+     * @return holder did of the student.
+     */
+    private String assign( String email, Map<String, String> changes ) {
+        var did = takeDid();
+        var existing = assigned.putIfAbsent(email, did);
+        if ( existing != null ) {
+            // another thread assigned a did first so this one goes back to the pool.
+            available.add(did);
+            changes.put(AVAILABLE_PREFIX +did, "");
+            return existing;
+        }
+
+        changes.put(ASSIGNED_PREFIX +email, did);
+        refillIfNeeded();
+        return did;
+    }
+
+    /** Take a did from the pool waiting for one being generated if the pool is empty.
+     * @return an unassigned did.
+     */
+    private String takeDid() {
+        var did = available.poll();
+        if ( did == null ) {
+            refill(1);
+        }
+
+        while ( did == null ) {
+            if ( generating.get() == 0 || refillExecutor.isShutdown()) {
+                // nothing is being generated for the pool so the caller has to generate the did.
+                return generator.create();
+            }
+
+            try {
+                did = available.poll(TAKE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a holder did.", e);
+            }
+        }
+
+        return did;
+    }
+
+    private void refillIfNeeded() {
+        if ( available.size() +generating.get() >= lowWatermark ) {
+            return;
+        }
+
+        refill(highWatermark);
+    }
+
+    /** Generate dids in the background until the given number of dids are available or being generated.
+     * @param target number of dids needed.
+     */
+    private void refill( int target ) {
+        while ( true ) {
+            int current = generating.get();
+            int needed = target -available.size() -current;
+            if ( needed <= 0 ) {
+                return;
+            }
+
+            if ( generating.compareAndSet(current, current +needed)) {
+                for ( int i = 0; i < needed; i++ ) {
+                    refillExecutor.execute(this::generateOne);
+                }
+
+                return;
+            }
+        }
+    }
+
+    private void generateOne() {
+        try {
+            var did = generator.create();
+            available.add(did);
+            append(Map.of( AVAILABLE_PREFIX +did, "" ));
+        }
+
+        catch ( RuntimeException e ) {
+            System.out.println("Unable to generate holder did: " +e.getMessage());
+        }
+
+        finally {
+            generating.decrementAndGet();
+        }
+    }
+
+    /** Append changes to the store file.
+     * 
+     * Synchronized with save so that the changes are not appended to a file that is being replaced.
+     * @param changes properties of new available dids and assignments.
+     */
+    private synchronized void append( Map<String, String> changes ) {
+        if ( storeFile == null ) {
+            return;
+        }
+
+        try {
+            PropertiesLog.append(storeFile, changes);
+        }
+
+        catch ( IOException e ) {
+            System.out.println("Unable to save did pool to " +storeFile +": " +e.getMessage());
+        }
+    }
+
+    /** Write the pool to the store file replacing its previous contents.
+     *
+     */
+    public synchronized void save() {
+        if ( storeFile == null ) {
+            return;
+        }
+
+        var properties = new Properties();
+        List<String> dids = new ArrayList<>(available);
+        for ( var did : dids ) {
+            properties.setProperty(AVAILABLE_PREFIX +did, "");
+        }
+
+        for ( var assignment : assigned.entrySet()) {
+            properties.setProperty(ASSIGNED_PREFIX +assignment.getKey(), assignment.getValue());
+        }
+
+        try {
+            var temp = Files.createTempFile(storeFile.toAbsolutePath().getParent(), storeFile.getFileName().toString(), ".tmp");
+            try ( OutputStream output = Files.newOutputStream(temp)) {
+                properties.store(output, "holder did pool");
+            }
+
+            Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch ( IOException e ) {
+            System.out.println("Unable to save did pool to " +storeFile +": " +e.getMessage());
+        }
+    }
+
+    private void load() {
+        var properties = new Properties();
+        try ( InputStream input = Files.newInputStream(storeFile)) {
+            properties.load(input);
+        }
+
+        catch ( IOException e ) {
+            System.out.println("Unable to read did pool from " +storeFile +": " +e.getMessage());
+            return;
+        }
+
+        for ( var name : properties.stringPropertyNames()) {
+            if ( name.startsWith(AVAILABLE_PREFIX)) {
+                available.add(name.substring(AVAILABLE_PREFIX.length()));
+            }
+
+            else if ( name.startsWith(ASSIGNED_PREFIX)) {
+                assigned.put(name.substring(ASSIGNED_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+
+        // a did may have been saved as available just before it was assigned.
+        available.removeAll(assigned.values());
+    }
+
+    /** Creates a new did whose key is stored in the key store.
+     * @author Otto Hylli
+     *
+     */
+    @FunctionalInterface
+    public static interface Generator {
+
+        /** Create a did.
+         * @return the did.
+         */
+        public String create();
+    }
+}
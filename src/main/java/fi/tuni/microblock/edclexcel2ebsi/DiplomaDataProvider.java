@@ -10,7 +10,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.TreeMap;
 
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.util.CellAddress;
@@ -31,29 +31,61 @@ import id.walt.vclib.model.VerifiableCredential;
  */
 public class DiplomaDataProvider implements SignatoryDataProvider {
     
+    private static final LatencyHistogram POPULATE_TIMER = Metrics.getDefault().timer("provider.populate");
     
     // credential data from xml file
     protected CredentialData data;
     
     private String email;
     private String title;
+    // generates the uuids of the ids of the credential and its parts.
+    private IdGenerator ids;
+    // ids of the credential being created.
+    private IdGenerator.Session idSession;
+    // row the credential being created is populated from.
+    private int sourceRow = -1;
+    // credentials sheet row already looked up by the caller. Null if it is looked up with the email and title.
+    private DataTable.TableRow credential;
     
-    /** Create provider for creating credentials for the given student and Europass credential. 
+    /** Create provider for creating credentials for the given student and Europass credential using random ids.
      * @param data the credential data from which this creates credentials.
      * @param email email of the student this is used to create a credential for.
      * @param title Title of the credential from the excel this will create a credential for. Can be null if only the student id will be created.
      */
     public DiplomaDataProvider( CredentialData data, String email, String title ) {
+        this( data, email, title, new IdGenerator.RandomUuid() );
+    }
+    
+    /** Create provider for creating credentials for the given student and Europass credential. 
+     * @param data the credential data from which this creates credentials.
+     * @param email email of the student this is used to create a credential for.
+     * @param title Title of the credential from the excel this will create a credential for. Can be null if only the student id will be created.
+     * @param ids generates the ids of the credentials. A deterministic generator gets the contents of the credential and person rows as the seed.
+     */
+    public DiplomaDataProvider( CredentialData data, String email, String title, IdGenerator ids ) {
         this.data = data;
         this.email = email;
         this.title = title;
+        this.ids = ids;
+    }
+    
+    /** Create provider for creating a credential from the given credentials sheet row so that the row is not looked up again.
+     * @param data the credential data from which this creates credentials.
+     * @param email email of the student this is used to create a credential for.
+     * @param title Title of the credential from the excel this will create a credential for.
+     * @param credential row of the credentials sheet for the student and title.
+     * @param ids generates the ids of the credentials. A deterministic generator gets the contents of the credential and person rows as the seed.
+     */
+    public DiplomaDataProvider( CredentialData data, String email, String title, DataTable.TableRow credential, IdGenerator ids ) {
+        this( data, email, title, ids );
+        this.credential = credential;
     }
     
     /** Get the URI of the schema of the micro-credential this creates.
      * @return schema URI
      */
     public static String getCredentialSchema() {
-        return Europass.Companion.getTemplate().invoke().getCredentialSchema().getId();
+        return CredentialTemplates.getEuropassSchema();
     }
     
     /** Get the type of the credential this creates.
@@ -67,7 +99,7 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
      * @return schema URI
      */
     public static String getIdCredentialSchema() {
-        return VerifiableId.Companion.getTemplate().invoke().getCredentialSchema().getId();
+        return CredentialTemplates.getVerifiableIdSchema();
     }
     
     /** Get the type of the id credential this creates.
@@ -82,12 +114,28 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
      */
     @Override
     public VerifiableCredential populate( VerifiableCredential template, ProofConfig proofConfig ) {
-        if (template instanceof Europass) {
-            return createDiploma(template, proofConfig);
+        long start = System.nanoTime();
+        var event = new JfrEvents.CredentialPopulate();
+        event.begin();
+        try {
+            if (template instanceof Europass) {
+                return createDiploma(template, proofConfig);
+            }
+            
+            else if ( template instanceof VerifiableId ) {
+                return createId( template, proofConfig );
+            }
         }
         
-        else if ( template instanceof VerifiableId ) {
-            return createId( template, proofConfig );
+        finally {
+            POPULATE_TIMER.recordSince(start);
+            if ( event.shouldCommit()) {
+                event.email = email;
+                event.title = title;
+                event.row = sourceRow;
+                event.issuer = proofConfig.getIssuerDid();
+                event.commit();
+            }
         }
         
         throw new IllegalArgumentException("Only Europass and VerifiableId are supported.");
@@ -100,10 +148,12 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
      */
     private VerifiableCredential createDiploma( VerifiableCredential template, ProofConfig proofConfig ) {
         // get excel row containing the student matching the email and achievement.
-        XSSFRow credentialInfo = data.getCredential(email, title);
+        DataTable.TableRow credentialInfo = credential != null ? credential : data.getCredential(email, title);
+        sourceRow = credentialInfo.getRowNum();
         // get the corresponding personal info
         var personalInfo = data.getPerson(credentialInfo);
         //printRow(personalInfo);
+        idSession = ids.start( "diploma" +rowSeed(credentialInfo) +rowSeed(personalInfo));
         data.credentialsTable.setCurrentRow(credentialInfo.getRowNum());
         // get the organisation row the credential row points to
         data.organisationsTable.setCurrentRow( data.credentialsTable.getLinkedOrganisation().getRowNum() );
@@ -129,7 +179,7 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
         String assessment = data.achievementsTable.getAssessment();
         var wasAwardedBy = new Europass.EuropassSubject.Achieved.WasAwardedBy(generateId("awardingProcess"), List.of(proofConfig.getIssuerDid()), null, null);
         var activities = getLearningActivities();
-        var achievement = new Europass.EuropassSubject.Achieved(generateId("learningAchievement"), course, null, null, List.of(createAssessment(assessment)), activities, wasAwardedBy, null, null, List.of(createLearningSpecification()) );
+        var achievement = new Europass.EuropassSubject.Achieved(generateId("learningAchievement"), course, null, null, List.of(createAssessment(assessment, data.assessmentsTable.getRowForAssessment(assessment))), activities, wasAwardedBy, null, null, List.of(createLearningSpecification()) );
         subject.setAchieved(List.of(achievement));
         diploma.setValidFrom( dateToUtcString(data.credentialsTable.getValidFrom()));
         return diploma;
@@ -147,7 +197,9 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
         id.setIssued(null);
         id.setEvidence(null);
         int personRow = data.personsTable.getRowForPerson(email);
+        sourceRow = personRow;
         data.personsTable.setCurrentRow(personRow);
+        idSession = ids.start( "id" +rowSeed(new DataTable.TableRow(data.personsTable, personRow)));
         var subject = new VerifiableId.VerifiableIdSubject();
         subject.setId(proofConfig.getSubjectDid());
         subject.setFamilyName(data.personsTable.getFamilyName());
@@ -163,13 +215,13 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
         //subject.setIdentifier(List.of(identifier));
         subject.setPersonalIdentifier(data.personsTable.getOtherIdentifier1());
         id.setCredentialSubject(subject);
-        id.setId("identity#verifiableID#" +UUID.randomUUID().toString());
+        id.setId("identity#verifiableID#" +idSession.next("verifiableID"));
         return id;
     }
     
-    private Europass.EuropassSubject.Achieved.WasDerivedFrom createAssessment( String assessmentName ) {
+    private Europass.EuropassSubject.Achieved.WasDerivedFrom createAssessment( String assessmentName, int row ) {
         Double grade = data.personsTable.getAssesments().get(assessmentName);
-        data.assessmentsTable.setCurrentRow( data.assessmentsTable.getRowForAssessment(assessmentName));
+        data.assessmentsTable.setCurrentRow(row);
         var specificationTitle = data.assessmentsTable.getSpecificationTitle();
         var gradingSchemeTitle = data.assessmentsTable.getGradingSchemeTitle();
         Europass.EuropassSubject.Achieved.WasDerivedFrom.SpecifiedBy.GradingScheme grading = null;
@@ -178,11 +230,12 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
         }
         var specification = new Europass.EuropassSubject.Achieved.WasDerivedFrom.SpecifiedBy(generateId("assessmentSpecification"), specificationTitle, grading);
         var subAssessmentNames = data.assessmentsTable.getSubAssessments();
+        var subAssessmentRows = data.assessmentsTable.getSubAssessmentRows();
         List<Europass.EuropassSubject.Achieved.WasDerivedFrom> subAssessments = null;
         if ( !subAssessmentNames.isEmpty()) {
             subAssessments = new ArrayList<>();
-            for ( String subAssessment : subAssessmentNames ) {
-                subAssessments.add(createAssessment(subAssessment));
+            for ( int i = 0; i < subAssessmentRows.length; i++ ) {
+                subAssessments.add(createAssessment(subAssessmentNames.get(i), subAssessmentRows[i]));
             }
         }
         
@@ -196,9 +249,11 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
         specification.setLearningOpportunityType(List.of(data.achievementsTable.getLearningOpportunityType()));
         specification.setECTSCreditPoints(data.achievementsTable.getEctsCreditPoints());
         var outcomes = new ArrayList<Europass.EuropassSubject.Achieved.SpecifiedBy.LearningOutcome>();
-        for ( String outcomeName : data.achievementsTable.getLearningOutcomes()) {
-            var outcome = new Europass.EuropassSubject.Achieved.SpecifiedBy.LearningOutcome(generateId("learningOutcome"), outcomeName, null, null, null, null, null, null);
-            data.outcomesTable.setCurrentRow(data.outcomesTable.getRowForLearningOutcome(outcomeName));
+        var outcomeNames = data.achievementsTable.getLearningOutcomes();
+        var outcomeRows = data.achievementsTable.getLearningOutcomeRows();
+        for ( int i = 0; i < outcomeRows.length; i++ ) {
+            var outcome = new Europass.EuropassSubject.Achieved.SpecifiedBy.LearningOutcome(generateId("learningOutcome"), outcomeNames.get(i), null, null, null, null, null, null);
+            data.outcomesTable.setCurrentRow(outcomeRows[i]);
             outcome.setDefinition(data.outcomesTable.getDescription());
             outcome.setRelatedESCOSkill(data.outcomesTable.getEscoSkills());
             outcomes.add(outcome);
@@ -209,9 +264,11 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
     
     private List< Europass.EuropassSubject.Achieved.WasInfluencedBy > getLearningActivities() {
         List< Europass.EuropassSubject.Achieved.WasInfluencedBy > activities = new ArrayList<>();
-        for ( String activityName : data.achievementsTable.getActivities() ) {
-            int row = data.activitiesTable.getRowForActivity(activityName);
-            data.activitiesTable.setCurrentRow(row);
+        var activityNames = data.achievementsTable.getActivities();
+        var activityRows = data.achievementsTable.getActivityRows();
+        for ( int i = 0; i < activityRows.length; i++ ) {
+            String activityName = activityNames.get(i);
+            data.activitiesTable.setCurrentRow(activityRows[i]);
             var specificationTitle = data.activitiesTable.getSpecificationTitle();
             String activityType = data.activitiesTable.getActivityType();
             var specification = new Europass.EuropassSubject.Achieved.WasInfluencedBy.SpecifiedBy( generateId("learningActivitySpecification"), specificationTitle, null, List.of(activityType), null, null, null, null, null, null, null, null, null, null, null);
@@ -275,12 +332,50 @@ public class DiplomaDataProvider implements SignatoryDataProvider {
         return sheet.getRow(address.getRow()).getCell(address.getColumn());
     }
     
-    /** Generate a random id for the given type of object.
+    /** Generate an id for the given type of object in the credential being created.
      * @param type Type that will be a part of the id.
-     * @return Id of the form urn:epass:type:random_uuid
+     * @return Id of the form urn:epass:type:uuid
      */
-    private static String generateId(String type) {
-        return "urn:epass:" +type +":" +UUID.randomUUID().toString();
+    private String generateId(String type) {
+        return "urn:epass:" +type +":" +idSession.next(type);
+    }
+    
+    /** Get the values of the declared columns of the given row for seeding ids.
+     * 
+     * The columns are taken in the order of their headings and columns with the same heading, such as the grades, in their order on the sheet.
+     * This way the seed does not depend on which other columns the workbook storage has loaded. Missing cells are empty.
+     * Numbers are given as their shortest text so that the seed is the same with every workbook storage.
+     * @param row a row of a DataTable
+     * @return the values each preceded by a tab.
+     */
+    static String rowSeed( DataTable.TableRow row ) {
+        var table = row.table();
+        var storage = table.getStorage();
+        var declared = table.getColumns();
+        int headerRow = table.getHeaderRowNum();
+        // column numbers of the declared headings sorted by heading.
+        var columns = new TreeMap<String, List<Integer>>();
+        int headerCellCount = storage.getCellCount(headerRow);
+        for ( int column = 0; column < headerCellCount; column++ ) {
+            if ( storage.getCellType(headerRow, column) == CellType.STRING ) {
+                var heading = storage.getString(headerRow, column);
+                if ( declared.contains(heading)) {
+                    columns.computeIfAbsent(heading, key -> new ArrayList<>()).add(column);
+                }
+            }
+        }
+        
+        var seed = new StringBuilder();
+        for ( var headingColumns : columns.values()) {
+            for ( int column : headingColumns ) {
+                seed.append('\t');
+                if ( storage.getCellType(row.getRowNum(), column) != CellType._NONE ) {
+                    seed.append(storage.getString(row.getRowNum(), column));
+                }
+            }
+        }
+        
+        return seed.toString();
     }
     
     /** Indicates that the stucture of the excel file does not match what was expected.
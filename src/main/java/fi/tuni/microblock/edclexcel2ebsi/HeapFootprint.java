@@ -0,0 +1,538 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/** Measures how much heap a credentials workbook retains once loaded and estimates it for a larger number of persons.
+ *
+ * Sizes are measured as the difference of the used heap after full garbage collections so they are approximate
+ * and the JVM should not be doing anything else while measuring. Running with a fixed heap size (-Xms equal to -Xmx) gives the most stable numbers.
+ * The workbook is measured as a whole, the shared strings by parsing them on their own, the column lookups of the DataTables by resolving every header,
+ * the data rows of each sheet by removing them and the rest of the sheet by removing it from the workbook in memory. POI can remove sheets only from a package opened for writing,
+ * so a temporary copy of the workbook file is opened instead of the file itself.
+ * A workbook can also be measured as loaded by the service through a WorkbookStorage, which shows the heap and the off heap memory of the projected sheet and off heap storages
+ * and the heap of the string dictionary used in finding rows.
+ * @author Otto Hylli
+ *
+ */
+public class HeapFootprint {
+
+    // sheets that have a row for each person and credential and grow with the number of persons.
+    private static final Set<String> PER_PERSON_SHEETS = Set.of( PersonsTable.SHEET_NAME, CredentialsTable.SHEET_NAME );
+    // maximum number of garbage collections for one measurement.
+    private static final int GC_ROUNDS = 10;
+    // used heap readings closer than this to each other are considered stable.
+    private static final long GC_TOLERANCE_BYTES = 64 * 1024;
+    private static final long GC_PAUSE_MILLIS = 20;
+
+    /** Retained heap of the shared strings or the column lookup of a DataTable.
+     * @param name name of the part or the sheet of the lookup.
+     * @param bytes retained heap in bytes.
+     * @param count number of unique shared strings or cached columns.
+     */
+    public static record Part( String name, long bytes, int count ) {
+
+        /** Get the retained heap per counted item.
+         * @return bytes per item or 0 if nothing was counted.
+         */
+        public long bytesPerItem() {
+            return count == 0 ? 0 : bytes / count;
+        }
+    }
+
+    /** Retained heap of one sheet.
+     * @param name name of the sheet.
+     * @param bytes retained heap of the whole sheet in bytes.
+     * @param rowBytes part of bytes retained by the data rows below the header row. 0 for sheets without a DataTable.
+     * @param rows number of data rows.
+     * @param strings number of string cells on the data rows.
+     */
+    public static record Sheet( String name, long bytes, long rowBytes, int rows, int strings ) {
+
+        /** Get the retained heap per data row.
+         * @return bytes per row or 0 if the sheet has no data rows.
+         */
+        public long bytesPerRow() {
+            return rows == 0 ? 0 : rowBytes / rows;
+        }
+    }
+
+    /** Memory retained by a workbook loaded to a WorkbookStorage together with the DataTables reading it.
+     * @param fileName the measured workbook.
+     * @param type storage the workbook was loaded to.
+     * @param heapBytes heap retained by the storage.
+     * @param offHeapBytes memory reserved by the storage outside the heap.
+     * @param lookups heap retained by the column lookup of each DataTable.
+     * @param dictionary heap retained by the string dictionary and the encoded columns with the number of strings as the count.
+     * @param persons number of person rows.
+     */
+    public static record StorageFootprint( String fileName, WorkbookStorage.Type type, long heapBytes, long offHeapBytes, List<Part> lookups, Part dictionary, int persons ) {
+
+        /** Get the total heap retained by the loaded credential data.
+         * @return storage, dictionary and lookups in bytes.
+         */
+        public long getTotal() {
+            long total = heapBytes +dictionary.bytes();
+            for ( var lookup : lookups ) {
+                total += lookup.bytes();
+            }
+
+            return total;
+        }
+
+        /** Estimate the memory the storage would use with the given number of persons.
+         *
+         * The bytes are scaled linearly with the number of persons.
+         * Since the other sheets do not grow with the persons the estimate is an upper bound.
+         * @param targetPersons number of persons.
+         * @param bytes measured heap or off heap bytes of the storage.
+         * @return estimated bytes.
+         */
+        public long estimate( long targetPersons, long bytes ) {
+            double scale = persons == 0 ? 1 : (double)targetPersons / persons;
+            return Math.round(bytes *scale);
+        }
+
+        /** Estimate the heap the loaded credential data would retain with the given number of persons.
+         *
+         * The storage and the string dictionary are scaled with the number of persons and the column lookups, which only grow with the columns, are added as measured.
+         * @param targetPersons number of persons.
+         * @return estimated heap bytes.
+         */
+        public long estimateHeap( long targetPersons ) {
+            return estimate(targetPersons, heapBytes) +estimate(targetPersons, dictionary.bytes()) +getTotal() -heapBytes -dictionary.bytes();
+        }
+
+        /** Get a report of the measured footprint for printing.
+         * @param targetPersons if greater than 0 the report includes an estimate for this many persons.
+         * @return report with a line for each part.
+         */
+        public String report( long targetPersons ) {
+            var report = new StringBuilder();
+            report.append(String.format( "Workbook %s in %s storage: %s retained with %d persons%n", fileName, type, formatBytes(getTotal()), persons ));
+            report.append(String.format( "  %-32s %10s%n", "Storage heap", formatBytes(heapBytes)));
+            report.append(String.format( "  %-32s %10s%n", "Storage off heap", formatBytes(offHeapBytes)));
+            report.append(String.format( "  %-32s %10s %8d strings%n", dictionary.name(), formatBytes(dictionary.bytes()), dictionary.count()));
+            report.append(String.format( "Column lookups:%n" ));
+            for ( var lookup : lookups ) {
+                report.append(String.format( "  %-32s %10s %8d columns%n", lookup.name(), formatBytes(lookup.bytes()), lookup.count()));
+            }
+
+            if ( targetPersons > 0 ) {
+                report.append(String.format( "Estimated for %d persons: %s heap (maximum heap of this JVM %s) and %s off heap%n", targetPersons,
+                        formatBytes(estimateHeap(targetPersons)), formatBytes(Runtime.getRuntime().maxMemory()), formatBytes(estimate(targetPersons, offHeapBytes))));
+            }
+
+            return report.toString();
+        }
+    }
+
+    private final String fileName;
+    private final long workbook;
+    private final Part sharedStrings;
+    private final List<Sheet> sheets;
+    private final List<Part> lookups;
+    private final int persons;
+
+    private HeapFootprint( String fileName, long workbook, Part sharedStrings, List<Sheet> sheets, List<Part> lookups, int persons ) {
+        this.fileName = fileName;
+        this.workbook = workbook;
+        this.sharedStrings = sharedStrings;
+        this.sheets = sheets;
+        this.lookups = lookups;
+        this.persons = persons;
+    }
+
+    /** Load the given workbook and measure the heap retained by its parts.
+     * @param file credentials excel file.
+     * @return the measured footprint.
+     * @throws IOException the file could not be read.
+     */
+    public static HeapFootprint measure( Path file ) throws IOException {
+        var copy = Files.createTempFile("footprint", ".xlsx");
+        try {
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            return measure(file, copy);
+        }
+
+        finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    /** Measure the heap retained by the given workbook when loaded to the given storage as the service loads it.
+     *
+     * Only the sheets and columns read by the service are loaded. The shared strings and sheets are not measured separately.
+     * @param file credentials excel file.
+     * @param type storage the workbook is loaded to.
+     * @param directory directory for the memory mapped files of the off heap storage. If null direct buffers are used.
+     * @return the measured footprint.
+     * @throws IOException the file could not be read.
+     */
+    public static StorageFootprint measure( Path file, WorkbookStorage.Type type, Path directory ) throws IOException {
+        warmUp();
+        long before = usedHeap();
+        try ( var storage = WorkbookStorage.open(file, type, directory, CredentialData.TABLE_COLUMNS)) {
+            long retained = positive(usedHeap() -before);
+            var data = new CredentialData(storage);
+            int persons = data.personsTable.getLastRowNum() -data.personsTable.getHeaderRowNum();
+            var lookups = measureLookups(data);
+            var dictionary = measureDictionary(data);
+            long offHeap = storage instanceof OffHeapStorage ? ((OffHeapStorage)storage).getOffHeapBytes() : 0;
+            return new StorageFootprint(file.toString(), type, retained, offHeap, lookups, dictionary, persons);
+        }
+    }
+
+    /** Measure the workbook from a copy of it.
+     * @param file the original file used in the report.
+     * @param copy copy of the file which is opened for writing but never saved.
+     * @return the measured footprint.
+     * @throws IOException the copy could not be read.
+     */
+    private static HeapFootprint measure( Path file, Path copy ) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(copy.toFile(), PackageAccess.READ_WRITE);
+        }
+
+        catch ( InvalidFormatException e ) {
+            throw new IOException("Not an excel workbook: " +file, e);
+        }
+
+        try {
+            warmUp();
+            var sharedStrings = measureSharedStrings(pkg);
+            long before = usedHeap();
+            var workbook = new XSSFWorkbook(pkg);
+            long retained = positive(usedHeap() -before);
+            var data = new CredentialData(workbook);
+            int persons = data.personsTable.getLastRowNum() -data.personsTable.getHeaderRowNum();
+            var headerRows = new HashMap<String, Integer>();
+            for ( var table : data.getTables()) {
+                headerRows.put(table.getSheetName(), table.getHeaderRowNum());
+            }
+
+            var lookups = measureLookups(data);
+            data = null;
+            var sheets = measureSheets(workbook, headerRows);
+            Reference.reachabilityFence(workbook);
+            return new HeapFootprint(file.toString(), retained, sharedStrings, sheets, lookups, persons);
+        }
+
+        finally {
+            // removing the sheets is not saved even to the copy.
+            pkg.revert();
+        }
+    }
+
+    /** Create a small workbook in memory so that the one time initialisation of POI and XmlBeans is not counted to the first measurement.
+     * @throws IOException never for an in memory workbook.
+     */
+    private static void warmUp() throws IOException {
+        try ( var workbook = new XSSFWorkbook()) {
+            workbook.createSheet().createRow(0).createCell(0).setCellValue("warm up");
+            workbook.getSharedStringSource().getCount();
+        }
+    }
+
+    /** Measure the shared strings by parsing them separately from the workbook.
+     * @param pkg the opened workbook package.
+     * @return retained heap of the shared strings.
+     * @throws IOException the shared strings could not be read.
+     */
+    private static Part measureSharedStrings( OPCPackage pkg ) throws IOException {
+        var parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if ( parts.isEmpty()) {
+            return new Part("Shared strings", 0, 0);
+        }
+
+        long before = usedHeap();
+        var strings = new SharedStringsTable(parts.get(0));
+        long retained = positive(usedHeap() -before);
+        var part = new Part("Shared strings", retained, strings.getUniqueCount());
+        Reference.reachabilityFence(strings);
+        return part;
+    }
+
+    /** Measure the column lookups of the DataTables by resolving all of their columns.
+     * @param data credential data of the workbook.
+     * @return retained heap of the lookup of each table.
+     */
+    private static List<Part> measureLookups( CredentialData data ) {
+        var lookups = new ArrayList<Part>();
+        for ( var table : data.getTables()) {
+            long before = usedHeap();
+            int columns = table.resolveColumns();
+            lookups.add(new Part(table.getSheetName(), positive(usedHeap() -before), columns));
+        }
+
+        Reference.reachabilityFence(data);
+        return lookups;
+    }
+
+    /** Measure the string dictionary by finding the first credential and its organisation as the service does so that the columns used in finding rows are encoded.
+     * @param data credential data of the workbook with its column lookups resolved.
+     * @return retained heap of the dictionary and the codes of the encoded columns.
+     */
+    private static Part measureDictionary( CredentialData data ) {
+        long before = usedHeap();
+        var credentials = data.credentialsTable;
+        int first = credentials.getHeaderRowNum() +1;
+        if ( first <= credentials.getLastRowNum()) {
+            try {
+                var credential = new DataTable.TableRow(credentials, first);
+                var email = data.personsTable.getEmail(data.getPerson(credential).getRowNum());
+                var found = data.findCredential(email, credentials.getCellValueString(first, CredentialsTable.TITLE_COLUMN));
+                if ( found.isPresent()) {
+                    data.getIssuingOrganisation(found.get());
+                }
+            }
+
+            catch ( DiplomaDataProvider.ExcelStructureException | DiplomaDataProvider.RequiredDataNotFoundException e ) {
+                // the columns encoded before the problem are measured.
+            }
+        }
+
+        var dictionary = new Part("String dictionary", positive(usedHeap() -before), data.getDictionary().size());
+        Reference.reachabilityFence(data);
+        return dictionary;
+    }
+
+    /** Measure each sheet by removing first the data rows of a sheet and then the sheet from the workbook one sheet at a time.
+     * @param workbook the loaded workbook which is left without sheets.
+     * @param headerRows header row numbers of the sheets that have a DataTable.
+     * @return retained heap of each sheet in workbook order.
+     */
+    private static List<Sheet> measureSheets( XSSFWorkbook workbook, Map<String, Integer> headerRows ) {
+        var sheets = new ArrayList<Sheet>();
+        for ( int i = workbook.getNumberOfSheets() -1; i >= 0; i-- ) {
+            var name = workbook.getSheetName(i);
+            var headerRow = headerRows.get(name);
+            // no local variable for the sheet so that it can be collected after it has been removed.
+            var rows = headerRow == null ? new Sheet(name, 0, 0, 0, 0) : measureRows(workbook.getSheetAt(i), headerRow);
+            long before = usedHeap();
+            workbook.removeSheetAt(i);
+            long bytes = positive(before -usedHeap()) +rows.rowBytes();
+            sheets.add(0, new Sheet(name, bytes, rows.rowBytes(), rows.rows(), rows.strings()));
+        }
+
+        return sheets;
+    }
+
+    /** Measure the rows below the header row of a sheet by removing them.
+     * @param sheet the sheet whose data rows are removed.
+     * @param headerRow number of the header row.
+     * @return the data rows with the whole sheet bytes left as 0.
+     */
+    private static Sheet measureRows( XSSFSheet sheet, int headerRow ) {
+        var rows = new ArrayList<Row>();
+        int strings = 0;
+        for ( var row : sheet ) {
+            if ( row.getRowNum() > headerRow ) {
+                rows.add(row);
+                for ( var cell : row ) {
+                    if ( cell.getCellType() == CellType.STRING ) {
+                        strings++;
+                    }
+                }
+            }
+        }
+
+        int count = rows.size();
+        long before = usedHeap();
+        for ( var row : rows ) {
+            sheet.removeRow(row);
+        }
+
+        rows.clear();
+        return new Sheet(sheet.getSheetName(), 0, positive(before -usedHeap()), count, strings);
+    }
+
+    /** Get the used heap after garbage collecting until it does not change anymore.
+     * @return used heap in bytes.
+     */
+    static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for ( int i = 0; i < GC_ROUNDS; i++ ) {
+            System.gc();
+            try {
+                Thread.sleep(GC_PAUSE_MILLIS);
+            }
+
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            long previous = used;
+            used = runtime.totalMemory() -runtime.freeMemory();
+            if ( Math.abs(previous -used) < GC_TOLERANCE_BYTES ) {
+                break;
+            }
+        }
+
+        return used;
+    }
+
+    // a measured difference can be slightly negative if something else was freed at the same time.
+    private static long positive( long bytes ) {
+        return Math.max(0, bytes);
+    }
+
+    /** Get the heap retained by the loaded workbook including its sheets, shared strings and styles.
+     * @return bytes
+     */
+    public long getWorkbook() {
+        return workbook;
+    }
+
+    /** Get the heap retained by the shared strings.
+     * @return shared strings with the number of unique strings as the count.
+     */
+    public Part getSharedStrings() {
+        return sharedStrings;
+    }
+
+    /** Get the heap retained by each sheet.
+     * @return sheets in workbook order.
+     */
+    public List<Sheet> getSheets() {
+        return sheets;
+    }
+
+    /** Get the heap retained by the column lookups of each DataTable.
+     * @return lookups named after their sheets with the number of cached columns as the count.
+     */
+    public List<Part> getLookups() {
+        return lookups;
+    }
+
+    /** Get the number of person rows of the measured workbook.
+     * @return persons
+     */
+    public int getPersons() {
+        return persons;
+    }
+
+    /** Get the heap of the workbook not retained by its sheets or shared strings, for example styles, defined names and the package.
+     * @return bytes
+     */
+    public long getOther() {
+        long parts = sharedStrings.bytes();
+        for ( var sheet : sheets ) {
+            parts += sheet.bytes();
+        }
+
+        return positive(workbook -parts);
+    }
+
+    /** Get the total heap retained by the loaded credential data.
+     * @return workbook and lookups in bytes.
+     */
+    public long getTotal() {
+        long total = workbook;
+        for ( var lookup : lookups ) {
+            total += lookup.bytes();
+        }
+
+        return total;
+    }
+
+    /** Estimate the heap the credential data would retain with the given number of persons.
+     *
+     * The data rows of the persons and credentials sheets are scaled linearly with the number of persons and each of their string cells
+     * is assumed to add a new shared string of the average size. The rest of these sheets, the other sheets, the lookups and the rest of the workbook
+     * are assumed to stay the same. The estimate is therefore an upper bound for the shared strings since names of achievements for example repeat.
+     * @param targetPersons number of persons.
+     * @return estimated bytes.
+     */
+    public long estimate( long targetPersons ) {
+        double scale = persons == 0 ? 1 : (double)targetPersons / persons;
+        double estimate = getOther() +sharedStrings.bytes();
+        for ( var sheet : sheets ) {
+            estimate += sheet.bytes();
+            if ( PER_PERSON_SHEETS.contains(sheet.name())) {
+                estimate += sheet.rowBytes() *(scale -1);
+                estimate += (double)sheet.strings() *(scale -1) *sharedStrings.bytesPerItem();
+            }
+        }
+
+        for ( var lookup : lookups ) {
+            estimate += lookup.bytes();
+        }
+
+        return Math.max(0, Math.round(estimate));
+    }
+
+    /** Get a report of the measured footprint for printing.
+     * @param targetPersons if greater than 0 the report includes an estimate for this many persons.
+     * @return report with a line for each part.
+     */
+    public String report( long targetPersons ) {
+        var report = new StringBuilder();
+        report.append(String.format( "Workbook %s: %s retained with %d persons%n", fileName, formatBytes(getTotal()), persons ));
+        report.append(String.format( "Sheets:%n" ));
+        for ( var sheet : sheets ) {
+            report.append(String.format( "  %-32s %10s %8d rows %10s/row%n", sheet.name(), formatBytes(sheet.bytes()), sheet.rows(), formatBytes(sheet.bytesPerRow())));
+        }
+
+        report.append(String.format( "  %-32s %10s %8d unique %7s/string%n", sharedStrings.name(), formatBytes(sharedStrings.bytes()), sharedStrings.count(), formatBytes(sharedStrings.bytesPerItem())));
+        report.append(String.format( "  %-32s %10s%n", "Styles, names and package", formatBytes(getOther())));
+        report.append(String.format( "Column lookups:%n" ));
+        for ( var lookup : lookups ) {
+            report.append(String.format( "  %-32s %10s %8d columns%n", lookup.name(), formatBytes(lookup.bytes()), lookup.count()));
+        }
+
+        if ( targetPersons > 0 ) {
+            long estimate = estimate(targetPersons);
+            report.append(String.format( "Estimated for %d persons: %s (maximum heap of this JVM %s)%n", targetPersons, formatBytes(estimate), formatBytes(Runtime.getRuntime().maxMemory())));
+        }
+
+        return report.toString();
+    }
+
+    /** Format bytes with a binary unit.
+     * @param bytes number of bytes
+     * @return for example 12.3 MiB
+     */
+    static String formatBytes( long bytes ) {
+        if ( bytes < 1024 ) {
+            return bytes +" B";
+        }
+
+        var units = "KMGT";
+        double value = bytes;
+        int unit = -1;
+        while ( value >= 1024 && unit < units.length() -1 ) {
+            value /= 1024;
+            unit++;
+        }
+
+        return String.format( Locale.ROOT, "%.1f %ciB", value, units.charAt(unit));
+    }
+}
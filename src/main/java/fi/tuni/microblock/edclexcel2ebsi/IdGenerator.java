@@ -0,0 +1,150 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/** Generates the UUIDs used in the ids of credentials and their parts.
+ *
+ * A session is started for each credential with a seed describing its input rows and asked for one id for each part of the credential.
+ * Implementations are selected with the config option idGenerator which is random, timeOrdered, deterministic or the name of a class implementing this interface
+ * with a public no argument constructor.
+ * @author Otto Hylli
+ *
+ */
+public interface IdGenerator {
+
+    /** Start generating ids for one credential.
+     * @param seed describes the input the credential is created from. Only used by generators that derive ids from the input.
+     * @return session giving the ids of the credential.
+     */
+    public Session start( String seed );
+
+    /** Ids of one credential. Used by one thread at a time.
+     *
+     */
+    public interface Session {
+
+        /** Get the next id for the given type of object.
+         * @param type type of the object for example credential or learningOutcome.
+         * @return new UUID.
+         */
+        public UUID next( String type );
+    }
+
+    /** Create the generator selected by the given config.
+     * @param config application configuration. The option idGenerator selects the generator. Defaults to random.
+     * @return the generator
+     * @throws IllegalArgumentException the option names an unknown generator.
+     */
+    public static IdGenerator fromConfig( Config config ) {
+        var name = config.get("idGenerator");
+        if ( name == null || name.equals("random")) {
+            return new RandomUuid();
+        }
+
+        if ( name.equals("timeOrdered")) {
+            return new TimeOrdered();
+        }
+
+        if ( name.equals("deterministic")) {
+            return new Deterministic();
+        }
+
+        try {
+            return (IdGenerator)Class.forName(name).getDeclaredConstructor().newInstance();
+        }
+
+        catch ( ClassNotFoundException | ClassCastException | NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e ) {
+            throw new IllegalArgumentException("Unknown id generator " +name +". Use random, timeOrdered, deterministic or an IdGenerator class name.", e);
+        }
+    }
+
+    /** Random version 4 UUIDs from the shared SecureRandom of UUID.randomUUID.
+     *
+     */
+    public static class RandomUuid implements IdGenerator {
+
+        private static final Session SESSION = type -> UUID.randomUUID();
+
+        @Override
+        public Session start( String seed ) {
+            return SESSION;
+        }
+    }
+
+    /** Time ordered version 7 UUIDs with random bits from a SecureRandom of the calling thread.
+     *
+     * Threads do not share a random generator so generation does not contend under parallel issuance.
+     * The random bits are as unpredictable as those of random UUIDs but the ids reveal when they were created.
+     */
+    public static class TimeOrdered implements IdGenerator {
+
+        private static final Session SESSION = type -> newUuid();
+        private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+        @Override
+        public Session start( String seed ) {
+            return SESSION;
+        }
+
+        /** Create a version 7 UUID for the current time.
+         * @return new UUID
+         */
+        static UUID newUuid() {
+            var random = RANDOM.get();
+            // 48 bit millisecond timestamp, version 7 and 12 random bits.
+            long mostSignificant = ( System.currentTimeMillis() << 16 ) | 0x7000L | ( random.nextLong() & 0xfffL );
+            // variant 2 and 62 random bits.
+            long leastSignificant = ( random.nextLong() & 0x3fffffffffffffffL ) | 0x8000000000000000L;
+            return new UUID( mostSignificant, leastSignificant );
+        }
+    }
+
+    /** Ids derived from the seed so the same input rows always produce the same ids.
+     *
+     * An id is the SHA-256 hash of the seed, the object type and the number of earlier ids of the same type in the session marked as a version 8 UUID.
+     * Issuing the same rows twice gives the same credential ids which makes the output of runs comparable.
+     */
+    public static class Deterministic implements IdGenerator {
+
+        private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            }
+
+            catch ( NoSuchAlgorithmException e ) {
+                throw new IllegalStateException("SHA-256 not supported.", e);
+            }
+        });
+
+        @Override
+        public Session start( String seed ) {
+            Map<String, Integer> counts = new HashMap<>();
+            return type -> {
+                int index = counts.merge(type, 1, Integer::sum) -1;
+                var hash = DIGEST.get().digest((seed +'\n' +type +'\n' +index).getBytes(StandardCharsets.UTF_8));
+                long mostSignificant = 0;
+                long leastSignificant = 0;
+                for ( int i = 0; i < 8; i++ ) {
+                    mostSignificant = ( mostSignificant << 8 ) | ( hash[i] & 0xff );
+                    leastSignificant = ( leastSignificant << 8 ) | ( hash[i +8] & 0xff );
+                }
+
+                mostSignificant = ( mostSignificant & ~0xf000L ) | 0x8000L;
+                leastSignificant = ( leastSignificant & 0x3fffffffffffffffL ) | 0x8000000000000000L;
+                return new UUID( mostSignificant, leastSignificant );
+            };
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Maps issuing organisations to issuer dids and keeps a signer pool for each issuer.
+ *
+ * An organisation is identified by its legal identifier in the organisations sheet. Its issuer did is taken from the config option organisation.LEGAL_IDENTIFIER.did.
+ * If there is no such option and the legal identifier is itself a did it is used as the issuer did. Organisations without a legal identifier use the default issuer
+ * and other organisations have no issuer.
+ * The signer pool of an issuer is created and its key loaded when the issuer is first used.
+ * @author Otto Hylli
+ *
+ */
+public class IssuerRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IssuerRegistry.class);
+    // config option name parts for organisation issuers.
+    private static final String PREFIX = "organisation.";
+    private static final String DID_SUFFIX = ".did";
+    private static final String KEY_FILE_SUFFIX = ".keyFile";
+
+    private final String defaultIssuerDid;
+    private final String holderDid;
+    private final int threads;
+    // issuer did by organisation legal identifier.
+    private final Map<String, String> organisationIssuers;
+    // key file by issuer did for the configured issuers that have one.
+    private final Map<String, String> keyFiles;
+    private final Map<String, SignerPool> signers = new ConcurrentHashMap<>();
+
+    /** Create a registry with the given organisation issuers.
+     * @param defaultIssuerDid issuer for organisations without an own issuer.
+     * @param holderDid default credential subject of the signers.
+     * @param threads number of worker threads of each signer pool.
+     * @param organisationIssuers issuer did by organisation legal identifier.
+     * @param keyFiles key file by issuer did.
+     */
+    public IssuerRegistry( String defaultIssuerDid, String holderDid, int threads, Map<String, String> organisationIssuers, Map<String, String> keyFiles ) {
+        this.defaultIssuerDid = defaultIssuerDid;
+        this.holderDid = holderDid;
+        this.threads = threads;
+        this.organisationIssuers = Map.copyOf(organisationIssuers);
+        this.keyFiles = Map.copyOf(keyFiles);
+    }
+
+    /** Create a registry with the organisation issuers from the config.
+     *
+     * Uses the options organisation.LEGAL_IDENTIFIER.did and organisation.LEGAL_IDENTIFIER.keyFile.
+     * @param config application configuration.
+     * @param defaultIssuerDid issuer for organisations without an own issuer.
+     * @param holderDid default credential subject of the signers.
+     * @param threads number of worker threads of each signer pool.
+     * @return the registry.
+     */
+    public static IssuerRegistry fromConfig( Config config, String defaultIssuerDid, String holderDid, int threads ) {
+        Map<String, String> organisationIssuers = new HashMap<>();
+        Map<String, String> keyFiles = new HashMap<>();
+        for ( var name : config.getNames(PREFIX)) {
+            if ( !name.endsWith(DID_SUFFIX)) {
+                continue;
+            }
+
+            var organisation = name.substring(PREFIX.length(), name.length() -DID_SUFFIX.length());
+            var did = config.get(name);
+            organisationIssuers.put(organisation, did);
+            var keyFile = config.get(PREFIX +organisation +KEY_FILE_SUFFIX);
+            if ( keyFile != null ) {
+                keyFiles.put(did, keyFile);
+            }
+        }
+
+        return new IssuerRegistry( defaultIssuerDid, holderDid, threads, organisationIssuers, keyFiles );
+    }
+
+    /** Get the issuer did of the given organisation.
+     * @param legalIdentifier legal identifier of the organisation. Can be null or blank.
+     * @return configured issuer did, the legal identifier if it is a did or the default issuer did for an organisation without a legal identifier.
+     * @throws DiplomaDataProvider.RequiredDataNotFoundException the legal identifier is not a did and no issuer is configured for it.
+     */
+    public String getIssuerDid( String legalIdentifier ) throws DiplomaDataProvider.RequiredDataNotFoundException {
+        return findIssuerDid(legalIdentifier).orElseThrow(() -> new DiplomaDataProvider.RequiredDataNotFoundException( "No issuer for organisation " +legalIdentifier.strip() +"."));
+    }
+
+    /** Find the issuer did of the given organisation.
+     *
+     * Use this instead of getIssuerDid when the organisation may have no issuer so that its credentials are not signed by another issuer.
+     * @param legalIdentifier legal identifier of the organisation. Can be null or blank.
+     * @return configured issuer did, the legal identifier if it is a did or the default issuer did for an organisation without a legal identifier. Empty if there is no issuer.
+     */
+    public Optional<String> findIssuerDid( String legalIdentifier ) {
+        if ( legalIdentifier == null || legalIdentifier.isBlank()) {
+            return Optional.of(defaultIssuerDid);
+        }
+
+        var identifier = legalIdentifier.strip();
+        var configured = organisationIssuers.get(identifier);
+        if ( configured != null ) {
+            return Optional.of(configured);
+        }
+
+        return identifier.startsWith("did:") ? Optional.of(identifier) : Optional.empty();
+    }
+
+    /** Get the signer pool of the given issuer creating it if necessary.
+     *
+     * The issuer key of a new pool is loaded outside the map of pools so that reading it does not block getting the pools of other issuers.
+     * @param issuerDid did of the issuer.
+     * @return signer pool with the issuer key loaded if it was found.
+     */
+    public SignerPool getSigner( String issuerDid ) {
+        var signer = signers.get(issuerDid);
+        if ( signer != null ) {
+            return signer;
+        }
+
+        signer = new SignerPool( issuerDid, holderDid, threads );
+        var existing = signers.putIfAbsent(issuerDid, signer);
+        if ( existing != null ) {
+            return existing;
+        }
+
+        try {
+            signer.warmUp();
+        }
+
+        catch ( RuntimeException e ) {
+            // issuer key not in the key store yet. Signing will report the problem if it is still missing.
+            LOGGER.warn("Unable to load the key of issuer " +issuerDid +": " +e.getMessage());
+        }
+
+        return signer;
+    }
+
+    /** Get the signer pool of the given organisation.
+     * @param legalIdentifier legal identifier of the organisation.
+     * @return signer pool of the organisation's issuer.
+     * @throws DiplomaDataProvider.RequiredDataNotFoundException the organisation has no issuer.
+     */
+    public SignerPool getSignerForOrganisation( String legalIdentifier ) throws DiplomaDataProvider.RequiredDataNotFoundException {
+        return getSigner(getIssuerDid(legalIdentifier));
+    }
+
+    /** Get the key files of the configured organisation issuers.
+     * @return key file by issuer did.
+     */
+    public Map<String, String> getKeyFiles() {
+        return keyFiles;
+    }
+
+    /** Get the number of worker threads of each signer pool.
+     * @return thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Get the did used for organisations without an own issuer.
+     * @return default issuer did
+     */
+    public String getDefaultIssuerDid() {
+        return defaultIssuerDid;
+    }
+
+    /** Stop the worker threads of all signer pools.
+     *
+     */
+    public void shutdown() {
+        signers.values().forEach(SignerPool::shutdown);
+    }
+}
@@ -0,0 +1,158 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/** Java Flight Recorder events of the issuance and verification phases.
+ *
+ * The events can be correlated with the GC, I/O and lock events of the JVM in a recording.
+ * Each event is begun before and committed after its phase. The fields are set only if shouldCommit returns true so when JFR is not recording
+ * the events cost no more than an allocation the JIT usually removes.
+ * @author Otto Hylli
+ *
+ */
+public class JfrEvents {
+
+    private static final String CATEGORY = "edclexcel2ebsi";
+
+    /** Start a recording of the JVM and the events of this tool to the given file.
+     *
+     * Uses the JDK's profile configuration. The file is written when the recording is stopped or closed.
+     * @param file jfr file the recording is written to.
+     * @return the started recording.
+     * @throws IOException the file cannot be written.
+     */
+    public static Recording startRecording( Path file ) throws IOException {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration("profile");
+        }
+
+        catch ( ParseException e ) {
+            throw new IOException("Invalid JFR configuration: " +e.getMessage(), e);
+        }
+
+        var recording = new Recording(configuration);
+        for ( var event : new Class[] { WorkbookLoad.class, SheetLoad.class, CredentialPopulate.class, CredentialSign.class, PresentationCreate.class, PolicyVerification.class } ) {
+            recording.enable(event);
+        }
+
+        recording.setDestination(file);
+        recording.setToDisk(true);
+        recording.start();
+        return recording;
+    }
+
+    /** Loading the excel file into memory. */
+    @Name("edclexcel2ebsi.WorkbookLoad")
+    @Label("Workbook Load")
+    @Category(CATEGORY)
+    @Description("Reading and parsing the credentials excel file.")
+    public static class WorkbookLoad extends Event {
+        @Label("File")
+        public String file;
+    }
+
+    /** Loading one sheet of the excel file into the workbook storage. */
+    @Name("edclexcel2ebsi.SheetLoad")
+    @Label("Sheet Load")
+    @Category(CATEGORY)
+    @Description("Parsing a sheet of the credentials excel into the off heap storage or projecting a parsed sheet to the columns that are used.")
+    public static class SheetLoad extends Event {
+        @Label("Sheet")
+        public String sheet;
+
+        @Label("Rows")
+        public int rows;
+
+        @Label("Storage")
+        @Description("SHEET or OFF_HEAP.")
+        public String storage;
+    }
+
+    /** Extracting the data of one credential from the excel. */
+    @Name("edclexcel2ebsi.CredentialPopulate")
+    @Label("Credential Populate")
+    @Category(CATEGORY)
+    @Description("Populating a credential from the excel data.")
+    public static class CredentialPopulate extends Event {
+        @Label("Email")
+        public String email;
+
+        @Label("Title")
+        @Description("Title of the credential. Empty for a student id.")
+        public String title;
+
+        @Label("Row")
+        @Description("Row of the credentials sheet or for a student id of the persons sheet.")
+        public int row;
+
+        @Label("Issuer")
+        public String issuer;
+    }
+
+    /** Serializing and signing one credential. */
+    @Name("edclexcel2ebsi.CredentialSign")
+    @Label("Credential Sign")
+    @Category(CATEGORY)
+    @Description("Serializing and signing a populated credential.")
+    public static class CredentialSign extends Event {
+        @Label("Credential Id")
+        public String credentialId;
+
+        @Label("Issuer")
+        public String issuer;
+
+        @Label("Subject")
+        public String subject;
+
+        @Label("Proof Type")
+        public String proofType;
+    }
+
+    /** Creating a verifiable presentation. */
+    @Name("edclexcel2ebsi.PresentationCreate")
+    @Label("Presentation Create")
+    @Category(CATEGORY)
+    @Description("Creating a verifiable presentation of credentials.")
+    public static class PresentationCreate extends Event {
+        @Label("Holder")
+        public String holder;
+
+        @Label("Credentials")
+        public int credentials;
+    }
+
+    /** Checking one document with one verification policy. */
+    @Name("edclexcel2ebsi.PolicyVerification")
+    @Label("Policy Verification")
+    @Category(CATEGORY)
+    @Description("Checking a credential or presentation with a verification policy.")
+    public static class PolicyVerification extends Event {
+        @Label("Policy")
+        public String policy;
+
+        @Label("Credential Id")
+        public String credentialId;
+
+        @Label("Issuer")
+        public String issuer;
+
+        @Label("Passed")
+        public boolean passed;
+    }
+}
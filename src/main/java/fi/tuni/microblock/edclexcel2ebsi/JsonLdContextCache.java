@@ -0,0 +1,190 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import com.apicatalog.jsonld.JsonLdError;
+import com.apicatalog.jsonld.document.JsonDocument;
+import com.apicatalog.jsonld.http.media.MediaType;
+import com.apicatalog.jsonld.loader.DocumentLoader;
+import com.danubetech.verifiablecredentials.jsonld.VerifiableCredentialContexts;
+
+import foundation.identity.jsonld.ConfigurableDocumentLoader;
+import info.weboftrust.ldsignatures.jsonld.LDSecurityContexts;
+
+/** Preloaded and preparsed JSON-LD context documents for LD proof signing and verification.
+ *
+ * Contexts are read from the contexts bundled with this library and from an optional directory the operator can add context files to.
+ * The bundled context files are copies of the documents at the URLs listed in the bundled index.
+ * Both have a contexts.properties index whose keys are context URLs and values file names relative to the index.
+ * Installing the cache puts the parsed documents to the local cache of the document loaders used by the walt.id JSON-LD credential service
+ * so that canonicalization never fetches or parses a known context again and works offline.
+ * @author Otto Hylli
+ *
+ */
+public class JsonLdContextCache {
+
+    // index file name in the bundled resources and in the operator directory.
+    public static final String INDEX_FILE = "contexts.properties";
+    // resource directory for bundled contexts.
+    private static final String BUNDLED_DIRECTORY = "/jsonld-contexts/";
+
+    private final Map<URI, JsonDocument> contexts = new HashMap<>();
+
+    /** Create a cache with the bundled contexts.
+     *
+     */
+    public JsonLdContextCache() {
+        loadBundled();
+    }
+
+    /** Create a cache with the bundled contexts and contexts from the given directory.
+     * @param directory directory with a contexts.properties index. Can be null.
+     * @throws IOException directory or a context file could not be read.
+     */
+    public JsonLdContextCache( Path directory ) throws IOException {
+        this();
+        if ( directory != null ) {
+            loadDirectory(directory);
+        }
+    }
+
+    /** Create cache configured with the jsonld.contextDirectory option.
+     * @param config application configuration.
+     * @return the cache.
+     * @throws IOException context directory could not be read.
+     */
+    public static JsonLdContextCache fromConfig( Config config ) throws IOException {
+        var directory = config.get("jsonld.contextDirectory");
+        return new JsonLdContextCache( directory == null ? null : Path.of(directory));
+    }
+
+    /** Add the cached contexts to the document loaders used in LD proof signing and verification.
+     *
+     * The contexts already known by the loaders are also shared between them.
+     * @throws IllegalStateException a document loader does not allow adding contexts to its cache.
+     */
+    public void install() {
+        var loaders = List.of( LDSecurityContexts.DOCUMENT_LOADER, VerifiableCredentialContexts.DOCUMENT_LOADER );
+        Map<URI, JsonDocument> all = new HashMap<>();
+        for ( var loader : loaders ) {
+            var localCache = getLocalCache(loader);
+            if ( localCache != null ) {
+                all.putAll(localCache);
+            }
+        }
+
+        all.putAll(contexts);
+        for ( var loader : loaders ) {
+            var localCache = getLocalCache(loader);
+            if ( localCache != null ) {
+                try {
+                    localCache.putAll(all);
+                    ((ConfigurableDocumentLoader)loader).setEnableLocalCache(true);
+                }
+
+                catch ( UnsupportedOperationException e ) {
+                    throw new IllegalStateException("Unable to install JSON-LD contexts: the cache of " +loader.getClass().getName() +" cannot be modified.", e);
+                }
+            }
+        }
+    }
+
+    /** Get the given context URLs that are not in the cache.
+     * @param urls context URLs for example from the @context of a credential.
+     * @return URLs that would have to be fetched.
+     */
+    public List<String> getMissingContexts( Collection<String> urls ) {
+        return urls.stream().filter(url -> !contexts.containsKey(URI.create(url)) && !isKnownByLoaders(URI.create(url))).collect(Collectors.toList());
+    }
+
+    /** Get the number of cached contexts.
+     * @return context count
+     */
+    public int size() {
+        return contexts.size();
+    }
+
+    private boolean isKnownByLoaders( URI url ) {
+        for ( var loader : List.of( LDSecurityContexts.DOCUMENT_LOADER, VerifiableCredentialContexts.DOCUMENT_LOADER )) {
+            var localCache = getLocalCache(loader);
+            if ( localCache != null && localCache.containsKey(url)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Map<URI, JsonDocument> getLocalCache( DocumentLoader loader ) {
+        if ( loader instanceof ConfigurableDocumentLoader ) {
+            return ((ConfigurableDocumentLoader)loader).getLocalCache();
+        }
+
+        return null;
+    }
+
+    private void loadBundled() {
+        var index = new Properties();
+        try ( var input = JsonLdContextCache.class.getResourceAsStream(BUNDLED_DIRECTORY +INDEX_FILE)) {
+            if ( input == null ) {
+                return;
+            }
+
+            index.load(input);
+            for ( var url : index.stringPropertyNames()) {
+                var resource = BUNDLED_DIRECTORY +index.getProperty(url);
+                try ( var context = JsonLdContextCache.class.getResourceAsStream(resource)) {
+                    if ( context == null ) {
+                        throw new IllegalStateException("Bundled JSON-LD context " +resource +" missing.");
+                    }
+
+                    contexts.put(URI.create(url), parse(context, resource));
+                }
+            }
+        }
+
+        catch ( IOException e ) {
+            throw new IllegalStateException("Unable to read bundled JSON-LD contexts: " +e.getMessage(), e);
+        }
+    }
+
+    private void loadDirectory( Path directory ) throws IOException {
+        var indexFile = directory.resolve(INDEX_FILE);
+        var index = new Properties();
+        try ( var input = Files.newInputStream(indexFile)) {
+            index.load(input);
+        }
+
+        for ( var url : index.stringPropertyNames()) {
+            var file = directory.resolve(index.getProperty(url));
+            try ( var context = Files.newInputStream(file)) {
+                contexts.put(URI.create(url), parse(context, file.toString()));
+            }
+        }
+    }
+
+    private static JsonDocument parse( InputStream input, String name ) throws IOException {
+        try {
+            return JsonDocument.of(MediaType.JSON_LD, input);
+        }
+
+        catch ( JsonLdError e ) {
+            throw new IOException("Invalid JSON-LD context " +name +": " +e.getMessage(), e);
+        }
+    }
+}
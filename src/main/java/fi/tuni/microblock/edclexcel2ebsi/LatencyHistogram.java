@@ -0,0 +1,168 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A thread safe histogram for recording latencies in nanoseconds.
+ *
+ * Values are placed to log-linear buckets like in a HDR histogram: each power of two range is split to a fixed number of linear sub buckets
+ * so that the relative error of a reported percentile is at most 1 / SUB_BUCKETS. Recording does not allocate and does not lock.
+ * @author Otto Hylli
+ *
+ */
+public class LatencyHistogram {
+
+    // number of linear sub buckets for each power of two. Must be a power of two.
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // enough buckets for any positive long value.
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS +1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Record a latency.
+     * @param nanos latency in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record( long nanos ) {
+        if ( nanos < 0 ) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** Record the time elapsed since the given start time.
+     * @param startNanos start time got from System.nanoTime().
+     */
+    public void recordSince( long startNanos ) {
+        record( System.nanoTime() -startNanos );
+    }
+
+    /** Get the number of recorded values.
+     * @return value count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** Get the sum of all recorded values.
+     * @return sum in nanoseconds
+     */
+    public long getTotal() {
+        return sum.sum();
+    }
+
+    /** Get the largest recorded value.
+     * @return maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /** Get the mean of recorded values.
+     * @return mean in nanoseconds. 0 if nothing has been recorded.
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double)getTotal() / n;
+    }
+
+    /** Get the value at the given percentile.
+     * @param percentile percentile between 0 and 100.
+     * @return Upper bound of the bucket containing the percentile in nanoseconds. 0 if nothing has been recorded.
+     */
+    public long getPercentile( double percentile ) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if ( total == 0 ) {
+            return 0;
+        }
+
+        long target = Math.max( 1, (long)Math.ceil( total * percentile / 100.0 ));
+        long seen = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= target ) {
+                return Math.min( bucketUpperBound(i), getMax() );
+            }
+        }
+
+        return getMax();
+    }
+
+    /** Add all values recorded to the given histogram to this histogram.
+     * @param other histogram to add.
+     */
+    public void add( LatencyHistogram other ) {
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            long value = other.counts.get(i);
+            if ( value != 0 ) {
+                counts.addAndGet(i, value);
+            }
+        }
+
+        count.add(other.getCount());
+        sum.add(other.getTotal());
+        max.accumulateAndGet(other.getMax(), Math::max);
+    }
+
+    /** Summary of the histogram in milliseconds for printing.
+     * @return count, mean, median, 90th and 99th percentiles and max.
+     */
+    public String summary() {
+        return String.format( "count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", getCount(), toMillis(getMean()), toMillis(getPercentile(50)), toMillis(getPercentile(90)), toMillis(getPercentile(99)), toMillis(getMax()));
+    }
+
+    private static double toMillis( double nanos ) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /** Get the bucket the given value belongs to.
+     * @param value a non negative value
+     * @return bucket index
+     */
+    private static int bucketIndex( long value ) {
+        if ( value < SUB_BUCKETS ) {
+            return (int)value;
+        }
+
+        // position of the highest bit decides the power of two range and the next bits the linear sub bucket.
+        int highestBit = 63 -Long.numberOfLeadingZeros(value);
+        int shift = highestBit -SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift) & (SUB_BUCKETS -1);
+        return (shift +1) * SUB_BUCKETS +subBucket;
+    }
+
+    /** Get the largest value that belongs to the given bucket.
+     * @param index bucket index
+     * @return largest value of the bucket
+     */
+    static long bucketUpperBound( int index ) {
+        if ( index < SUB_BUCKETS ) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS -1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS | subBucket) << shift;
+        return lowerBound +(1L << shift) -1;
+    }
+}
@@ -9,8 +9,9 @@ package fi.tuni.microblock.edclexcel2ebsi;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.OptionalInt;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /** DataTable for accessing information about learning outcomes. 
  * @author hylli
@@ -18,41 +19,63 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  */
 public class LearningOutcomesTable extends DataTable {
 
+    public static final String SHEET_NAME = "Learning Outcomes";
+    public static final int HEADER_ROW_NUM = 7;
+    
     // column heading names
     public final static String TITLE_COLUMN = "Title";
     public final static String DESCRIPTION_COLUMN = "Description";
     public final static String[] ESCO_SKILL_COLUMNS = {"Related ESCO Skill 1 URL", "Related ESCO Skill 2 URL", "Related ESCO Skill 3 URL" };
+
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, HEADER_ROW_NUM,
+            Set.of( TITLE_COLUMN, DESCRIPTION_COLUMN ),
+            Set.of( ESCO_SKILL_COLUMNS ));
+    
+    // the columns read by this table.
+    private final StringColumn title = stringColumn(TITLE_COLUMN);
+    private final StringColumn description = stringColumn(DESCRIPTION_COLUMN);
+    private final List<StringColumn> escoSkills = new ArrayList<>();
     
     /** Create a LearningOutcomesTable.
      * @param data excel workbook containing the sheet.
      * @param credentials CredentialData this will be a part of.
      */
-    public LearningOutcomesTable( XSSFWorkbook data, CredentialData credentials ) {
+    public LearningOutcomesTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
+        // a workbook may have fewer skill columns.
+        for ( String skillColumn : ESCO_SKILL_COLUMNS) {
+            escoSkills.add(optionalStringColumn(skillColumn));
+        }
     }
 
     @Override
     public String getSheetName() {
-        return "Learning Outcomes";
+        return SHEET_NAME;
     }
 
     @Override
     public int getHeaderRowNum() {
-        return 7;
+        return HEADER_ROW_NUM;
+    }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
     }
     
     /** Get the title of the learning outcome on the current row.
      * @return learning outcome title.
      */
     public String getTitle() {
-        return getCellValueStringForCurrentRow(TITLE_COLUMN);
+        return title.getForCurrentRow();
     }
     
     /** Get the description of the learning outcome on the current row.
      * @return learning outcome description.
      */
     public String getDescription() {
-        return getCellValueStringForCurrentRow(DESCRIPTION_COLUMN);
+        return description.getForCurrentRow();
     }
     
     /** Find the row number for the learning outcome with the given title.
@@ -63,13 +86,21 @@ public class LearningOutcomesTable extends DataTable {
         return getRowWithValues(Map.of( TITLE_COLUMN, title)).getRowNum();
     }
     
+    /** Find the row number for the learning outcome with the given title without throwing if there is none.
+     * @param title learning outcome title.
+     * @return row number or empty if there is no such learning outcome.
+     */
+    public OptionalInt findRowForLearningOutcome( String title ) {
+        return findRowNumWithValue( TITLE_COLUMN, title );
+    }
+    
     /** Get the esco skills of the learning outcome on the current row.
      * @return list of esco skill urls.
      */
     public List<String> getEscoSkills() {
         List<String> skills = new ArrayList<>();
-        for ( String skillColumn : ESCO_SKILL_COLUMNS) {
-            String skill = getCellValueStringForCurrentRow(skillColumn);
+        for ( var skillColumn : escoSkills ) {
+            String skill = skillColumn.getForCurrentRow();
             if ( skill != null && skill.length() > 0 ) {
                 skills.add(skill);
             }
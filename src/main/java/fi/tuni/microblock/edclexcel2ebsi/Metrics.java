@@ -0,0 +1,209 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpServer;
+
+/** Registry of named timers and counters for the stages of issuing and verifying credentials.
+ *
+ * Timers are LatencyHistograms and counters LongAdders so recording to them from many threads neither locks nor allocates.
+ * Classes look their timers and counters up once and keep them in fields so the registry map is not used on the hot path.
+ * The default registry collects the metrics of the whole process. The metrics can be printed as a report or exported in the Prometheus text format
+ * to a file for example for the node exporter textfile collector or from an HTTP endpoint.
+ * @author Otto Hylli
+ *
+ */
+public class Metrics {
+
+    /** Prefix of the exported Prometheus metric names. */
+    public static final String PROMETHEUS_PREFIX = "edclexcel2ebsi_";
+    private static final Metrics DEFAULT = new Metrics();
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /** Get the registry shared by the whole process.
+     * @return the default registry
+     */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /** Get the timer with the given name creating it if it does not exist.
+     * @param name name of the timer such as workbook.load.
+     * @return the timer recording latencies in nanoseconds.
+     */
+    public LatencyHistogram timer( String name ) {
+        return timers.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /** Get the counter with the given name creating it if it does not exist.
+     * @param name name of the counter such as credentials.issued.
+     * @return the counter
+     */
+    public LongAdder counter( String name ) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /** Get the timers.
+     * @return timers sorted by name.
+     */
+    public Map<String, LatencyHistogram> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    /** Get the current values of the counters.
+     * @return counter values sorted by name.
+     */
+    public Map<String, Long> getCounters() {
+        var values = new TreeMap<String, Long>();
+        counters.forEach(( name, counter ) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    /** Get a report of the used timers and counters for printing.
+     * @return one line for each timer and counter that has recorded something.
+     */
+    public String report() {
+        var report = new StringBuilder();
+        for ( var timer : getTimers().entrySet()) {
+            if ( timer.getValue().getCount() > 0 ) {
+                report.append(String.format( "%-32s %s total=%.3fms%n", timer.getKey(), timer.getValue().summary(), timer.getValue().getTotal() / 1e6 ));
+            }
+        }
+
+        for ( var counter : getCounters().entrySet()) {
+            if ( counter.getValue() > 0 ) {
+                report.append(String.format( "%-32s %d%n", counter.getKey(), counter.getValue()));
+            }
+        }
+
+        return report.toString();
+    }
+
+    /** Get the metrics in the Prometheus text exposition format.
+     *
+     * Timers are summaries in seconds with the median, 90th and 99th percentiles. Counters get the _total suffix.
+     * @return metrics text
+     */
+    public String toPrometheus() {
+        var text = new StringBuilder();
+        for ( var timer : getTimers().entrySet()) {
+            var name = prometheusName(timer.getKey()) +"_seconds";
+            var histogram = timer.getValue();
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for ( var quantile : QUANTILES ) {
+                text.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(histogram.getPercentile(quantile *100) / 1e9).append('\n');
+            }
+
+            text.append(name).append("_sum ").append(histogram.getTotal() / 1e9).append('\n');
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+
+        for ( var counter : getCounters().entrySet()) {
+            var name = prometheusName(counter.getKey()) +"_total";
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(counter.getValue()).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    /** Write the metrics to the given file in the Prometheus text format.
+     *
+     * The file is replaced atomically so a reader never sees a partially written file.
+     * @param file file to write
+     * @throws IOException the file could not be written.
+     */
+    public void writePrometheus( Path file ) throws IOException {
+        var directory = file.toAbsolutePath().getParent();
+        var temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temporary, toPrometheus());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /** Write the metrics to the given file at the given interval until closed.
+     *
+     * Closing writes the file one more time so that it has the final values.
+     * @param file file to write in the Prometheus text format.
+     * @param intervalMillis time between writes.
+     * @return stops the writing when closed.
+     */
+    public Closeable exportPeriodically( Path file, long intervalMillis ) {
+        var executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            var thread = new Thread(runnable, "metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                writePrometheus(file);
+            }
+
+            catch ( IOException e ) {
+                System.out.println("Unable to write metrics to " +file +": " +e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS );
+        return () -> {
+            executor.shutdownNow();
+            writePrometheus(file);
+        };
+    }
+
+    /** Serve the metrics in the Prometheus text format from http://localhost:PORT/metrics until closed.
+     * @param port port to listen to. 0 picks a free port.
+     * @return the server
+     * @throws IOException the server could not be started.
+     */
+    public HttpServer serve( int port ) throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/metrics", exchange -> {
+            var body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try ( var output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        var executor = Executors.newSingleThreadExecutor( runnable -> {
+            var thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    /** Convert a metric name to a valid Prometheus metric name.
+     * @param name metric name such as lookup.Persons
+     * @return prefixed lower case name with only letters, digits and underscores.
+     */
+    static String prometheusName( String name ) {
+        return PROMETHEUS_PREFIX +name.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+    }
+}
@@ -0,0 +1,188 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Growable memory outside the heap addressed with long offsets.
+ *
+ * The memory consists of 1 MiB pages that are either direct byte buffers or mapped from a temporary file.
+ * Records are appended at 8 byte aligned offsets so that a record never crosses a page boundary, which lets a record be read with the absolute methods of a single page.
+ * The file of a mapped buffer is deleted when the buffer is closed or at the latest when the JVM exits.
+ * Direct buffers count against -XX:MaxDirectMemorySize which defaults to the maximum heap size, while mapped buffers are only limited by the disk and the page cache.
+ * Reading is thread safe once nothing is written anymore.
+ * @author Otto Hylli
+ *
+ */
+class OffHeapBuffer implements Closeable {
+
+    static final int PAGE_BITS = 20;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final long PAGE_MASK = PAGE_SIZE -1;
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    // file of a mapped buffer, null for direct buffers.
+    private final FileChannel channel;
+    // number of bytes used.
+    private long size = 0;
+
+    private OffHeapBuffer( FileChannel channel ) {
+        this.channel = channel;
+    }
+
+    /** Create a buffer of direct byte buffers.
+     * @return the buffer
+     */
+    static OffHeapBuffer direct() {
+        return new OffHeapBuffer(null);
+    }
+
+    /** Create a buffer memory mapped from a new temporary file in the given directory.
+     * @param directory directory for the file.
+     * @return the buffer
+     * @throws IOException the file could not be created.
+     */
+    static OffHeapBuffer mapped( Path directory ) throws IOException {
+        var file = Files.createTempFile(directory, "edclexcel2ebsi", ".bin");
+        var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        return new OffHeapBuffer(channel);
+    }
+
+    /** Reserve space for a record at the end of the buffer.
+     * @param length length of the record in bytes at most PAGE_SIZE.
+     * @return offset of the record.
+     * @throws IOException a page could not be mapped.
+     */
+    long append( int length ) throws IOException {
+        if ( length > PAGE_SIZE ) {
+            throw new IllegalArgumentException("Record of " +length +" bytes does not fit a page.");
+        }
+
+        // align to 8 bytes so that longs in records are aligned.
+        long offset = (size +7) & ~7L;
+        if ( (offset & PAGE_MASK) +length > PAGE_SIZE ) {
+            // start the record from the next page.
+            offset = (offset & ~PAGE_MASK) +PAGE_SIZE;
+        }
+
+        ensureCapacity(offset +length);
+        size = offset +length;
+        return offset;
+    }
+
+    /** Make sure the buffer has pages up to the given offset.
+     * @param end offset after the last byte needed.
+     * @throws IOException a page could not be mapped.
+     */
+    void ensureCapacity( long end ) throws IOException {
+        while ( (long)pages.size() << PAGE_BITS < end ) {
+            ByteBuffer page;
+            if ( channel == null ) {
+                page = ByteBuffer.allocateDirect(PAGE_SIZE);
+            }
+
+            else {
+                page = channel.map(FileChannel.MapMode.READ_WRITE, (long)pages.size() << PAGE_BITS, PAGE_SIZE);
+            }
+
+            pages.add(page.order(ByteOrder.nativeOrder()));
+        }
+    }
+
+    /** Get the number of bytes used.
+     * @return offset after the last appended record.
+     */
+    long getSize() {
+        return size;
+    }
+
+    /** Get the number of bytes reserved outside the heap.
+     * @return number of pages times the page size.
+     */
+    long getCapacity() {
+        return (long)pages.size() << PAGE_BITS;
+    }
+
+    private ByteBuffer page( long offset ) {
+        return pages.get((int)(offset >>> PAGE_BITS));
+    }
+
+    byte getByte( long offset ) {
+        return page(offset).get((int)(offset & PAGE_MASK));
+    }
+
+    void putByte( long offset, byte value ) {
+        page(offset).put((int)(offset & PAGE_MASK), value);
+    }
+
+    int getInt( long offset ) {
+        return page(offset).getInt((int)(offset & PAGE_MASK));
+    }
+
+    void putInt( long offset, int value ) {
+        page(offset).putInt((int)(offset & PAGE_MASK), value);
+    }
+
+    long getLong( long offset ) {
+        return page(offset).getLong((int)(offset & PAGE_MASK));
+    }
+
+    void putLong( long offset, long value ) {
+        page(offset).putLong((int)(offset & PAGE_MASK), value);
+    }
+
+    void get( long offset, byte[] bytes ) {
+        page(offset).get((int)(offset & PAGE_MASK), bytes);
+    }
+
+    void put( long offset, byte[] bytes ) {
+        page(offset).put((int)(offset & PAGE_MASK), bytes);
+    }
+
+    /** Append a record of the given bytes preceded by their length.
+     * @param bytes the bytes
+     * @return offset of the record.
+     * @throws IOException a page could not be mapped.
+     */
+    long putBytes( byte[] bytes ) throws IOException {
+        long offset = append(Integer.BYTES +bytes.length);
+        putInt(offset, bytes.length);
+        put(offset +Integer.BYTES, bytes);
+        return offset;
+    }
+
+    /** Read a record written with putBytes.
+     * @param offset offset of the record.
+     * @return the bytes
+     */
+    byte[] getBytes( long offset ) {
+        var bytes = new byte[getInt(offset)];
+        get(offset +Integer.BYTES, bytes);
+        return bytes;
+    }
+
+    /** Release the pages and delete the file of a mapped buffer.
+     *
+     * The memory is freed when the garbage collector collects the pages.
+     */
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        size = 0;
+        if ( channel != null ) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+/** Workbook storage that keeps the cells and strings outside the heap.
+ *
+ * Created by the StreamingWorkbookLoader. All sheets share one buffer for their rows and strings. Strings are stored once as UTF-8
+ * with their length and cells refer to them by their offset. A row is a record of its cell count followed by a long value and a type byte for each cell.
+ * A number is stored as the bits of the double, a boolean as 0 or 1 and a string or an error as the offset of its text.
+ * A shared string is stored as its index in the shared strings of the workbook and the offset of its text is in the shared strings buffer.
+ * Each sheet has its own buffer with the offset of the record of each row or -1 for rows that are not in the file.
+ * Only the row directories and a small object per sheet are on the heap, so the heap used does not depend on the size of the sheets.
+ * @author Otto Hylli
+ *
+ */
+public class OffHeapStorage implements WorkbookStorage {
+
+    // cell types stored as their index in this array.
+    private static final CellType[] TYPES = { CellType._NONE, CellType.NUMERIC, CellType.STRING, CellType.BLANK, CellType.BOOLEAN, CellType.ERROR, CellType.STRING };
+    static final byte NONE = 0;
+    static final byte NUMERIC = 1;
+    static final byte STRING = 2;
+    static final byte BLANK = 3;
+    static final byte BOOLEAN = 4;
+    static final byte ERROR = 5;
+    static final byte SHARED_STRING = 6;
+
+    // directory for the mapped files or null for direct buffers.
+    private final Path directory;
+    // rows and strings of all sheets.
+    private final OffHeapBuffer data;
+    private final Map<String, Table> tables = new HashMap<>();
+    private final List<OffHeapBuffer> buffers = new ArrayList<>();
+    // offset of each shared string used by the cells or -1.
+    private OffHeapBuffer sharedStrings;
+    private final boolean date1904;
+
+    /** Create an empty storage.
+     * @param directory directory for memory mapped files or null to use direct buffers.
+     * @param date1904 do the dates of the workbook use the 1904 date system.
+     * @throws IOException a mapped file could not be created.
+     */
+    OffHeapStorage( Path directory, boolean date1904 ) throws IOException {
+        this.directory = directory;
+        this.date1904 = date1904;
+        data = newBuffer();
+    }
+
+    /** Create a new buffer that is closed with this storage.
+     * @return direct or mapped buffer.
+     * @throws IOException a mapped file could not be created.
+     */
+    OffHeapBuffer newBuffer() throws IOException {
+        var buffer = directory == null ? OffHeapBuffer.direct() : OffHeapBuffer.mapped(directory);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /** Store a string.
+     * @param value the string
+     * @return offset of the string.
+     * @throws IOException a page could not be mapped.
+     */
+    long putString( String value ) throws IOException {
+        return data.putBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Store a string read from another buffer.
+     * @param buffer buffer with the string
+     * @param offset offset of the string in the buffer.
+     * @return offset of the string in this storage.
+     * @throws IOException a page could not be mapped.
+     */
+    long copyString( OffHeapBuffer buffer, long offset ) throws IOException {
+        return data.putBytes(buffer.getBytes(offset));
+    }
+
+    /** Read a stored string.
+     * @param offset offset of the string.
+     * @return the string
+     */
+    String getString( long offset ) {
+        return new String(data.getBytes(offset), StandardCharsets.UTF_8);
+    }
+
+    /** Set the offsets of the shared strings the cells of type SHARED_STRING refer to.
+     * @param sharedStrings buffer with the offset of each shared string.
+     */
+    void setSharedStrings( OffHeapBuffer sharedStrings ) {
+        this.sharedStrings = sharedStrings;
+    }
+
+    /** Store a row.
+     * @param types type of each cell.
+     * @param values value of each cell.
+     * @param count number of cells.
+     * @return offset of the row.
+     * @throws IOException a page could not be mapped.
+     */
+    long putRow( byte[] types, long[] values, int count ) throws IOException {
+        long offset = data.append(Long.BYTES +count *(Long.BYTES +1));
+        data.putInt(offset, count);
+        for ( int i = 0; i < count; i++ ) {
+            data.putLong(offset +Long.BYTES +(long)i *Long.BYTES, values[i]);
+            data.putByte(offset +Long.BYTES +(long)count *Long.BYTES +i, types[i]);
+        }
+
+        return offset;
+    }
+
+    /** Add a loaded sheet.
+     * @param table the sheet
+     */
+    void addTable( Table table ) {
+        tables.put(table.getSheetName(), table);
+    }
+
+    @Override
+    public TableStorage getTable( String sheetName ) throws DiplomaDataProvider.ExcelStructureException {
+        var table = tables.get(sheetName);
+        if ( table == null ) {
+            throw new DiplomaDataProvider.ExcelStructureException("Workbook does not have sheet " +sheetName);
+        }
+
+        return table;
+    }
+
+    /** Get the number of bytes reserved outside the heap.
+     * @return bytes
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for ( var buffer : buffers ) {
+            bytes += buffer.getCapacity();
+        }
+
+        return bytes;
+    }
+
+    /** Release the buffers and delete the mapped files.
+     *
+     * The tables cannot be used after this.
+     */
+    @Override
+    public void close() throws IOException {
+        for ( var buffer : buffers ) {
+            buffer.close();
+        }
+
+        tables.clear();
+    }
+
+    /** Storage of one sheet.
+     * @author Otto Hylli
+     *
+     */
+    static class Table implements TableStorage {
+
+        private final OffHeapStorage storage;
+        private final String sheetName;
+        // offset of each row in the data buffer or -1.
+        private final OffHeapBuffer rows;
+        private final int lastRowNum;
+
+        /** Create a table.
+         * @param storage storage the rows are in.
+         * @param sheetName name of the sheet.
+         * @param rows row directory.
+         * @param lastRowNum number of the last row.
+         */
+        Table( OffHeapStorage storage, String sheetName, OffHeapBuffer rows, int lastRowNum ) {
+            this.storage = storage;
+            this.sheetName = sheetName;
+            this.rows = rows;
+            this.lastRowNum = lastRowNum;
+        }
+
+        @Override
+        public String getSheetName() {
+            return sheetName;
+        }
+
+        @Override
+        public int getLastRowNum() {
+            return lastRowNum;
+        }
+
+        /** Get the offset of the given row.
+         * @param row row number
+         * @return offset or -1 if there is no such row.
+         */
+        private long row( int row ) {
+            if ( row < 0 || row > lastRowNum ) {
+                return -1;
+            }
+
+            return rows.getLong((long)row *Long.BYTES);
+        }
+
+        @Override
+        public int getCellCount( int row ) {
+            long offset = row(row);
+            return offset < 0 ? 0 : storage.data.getInt(offset);
+        }
+
+        /** Get the type of the given cell as it is stored.
+         * @param row row number
+         * @param column column number
+         * @return one of the type constants.
+         */
+        private byte type( int row, int column ) {
+            long offset = row(row);
+            if ( offset < 0 || column < 0 ) {
+                return NONE;
+            }
+
+            int count = storage.data.getInt(offset);
+            if ( column >= count ) {
+                return NONE;
+            }
+
+            return storage.data.getByte(offset +Long.BYTES +(long)count *Long.BYTES +column);
+        }
+
+        /** Get the stored value of the given cell whose type is not NONE.
+         * @param row row number
+         * @param column column number
+         * @return the value
+         */
+        private long value( int row, int column ) {
+            return storage.data.getLong(row(row) +Long.BYTES +(long)column *Long.BYTES);
+        }
+
+        @Override
+        public CellType getCellType( int row, int column ) {
+            return TYPES[type(row, column)];
+        }
+
+        @Override
+        public String getString( int row, int column ) {
+            switch ( type(row, column)) {
+            case STRING:
+            case ERROR:
+                return storage.getString(value(row, column));
+            case SHARED_STRING:
+                return storage.getString(storage.sharedStrings.getLong(value(row, column) *Long.BYTES));
+            case NUMERIC:
+                return NumberToTextConverter.toText(Double.longBitsToDouble(value(row, column)));
+            case BOOLEAN:
+                return value(row, column) != 0 ? "TRUE" : "FALSE";
+            default:
+                return "";
+            }
+        }
+
+        @Override
+        public double getNumber( int row, int column ) {
+            var type = type(row, column);
+            if ( type == NONE || type == BLANK ) {
+                return 0;
+            }
+
+            if ( type != NUMERIC ) {
+                throw new IllegalStateException("Cannot get a numeric value from a " +TYPES[type] +" cell");
+            }
+
+            return Double.longBitsToDouble(value(row, column));
+        }
+
+        @Override
+        public Date getDate( int row, int column ) {
+            var type = type(row, column);
+            if ( type == NONE || type == BLANK ) {
+                return null;
+            }
+
+            return DateUtil.getJavaDate(getNumber(row, column), storage.date1904);
+        }
+    }
+}
@@ -5,7 +5,8 @@
 */
 package fi.tuni.microblock.edclexcel2ebsi;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import java.util.Set;
+
 
 /** Represents information about organisations that issue credentials.
  * @author Otto Hylli
@@ -21,12 +22,23 @@ public class OrganisationsTable extends DataTable {
     protected static final String LEGAL_IDENTIFIER_COLUMN = "Legal Identifier";
     protected static final String HOMEPAGE_COLUMN = "homepage";
     protected static final String LOCATION_COLUMN = "Location Name"; 
+
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, HEADER_ROW_NUM,
+            Set.of( LEGAL_NAME_COLUMN, COMMON_NAME_COLUMN, LEGAL_IDENTIFIER_COLUMN, HOMEPAGE_COLUMN, LOCATION_COLUMN ),
+            Set.of());
+    
+    // the columns read by this table.
+    private final StringColumn commonName = stringColumn(COMMON_NAME_COLUMN);
+    private final StringColumn legalIdentifier = stringColumn(LEGAL_IDENTIFIER_COLUMN);
+    private final StringColumn homepage = stringColumn(HOMEPAGE_COLUMN);
+    private final StringColumn location = stringColumn(LOCATION_COLUMN);
      
     /** Create organisations table for the given workbook.
      * @param data excel workbook
      * @param credentialData used to access other tables.
      */
-    public OrganisationsTable( XSSFWorkbook data, CredentialData credentials ) {
+    public OrganisationsTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
     }
     
@@ -39,32 +51,45 @@ public class OrganisationsTable extends DataTable {
     public int getHeaderRowNum() {
         return HEADER_ROW_NUM;
     }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
+    }
     
     /** Get common name of organisation on current row.
      * @return common name
      */
     public String getCommonName() {
-        return getCellValueStringForCurrentRow(COMMON_NAME_COLUMN);
+        return commonName.getForCurrentRow();
     }
     
     /** Get legal identifier of organisation on the current row.
      * @return legal indentifier
      */
     public String getLegalIdentifier() {
-        return getCellValueStringForCurrentRow( LEGAL_IDENTIFIER_COLUMN);
+        return legalIdentifier.getForCurrentRow();
+    }
+    
+    /** Get legal identifier of the organisation on the given row.
+     * @param row row number
+     * @return legal identifier
+     */
+    public String getLegalIdentifier( int row ) {
+        return legalIdentifier.get(row);
     }
     
     /** Get the home page of organisation on the current row.
      * @return home page
      */
     public String getHomepage() {
-        return getCellValueStringForCurrentRow(HOMEPAGE_COLUMN);
+        return homepage.getForCurrentRow();
     }
     
     /** Get the location of the organisation on the current row. 
      * @return location
      */
     public String getLocation() {
-        return getCellValueStringForCurrentRow(LOCATION_COLUMN);
+        return location.getForCurrentRow();
     }
 }
\ No newline at end of file
@@ -10,9 +10,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import java.util.Set;
+import java.util.OptionalInt;
 
 public class PersonsTable extends DataTable {
     
@@ -29,11 +28,30 @@ public class PersonsTable extends DataTable {
     public static final String DATE_OF_BIRTH_COLUMN = "Date of Birth";  
     protected final static int PERSONS_HEADER_ROW_NUM = 7;
 
+    /** Columns read by this table. Other columns are not loaded. */
+    public static final TableColumns COLUMNS = new TableColumns( SHEET_NAME, PERSONS_HEADER_ROW_NUM,
+            Set.of( EMAIL_COLUMN, ACHIEVEMENT_COLUMN, FAMILY_NAME_COLUMN, GIVEN_NAME_COLUMN, LEARNING_ACTIVITIES_COLUMN,
+                    GRADE_COLUMN, DATE_OF_BIRTH_COLUMN ),
+            Set.of( IDENTIFIER_1_SCHEME_NAME_COLUMN, IDENTIFIER_1_COLUMN ));
+    
+    // the columns read by this table.
+    private final StringColumn email = stringColumn(EMAIL_COLUMN);
+    private final StringColumn achievement = stringColumn(ACHIEVEMENT_COLUMN);
+    private final StringColumn familyName = stringColumn(FAMILY_NAME_COLUMN);
+    private final StringColumn givenName = stringColumn(GIVEN_NAME_COLUMN);
+    private final MultiValueColumn learningActivities = multiValueColumn(LEARNING_ACTIVITIES_COLUMN);
+    // the first of the grade columns.
+    private final NumberColumn grade = numberColumn(GRADE_COLUMN);
+    // persons may have no other identifier.
+    private final StringColumn identifier1SchemeName = optionalStringColumn(IDENTIFIER_1_SCHEME_NAME_COLUMN);
+    private final StringColumn identifier1 = optionalStringColumn(IDENTIFIER_1_COLUMN);
+    private final DateColumn dateOfBirth = dateColumn(DATE_OF_BIRTH_COLUMN);
+
     /** Create persons table for the given work book.
      * @param data The excel work book
      * @param credentials for accessing other tables.
      */
-    public PersonsTable( XSSFWorkbook data, CredentialData credentials ) {
+    public PersonsTable( WorkbookStorage data, CredentialData credentials ) {
         super(data, credentials);
     }
     
@@ -46,33 +64,46 @@ public class PersonsTable extends DataTable {
     public int getHeaderRowNum() {
         return PERSONS_HEADER_ROW_NUM;
     }
+
+    @Override
+    public TableColumns getColumns() {
+        return COLUMNS;
+    }
+    
+    /** Get the email address of the person on the given row.
+     * @param row row number
+     * @return email address
+     */
+    public String getEmail( int row ) {
+        return email.get(row);
+    }
     
     /** Get family name for current row.
      * @return family name for current row.
      */
     public String getFamilyName() {
-        return getCellValueStringForCurrentRow( PersonsTable.FAMILY_NAME_COLUMN);
+        return familyName.getForCurrentRow();
     }
     
     /** Get given name for person on current row.
      * @return given name on current row.
      */
     public String getGivenName() {
-        return getCellValueStringForCurrentRow( PersonsTable.GIVEN_NAME_COLUMN);
+        return givenName.getForCurrentRow();
     }
     
     /** Get the achievement for the current row.
      * @return the achievemnet for current row.
      */
     public String getAchievement() {
-        return getCellValueStringForCurrentRow( PersonsTable.ACHIEVEMENT_COLUMN);
+        return achievement.getForCurrentRow();
     }
     
     /** Get names of learning activities for the current row.
      * @return List of learning activity names.
      */
     public List<String> getLearningActivities() {
-        return getCellMultiValueStringForCurrentRow( LEARNING_ACTIVITIES_COLUMN);
+        return learningActivities.getForCurrentRow();
     }
     
     /** Get assesments and their grades for the current row.
@@ -80,23 +111,22 @@ public class PersonsTable extends DataTable {
      */
     public Map<String, Double> getAssesments() {
         Map<String, Double> grades = new HashMap<String, Double>();
-        var gradeColumn = getColumnNumForHeader(GRADE_COLUMN);
+        var gradeColumn = grade.getNumber();
         var assesmentNameRow = getHeaderRowNum() +1;
-        XSSFCell headingCell = null;
+        var storage = getStorage();
         final String NAME_PREFIX = "Assessment -";
         do {
-            String gradeName = getSheet().getRow(assesmentNameRow).getCell(gradeColumn).getStringCellValue();
+            String gradeName = storage.getString(assesmentNameRow, gradeColumn);
             if ( gradeName.length() > NAME_PREFIX.length() ) {
                 gradeName = gradeName.substring(NAME_PREFIX.length()).strip();
                 if ( gradeName.length() > 0 ) {
-                    var grade = getSheet().getRow(getCurrentRow()).getCell(gradeColumn).getNumericCellValue();
+                    var grade = storage.getNumber(getCurrentRow(), gradeColumn);
                     grades.put(gradeName, grade);
                 }
             }
             
             gradeColumn += 1;
-            headingCell = getSheet().getRow(getHeaderRowNum()).getCell(gradeColumn);
-        } while( headingCell != null && headingCell.getStringCellValue().equals(GRADE_COLUMN));
+        } while( storage.getString(getHeaderRowNum(), gradeColumn).equals(GRADE_COLUMN));
         
         return grades;
     }
@@ -105,18 +135,18 @@ public class PersonsTable extends DataTable {
      * @return other identifier 1 scheme name
      */
     public String getOtherIdentifier1SchemeName() {
-        return getCellValueStringForCurrentRow( PersonsTable.IDENTIFIER_1_SCHEME_NAME_COLUMN);
+        return identifier1SchemeName.getForCurrentRow();
     }
     
     /** Get other identifier 1 for person on the current row.
      * @return other identifier 1
      */
     public String getOtherIdentifier1() {
-        return getCellValueStringForCurrentRow( PersonsTable.IDENTIFIER_1_COLUMN);
+        return identifier1.getForCurrentRow();
     }
     
     public Date getDateOfBirth()  {
-        return getCellValueDateForCurrentRow( PersonsTable.DATE_OF_BIRTH_COLUMN);
+        return dateOfBirth.getForCurrentRow();
     }
     
     /** Get number of row for person with the given email.
@@ -126,4 +156,12 @@ public class PersonsTable extends DataTable {
     public int getRowForPerson( String email ) throws DiplomaDataProvider.RequiredDataNotFoundException {
         return getRowWithValues(Map.of( EMAIL_COLUMN, email)).getRowNum();
     }
+    
+    /** Find the row number for the person with the given email without throwing if there is none.
+     * @param email email address of a person.
+     * @return row number or empty if there is no such person.
+     */
+    public OptionalInt findRowForPerson( String email ) {
+        return findRowNumWithValue( EMAIL_COLUMN, email );
+    }
 }
\ No newline at end of file
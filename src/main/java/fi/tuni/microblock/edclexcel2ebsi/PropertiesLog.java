@@ -0,0 +1,48 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+
+/** Appends properties to a properties file used as a log.
+ *
+ * When the file is loaded with Properties.load a later line for a key replaces the earlier ones,
+ * so appending changes is much cheaper than rewriting the whole file every time.
+ * @author Otto Hylli
+ *
+ */
+final class PropertiesLog {
+
+    private PropertiesLog() {
+    }
+
+    /** Append the given properties to the end of the given file creating the file if it does not exist.
+     * @param file properties file
+     * @param properties keys and values to append.
+     * @throws IOException the file could not be written.
+     */
+    static void append( Path file, Map<String, String> properties ) throws IOException {
+        if ( properties.isEmpty()) {
+            return;
+        }
+
+        var lines = new Properties();
+        lines.putAll(properties);
+        var text = new StringWriter();
+        lines.store(text, null);
+        // leave out the date comment store writes before the properties.
+        var escaped = text.toString();
+        escaped = escaped.substring(escaped.indexOf('\n') +1);
+        Files.writeString(file, escaped, StandardCharsets.ISO_8859_1, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,217 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/** Writes issued credentials to files in hashed subdirectories of an output directory and indexes them in a manifest.
+ *
+ * A credential is written to the file named after the SHA-256 hash of its id under two levels of subdirectories named after the first bytes of the hash,
+ * for example ab/cd/abcd....json. This keeps the directories small even with millions of credentials.
+ * Files are written through one reusable direct buffer and the credential is added to the manifest after its file has been written and forced to the disk.
+ * Flushing forces the shard directories that got new files and then the manifest so that every credential in the manifest survives a power failure.
+ * @author Otto Hylli
+ *
+ */
+public class ShardedCredentialWriter implements CredentialSink {
+
+    // size of the reusable write buffer. Larger credentials are written in several parts.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // name of a credential file: SHA-256 hash of the credential id and the type of the credential.
+    private static final Pattern CREDENTIAL_FILE = Pattern.compile("[0-9a-f]{64}\\.(json|jwt)");
+
+    private final Path directory;
+    private final CredentialManifest manifest;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final MessageDigest digest;
+    // shard directories known to exist.
+    private final Set<Path> createdDirectories = new HashSet<>();
+    // shard directories with files written after the last flush.
+    private final Set<Path> unsyncedDirectories = new HashSet<>();
+
+    /** Open a writer for the given output directory creating it if needed.
+     *
+     * Credentials already in the manifest of the directory can be found with the writer.
+     * @param directory output directory.
+     * @throws IOException directory could not be created or the manifest could not be read.
+     */
+    public ShardedCredentialWriter( Path directory ) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        manifest = new CredentialManifest(directory);
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException("SHA-256 not supported.", e);
+        }
+    }
+
+    /** Open a writer that continues the output directory of an earlier run.
+     *
+     * The manifest entries of credentials not accepted by the filter are removed together with their files, as are credential files that never made it
+     * to the manifest, so that the credentials written after the last journal commit are not left behind when they are issued again.
+     * @param directory output directory. Created if it does not exist.
+     * @param keep decides by credential id which existing credentials are kept.
+     * @return writer continuing the directory.
+     * @throws IOException the manifest or the credential files could not be read or removed.
+     */
+    public static ShardedCredentialWriter resume( Path directory, Predicate<String> keep ) throws IOException {
+        Files.createDirectories(directory);
+        Set<String> kept = new HashSet<>();
+        for ( var entry : CredentialManifest.retain(directory, keep)) {
+            kept.add(entry.file());
+        }
+
+        List<Path> removed;
+        try ( var paths = Files.walk(directory, 3)) {
+            removed = paths.filter( file -> isCredentialFile(directory, file) && !kept.contains(directory.relativize(file).toString().replace('\\', '/')))
+                .collect(Collectors.toList());
+        }
+
+        for ( var file : removed ) {
+            Files.delete(file);
+        }
+
+        return new ShardedCredentialWriter(directory);
+    }
+
+    @Override
+    public synchronized void write( String credentialId, String email, String title, String credential ) throws IOException {
+        var content = credential.getBytes(StandardCharsets.UTF_8);
+        var name = hex(digest.digest(credentialId.getBytes(StandardCharsets.UTF_8)));
+        var shard = directory.resolve(name.substring(0, 2)).resolve(name.substring(2, 4));
+        if ( createdDirectories.add(shard)) {
+            Files.createDirectories(shard);
+        }
+
+        var file = shard.resolve(name +(CredentialLib.isJwt(credential) ? ".jwt" : ".json"));
+        try ( var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for ( int offset = 0; offset < content.length; offset += BUFFER_SIZE ) {
+                buffer.clear();
+                buffer.put(content, offset, Math.min(BUFFER_SIZE, content.length -offset));
+                buffer.flip();
+                while ( buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            channel.force(false);
+        }
+
+        unsyncedDirectories.add(shard);
+
+        var relative = directory.relativize(file).toString().replace('\\', '/');
+        manifest.add( new CredentialManifest.Entry( credentialId, email, title, relative, hex(digest.digest(content))));
+    }
+
+    /** Find an issued credential by its id.
+     * @param credentialId id of the credential.
+     * @return manifest entry of the credential if it has been written.
+     */
+    public Optional<CredentialManifest.Entry> find( String credentialId ) {
+        return manifest.find(credentialId);
+    }
+
+    /** Find the latest credential with the given title issued to the given student.
+     * @param email student email address.
+     * @param title title of the credential.
+     * @return manifest entry of the credential if it has been written.
+     */
+    public Optional<CredentialManifest.Entry> find( String email, String title ) {
+        return manifest.find(email, title);
+    }
+
+    /** Get the path of the file of the given manifest entry.
+     * @param entry manifest entry
+     * @return path of the credential file.
+     */
+    public Path resolve( CredentialManifest.Entry entry ) {
+        return directory.resolve(entry.file());
+    }
+
+    /** Get the number of credentials in the output directory.
+     * @return credential count from the manifest.
+     */
+    public int size() {
+        return manifest.size();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        for ( var shard : unsyncedDirectories ) {
+            syncDirectory(shard);
+        }
+
+        unsyncedDirectories.clear();
+        manifest.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        }
+
+        finally {
+            manifest.close();
+        }
+    }
+
+    /** Check if the given file is a credential file in a shard directory of the given output directory.
+     * @param directory output directory
+     * @param file a file under the directory
+     * @return true if the file is named as the writer names credential files two levels below the directory.
+     */
+    private static boolean isCredentialFile( Path directory, Path file ) {
+        return Files.isRegularFile(file) && directory.relativize(file).getNameCount() == 3 && CREDENTIAL_FILE.matcher(file.getFileName().toString()).matches();
+    }
+
+    /** Force the entries of the given directory to the disk so that the files created in it are not lost.
+     * @param directory a shard directory.
+     * @throws IOException the directory could not be synced.
+     */
+    private static void syncDirectory( Path directory ) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        }
+
+        catch ( IOException e ) {
+            // directories cannot be opened on every platform, for example on Windows, where the file system takes care of the entries.
+            return;
+        }
+
+        try ( channel ) {
+            channel.force(true);
+        }
+    }
+
+    private static String hex( byte[] bytes ) {
+        var hex = new StringBuilder(bytes.length * 2);
+        for ( var b : bytes ) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+}
@@ -0,0 +1,263 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/** Workbook storage that keeps the whole workbook parsed by POI on the heap.
+ *
+ * This is the default storage. Its tables read the cells straight from the POI sheets.
+ * @author Otto Hylli
+ *
+ */
+public class SheetStorage implements WorkbookStorage {
+
+    private final XSSFWorkbook workbook;
+    // names of the sheets whose tables can be read. Null if every sheet can be read.
+    private Set<String> sheetNames;
+
+    /** Create storage for an already opened workbook.
+     * @param workbook excel workbook
+     */
+    public SheetStorage( XSSFWorkbook workbook ) {
+        this.workbook = workbook;
+    }
+
+    /** Open the given excel file.
+     * @param file excel file
+     * @return storage for the file.
+     * @throws IOException the file could not be read.
+     */
+    public static SheetStorage open( Path file ) throws IOException {
+        try {
+            // opened read only so that the workbook is never written back to the file.
+            OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            return new SheetStorage(new XSSFWorkbook(pkg));
+        }
+
+        catch ( InvalidFormatException e ) {
+            throw new IOException("Not an excel workbook: " +file, e);
+        }
+    }
+
+    /** Open the given excel file keeping only the given columns.
+     * 
+     * POI parses the whole workbook, after which the rows before the header rows and the cells of the other columns are removed
+     * so that they do not use the heap while the workbook is used. A sheet cannot be removed from a read only workbook,
+     * so the rows of the other sheets are removed and the sheets are left out of getTable.
+     * This reduces only the heap retained after opening: parsing takes as long and needs as much memory at its peak as
+     * parsing without columns. The OffHeapStorage opened with the StreamingWorkbookLoader reads only the given columns while parsing.
+     * @param file excel file
+     * @param columns the columns of the sheets to keep or null to keep everything.
+     * @return storage for the file.
+     * @throws IOException the file could not be read.
+     */
+    public static SheetStorage open( Path file, Collection<TableColumns> columns ) throws IOException {
+        var storage = open(file);
+        if ( columns != null ) {
+            storage.project(columns);
+        }
+
+        return storage;
+    }
+
+    /** Remove the rows and cells that are not in the given columns and hide the sheets that are not in them.
+     * @param columns the columns of the sheets to keep.
+     */
+    private void project( Collection<TableColumns> columns ) {
+        sheetNames = new HashSet<>();
+        for ( int i = 0; i < workbook.getNumberOfSheets(); i++ ) {
+            var sheet = workbook.getSheetAt(i);
+            var sheetColumns = TableColumns.forSheet(columns, sheet.getSheetName());
+            if ( sheetColumns == null ) {
+                removeRows(sheet, Integer.MAX_VALUE);
+            }
+
+            else {
+                var event = new JfrEvents.SheetLoad();
+                event.begin();
+                sheetNames.add(sheet.getSheetName());
+                project(sheet, sheetColumns);
+                if ( event.shouldCommit()) {
+                    event.sheet = sheet.getSheetName();
+                    event.rows = sheet.getLastRowNum() +1;
+                    event.storage = WorkbookStorage.Type.SHEET.name();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /** Remove the rows before the given row.
+     * @param sheet the sheet
+     * @param end number of the first row kept.
+     */
+    private static void removeRows( XSSFSheet sheet, int end ) {
+        var removed = new ArrayList<Row>();
+        for ( var row : sheet ) {
+            if ( row.getRowNum() < end ) {
+                removed.add(row);
+            }
+        }
+
+        for ( var row : removed ) {
+            sheet.removeRow(row);
+        }
+    }
+
+    private static void project( XSSFSheet sheet, TableColumns columns ) {
+        int headerRowNum = columns.headerRowNum();
+        removeRows(sheet, headerRowNum);
+
+        var table = new Table(sheet);
+        var stored = new BitSet();
+        for ( int column = 0; column < table.getCellCount(headerRowNum); column++ ) {
+            if ( table.getCellType(headerRowNum, column) == CellType.STRING && columns.contains(table.getString(headerRowNum, column))) {
+                stored.set(column);
+            }
+        }
+
+        var removed = new ArrayList<Cell>();
+        for ( var row : sheet ) {
+            removed.clear();
+            for ( var cell : row ) {
+                if ( !stored.get(cell.getColumnIndex())) {
+                    removed.add(cell);
+                }
+            }
+
+            for ( var cell : removed ) {
+                row.removeCell(cell);
+            }
+        }
+    }
+
+    /** Get the POI workbook.
+     * @return the workbook
+     */
+    public XSSFWorkbook getWorkbook() {
+        return workbook;
+    }
+
+    @Override
+    public TableStorage getTable( String sheetName ) throws DiplomaDataProvider.ExcelStructureException {
+        var sheet = workbook.getSheet(sheetName);
+        if ( sheet == null || ( sheetNames != null && !sheetNames.contains(sheetName))) {
+            throw new DiplomaDataProvider.ExcelStructureException("Workbook does not have sheet " +sheetName);
+        }
+
+        return new Table(sheet);
+    }
+
+    /** The workbook is not closed since closing a workbook opened for writing would save it to the file it was opened from. */
+    @Override
+    public void close() {
+    }
+
+    /** Storage of one POI sheet.
+     * @author Otto Hylli
+     *
+     */
+    public static class Table implements TableStorage {
+
+        private final XSSFSheet sheet;
+
+        /** Create storage for the given sheet.
+         * @param sheet excel sheet
+         */
+        public Table( XSSFSheet sheet ) {
+            this.sheet = sheet;
+        }
+
+        /** Get the POI sheet.
+         * @return the sheet
+         */
+        public XSSFSheet getSheet() {
+            return sheet;
+        }
+
+        @Override
+        public String getSheetName() {
+            return sheet.getSheetName();
+        }
+
+        @Override
+        public int getLastRowNum() {
+            return sheet.getLastRowNum();
+        }
+
+        @Override
+        public int getCellCount( int row ) {
+            var sheetRow = sheet.getRow(row);
+            return sheetRow == null ? 0 : Math.max(0, sheetRow.getLastCellNum());
+        }
+
+        @Override
+        public CellType getCellType( int row, int column ) {
+            var cell = getCell(row, column);
+            if ( cell == null ) {
+                return CellType._NONE;
+            }
+
+            var type = cell.getCellType();
+            return type == CellType.FORMULA ? cell.getCachedFormulaResultType() : type;
+        }
+
+        @Override
+        public String getString( int row, int column ) {
+            var cell = getCell(row, column);
+            if ( cell == null ) {
+                return "";
+            }
+
+            switch ( getCellType(row, column)) {
+            case NUMERIC:
+                return NumberToTextConverter.toText(cell.getNumericCellValue());
+            case BOOLEAN:
+                return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+            case ERROR:
+                return cell.getErrorCellString();
+            default:
+                return cell.getStringCellValue();
+            }
+        }
+
+        @Override
+        public double getNumber( int row, int column ) {
+            var cell = getCell(row, column);
+            return cell == null ? 0 : cell.getNumericCellValue();
+        }
+
+        @Override
+        public Date getDate( int row, int column ) {
+            var cell = getCell(row, column);
+            return cell == null ? null : cell.getDateCellValue();
+        }
+
+        private XSSFCell getCell( int row, int column ) {
+            var sheetRow = sheet.getRow(row);
+            return sheetRow == null ? null : sheetRow.getCell(column);
+        }
+    }
+}
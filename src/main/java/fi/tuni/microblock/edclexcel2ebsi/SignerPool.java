@@ -0,0 +1,182 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import id.walt.services.keystore.KeyStoreService;
+import id.walt.services.keystore.KeyType;
+import id.walt.services.vc.JsonLdCredentialService;
+import id.walt.services.vc.JwtCredentialService;
+import id.walt.signatory.ProofConfig;
+import id.walt.signatory.ProofType;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Signs credentials for one issuer on the calling thread or concurrently on a pool of worker threads.
+ *
+ * The walt.id JSON-LD and JWT credential services are process wide singletons that all signing threads share.
+ * The proof configs from the issuer to the holder are created once per proof type when the pool is created and are only read afterwards.
+ * The issuer key is loaded on warm up so that with the CachingKeyStoreService it is read from the key store only once.
+ * @author Otto Hylli
+ *
+ */
+public class SignerPool {
+
+    private static final LatencyHistogram SERIALIZE_TIMER = Metrics.getDefault().timer("credential.serialize");
+    private static final LatencyHistogram SIGN_TIMER = Metrics.getDefault().timer("credential.sign");
+    private final String issuerDid;
+    private final String holderDid;
+    private final int threads;
+    private final Map<ProofType, ProofConfig> proofConfigs = new EnumMap<>(ProofType.class);
+    // created on first concurrent signing.
+    private volatile ExecutorService executor;
+
+    /** Create a signer pool for the given issuer.
+     * @param issuerDid did of the issuer whose key is used for signing.
+     * @param holderDid did of the credential subject.
+     * @param threads number of worker threads for concurrent signing.
+     */
+    public SignerPool( String issuerDid, String holderDid, int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException("Signer pool must have at least one thread.");
+        }
+
+        this.issuerDid = issuerDid;
+        this.holderDid = holderDid;
+        this.threads = threads;
+        for ( var proofType : ProofType.values()) {
+            proofConfigs.put(proofType, new ProofConfig(issuerDid, holderDid, null, null, proofType, null, null, null, null, null, null, null, null ));
+        }
+    }
+
+    /** Load the issuer's private key so that it is in memory before the first signing.
+     *
+     */
+    public void warmUp() {
+        warmUp(KeyStoreService.Companion.getService());
+    }
+
+    /** Load the issuer's private key from the given key store.
+     * 
+     * Signing loads the private key so that is the key that has to be cached.
+     * @param keyStore key store used in signing.
+     */
+    void warmUp( KeyStoreService keyStore ) {
+        keyStore.load(issuerDid, KeyType.PRIVATE);
+    }
+
+    /** Get the proof config used for signing with the given proof type.
+     * @param proofType type of proof.
+     * @return proof config from the issuer to the holder.
+     */
+    public ProofConfig getProofConfig( ProofType proofType ) {
+        return proofConfigs.get(proofType);
+    }
+
+    /** Get the proof config for signing a credential for the given subject.
+     * @param proofType type of proof.
+     * @param subjectDid did of the credential subject. If null the holder given to the pool.
+     * @return proof config from the issuer to the subject.
+     */
+    public ProofConfig getProofConfig( ProofType proofType, String subjectDid ) {
+        if ( subjectDid == null || subjectDid.equals(holderDid)) {
+            return getProofConfig(proofType);
+        }
+
+        return new ProofConfig(issuerDid, subjectDid, null, null, proofType, null, null, null, null, null, null, null, null );
+    }
+
+    /** Sign the given populated credential on the calling thread.
+     * @param credential populated credential.
+     * @param proofType type of proof.
+     * @return signed credential.
+     */
+    public String sign( VerifiableCredential credential, ProofType proofType ) {
+        return sign(credential, getProofConfig(proofType));
+    }
+
+    /** Sign the given populated credential on the calling thread using the given proof config.
+     * @param credential populated credential.
+     * @param proofConfig proof config the credential was populated with.
+     * @return signed credential.
+     */
+    public String sign( VerifiableCredential credential, ProofConfig proofConfig ) {
+        var event = new JfrEvents.CredentialSign();
+        event.begin();
+        long start = System.nanoTime();
+        var encoded = credential.encode();
+        SERIALIZE_TIMER.recordSince(start);
+        start = System.nanoTime();
+        try {
+            if ( proofConfig.getProofType() == ProofType.JWT ) {
+                return JwtCredentialService.Companion.getService().sign(encoded, proofConfig);
+            }
+
+            return JsonLdCredentialService.Companion.getService().sign(encoded, proofConfig);
+        }
+
+        finally {
+            SIGN_TIMER.recordSince(start);
+            if ( event.shouldCommit()) {
+                event.credentialId = credential.getId();
+                event.issuer = proofConfig.getIssuerDid();
+                event.subject = proofConfig.getSubjectDid();
+                event.proofType = proofConfig.getProofType().name();
+                event.commit();
+            }
+        }
+    }
+
+    /** Create and sign a credential on a worker thread.
+     * @param credential creates the populated credential. Called on the worker thread.
+     * @param proofConfig proof config used in creating and signing the credential.
+     * @return the signed credential when completed. Completes exceptionally if creating or signing the credential fails.
+     */
+    public CompletableFuture<String> submit( Supplier<VerifiableCredential> credential, ProofConfig proofConfig ) {
+        return CompletableFuture.supplyAsync(() -> sign(credential.get(), proofConfig), getExecutor());
+    }
+
+    /** Get the number of worker threads.
+     * @return thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Stop the worker threads after the submitted credentials have been signed.
+     *
+     */
+    public void shutdown() {
+        var current = executor;
+        if ( current != null ) {
+            current.shutdown();
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        var current = executor;
+        if ( current == null ) {
+            synchronized ( this ) {
+                current = executor;
+                if ( current == null ) {
+                    current = Executors.newFixedThreadPool(threads, runnable -> {
+                        var thread = new Thread(runnable, "credential-signer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = current;
+                }
+            }
+        }
+
+        return current;
+    }
+}
@@ -0,0 +1,540 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/** Loads a credentials excel into an OffHeapStorage by streaming its XML with SAX.
+ *
+ * Unlike XSSFWorkbook this never builds the XML of the sheets on the heap. The shared strings are read to a temporary buffer first
+ * and the rows of each sheet are then written to the storage one row at a time. Finally the shared strings used by the stored cells are copied to the storage.
+ * Only the workbook, shared strings and sheet parts are read so styles, comments and macros are never parsed.
+ * When the columns of the tables are given only they are loaded: other sheets are skipped,
+ * the rows before the header row are not stored and the cells of other columns are not decoded or stored.
+ * @author Otto Hylli
+ *
+ */
+public class StreamingWorkbookLoader {
+
+    private static final String MAIN_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    // directory for the memory mapped files or null for direct buffers.
+    private final Path directory;
+    // the columns loaded or null to load everything.
+    private final Collection<TableColumns> columns;
+
+    /** Create a loader that loads every cell of the workbook.
+     * @param directory directory for memory mapped files or null to use direct buffers.
+     */
+    public StreamingWorkbookLoader( Path directory ) {
+        this(directory, null);
+    }
+
+    /** Create a loader that loads only the given columns.
+     * @param directory directory for memory mapped files or null to use direct buffers.
+     * @param columns the columns of the sheets to load or null to load everything.
+     */
+    public StreamingWorkbookLoader( Path directory, Collection<TableColumns> columns ) {
+        this.directory = directory;
+        this.columns = columns;
+    }
+
+    /** Load the given excel file.
+     * @param file the excel file.
+     * @return storage with the loaded sheets of the file.
+     * @throws IOException the file could not be read or is not a valid workbook.
+     */
+    public OffHeapStorage load( Path file ) throws IOException {
+        try ( var pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            var reader = new XSSFReader(pkg);
+            var workbook = new WorkbookHandler();
+            parse(reader.getWorkbookData(), workbook);
+            var storage = new OffHeapStorage(directory, workbook.date1904);
+            try {
+                // all shared strings and their offsets are only needed while loading.
+                var strings = new SharedStrings(storage.newBuffer(), storage.newBuffer());
+                if ( !pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType()).isEmpty()) {
+                    parse(reader.getSharedStringsData(), new SharedStringsHandler(strings));
+                }
+
+                var sheets = (XSSFReader.SheetIterator)reader.getSheetsData();
+                while ( sheets.hasNext()) {
+                    try ( var sheet = sheets.next()) {
+                        var sheetColumns = columns == null ? null : TableColumns.forSheet(columns, sheets.getSheetName());
+                        if ( columns != null && sheetColumns == null ) {
+                            continue;
+                        }
+
+                        var event = new JfrEvents.SheetLoad();
+                        event.begin();
+                        var handler = new SheetHandler(storage, strings, sheetColumns, storage.newBuffer());
+                        parse(sheet, handler);
+                        storage.addTable(new OffHeapStorage.Table(storage, sheets.getSheetName(), handler.rows, handler.lastRowNum));
+                        if ( event.shouldCommit()) {
+                            event.sheet = sheets.getSheetName();
+                            event.rows = handler.lastRowNum +1;
+                            event.storage = WorkbookStorage.Type.OFF_HEAP.name();
+                            event.commit();
+                        }
+                    }
+                }
+
+                storage.setSharedStrings(strings.copyUsed(storage));
+                strings.data.close();
+                strings.offsets.close();
+                return storage;
+            }
+
+            catch ( IOException | RuntimeException e ) {
+                storage.close();
+                throw e;
+            }
+        }
+
+        catch ( OpenXML4JException e ) {
+            throw new IOException("Not an excel workbook: " +file, e);
+        }
+    }
+
+    /** Parse the given XML stream with the given handler.
+     * @param input XML
+     * @param handler SAX handler
+     * @throws IOException the XML could not be read or parsed.
+     */
+    private static void parse( InputStream input, ContentHandler handler ) throws IOException {
+        try ( input ) {
+            var reader = XMLHelper.newXMLReader();
+            reader.setContentHandler(handler);
+            reader.parse(new InputSource(input));
+        }
+
+        catch ( SAXException | ParserConfigurationException e ) {
+            throw new IOException("Invalid excel XML: " +e.getMessage(), e);
+        }
+    }
+
+    /** Get the wrapped IOException of a SAXException thrown by a handler.
+     * @param e exception thrown by the handler
+     * @return SAXException that wraps it.
+     */
+    private static SAXException wrap( IOException e ) {
+        return new SAXException(e);
+    }
+
+    /** Decode the _xHHHH_ escapes Excel uses for control characters in strings like POI does.
+     * @param value string from the XML
+     * @return decoded string
+     */
+    static String decodeEscapes( String value ) {
+        int start = value.indexOf("_x");
+        if ( start < 0 ) {
+            return value;
+        }
+
+        var decoded = new StringBuilder(value.length());
+        int copied = 0;
+        while ( start >= 0 ) {
+            if ( start +7 <= value.length() && value.charAt(start +6) == '_' ) {
+                try {
+                    char character = (char)Integer.parseInt(value.substring(start +2, start +6), 16);
+                    decoded.append(value, copied, start).append(character);
+                    copied = start +7;
+                    start = value.indexOf("_x", copied);
+                    continue;
+                }
+
+                catch ( NumberFormatException e ) {
+                    // not an escape.
+                }
+            }
+
+            start = value.indexOf("_x", start +1);
+        }
+
+        return decoded.append(value, copied, value.length()).toString();
+    }
+
+    /** Reads the date system of the workbook. */
+    private static class WorkbookHandler extends DefaultHandler {
+
+        private boolean date1904 = false;
+
+        @Override
+        public void startElement( String uri, String localName, String qName, Attributes attributes ) {
+            if ( localName.equals("workbookPr")) {
+                var value = attributes.getValue("date1904");
+                date1904 = "1".equals(value) || "true".equals(value);
+            }
+        }
+    }
+
+    /** The shared strings of the workbook while it is loaded. */
+    private static class SharedStrings {
+
+        // the text of the strings.
+        private final OffHeapBuffer data;
+        // offset of each shared string in data.
+        private final OffHeapBuffer offsets;
+        private int count = 0;
+        // the strings used by stored cells.
+        private final BitSet used = new BitSet();
+
+        SharedStrings( OffHeapBuffer data, OffHeapBuffer offsets ) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+
+        void add( String value ) throws IOException {
+            long offset = data.putBytes(value.getBytes(StandardCharsets.UTF_8));
+            offsets.putLong(offsets.append(Long.BYTES), offset);
+            count++;
+        }
+
+        String get( int index ) {
+            return new String(data.getBytes(offsets.getLong((long)index *Long.BYTES)), StandardCharsets.UTF_8);
+        }
+
+        /** Copy the used strings to the storage.
+         * @param storage the storage
+         * @return buffer with the offset of each shared string in the storage or -1 for strings not used.
+         * @throws IOException a page could not be mapped.
+         */
+        OffHeapBuffer copyUsed( OffHeapStorage storage ) throws IOException {
+            var storageOffsets = storage.newBuffer();
+            storageOffsets.ensureCapacity((long)count *Long.BYTES);
+            for ( int i = 0; i < count; i++ ) {
+                long offset = used.get(i) ? storage.copyString(data, offsets.getLong((long)i *Long.BYTES)) : -1;
+                storageOffsets.putLong((long)i *Long.BYTES, offset);
+            }
+
+            return storageOffsets;
+        }
+    }
+
+    /** Reads the shared strings to the temporary buffers. */
+    private static class SharedStringsHandler extends DefaultHandler {
+
+        private final SharedStrings strings;
+        private final StringBuilder text = new StringBuilder();
+        private boolean inText = false;
+        // phonetic runs are not part of the string.
+        private boolean inPhonetic = false;
+
+        SharedStringsHandler( SharedStrings strings ) {
+            this.strings = strings;
+        }
+
+        @Override
+        public void startElement( String uri, String localName, String qName, Attributes attributes ) {
+            if ( !MAIN_NAMESPACE.equals(uri)) {
+                return;
+            }
+
+            switch ( localName ) {
+            case "si":
+                text.setLength(0);
+                break;
+            case "rPh":
+                inPhonetic = true;
+                break;
+            case "t":
+                inText = !inPhonetic;
+                break;
+            }
+        }
+
+        @Override
+        public void endElement( String uri, String localName, String qName ) throws SAXException {
+            if ( !MAIN_NAMESPACE.equals(uri)) {
+                return;
+            }
+
+            switch ( localName ) {
+            case "si":
+                try {
+                    strings.add(decodeEscapes(text.toString()));
+                }
+
+                catch ( IOException e ) {
+                    throw wrap(e);
+                }
+                break;
+            case "rPh":
+                inPhonetic = false;
+                break;
+            case "t":
+                inText = false;
+                break;
+            }
+        }
+
+        @Override
+        public void characters( char[] characters, int start, int length ) {
+            if ( inText ) {
+                text.append(characters, start, length);
+            }
+        }
+    }
+
+    /** Writes the rows of a sheet to the storage. */
+    private static class SheetHandler extends DefaultHandler {
+
+        private final OffHeapStorage storage;
+        private final SharedStrings strings;
+        // the columns to store or null to store every cell.
+        private final TableColumns columns;
+        // is each column stored. Known after the header row.
+        private boolean[] stored;
+        // are the cells of the current row or cell skipped.
+        private boolean skipRow;
+        private boolean skipCell;
+        // offset of each row in the storage.
+        private final OffHeapBuffer rows;
+        private int lastRowNum = -1;
+        // cells of the current row.
+        private byte[] types = new byte[64];
+        private long[] values = new long[64];
+        private int cellCount = 0;
+        private int rowNum = -1;
+        // the current cell
+        private int column = -1;
+        private String cellType;
+        private boolean hasFormula;
+        private final StringBuilder value = new StringBuilder();
+        private boolean inValue = false;
+
+        SheetHandler( OffHeapStorage storage, SharedStrings strings, TableColumns columns, OffHeapBuffer rows ) {
+            this.storage = storage;
+            this.strings = strings;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        public void startElement( String uri, String localName, String qName, Attributes attributes ) {
+            if ( !MAIN_NAMESPACE.equals(uri)) {
+                return;
+            }
+
+            switch ( localName ) {
+            case "row":
+                var reference = attributes.getValue("r");
+                rowNum = reference == null ? rowNum +1 : Integer.parseInt(reference) -1;
+                cellCount = 0;
+                column = -1;
+                // rows before the header row are not read by the tables.
+                skipRow = columns != null && rowNum < columns.headerRowNum();
+                break;
+            case "c":
+                var address = attributes.getValue("r");
+                column = address == null ? column +1 : columnOf(address);
+                cellType = attributes.getValue("t");
+                hasFormula = false;
+                value.setLength(0);
+                skipCell = skipRow || ( columns != null && rowNum > columns.headerRowNum() && ( stored == null || column >= stored.length || !stored[column] ));
+                break;
+            case "v":
+                inValue = !skipCell;
+                break;
+            case "t":
+                // text of an inline string.
+                inValue = !skipCell && "inlineStr".equals(cellType);
+                break;
+            case "f":
+                hasFormula = true;
+                break;
+            }
+        }
+
+        @Override
+        public void endElement( String uri, String localName, String qName ) throws SAXException {
+            if ( !MAIN_NAMESPACE.equals(uri)) {
+                return;
+            }
+
+            try {
+                switch ( localName ) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "c":
+                    endCell();
+                    break;
+                case "row":
+                    endRow();
+                    break;
+                }
+            }
+
+            catch ( IOException e ) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public void characters( char[] characters, int start, int length ) {
+            if ( inValue ) {
+                value.append(characters, start, length);
+            }
+        }
+
+        /** Store the value of the current cell to the current row.
+         * @throws IOException a string could not be stored.
+         */
+        private void endCell() throws IOException {
+            if ( skipCell ) {
+                return;
+            }
+
+            if ( column >= types.length ) {
+                int size = Math.max(column +1, types.length *2);
+                types = Arrays.copyOf(types, size);
+                values = Arrays.copyOf(values, size);
+            }
+
+            // columns skipped on this row are missing cells.
+            Arrays.fill(types, cellCount, column, OffHeapStorage.NONE);
+            var text = value.toString();
+            byte type;
+            long cellValue = 0;
+            if ( "s".equals(cellType)) {
+                type = OffHeapStorage.SHARED_STRING;
+                int index = Integer.parseInt(text.strip());
+                if ( index < 0 || index >= strings.count ) {
+                    throw new IOException("Shared string " +index +" does not exist.");
+                }
+
+                strings.used.set(index);
+                cellValue = index;
+            }
+
+            else if ( "inlineStr".equals(cellType)) {
+                type = OffHeapStorage.STRING;
+                cellValue = storage.putString(decodeEscapes(text));
+            }
+
+            else if ( "str".equals(cellType)) {
+                type = OffHeapStorage.STRING;
+                cellValue = storage.putString(text);
+            }
+
+            else if ( "b".equals(cellType)) {
+                type = OffHeapStorage.BOOLEAN;
+                cellValue = text.equals("1") || text.equalsIgnoreCase("true") ? 1 : 0;
+            }
+
+            else if ( "e".equals(cellType)) {
+                type = OffHeapStorage.ERROR;
+                cellValue = storage.putString(text);
+            }
+
+            else if ( text.isEmpty()) {
+                // a formula without a cached value is a numeric 0 like in POI.
+                type = hasFormula ? OffHeapStorage.NUMERIC : OffHeapStorage.BLANK;
+                cellValue = Double.doubleToRawLongBits(0);
+            }
+
+            else {
+                type = OffHeapStorage.NUMERIC;
+                cellValue = Double.doubleToRawLongBits(Double.parseDouble(text));
+            }
+
+            types[column] = type;
+            values[column] = cellValue;
+            cellCount = Math.max(cellCount, column +1);
+        }
+
+        /** Store the current row and its directory entry.
+         * @throws IOException the row could not be stored.
+         */
+        private void endRow() throws IOException {
+            if ( skipRow ) {
+                return;
+            }
+
+            if ( columns != null && rowNum == columns.headerRowNum()) {
+                selectColumns();
+            }
+
+            long offset = storage.putRow(types, values, cellCount);
+            // rows missing between the previous and this row.
+            rows.ensureCapacity(((long)rowNum +1) *Long.BYTES);
+            for ( int missing = lastRowNum +1; missing < rowNum; missing++ ) {
+                rows.putLong((long)missing *Long.BYTES, -1);
+            }
+
+            rows.putLong((long)rowNum *Long.BYTES, offset);
+            lastRowNum = rowNum;
+        }
+
+        /** Select the stored columns by the headings on the header row and remove the other headings.
+         */
+        private void selectColumns() {
+            stored = new boolean[cellCount];
+            int count = 0;
+            for ( int i = 0; i < cellCount; i++ ) {
+                String heading = null;
+                if ( types[i] == OffHeapStorage.SHARED_STRING ) {
+                    heading = strings.get((int)values[i]);
+                }
+
+                else if ( types[i] == OffHeapStorage.STRING ) {
+                    heading = storage.getString(values[i]);
+                }
+
+                stored[i] = heading != null && columns.contains(heading);
+                if ( stored[i] ) {
+                    count = i +1;
+                }
+
+                else {
+                    types[i] = OffHeapStorage.NONE;
+                }
+            }
+
+            cellCount = count;
+        }
+
+        /** Get the column number of a cell reference like AB12.
+         * @param reference cell reference
+         * @return zero based column number.
+         */
+        static int columnOf( String reference ) {
+            int column = 0;
+            for ( int i = 0; i < reference.length(); i++ ) {
+                char character = reference.charAt(i);
+                if ( character < 'A' || character > 'Z' ) {
+                    break;
+                }
+
+                column = column *26 +character -'A' +1;
+            }
+
+            return column -1;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Dictionary of the distinct string values of a workbook.
+ *
+ * Each distinct string gets an int code. The lower case form of every string is also in the dictionary
+ * so that values can be compared ignoring case by comparing the codes of their lower case forms.
+ * Like the rest of the excel data this is not thread safe.
+ * @author Otto Hylli
+ *
+ */
+public class StringDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    // code of the lower case form of each string.
+    private int[] folded = new int[64];
+
+    /** Get the code of the given string adding it if it is not in the dictionary.
+     * @param value the string
+     * @return its code
+     */
+    public int encode( String value ) {
+        var code = codes.get(value);
+        if ( code != null ) {
+            return code;
+        }
+
+        int newCode = add(value);
+        var lowerCase = value.toLowerCase();
+        if ( lowerCase.equals(value)) {
+            folded[newCode] = newCode;
+        }
+
+        else {
+            var lowerCaseCode = codes.get(lowerCase);
+            if ( lowerCaseCode == null ) {
+                lowerCaseCode = add(lowerCase);
+                folded[lowerCaseCode] = lowerCaseCode;
+            }
+
+            folded[newCode] = lowerCaseCode;
+        }
+
+        return newCode;
+    }
+
+    private int add( String value ) {
+        int code = strings.size();
+        strings.add(value);
+        codes.put(value, code);
+        if ( code == folded.length ) {
+            folded = Arrays.copyOf(folded, code *2);
+        }
+
+        return code;
+    }
+
+    /** Find the code of the given string without adding it.
+     * @param value the string
+     * @return its code or -1 if it is not in the dictionary.
+     */
+    public int find( String value ) {
+        var code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /** Find the code that the lower case forms of the strings equal to the given string ignoring case have.
+     * @param value the string
+     * @return code of its lower case form or -1 if no string in the dictionary equals it ignoring case.
+     */
+    public int findFolded( String value ) {
+        return find(value.toLowerCase());
+    }
+
+    /** Get the string with the given code.
+     * @param code code of the string
+     * @return the string
+     */
+    public String get( int code ) {
+        return strings.get(code);
+    }
+
+    /** Get the code of the lower case form of the string with the given code.
+     * @param code code of a string
+     * @return code of its lower case form.
+     */
+    public int fold( int code ) {
+        return folded[code];
+    }
+
+    /** Remove the strings added after the dictionary had the given number of strings.
+     *
+     * Used to drop the strings of a column that turned out not to be worth encoding.
+     * @param size number of strings to keep.
+     */
+    public void truncate( int size ) {
+        for ( int code = size; code < strings.size(); code++ ) {
+            codes.remove(strings.get(code));
+        }
+
+        strings.subList(size, strings.size()).clear();
+    }
+
+    /** Get the number of strings in the dictionary.
+     * @return number of codes.
+     */
+    public int size() {
+        return strings.size();
+    }
+}
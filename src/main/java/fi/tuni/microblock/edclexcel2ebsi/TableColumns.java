@@ -0,0 +1,45 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.Collection;
+import java.util.Set;
+
+/** The columns a DataTable reads from its sheet.
+ *
+ * Each DataTable declares its columns so that the workbook storages load only them.
+ * Other sheets, rows before the header row and columns whose heading is not declared are not loaded.
+ * @author Otto Hylli
+ * @param sheetName name of the sheet.
+ * @param headerRowNum number of the row with the column headings.
+ * @param required headings of the columns the sheet must have.
+ * @param optional headings of the columns the sheet may have.
+ */
+public record TableColumns( String sheetName, int headerRowNum, Set<String> required, Set<String> optional ) {
+
+    /** Check if a column is declared.
+     * @param heading column heading
+     * @return true if it is a required or an optional column.
+     */
+    public boolean contains( String heading ) {
+        return required.contains(heading) || optional.contains(heading);
+    }
+
+    /** Find the declaration of the given sheet.
+     * @param columns declared tables
+     * @param sheetName name of the sheet
+     * @return its columns or null if the sheet is not declared.
+     */
+    public static TableColumns forSheet( Collection<TableColumns> columns, String sheetName ) {
+        for ( var table : columns ) {
+            if ( table.sheetName().equals(sheetName)) {
+                return table;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.CellType;
+
+/** Cell storage of one sheet of the credentials excel used by a DataTable.
+ *
+ * Rows and columns are numbered from 0 like in the excel file. Formula cells are seen as their cached result so the type of a cell is never FORMULA.
+ * Cells that are not in the file have the type _NONE and are read like blank cells.
+ * @author Otto Hylli
+ *
+ */
+public interface TableStorage {
+
+    /** Get the name of the sheet.
+     * @return sheet name
+     */
+    String getSheetName();
+
+    /** Get the number of the last row of the sheet.
+     * @return row number or -1 if the sheet has no rows.
+     */
+    int getLastRowNum();
+
+    /** Get the number of cells on the given row including the missing cells before the last cell.
+     * @param row row number
+     * @return number of the last cell on the row +1 or 0 if the row has no cells.
+     */
+    int getCellCount( int row );
+
+    /** Get the type of the given cell.
+     * @param row row number
+     * @param column column number
+     * @return STRING, NUMERIC, BOOLEAN, ERROR, BLANK or _NONE if there is no such cell.
+     */
+    CellType getCellType( int row, int column );
+
+    /** Get the value of the given cell as text.
+     *
+     * Strings are returned as is, numbers without formatting like 12 or 1.5, booleans as TRUE or FALSE, errors like #N/A and blank and missing cells as an empty string.
+     * @param row row number
+     * @param column column number
+     * @return the cell value as text.
+     */
+    String getString( int row, int column );
+
+    /** Get the value of a numeric cell.
+     * @param row row number
+     * @param column column number
+     * @return the value or 0 for a blank or missing cell.
+     */
+    double getNumber( int row, int column );
+
+    /** Get the value of a numeric cell as a date.
+     * @param row row number
+     * @param column column number
+     * @return the date or null for a blank or missing cell.
+     */
+    Date getDate( int row, int column );
+}
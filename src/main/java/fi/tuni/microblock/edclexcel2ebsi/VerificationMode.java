@@ -0,0 +1,19 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+/** How verification policies are run for a credential or presentation.
+ * @author Otto Hylli
+ *
+ */
+public enum VerificationMode {
+    /** Run every policy in the configured order and report the result of each. */
+    FULL,
+    /** Run policies cheapest first and stop at the first failure. Only the policies that were run are in the result. */
+    FAIL_FAST,
+    /** Run all policies concurrently and stop waiting for the rest as soon as one fails. */
+    CONCURRENT
+}
@@ -0,0 +1,241 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import id.walt.auditor.VerificationPolicy;
+import id.walt.auditor.VerificationResult;
+import id.walt.vclib.model.VerifiableCredential;
+import id.walt.vclib.model.VerifiablePresentation;
+
+/** Runs verification policies for a parsed credential or presentation according to a VerificationMode.
+ *
+ * Keeps a moving average of the time each policy takes so that in fail fast mode the cheapest policies are run first.
+ * The averages start from rough estimates: signature checks are the most expensive and did resolution is more expensive than local checks.
+ * A runner can be shared between threads.
+ * @author Otto Hylli
+ *
+ */
+public class VerificationPolicyRunner {
+
+    // weight of a new measurement in the moving average of policy costs.
+    private static final double COST_WEIGHT = 0.1;
+    // initial cost estimates in nanoseconds for known policies.
+    private static final Map<String, Double> DEFAULT_COSTS = Map.of(
+            "TrustedIssuerDidPolicy", 5_000_000.0,
+            "TrustedSubjectDidPolicy", 5_000_000.0,
+            "SignaturePolicy", 20_000_000.0 );
+    // cost estimate for policies without a default.
+    private static final double UNKNOWN_COST = 1_000_000.0;
+
+    private final List<VerificationPolicy> policies;
+    private final Map<String, Double> costs = new ConcurrentHashMap<>();
+    // created when first needed for concurrent mode.
+    private volatile ExecutorService policyExecutor;
+
+    /** Create a runner for the given policies.
+     * @param policies policies in the order they are run in full mode.
+     */
+    public VerificationPolicyRunner( List<VerificationPolicy> policies ) {
+        this.policies = List.copyOf(policies);
+    }
+
+    /** Verify the given document with the given mode.
+     * @param credential parsed credential or presentation.
+     * @param mode how the policies are run.
+     * @param report where policy timings are recorded. Can be null.
+     * @return verification result. In fail fast and concurrent modes contains only the policies that completed.
+     */
+    public VerificationResult verify( VerifiableCredential credential, VerificationMode mode, BatchVerificationReport report ) {
+        switch ( mode ) {
+        case FAIL_FAST:
+            return verifySequentially( credential, getPoliciesByCost(), true, report );
+        case CONCURRENT:
+            return verifyConcurrently( credential, report );
+        default:
+            return verifySequentially( credential, policies, false, report );
+        }
+    }
+
+    /** Get the policies ordered by their measured average cost, cheapest first.
+     * @return policies in cost order.
+     */
+    public List<VerificationPolicy> getPoliciesByCost() {
+        var ordered = new ArrayList<>(policies);
+        ordered.sort(Comparator.comparingDouble(policy -> getCost(policy.getId())));
+        return ordered;
+    }
+
+    /** Get the current cost estimate for the given policy.
+     * @param policyId id of a policy
+     * @return average cost in nanoseconds.
+     */
+    public double getCost( String policyId ) {
+        var cost = costs.get(policyId);
+        if ( cost != null ) {
+            return cost;
+        }
+
+        return DEFAULT_COSTS.getOrDefault(policyId, UNKNOWN_COST);
+    }
+
+    /** Stop the threads used for concurrent mode.
+     *
+     */
+    public void shutdown() {
+        var executor = policyExecutor;
+        if ( executor != null ) {
+            executor.shutdown();
+        }
+    }
+
+    private VerificationResult verifySequentially( VerifiableCredential credential, List<VerificationPolicy> order, boolean stopOnFailure, BatchVerificationReport report ) {
+        var policyResults = new LinkedHashMap<String, Boolean>();
+        for ( var policy : order ) {
+            boolean passed = runPolicy(policy, credential, report);
+            policyResults.put(policy.getId(), passed);
+            if ( !passed && stopOnFailure ) {
+                break;
+            }
+        }
+
+        return new VerificationResult(!policyResults.containsValue(false), policyResults);
+    }
+
+    /** Run all policies in parallel returning as soon as one of them fails.
+     * 
+     * The policies still running when one fails are cancelled by interrupting their threads.
+     * A policy that does not react to interruption keeps its thread busy until it completes, but its result is not waited for.
+     */
+    private VerificationResult verifyConcurrently( VerifiableCredential credential, BatchVerificationReport report ) {
+        var completion = new ExecutorCompletionService<Boolean>(getPolicyExecutor());
+        var results = new LinkedHashMap<Future<Boolean>, VerificationPolicy>();
+        for ( var policy : policies ) {
+            results.put(completion.submit(() -> runPolicy(policy, credential, report)), policy);
+        }
+
+        var policyResults = new LinkedHashMap<String, Boolean>();
+        boolean failed = false;
+        try {
+            for ( int i = 0; i < policies.size() && !failed; i++ ) {
+                var result = completion.take();
+                boolean passed = result.get();
+                policyResults.put(results.get(result).getId(), passed);
+                failed = !passed;
+            }
+        }
+
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Verification interrupted.", e);
+        }
+
+        catch ( ExecutionException e ) {
+            throw new IllegalStateException("Verification policy failed: " +e.getCause().getMessage(), e.getCause());
+        }
+
+        finally {
+            for ( var result : results.keySet()) {
+                result.cancel(true);
+            }
+        }
+
+        // report the completed policies in the order they were given.
+        var ordered = new LinkedHashMap<String, Boolean>();
+        for ( var policy : policies ) {
+            var passed = policyResults.get(policy.getId());
+            if ( passed != null ) {
+                ordered.put(policy.getId(), passed);
+            }
+        }
+
+        return new VerificationResult(!failed, ordered);
+    }
+
+    /** Run the policy, record how long it took and update its cost estimate.
+     * @param policy policy to run
+     * @param credential credential or presentation to check
+     * @param report where timing is recorded. Can be null.
+     * @return did the document pass the policy.
+     */
+    private boolean runPolicy( VerificationPolicy policy, VerifiableCredential credential, BatchVerificationReport report ) {
+        var event = new JfrEvents.PolicyVerification();
+        event.begin();
+        long start = System.nanoTime();
+        boolean passed = verifyWithPolicy(policy, credential);
+        long elapsed = System.nanoTime() -start;
+        if ( Thread.currentThread().isInterrupted()) {
+            // cancelled in concurrent mode so the result and timing are not used.
+            return passed;
+        }
+
+        if ( event.shouldCommit()) {
+            event.policy = policy.getId();
+            event.credentialId = credential.getId();
+            event.issuer = credential.getIssuer();
+            event.passed = passed;
+            event.commit();
+        }
+
+        costs.merge(policy.getId(), (double)elapsed, (old, latest) -> old +COST_WEIGHT * (latest -old));
+        if ( report != null ) {
+            report.recordPolicy(policy.getId(), elapsed, passed);
+        }
+
+        return passed;
+    }
+
+    /** Check the given credential or presentation with the given policy.
+     * @param policy verification policy
+     * @param credential credential or presentation
+     * @return true if the credential and, for a presentation, all of its credentials pass the policy.
+     */
+    static boolean verifyWithPolicy( VerificationPolicy policy, VerifiableCredential credential ) {
+        if ( !policy.verify(credential)) {
+            return false;
+        }
+
+        if ( credential instanceof VerifiablePresentation ) {
+            for ( var presented : ((VerifiablePresentation)credential).getVerifiableCredential() ) {
+                if ( !policy.verify(presented)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private ExecutorService getPolicyExecutor() {
+        var executor = policyExecutor;
+        if ( executor == null ) {
+            synchronized ( this ) {
+                executor = policyExecutor;
+                if ( executor == null ) {
+                    executor = Executors.newCachedThreadPool(runnable -> {
+                        var thread = new Thread(runnable, "verification-policy");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    policyExecutor = executor;
+                }
+            }
+        }
+
+        return executor;
+    }
+}
@@ -0,0 +1,385 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/** Generates EDCL workbooks of a given size for load and throughput testing.
+ *
+ * The workbook has the sheets and columns read by CredentialData with the header row at the same position as in the EDCL template.
+ * Each achievement has an overall assessment with sub-assessments, learning activities and learning outcomes of its own and is issued by one of the organisations.
+ * Each person has one credential for an achievement. The credential is on the same row of the credentials sheet as the person on the persons sheet.
+ * The persons sheet has a grade column for every assessment. The sub-assessments of the person's achievement get random grades and the overall assessment their rounded average.
+ * Rows are streamed to the file with SXSSF so the memory use does not depend on the number of persons.
+ * The same seed always produces the same data.
+ * @author Otto Hylli
+ *
+ */
+public class WorkbookGenerator {
+
+    /** Number of the first data row on every sheet. The row before it has the definitions. */
+    public static final int FIRST_DATA_ROW = CredentialsTable.HEADER_ROW_NUM +2;
+    /** Maximum number of persons that fit into a sheet. */
+    public static final int MAX_PERSONS = SpreadsheetVersion.EXCEL2007.getLastRowIndex() -FIRST_DATA_ROW +1;
+    private static final int MAX_COLUMNS = SpreadsheetVersion.EXCEL2007.getMaxColumns();
+    // rows kept in memory for each sheet before they are flushed to the disk.
+    private static final int ROW_WINDOW = 100;
+    private static final String[] GIVEN_NAMES = { "Anna", "Matti", "Liisa", "Juha", "Maria", "Mikko", "Aino", "Antti", "Helmi", "Jussi" };
+    private static final String[] FAMILY_NAMES = { "Makkara", "Virtanen", "Korhonen", "Nieminen", "Laine", "Heikkinen", "Koskinen", "Lahtinen", "Lehtonen", "Saarinen" };
+    private static final String[] ESCO_SKILLS = {
+            "http://data.europa.eu/esco/skill/60c78287-22eb-4103-9c8c-28deaa460da1",
+            "http://data.europa.eu/esco/skill/09e28145-e205-4b7a-8b3b-5c4876396069",
+            "http://data.europa.eu/esco/skill/27ed854c-15b8-4ba2-90e9-ae888a219704"
+    };
+
+    private final int persons;
+    private final int achievements;
+    private final int subAssessments;
+    private final int activities;
+    private final int outcomes;
+    private final int organisations;
+    private final long seed;
+
+    /** Create a generator for a workbook with three sub-assessments, activities and outcomes for each achievement.
+     * @param persons number of persons and credentials.
+     * @param achievements number of achievements.
+     * @param organisations number of issuing organisations.
+     * @throws IllegalArgumentException a count is not positive or the data does not fit into a workbook.
+     */
+    public WorkbookGenerator( int persons, int achievements, int organisations ) {
+        this( persons, achievements, 3, 3, 3, organisations, 1 );
+    }
+
+    /** Create a generator.
+     * @param persons number of persons and credentials.
+     * @param achievements number of achievements.
+     * @param subAssessments number of sub-assessments of the overall assessment of each achievement.
+     * @param activities number of learning activities of each achievement.
+     * @param outcomes number of learning outcomes of each achievement.
+     * @param organisations number of issuing organisations.
+     * @param seed seed for the names and grades.
+     * @throws IllegalArgumentException a count is not positive or the data does not fit into a workbook.
+     */
+    public WorkbookGenerator( int persons, int achievements, int subAssessments, int activities, int outcomes, int organisations, long seed ) {
+        if ( persons < 1 || achievements < 1 || subAssessments < 1 || activities < 1 || outcomes < 1 || organisations < 1 ) {
+            throw new IllegalArgumentException("Counts must be positive.");
+        }
+
+        if ( persons > MAX_PERSONS ) {
+            throw new IllegalArgumentException("At most " +MAX_PERSONS +" persons fit into a workbook.");
+        }
+
+        // the persons sheet has the label column and eight data columns before the grade columns.
+        // The assessments sheet has a row for the overall assessment and each sub-assessment of each achievement.
+        long assessments = (long)achievements *(subAssessments +1);
+        if ( assessments +9 > MAX_COLUMNS ) {
+            throw new IllegalArgumentException("Too many achievements or assessments for the grade columns of the persons sheet.");
+        }
+
+        if ( Math.max(assessments, (long)achievements *Math.max(activities, outcomes)) > MAX_PERSONS ) {
+            throw new IllegalArgumentException("Too many assessments, activities or outcomes for the rows of a sheet.");
+        }
+
+        this.persons = persons;
+        this.achievements = achievements;
+        this.subAssessments = subAssessments;
+        this.activities = activities;
+        this.outcomes = outcomes;
+        this.organisations = organisations;
+        this.seed = seed;
+    }
+
+    /** Get the email address of the given person.
+     * @param person index of the person starting from 0.
+     * @return email address
+     */
+    public static String email( int person ) {
+        return "student" +person +"@generated.test";
+    }
+
+    /** Get the title of the given achievement.
+     * @param achievement index of the achievement starting from 0.
+     * @return achievement title
+     */
+    public static String achievementTitle( int achievement ) {
+        return "Achievement " +(achievement +1);
+    }
+
+    /** Get the title of the credential issued for the given achievement.
+     * @param achievement index of the achievement starting from 0.
+     * @return credential title
+     */
+    public static String credentialTitle( int achievement ) {
+        return achievementTitle(achievement) +" module";
+    }
+
+    /** Get the legal name of the given organisation.
+     * @param organisation index of the organisation starting from 0.
+     * @return legal name
+     */
+    public static String organisationName( int organisation ) {
+        return "Organisation " +(organisation +1);
+    }
+
+    /** Get the legal identifier of the given organisation.
+     * @param organisation index of the organisation starting from 0.
+     * @return legal identifier
+     */
+    public static String legalIdentifier( int organisation ) {
+        return String.format( "FI-%08d", organisation +1 );
+    }
+
+    /** Get the achievement of the given person.
+     * @param person index of the person starting from 0.
+     * @return index of the achievement
+     */
+    public int achievementOf( int person ) {
+        return person % achievements;
+    }
+
+    /** Get the organisation issuing the given achievement.
+     * @param achievement index of the achievement starting from 0.
+     * @return index of the organisation
+     */
+    public int organisationOf( int achievement ) {
+        return achievement % organisations;
+    }
+
+    /** Write the workbook.
+     * @param file the xlsx file to write. Replaced if it exists.
+     * @throws IOException the file could not be written.
+     */
+    public void write( Path file ) throws IOException {
+        var workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            var dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+            writeOrganisations(workbook, dateStyle);
+            writeAchievements(workbook, dateStyle);
+            writeAssessments(workbook, dateStyle);
+            writeActivities(workbook, dateStyle);
+            writeOutcomes(workbook, dateStyle);
+            writePersonsAndCredentials(workbook, dateStyle);
+            try ( var output = Files.newOutputStream(file)) {
+                workbook.write(output);
+            }
+        }
+
+        finally {
+            // deletes the temporary files of the streamed rows.
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private void writeOrganisations( SXSSFWorkbook workbook, CellStyle dateStyle ) {
+        var sheet = new SheetWriter( workbook, OrganisationsTable.SHEET_NAME, dateStyle, OrganisationsTable.LEGAL_NAME_COLUMN, OrganisationsTable.COMMON_NAME_COLUMN,
+                OrganisationsTable.LEGAL_IDENTIFIER_COLUMN, OrganisationsTable.HOMEPAGE_COLUMN, OrganisationsTable.LOCATION_COLUMN );
+        sheet.definitions();
+        for ( int i = 0; i < organisations; i++ ) {
+            sheet.row( organisationName(i), "Org " +(i +1), legalIdentifier(i), "https://organisation" +(i +1) +".example", "Tampere" );
+        }
+    }
+
+    private void writeAchievements( SXSSFWorkbook workbook, CellStyle dateStyle ) {
+        var sheet = new SheetWriter( workbook, AchievementsTable.SHEET_NAME, dateStyle, AchievementsTable.TITLE_COLUMN, AchievementsTable.PROVEN_BY_COLUMN, AchievementsTable.INFLUENCED_BY_COLUMN,
+                AchievementsTable.SPECIFICATION_TITLE_COLUMN, AchievementsTable.LEARNING_OUTCOMES_COLUMN, AchievementsTable.LEARNING_SETTING_COLUMN,
+                AchievementsTable.LEARNING_OPPORTUNITY_TYPE_COLUMN, AchievementsTable.ECTS_CREDIT_POINTS_COLUMN );
+        sheet.definitions();
+        for ( int i = 0; i < achievements; i++ ) {
+            sheet.row( achievementTitle(i), overallAssessment(i), String.join("; ", activities(i)), achievementTitle(i), String.join("; ", outcomes(i)),
+                    "formal learning", "Course", 5.0 );
+        }
+    }
+
+    private void writeAssessments( SXSSFWorkbook workbook, CellStyle dateStyle ) {
+        var sheet = new SheetWriter( workbook, AssessmentsTable.SHEET_NAME, dateStyle, AssessmentsTable.TITLE_COLUMN, AssessmentsTable.DESCRIPTION_COLUMN,
+                AssessmentsTable.SUB_ASSESSMENTS_COLUMN, AssessmentsTable.SPECIFICATION_TITLE_COLUMN, AssessmentsTable.GRADING_SCHEME_TITLE_COLUMN );
+        sheet.definitions();
+        for ( int i = 0; i < achievements; i++ ) {
+            var subs = subAssessments(i);
+            sheet.row( overallAssessment(i), "Overall grade of " +achievementTitle(i), String.join("; ", subs), overallAssessment(i), "0-5" );
+            for ( var sub : subs ) {
+                sheet.row( sub, "Assignment of " +achievementTitle(i), null, sub, "0-5" );
+            }
+        }
+    }
+
+    private void writeActivities( SXSSFWorkbook workbook, CellStyle dateStyle ) {
+        var sheet = new SheetWriter( workbook, ActivitiesTable.SHEET_NAME, dateStyle, ActivitiesTable.TITLE_COLUMN, ActivitiesTable.DESCRIPTION_COLUMN, ActivitiesTable.SPECIFICATION_TITLE_COLUMN,
+                ActivitiesTable.SPECIFICATION_TYPE_COLUMN, ActivitiesTable.SPECIFICATION_DESCRIPTIONCOLUMN, ActivitiesTable.MODE_OF_LEARNING_COLUMN );
+        sheet.definitions();
+        for ( int i = 0; i < achievements; i++ ) {
+            for ( var activity : activities(i)) {
+                sheet.row( activity, "Activity of " +achievementTitle(i), activity, "e-learning coursework", "Coursework of " +achievementTitle(i), "Online" );
+            }
+        }
+    }
+
+    private void writeOutcomes( SXSSFWorkbook workbook, CellStyle dateStyle ) {
+        var columns = new ArrayList<String>(List.of( LearningOutcomesTable.TITLE_COLUMN, LearningOutcomesTable.DESCRIPTION_COLUMN ));
+        columns.addAll(List.of(LearningOutcomesTable.ESCO_SKILL_COLUMNS));
+        var sheet = new SheetWriter( workbook, LearningOutcomesTable.SHEET_NAME, dateStyle, columns.toArray(new String[0]));
+        sheet.definitions();
+        for ( int i = 0; i < achievements; i++ ) {
+            for ( var outcome : outcomes(i)) {
+                sheet.row( outcome, "Outcome of " +achievementTitle(i), ESCO_SKILLS[0], ESCO_SKILLS[1], ESCO_SKILLS[2] );
+            }
+        }
+    }
+
+    private void writePersonsAndCredentials( SXSSFWorkbook workbook, CellStyle dateStyle ) {
+        var credentials = new SheetWriter( workbook, CredentialsTable.SHEET_NAME, dateStyle, CredentialsTable.TITLE_COLUMN, CredentialsTable.ISSUER_COLUMN, CredentialsTable.VALID_FROM_COLUMN );
+        credentials.definitions();
+        var personColumns = new ArrayList<String>(List.of( PersonsTable.GIVEN_NAME_COLUMN, PersonsTable.FAMILY_NAME_COLUMN, PersonsTable.DATE_OF_BIRTH_COLUMN,
+                PersonsTable.IDENTIFIER_1_SCHEME_NAME_COLUMN, PersonsTable.IDENTIFIER_1_COLUMN, PersonsTable.EMAIL_COLUMN, PersonsTable.ACHIEVEMENT_COLUMN,
+                PersonsTable.LEARNING_ACTIVITIES_COLUMN ));
+        int firstGradeColumn = personColumns.size();
+        // the definition row under each grade heading names the assessment of the column.
+        var gradeNames = new ArrayList<Object>();
+        for ( int i = 0; i < firstGradeColumn; i++ ) {
+            gradeNames.add(null);
+        }
+
+        for ( int i = 0; i < achievements; i++ ) {
+            personColumns.add(PersonsTable.GRADE_COLUMN);
+            gradeNames.add("Assessment - " +overallAssessment(i));
+            for ( var sub : subAssessments(i)) {
+                personColumns.add(PersonsTable.GRADE_COLUMN);
+                gradeNames.add("Assessment - " +sub);
+            }
+        }
+
+        var persons = new SheetWriter( workbook, PersonsTable.SHEET_NAME, dateStyle, personColumns.toArray(new String[0]));
+        persons.definitions(gradeNames.toArray());
+        var random = new Random(seed);
+        var validFrom = LocalDate.of(2021, 9, 1);
+        var values = new Object[personColumns.size()];
+        for ( int i = 0; i < this.persons; i++ ) {
+            int achievement = achievementOf(i);
+            values[0] = GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)];
+            values[1] = FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)];
+            values[2] = LocalDate.of(1970, 1, 1).plusDays(random.nextInt(30 *365));
+            values[3] = "Student identification number";
+            values[4] = String.format( "x%08d", i );
+            values[5] = email(i);
+            values[6] = achievementTitle(achievement);
+            values[7] = String.join("; ", activities(achievement));
+            for ( int column = firstGradeColumn; column < values.length; column++ ) {
+                values[column] = null;
+            }
+
+            int overallColumn = firstGradeColumn +achievement *(subAssessments +1);
+            double sum = 0;
+            for ( int sub = 1; sub <= subAssessments; sub++ ) {
+                double grade = 1 +random.nextInt(5);
+                values[overallColumn +sub] = grade;
+                sum += grade;
+            }
+
+            values[overallColumn] = (double)Math.round(sum / subAssessments);
+            persons.row(values);
+            credentials.row( credentialTitle(achievement), organisationName(organisationOf(achievement)), validFrom );
+        }
+    }
+
+    private static String overallAssessment( int achievement ) {
+        return achievementTitle(achievement) +" overall grade";
+    }
+
+    private List<String> subAssessments( int achievement ) {
+        return names( achievementTitle(achievement) +" assignment ", subAssessments );
+    }
+
+    private List<String> activities( int achievement ) {
+        return names( achievementTitle(achievement) +" activity ", activities );
+    }
+
+    private List<String> outcomes( int achievement ) {
+        return names( achievementTitle(achievement) +" outcome ", outcomes );
+    }
+
+    private static List<String> names( String prefix, int count ) {
+        var names = new ArrayList<String>(count);
+        for ( int i = 1; i <= count; i++ ) {
+            names.add( prefix +i );
+        }
+
+        return names;
+    }
+
+    /** Writes the rows of one sheet in order.
+     *
+     * The sheet gets the header row and definition row of the EDCL template with the label column before the data columns.
+     * Every data column gets a cell on every row, blank if the value is null, since DataTable expects the cells to exist.
+     */
+    private static class SheetWriter {
+
+        private final SXSSFSheet sheet;
+        private final CellStyle dateStyle;
+        private final int columns;
+        private int nextRow;
+
+        SheetWriter( SXSSFWorkbook workbook, String name, CellStyle dateStyle, String... headings ) {
+            sheet = workbook.createSheet(name);
+            this.dateStyle = dateStyle;
+            columns = headings.length;
+            sheet.createRow(0).createCell(0).setCellValue(name);
+            nextRow = CredentialsTable.HEADER_ROW_NUM;
+            write( "Label", headings );
+        }
+
+        /** Write the definition row.
+         * @param values values of the data columns.
+         */
+        void definitions( Object... values ) {
+            write( "Definition", values );
+        }
+
+        /** Write a data row.
+         * @param values values of the data columns: String, Double, LocalDate or null for a blank cell.
+         */
+        void row( Object... values ) {
+            write( null, values );
+        }
+
+        private void write( String label, Object[] values ) {
+            var row = sheet.createRow(nextRow++);
+            setValue( row.createCell(0), label );
+            for ( int i = 0; i < columns; i++ ) {
+                setValue( row.createCell(i +1), i < values.length ? values[i] : null );
+            }
+        }
+
+        private void setValue( Cell cell, Object value ) {
+            if ( value instanceof String ) {
+                cell.setCellValue((String)value);
+            }
+
+            else if ( value instanceof Double ) {
+                cell.setCellValue((Double)value);
+            }
+
+            else if ( value instanceof LocalDate ) {
+                cell.setCellValue((LocalDate)value);
+                cell.setCellStyle(dateStyle);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/** Storage of the sheets of the credentials excel from which the DataTables read their cells.
+ *
+ * The sheet storage keeps the workbook parsed by POI on the heap. The off heap storage streams the workbook into
+ * direct or memory mapped buffers so that the heap used does not grow with the number of rows.
+ * @author Otto Hylli
+ *
+ */
+public interface WorkbookStorage extends Closeable {
+
+    /** The available storage types. */
+    public static enum Type {
+        /** POI workbook on the heap. */
+        SHEET,
+        /** Cells and strings in direct or memory mapped buffers outside the heap. */
+        OFF_HEAP;
+
+        /** Get the type for a value of the storage config option.
+         * @param name sheet or offHeap.
+         * @return the storage type.
+         * @throws IllegalArgumentException unknown name.
+         */
+        public static Type fromConfig( String name ) {
+            if ( name == null || name.equals("sheet")) {
+                return SHEET;
+            }
+
+            else if ( name.equals("offHeap")) {
+                return OFF_HEAP;
+            }
+
+            throw new IllegalArgumentException("Unknown storage " +name +". Use sheet or offHeap.");
+        }
+    }
+
+    /** Get the storage of the sheet with the given name.
+     * @param sheetName name of the sheet.
+     * @return storage of the sheet.
+     * @throws DiplomaDataProvider.ExcelStructureException the workbook has no such sheet.
+     */
+    TableStorage getTable( String sheetName ) throws DiplomaDataProvider.ExcelStructureException;
+
+    /** Open the given excel file with the given type of storage.
+     * @param file the excel file.
+     * @param type storage type
+     * @param directory directory for the memory mapped files of the off heap storage. If null direct buffers are used.
+     * @param columns the columns to load. Other sheets and columns are left out.
+     * @return the opened storage.
+     * @throws IOException the file could not be read.
+     */
+    static WorkbookStorage open( Path file, Type type, Path directory, Collection<TableColumns> columns ) throws IOException {
+        if ( type == Type.OFF_HEAP ) {
+            return new StreamingWorkbookLoader(directory, columns).load(file);
+        }
+
+        return SheetStorage.open(file, columns);
+    }
+}
@@ -0,0 +1,110 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/** Tests for the ArchiveCredentialWriter and ArchiveCredentialReader classes.
+ * @author Otto Hylli
+ *
+ */
+class ArchiveCredentialWriterTest {
+
+    private static final String CREDENTIAL = "{\"id\":\"urn:uuid:1\",\"title\":\"Data and \\\"Software\\\" Business\",\n\t\"name\":\"V\u00e4in\u00f6\"}";
+
+    /** Test that credentials written to gzip compressed NDJSON are read back in order with special characters intact.
+     *
+     */
+    @Test void ndjsonRoundTrip( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("credentials.ndjson.gz");
+        writeCredentials(file);
+        var entries = readAll(file);
+        assertEquals( 3, entries.size());
+        assertEquals( new ArchiveCredentialReader.Entry( "urn:uuid:1", "anna.makkara@tautest.edu", "title\twith tab", CREDENTIAL ), entries.get(0));
+        assertEquals( "a.b.c", entries.get(1).credential());
+        var reader = new ArchiveCredentialReader(file);
+        assertEquals( "urn:uuid:3", reader.find("b@test.fi", "title").orElseThrow().credentialId());
+        assertTrue( reader.find("urn:uuid:9").isEmpty());
+    }
+
+    /** Test that credentials written to a zip archive are read back with their metadata.
+     *
+     */
+    @Test void zipRoundTrip( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("credentials.zip");
+        writeCredentials(file);
+        var entries = readAll(file);
+        assertEquals( 3, entries.size());
+        assertEquals( "title\twith tab", entries.get(0).title());
+        var reader = new ArchiveCredentialReader(file);
+        assertEquals( CREDENTIAL, reader.find("urn:uuid:1").orElseThrow().credential());
+        assertEquals( "b@test.fi", reader.find("urn:uuid:3").orElseThrow().email());
+    }
+
+    /** Test that an archive whose writer was not closed can be read up to the last flush.
+     *
+     */
+    @Test void readsUnclosedNdjson( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("credentials.ndjson.gz");
+        var copy = directory.resolve("copy.ndjson.gz");
+        try ( var writer = new ArchiveCredentialWriter(file, 2)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title", CREDENTIAL );
+            writer.write("urn:uuid:2", "a@test.fi", "title", CREDENTIAL );
+            writer.write("urn:uuid:3", "a@test.fi", "title", CREDENTIAL );
+            Files.copy(file, copy);
+        }
+
+        var entries = readAll(copy);
+        assertEquals( 2, entries.size());
+        assertEquals( "urn:uuid:2", entries.get(1).credentialId());
+    }
+
+    /** Test that special characters survive an NDJSON line and that a malformed line is reported.
+     *
+     */
+    @Test void jsonStrings( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("credentials.ndjson.gz");
+        var value = "quote \" backslash \\ control \u0001 newline \n separator \u2028";
+        try ( var writer = new ArchiveCredentialWriter(file, 1)) {
+            writer.write("urn:uuid:1", null, value, value );
+        }
+
+        assertEquals( new ArchiveCredentialReader.Entry( "urn:uuid:1", "", value, value ), readAll(file).get(0));
+
+        var malformed = directory.resolve("malformed.ndjson.gz");
+        try ( var output = new GZIPOutputStream(Files.newOutputStream(malformed))) {
+            output.write("{\"id\":\"urn:uuid:1\",\"credential\":\"unterminated}\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        var e = assertThrows( IOException.class, () -> readAll(malformed));
+        assertTrue( e.getMessage().contains("line 1"));
+    }
+
+    private static void writeCredentials( Path file ) throws IOException {
+        try ( var writer = new ArchiveCredentialWriter(file, 2)) {
+            writer.write("urn:uuid:1", "anna.makkara@tautest.edu", "title\twith tab", CREDENTIAL );
+            writer.write("urn:uuid:2", "a@test.fi", "title", "a.b.c" );
+            writer.write("urn:uuid:3", "b@test.fi", "title", CREDENTIAL );
+        }
+    }
+
+    private static List<ArchiveCredentialReader.Entry> readAll( Path file ) throws IOException {
+        List<ArchiveCredentialReader.Entry> entries = new ArrayList<>();
+        new ArchiveCredentialReader(file).forEach(entries::add);
+        return entries;
+    }
+}
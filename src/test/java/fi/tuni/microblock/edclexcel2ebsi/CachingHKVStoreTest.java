@@ -0,0 +1,153 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import id.walt.services.hkvstore.HKVKey;
+import id.walt.services.hkvstore.HKVStoreService;
+
+/** Tests for the CachingHKVStore class using an in-memory stand-in for the file system store.
+ * @author Otto Hylli
+ *
+ */
+class CachingHKVStoreTest {
+
+    private final MemoryStore store = new MemoryStore();
+
+    /** Test that a value is read from the underlying store only once.
+     *
+     */
+    @Test void cachesReads() {
+        store.values.put("keystore/keys/a", bytes("key a"));
+        var cache = new CachingHKVStore( store, 0 );
+        assertEquals( "key a", string(cache.getAsByteArray(new HKVKey("keystore", "keys", "a"))));
+        assertEquals( "key a", string(cache.getAsByteArray(new HKVKey("keystore", "keys", "a"))));
+        assertNull( cache.getAsByteArray(new HKVKey("keystore", "keys", "b")));
+        assertNull( cache.getAsByteArray(new HKVKey("keystore", "keys", "b")));
+        assertEquals( 2, store.reads );
+    }
+
+    /** Test that without a flush interval writes go to the store at once.
+     *
+     */
+    @Test void writesThrough() {
+        var cache = new CachingHKVStore( store, 0 );
+        cache.put(new HKVKey("keystore", "alias", "x"), bytes("a"));
+        assertEquals( "a", string(store.values.get("keystore/alias/x")));
+        assertEquals( 0, cache.getPendingCount());
+    }
+
+    /** Test that batched writes are visible at once, written on flush and only the latest value of a key is written.
+     *
+     */
+    @Test void coalescesBatchedWrites() {
+        var cache = new CachingHKVStore( store, 60000 );
+        var key = new HKVKey("did", "created", "x");
+        cache.put(key, bytes("a"));
+        cache.put(key, bytes("b"));
+        assertEquals( "b", string(cache.getAsByteArray(key)));
+        assertTrue( store.values.isEmpty());
+        assertEquals( 1, cache.getPendingCount());
+        cache.flush();
+        assertEquals( "b", string(store.values.get("did/created/x")));
+        assertEquals( 1, store.writes );
+        cache.shutdown();
+    }
+
+    /** Test that key store writes are written at once even when other writes are batched.
+     *
+     */
+    @Test void writesKeyStoreThrough() {
+        var cache = new CachingHKVStore( store, 60000 );
+        cache.put(new HKVKey("keystore", "keys", "a"), bytes("a"));
+        assertEquals( "a", string(store.values.get("keystore/keys/a")));
+        cache.put(new HKVKey("did", "created", "x"), bytes("x"));
+        assertEquals( 1, cache.getPendingCount());
+        assertNull( store.values.get("did/created/x"));
+        cache.shutdown();
+        assertEquals( "x", string(store.values.get("did/created/x")));
+    }
+
+    /** Test that pending writes are written before a delete and the deleted keys are removed from the cache.
+     *
+     */
+    @Test void deleteRemovesCachedKeys() {
+        var cache = new CachingHKVStore( store, 60000 );
+        cache.put(new HKVKey("did", "keys", "a", "meta"), bytes("a"));
+        cache.put(new HKVKey("did", "keys", "b"), bytes("b"));
+        cache.delete(new HKVKey("did", "keys", "a"), true);
+        assertNull( cache.getAsByteArray(new HKVKey("did", "keys", "a", "meta")));
+        assertEquals( "b", string(store.values.get("did/keys/b")));
+        cache.shutdown();
+    }
+
+    /** Test that preloading reads the values under the given roots.
+     *
+     */
+    @Test void preloads() {
+        store.values.put("keystore/keys/a", bytes("a"));
+        store.values.put("keystore/keys/b", bytes("b"));
+        var cache = new CachingHKVStore( store, 0 );
+        cache.preload("keystore");
+        assertEquals( 2, store.reads );
+        assertEquals( "a", string(cache.getAsByteArray(new HKVKey("keystore", "keys", "a"))));
+        assertEquals( 2, store.reads );
+    }
+
+    private static byte[] bytes( String value ) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string( byte[] value ) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /** Store keeping the values in a map and counting reads and writes.
+     *
+     */
+    private static class MemoryStore extends HKVStoreService {
+
+        final Map<String, byte[]> values = new HashMap<>();
+        int reads;
+        int writes;
+
+        @Override
+        public void put( HKVKey key, byte[] value ) {
+            writes++;
+            values.put(key.toString(), value);
+        }
+
+        @Override
+        public byte[] getAsByteArray( HKVKey key ) {
+            reads++;
+            return values.get(key.toString());
+        }
+
+        @Override
+        public Set<HKVKey> listChildKeys( HKVKey parent, boolean recursive ) {
+            var prefix = parent.toString() +"/";
+            return values.keySet().stream().filter(key -> key.startsWith(prefix))
+                    .map(key -> { var parts = key.split("/"); return new HKVKey(parts[0], Arrays.copyOfRange(parts, 1, parts.length)); })
+                    .collect(Collectors.toSet());
+        }
+
+        @Override
+        public boolean delete( HKVKey key, boolean recursive ) {
+            var name = key.toString();
+            return values.keySet().removeIf(stored -> stored.equals(name) || recursive && stored.startsWith(name +"/"));
+        }
+    }
+}
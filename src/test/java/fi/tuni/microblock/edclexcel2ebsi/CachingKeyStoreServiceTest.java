@@ -0,0 +1,93 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import id.walt.crypto.CryptoProvider;
+import id.walt.crypto.Key;
+import id.walt.crypto.KeyAlgorithm;
+import id.walt.crypto.KeyId;
+import id.walt.services.keystore.KeyStoreService;
+import id.walt.services.keystore.KeyType;
+
+/** Tests for the CachingKeyStoreService and warming up a SignerPool with it.
+ * @author Otto Hylli
+ *
+ */
+class CachingKeyStoreServiceTest {
+
+    private static final String ISSUER = "did:ebsi:issuer";
+
+    private final CountingStore store = new CountingStore();
+
+    /** Test that after warm up the private key used in signing is served from the cache.
+     *
+     */
+    @Test void warmUpCachesPrivateKey() {
+        var cache = new CachingKeyStoreService(store);
+        new SignerPool( ISSUER, "did:ebsi:holder", 1 ).warmUp(cache);
+        assertEquals( List.of(KeyType.PRIVATE +":" +ISSUER), store.loads );
+        var key = cache.load(ISSUER, KeyType.PRIVATE);
+        assertSame( key, cache.load(ISSUER, KeyType.PRIVATE));
+        assertEquals( 1, store.loads.size());
+        // the public key is a different cache entry.
+        cache.load(ISSUER, KeyType.PUBLIC);
+        assertEquals( 2, store.loads.size());
+        assertEquals( 2, cache.size());
+    }
+
+    /** Test that changing keys removes the cached keys.
+     *
+     */
+    @Test void changesInvalidate() {
+        var cache = new CachingKeyStoreService(store);
+        var key = cache.load(ISSUER, KeyType.PRIVATE);
+        cache.addAlias(new KeyId("other"), "did:ebsi:other");
+        assertEquals( 0, cache.size());
+        assertNotSame( key, cache.load(ISSUER, KeyType.PRIVATE));
+        assertEquals( 2, store.loads.size());
+    }
+
+    /** Key store that creates a new key for every load. */
+    private static class CountingStore extends KeyStoreService {
+
+        private final List<String> loads = new ArrayList<>();
+
+        @Override
+        public Key load( String alias, KeyType keyType ) {
+            loads.add(keyType +":" +alias);
+            return new Key(new KeyId(alias), KeyAlgorithm.EdDSA_Ed25519, CryptoProvider.SUN);
+        }
+
+        @Override
+        public void store( Key key ) {
+        }
+
+        @Override
+        public void addAlias( KeyId keyId, String alias ) {
+        }
+
+        @Override
+        public void delete( String alias ) {
+        }
+
+        @Override
+        public List<Key> listKeys() {
+            return List.of();
+        }
+
+        @Override
+        public String getKeyId( String alias ) {
+            return alias;
+        }
+    }
+}
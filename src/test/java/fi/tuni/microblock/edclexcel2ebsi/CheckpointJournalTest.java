@@ -0,0 +1,131 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests for the CheckpointJournal class and resuming archives.
+ * @author Otto Hylli
+ *
+ */
+class CheckpointJournalTest {
+
+    /** Test that committed rows are kept when resuming and dropped when starting a new run.
+     *
+     */
+    @Test void resumeKeepsRows( @TempDir Path directory ) throws IOException {
+        var file = CheckpointJournal.forOutput(directory);
+        try ( var journal = new CheckpointJournal(file, false)) {
+            journal.add("anna.makkara@tautest.edu", "title\twith tab", "urn:uuid:1");
+            journal.add("b@test.fi", "title", "urn:uuid:2");
+        }
+
+        try ( var journal = new CheckpointJournal(file, true)) {
+            assertEquals( 2, journal.size());
+            assertTrue( journal.isCompleted("anna.makkara@tautest.edu", "title\twith tab"));
+            assertTrue( journal.containsCredential("urn:uuid:2"));
+            assertFalse( journal.isCompleted("c@test.fi", "title"));
+        }
+
+        try ( var journal = new CheckpointJournal(file, false)) {
+            assertEquals( 0, journal.size());
+        }
+    }
+
+    /** Test that rows are written only in a commit and that a commit is due after the commit interval.
+     *
+     */
+    @Test void groupCommit( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("batch.checkpoint");
+        try ( var journal = new CheckpointJournal(file, false, 2, 60_000)) {
+            journal.add("a@test.fi", "title", "urn:uuid:1");
+            assertFalse( journal.isCommitDue());
+            assertEquals( 0, Files.size(file));
+            journal.add("b@test.fi", "title", "urn:uuid:2");
+            assertTrue( journal.isCommitDue());
+            journal.commit();
+            assertFalse( journal.isCommitDue());
+            assertEquals( 2, Files.readAllLines(file).size());
+        }
+    }
+
+    /** Test that a partial last line is ignored when resuming.
+     *
+     */
+    @Test void ignoresPartialLine( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("batch.checkpoint");
+        try ( var journal = new CheckpointJournal(file, false)) {
+            journal.add("a@test.fi", "title", "urn:uuid:1");
+        }
+
+        Files.writeString(file, "b@test.fi\ttit", StandardOpenOption.APPEND);
+        try ( var journal = new CheckpointJournal(file, true)) {
+            assertEquals( 1, journal.size());
+            journal.add("c@test.fi", "title", "urn:uuid:3");
+        }
+
+        assertEquals( List.of("a@test.fi\ttitle\turn:uuid:1", "c@test.fi\ttitle\turn:uuid:3"), Files.readAllLines(file));
+    }
+
+    /** Test that resuming an archive keeps only the journaled credentials and continues after them.
+     *
+     */
+    @Test void resumesArchive( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("batch.ndjson.gz");
+        var copy = directory.resolve("interrupted.ndjson.gz");
+        try ( var writer = new ArchiveCredentialWriter(file, 1)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title", "a.b.c");
+            writer.write("urn:uuid:2", "b@test.fi", "title", "d.e.f");
+            Files.copy(file, copy);
+        }
+
+        Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING);
+        try ( var writer = ArchiveCredentialWriter.resume(file, 1, id -> id.equals("urn:uuid:1"))) {
+            writer.write("urn:uuid:3", "b@test.fi", "title", "g.h.i");
+        }
+
+        List<String> ids = new ArrayList<>();
+        new ArchiveCredentialReader(file).forEach( entry -> ids.add(entry.credentialId()));
+        assertEquals( List.of("urn:uuid:1", "urn:uuid:3"), ids);
+        assertFalse( Files.exists(directory.resolve("previous-batch.ndjson.gz")));
+    }
+
+    /** Test that a resume interrupted while copying the archive continues from the complete previous archive instead of the partial copy.
+     *
+     */
+    @Test void resumesInterruptedResume( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("batch.ndjson.gz");
+        var previous = directory.resolve("previous-batch.ndjson.gz");
+        try ( var writer = new ArchiveCredentialWriter(previous, 1)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title", "a.b.c");
+            writer.write("urn:uuid:2", "b@test.fi", "title", "d.e.f");
+        }
+
+        try ( var writer = new ArchiveCredentialWriter(file, 1)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title", "a.b.c");
+        }
+
+        try ( var writer = ArchiveCredentialWriter.resume(file, 1, id -> true)) {
+            writer.write("urn:uuid:3", "b@test.fi", "title", "g.h.i");
+        }
+
+        List<String> ids = new ArrayList<>();
+        new ArchiveCredentialReader(file).forEach( entry -> ids.add(entry.credentialId()));
+        assertEquals( List.of("urn:uuid:1", "urn:uuid:2", "urn:uuid:3"), ids);
+        assertFalse( Files.exists(previous));
+    }
+}
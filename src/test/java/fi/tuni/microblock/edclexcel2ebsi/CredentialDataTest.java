@@ -11,9 +11,13 @@ import fi.tuni.microblock.edclexcel2ebsi.DiplomaDataProvider.ExcelStructureExcep
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
 /** Tests for the excel reader classes.
  * @author Otto Hylli
  *
@@ -46,6 +50,13 @@ class CredentialDataTest {
         assertThrows(DiplomaDataProvider.RequiredDataNotFoundException.class, () -> data.getCredential("test3.doe3@test.dat", "Data and Software Business module"), "Should not find information.");
     }
     
+    /** Test that the legal identifier of the issuing organisation of a credential is found.
+     * 
+     */
+    @Test void getIssuingOrganisation() {
+        assertEquals( "FI-12345678", data.getIssuingOrganisation("anna.makkara@tautest.edu", "Data and Software Business module"));
+    }
+    
     /** Check that persons sheet has expected column headings.
      * 
      */
@@ -106,6 +117,45 @@ class CredentialDataTest {
         assertThrows( DiplomaDataProvider.RequiredDataNotFoundException.class, () -> data.personsTable.getRowWithValues(Map.of( PersonsTable.EMAIL_COLUMN, email, PersonsTable.ACHIEVEMENT_COLUMN, achievement )));
     }
     
+    /** Test that the find variants return empty instead of throwing when nothing matches.
+     * 
+     */
+    @Test void findWithoutExceptions() {
+        assertTrue( data.findCredential("test3.doe3@test.dat", "Data and Software Business module").isEmpty());
+        assertTrue( data.findCredential("anna.makkara@tautest.edu", "Data and Software Business module").isPresent());
+        assertTrue( data.personsTable.findRowWithValues(Map.of( PersonsTable.EMAIL_COLUMN, "test2.dan2@test.dat" )).isEmpty());
+        assertEquals( data.personsTable.getRowForPerson("anna.makkara@tautest.edu"), data.personsTable.findRowForPerson("anna.makkara@tautest.edu").getAsInt());
+        assertTrue( data.activitiesTable.findRowForActivity("No such activity").isEmpty());
+        assertTrue( data.personsTable.findColumnNumForHeader("No such column").isEmpty());
+        assertTrue( data.studentExists("anna.makkara@tautest.edu"));
+        assertFalse( data.studentExists("test3.doe3@test.dat"));
+    }
+    
+    /** Test that a missing credential is recorded to the batch errors when finding the issuing organisation.
+     * 
+     */
+    @Test void findIssuingOrganisation() {
+        var errors = new BatchErrors();
+        assertEquals( "FI-12345678", data.findIssuingOrganisation("anna.makkara@tautest.edu", "Data and Software Business module", errors).orElseThrow());
+        assertTrue( data.findIssuingOrganisation("test3.doe3@test.dat", "Data and Software Business module", errors).isEmpty());
+        assertEquals( 1, errors.size());
+        assertEquals( BatchErrors.CREDENTIAL_NOT_FOUND, errors.get("test3.doe3@test.dat").orElseThrow().reason());
+        assertNull( errors.get("test3.doe3@test.dat").orElseThrow().cause());
+    }
+    
+    /** Test that the issuing organisation is found from a credential row looked up once.
+     * 
+     */
+    @Test void findIssuingOrganisationForRow() {
+        var errors = new BatchErrors();
+        var credential = data.findCredential("anna.makkara@tautest.edu", "Data and Software Business module", errors).orElseThrow();
+        assertEquals( "FI-12345678", data.getIssuingOrganisation(credential));
+        assertEquals( "FI-12345678", data.findIssuingOrganisation("anna.makkara@tautest.edu", credential, errors).orElseThrow());
+        assertTrue( data.findCredential("test3.doe3@test.dat", "Data and Software Business module", errors).isEmpty());
+        assertEquals( 1, errors.size());
+        assertEquals( BatchErrors.CREDENTIAL_NOT_FOUND, errors.get("test3.doe3@test.dat").orElseThrow().reason());
+    }
+    
     /** Test that table linking works.
      * 
      */
@@ -154,6 +204,7 @@ class CredentialDataTest {
         data.assessmentsTable.setCurrentRow(row);
         assertEquals( title, data.assessmentsTable.getTitle());
         assertTrue( data.assessmentsTable.getSubAssessments().isEmpty());
+        assertEquals( 0, data.assessmentsTable.getSubAssessmentRows().length);
     }
     
     /** Test we can get assessment with given title and that it has the expected subassessments.
@@ -166,6 +217,15 @@ class CredentialDataTest {
         assertEquals( title, data.assessmentsTable.getTitle());
         List<String> expected = List.of("Individual assignment1", "Individual assignment2", "Project assignment");
         assertEquals( expected, data.assessmentsTable.getSubAssessments());
+        var rows = data.assessmentsTable.getSubAssessmentRows();
+        assertEquals( expected.size(), rows.length );
+        for ( int i = 0; i < rows.length; i++ ) {
+            assertEquals( data.assessmentsTable.getRowForAssessment(expected.get(i)), rows[i]);
+        }
+        
+        // the parts are split once and cannot be modified.
+        assertSame( data.assessmentsTable.getSubAssessments(), data.assessmentsTable.getSubAssessments());
+        assertThrows( UnsupportedOperationException.class, () -> data.assessmentsTable.getSubAssessments().clear());
     }
     
     /** Test we get achievement by title and its assesment, learning outcomes and activities.
@@ -182,6 +242,15 @@ class CredentialDataTest {
         assertEquals( "Data and Software Business", data.achievementsTable.getSpecificationTitle());
         List<String> expectedOutcomes = List.of( "Basics of Data and software business", "Monetizing Data and Software Business", "Collaboratively develop a data or software concept" );
         assertEquals( expectedOutcomes, data.achievementsTable.getLearningOutcomes());
+        var activityRows = data.achievementsTable.getActivityRows();
+        for ( int i = 0; i < activityRows.length; i++ ) {
+            assertEquals( data.activitiesTable.getRowForActivity(expectedActivities.get(i)), activityRows[i]);
+        }
+        
+        var outcomeRows = data.achievementsTable.getLearningOutcomeRows();
+        for ( int i = 0; i < outcomeRows.length; i++ ) {
+            assertEquals( data.outcomesTable.getRowForLearningOutcome(expectedOutcomes.get(i)), outcomeRows[i]);
+        }
     }
     
     /** Test we can find learning outcome by title and get its skills.
@@ -196,4 +265,24 @@ class CredentialDataTest {
         List<String> expectedSkills = List.of("http://data.europa.eu/esco/skill/60c78287-22eb-4103-9c8c-28deaa460da1", "http://data.europa.eu/esco/skill/09e28145-e205-4b7a-8b3b-5c4876396069", "http://data.europa.eu/esco/skill/27ed854c-15b8-4ba2-90e9-ae888a219704" );
         assertEquals( expectedSkills, data.outcomesTable.getEscoSkills());
     }
-}
\ No newline at end of file
+    
+    /** Test that a missing required column fails when the workbook is loaded and a missing optional column reads as empty.
+     * 
+     */
+    @Test void columnsResolvedAtLoad() throws IOException {
+        try ( var input = new FileInputStream(CredentialData.DEFAULT_FILE_NAME)) {
+            var workbook = new XSSFWorkbook(input);
+            var header = workbook.getSheet(PersonsTable.SHEET_NAME).getRow(PersonsTable.PERSONS_HEADER_ROW_NUM);
+            var identifier = data.personsTable.findColumnNumForHeader(PersonsTable.IDENTIFIER_1_COLUMN).getAsInt();
+            header.getCell(identifier).setCellValue("Identifier");
+            var renamed = new CredentialData(workbook);
+            renamed.personsTable.setCurrentRow(renamed.personsTable.getRowForPerson("anna.makkara@tautest.edu"));
+            assertEquals( "", renamed.personsTable.getOtherIdentifier1());
+
+            var familyName = data.personsTable.findColumnNumForHeader(PersonsTable.FAMILY_NAME_COLUMN).getAsInt();
+            header.getCell(familyName).setCellValue("Surname");
+            var error = assertThrows( ExcelStructureException.class, () -> new CredentialData(workbook));
+            assertTrue( error.getMessage().contains(PersonsTable.FAMILY_NAME_COLUMN));
+        }
+    }
+}
@@ -12,8 +12,10 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 //import id.walt.vclib.VcLibManager;
+import id.walt.signatory.ProofType;
 import id.walt.vclib.model.VerifiableCredential;
 import id.walt.vclib.credentials.Europass;
 import id.walt.vclib.credentials.VerifiableDiploma;
@@ -119,6 +121,47 @@ class CredentialLibTest {
         checkVerification(id);
     }
     
+    /** Test that a JWT diploma is created with the same contents and that it verifies.
+     * 
+     */
+    @Test void jwtDiploma() {
+        var diploma = credentials.createDiploma(TEST_STUDENT_EMAIL, "Data and Software Business module", ProofType.JWT);
+        assertTrue( CredentialLib.isJwt(diploma), "Diploma should be a JWT." );
+        Europass vc = (Europass)VerifiableCredential.Companion.fromString(diploma);
+        assertEquals( "Data and Software Business", vc.getCredentialSubject().getAchieved().get(0).getTitle());
+        checkVerification(diploma);
+    }
+    
+    /** Test that a presentation of JWT credentials verifies.
+     * 
+     */
+    @Test void verifyJwtPresentation() {
+        var diploma = credentials.createDiploma(TEST_STUDENT_EMAIL, "Data and Software Business module", ProofType.JWT);
+        var id = credentials.createId(TEST_STUDENT_EMAIL, ProofType.JWT);
+        var vp = credentials.createPresentation(List.of(diploma, id));
+        assertTrue( CredentialLib.isJwt(vp), "Presentation of JWT credentials should be a JWT." );
+        checkVerification(vp);
+    }
+    
+    /** Test that JWT and LD proof credentials cannot be in the same presentation.
+     * 
+     */
+    @Test void mixedProofTypesRejected() {
+        var diploma = credentials.createDiploma(TEST_STUDENT_EMAIL, "Data and Software Business module", ProofType.JWT);
+        var id = createTestId();
+        assertThrows( IllegalArgumentException.class, () -> credentials.createPresentation(List.of(diploma, id)));
+    }
+    
+    /** Test that batch issuance creates a verifiable diploma and reports students without the credential as failed.
+     * 
+     */
+    @Test void createDiplomasConcurrently() {
+        var diplomas = credentials.createDiplomas(List.of(TEST_STUDENT_EMAIL, "test@test.fi"), "Data and Software Business module", ProofType.LD_PROOF);
+        assertEquals( List.of(TEST_STUDENT_EMAIL, "test@test.fi"), List.copyOf(diplomas.keySet()));
+        checkVerification(diplomas.get(TEST_STUDENT_EMAIL).join());
+        assertThrows( CompletionException.class, () -> diplomas.get("test@test.fi").join());
+    }
+    
     /** Helper method for checking that a verification result is successful.
      * @param credential presentation or diploma.
      */
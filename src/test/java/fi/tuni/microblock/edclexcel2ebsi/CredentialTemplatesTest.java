@@ -0,0 +1,73 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests for copying the credential templates.
+ * @author Otto Hylli
+ *
+ */
+class CredentialTemplatesTest {
+
+    /** Test that changing a copied credential does not change the credentials copied after it.
+     *
+     */
+    @Test void copiesIndependentOfPrototype() {
+        var first = CredentialTemplates.newEuropass();
+        var second = CredentialTemplates.newEuropass();
+        assertNotSame( first.getCredentialSubject(), second.getCredentialSubject());
+        var originalId = second.getCredentialSubject().getId();
+        first.getCredentialSubject().setId("did:example:changed");
+        assertEquals( originalId, CredentialTemplates.newEuropass().getCredentialSubject().getId());
+
+        var id = CredentialTemplates.newVerifiableId();
+        var firstName = id.getCredentialSubject().getFirstName();
+        id.getCredentialSubject().setFirstName("Changed");
+        assertEquals( firstName, CredentialTemplates.newVerifiableId().getCredentialSubject().getFirstName());
+    }
+
+    /** Test that nested data classes and lists are copied and immutable values shared.
+     *
+     */
+    @Test void deepCopy() {
+        var leaf = new Part("leaf", new ArrayList<>());
+        var root = new Part("root", new ArrayList<>(List.of(leaf)));
+        var copy = (Part)CredentialTemplates.deepCopy(root);
+        assertNotSame( root, copy );
+        assertNotSame( root.parts, copy.parts );
+        assertNotSame( leaf, copy.parts.get(0));
+        assertSame( root.name, copy.name );
+        copy.parts.get(0).parts.add(new Part("added", new ArrayList<>()));
+        assertTrue( leaf.parts.isEmpty());
+        assertThrows( IllegalStateException.class, () -> CredentialTemplates.deepCopy(new StringBuilder()));
+    }
+
+    /** Stand-in for a Kotlin data class. */
+    public static class Part {
+
+        private final String name;
+        private final List<Part> parts;
+
+        public Part( String name, List<Part> parts ) {
+            this.name = name;
+            this.parts = parts;
+        }
+
+        public String component1() {
+            return name;
+        }
+
+        public List<Part> component2() {
+            return parts;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Tests for the DidCache class using a local stand-in resolver.
+ * @author Otto Hylli
+ *
+ */
+class DidCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+    // number of times the stand-in resolver has been called.
+    private final AtomicInteger resolutions = new AtomicInteger();
+    private final DidCache.Resolver resolver = did -> {
+        resolutions.incrementAndGet();
+        return did.startsWith("did:ebsi:") ? "{\"id\":\"" +did +"\"}" : null;
+    };
+
+    /** Test that a resolved document is served from the cache.
+     *
+     */
+    @Test void cachesDocument() {
+        var cache = new DidCache( resolver, 10, TTL, null, Clock.systemUTC());
+        assertEquals( "{\"id\":\"did:ebsi:a\"}", cache.resolveDocument("did:ebsi:a"));
+        assertEquals( "{\"id\":\"did:ebsi:a\"}", cache.resolveDocument("did:ebsi:a"));
+        assertEquals( 1, resolutions.get());
+        assertEquals( 1, cache.getHits());
+        assertEquals( 1, cache.getMisses());
+    }
+
+    /** Test that unresolvable dids are reported as null and not cached.
+     *
+     */
+    @Test void unresolvableDid() {
+        var cache = new DidCache( resolver, 10, TTL, null, Clock.systemUTC());
+        assertNull( cache.resolveDocument("did:key:unknown"));
+        assertEquals( 0, cache.size());
+    }
+
+    /** Test that a document is resolved again after its time to live.
+     *
+     */
+    @Test void expiresAfterTtl() {
+        var clock = new MutableClock();
+        var cache = new DidCache( resolver, 10, TTL, null, clock );
+        cache.resolveDocument("did:ebsi:a");
+        clock.advance(TTL.minusSeconds(1));
+        cache.resolveDocument("did:ebsi:a");
+        assertEquals( 1, resolutions.get());
+        clock.advance(Duration.ofSeconds(2));
+        cache.resolveDocument("did:ebsi:a");
+        assertEquals( 2, resolutions.get());
+    }
+
+    /** Test that the least recently used document is evicted.
+     *
+     */
+    @Test void evictsLeastRecentlyUsed() {
+        var cache = new DidCache( resolver, 2, TTL, null, Clock.systemUTC());
+        cache.resolveDocument("did:ebsi:a");
+        cache.resolveDocument("did:ebsi:b");
+        // use a so that b is the least recently used.
+        cache.resolveDocument("did:ebsi:a");
+        cache.resolveDocument("did:ebsi:c");
+        assertEquals( 2, cache.size());
+        cache.resolveDocument("did:ebsi:a");
+        assertEquals( 3, resolutions.get());
+        cache.resolveDocument("did:ebsi:b");
+        assertEquals( 4, resolutions.get());
+    }
+
+    /** Test that concurrent misses for the same did cause only one resolution.
+     *
+     */
+    @Test void singleFlight() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        DidCache.Resolver slowResolver = did -> {
+            resolutions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            }
+
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+            return "{}";
+        };
+
+        var cache = new DidCache( slowResolver, 10, TTL, null, Clock.systemUTC());
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add( executor.submit(() -> cache.resolveDocument("did:ebsi:a")));
+            started.await(5, TimeUnit.SECONDS);
+            for ( int i = 0; i < 3; i++ ) {
+                results.add( executor.submit(() -> cache.resolveDocument("did:ebsi:a")));
+            }
+
+            // give the waiting lookups time to join the resolution in progress.
+            Thread.sleep(100);
+            release.countDown();
+            for ( var result : results ) {
+                assertEquals( "{}", result.get(5, TimeUnit.SECONDS));
+            }
+        }
+
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals( 1, resolutions.get());
+    }
+
+    /** Test that the cache is persisted to a file and read back by a new cache.
+     *
+     */
+    @Test void persistsAcrossInstances( @TempDir Path directory ) {
+        var file = directory.resolve("didcache.properties");
+        var cache = new DidCache( resolver, 10, TTL, file, Clock.systemUTC());
+        cache.resolveDocument("did:ebsi:a");
+        var restored = new DidCache( resolver, 10, TTL, file, Clock.systemUTC());
+        assertEquals( "{\"id\":\"did:ebsi:a\"}", restored.resolveDocument("did:ebsi:a"));
+        assertEquals( 1, resolutions.get());
+    }
+
+    /** Test that resolved documents are appended to the file and the file is rewritten only after maxEntries appends.
+     *
+     */
+    @Test void appendsToFile( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("didcache.properties");
+        var cache = new DidCache( resolver, 3, TTL, file, Clock.systemUTC());
+        cache.resolveDocument("did:ebsi:a");
+        cache.resolveDocument("did:ebsi:b");
+        var lines = Files.readAllLines(file);
+        assertEquals( 2, lines.size());
+        assertTrue( lines.get(0).startsWith("did\\:ebsi\\:a="));
+        cache.resolveDocument("did:ebsi:c");
+        cache.resolveDocument("did:ebsi:d");
+        // rewritten with the three cached entries after the third append.
+        assertEquals( 4, Files.readAllLines(file).stream().filter(line -> !line.startsWith("#")).count());
+        assertEquals( 4, resolutions.get());
+        assertEquals( 3, new DidCache( resolver, 3, TTL, file, Clock.systemUTC()).size());
+    }
+
+    /** Test that only dids that are not found are untrusted and other resolution failures are thrown.
+     *
+     */
+    @Test void canResolve() {
+        DidCache.Resolver failing = did -> {
+            if ( did.equals("did:ebsi:down")) {
+                throw new IllegalStateException("Connection refused");
+            }
+
+            if ( did.equals("did:ebsi:missing")) {
+                throw new IllegalStateException("Identifier Not Found");
+            }
+
+            return resolver.resolve(did);
+        };
+
+        var cache = new DidCache( failing, 10, TTL, null, Clock.systemUTC());
+        assertTrue( cache.canResolve("did:ebsi:a"));
+        assertFalse( cache.canResolve("did:key:unknown"));
+        assertFalse( cache.canResolve("did:ebsi:missing"));
+        assertThrows( IllegalStateException.class, () -> cache.canResolve("did:ebsi:down"));
+    }
+
+    /** Clock for tests whose time can be moved forward.
+     *
+     */
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2021-12-15T00:00:00Z");
+
+        void advance( Duration duration ) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone( java.time.ZoneId zone ) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
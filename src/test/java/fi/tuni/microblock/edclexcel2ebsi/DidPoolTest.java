@@ -0,0 +1,146 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Tests for the DidPool class using a generator that numbers the dids.
+ * @author Otto Hylli
+ *
+ */
+class DidPoolTest {
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private final DidPool.Generator generator = () -> "did:ebsi:" +generated.incrementAndGet();
+
+    /** Test that the pool is filled to the high watermark in the background.
+     *
+     */
+    @Test void fillsToHighWatermark() throws InterruptedException {
+        var pool = new DidPool( generator, 2, 5, 2, null );
+        pool.start();
+        waitForAvailable( pool, 5 );
+        assertEquals( 5, generated.get());
+        pool.shutdown();
+    }
+
+    /** Test that a student keeps the same did and different students get different dids.
+     *
+     */
+    @Test void assignsOneDidPerStudent() {
+        var pool = new DidPool( generator, 0, 1, 1, null );
+        var first = pool.getHolderDid("a@test.fi");
+        assertEquals( first, pool.getHolderDid("a@test.fi"));
+        var dids = pool.assignAll(List.of("a@test.fi", "b@test.fi", "c@test.fi"));
+        assertEquals( first, dids.get("a@test.fi"));
+        assertEquals( 3, new HashSet<>(dids.values()).size());
+        assertEquals( 3, pool.getAssignedCount());
+        pool.shutdown();
+    }
+
+    /** Test that taking dids below the low watermark starts a refill.
+     *
+     */
+    @Test void refillsBelowLowWatermark() throws InterruptedException {
+        var pool = new DidPool( generator, 3, 4, 1, null );
+        pool.start();
+        waitForAvailable( pool, 4 );
+        pool.assignAll(List.of("a@test.fi", "b@test.fi"));
+        waitForAvailable( pool, 4 );
+        assertEquals( 6, generated.get());
+        pool.shutdown();
+    }
+
+    /** Test that available dids and assignments are restored from the store file.
+     *
+     */
+    @Test void persistsAcrossInstances( @TempDir Path directory ) throws InterruptedException {
+        var file = directory.resolve("didpool.properties");
+        var pool = new DidPool( generator, 2, 3, 1, file );
+        pool.start();
+        waitForAvailable( pool, 3 );
+        var did = pool.getHolderDid("a@test.fi");
+        pool.shutdown();
+        var restored = new DidPool( generator, 0, 1, 1, file );
+        assertEquals( did, restored.findHolderDid("a@test.fi"));
+        assertEquals( pool.getAvailableCount(), restored.getAvailableCount());
+        restored.shutdown();
+    }
+
+    /** Test that generated dids and assignments are appended to the store file so they are restored without a shutdown.
+     *
+     */
+    @Test void appendsChanges( @TempDir Path directory ) throws InterruptedException, IOException {
+        var file = directory.resolve("didpool.properties");
+        var pool = new DidPool( generator, 1, 3, 1, file );
+        pool.start();
+        waitForAvailable( pool, 3 );
+        var dids = pool.assignAll(List.of("a@test.fi", "b@test.fi"));
+        var lines = Files.readAllLines(file);
+        // three generated dids and two assignments appended to an empty file.
+        assertEquals( 5, lines.size());
+        var restored = new DidPool( generator, 0, 1, 1, file );
+        assertEquals( dids.get("b@test.fi"), restored.findHolderDid("b@test.fi"));
+        assertEquals( 1, restored.getAvailableCount());
+        restored.shutdown();
+        pool.shutdown();
+    }
+
+    /** Test that the dids of a cohort larger than the pool are generated in parallel by the background threads and that a failing generator is reported to the caller.
+     *
+     */
+    @Test void generatesCohortInBackground() {
+        var threads = ConcurrentHashMap.<String>newKeySet();
+        DidPool.Generator slow = () -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(20);
+            }
+
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+            return generator.create();
+        };
+
+        var pool = new DidPool( slow, 0, 1, 4, null );
+        List<String> emails = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ) {
+            emails.add("student" +i +"@test.fi");
+        }
+
+        var dids = pool.assignAll(emails);
+        assertEquals( 20, new HashSet<>(dids.values()).size());
+        assertEquals( Set.of("did-pool-refill"), threads);
+        pool.shutdown();
+
+        var failing = new DidPool( () -> { throw new IllegalStateException("no key store"); }, 0, 1, 1, null );
+        assertThrows( IllegalStateException.class, () -> failing.getHolderDid("a@test.fi"));
+        failing.shutdown();
+    }
+
+    private static void waitForAvailable( DidPool pool, int count ) throws InterruptedException {
+        for ( int i = 0; i < 500 && pool.getAvailableCount() < count; i++ ) {
+            Thread.sleep(10);
+        }
+
+        assertEquals( count, pool.getAvailableCount());
+    }
+}
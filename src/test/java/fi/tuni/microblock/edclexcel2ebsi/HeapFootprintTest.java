@@ -0,0 +1,73 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Tests for measuring the heap footprint of a workbook.
+ * @author Otto Hylli
+ *
+ */
+class HeapFootprintTest {
+
+    /** Test that a generated workbook is measured sheet by sheet, the estimate grows with the persons and the file is left unchanged.
+     *
+     */
+    @Test void measureGeneratedWorkbook( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("generated.xlsx");
+        new WorkbookGenerator(500, 1, 1).write(file);
+        var original = Files.readAllBytes(file);
+        var footprint = HeapFootprint.measure(file);
+        assertArrayEquals( original, Files.readAllBytes(file));
+
+        var persons = footprint.getSheets().stream().filter( sheet -> sheet.name().equals(PersonsTable.SHEET_NAME)).findFirst().orElseThrow();
+        assertEquals( footprint.getPersons(), persons.rows());
+        assertTrue( persons.rowBytes() > 0 );
+        assertTrue( footprint.getWorkbook() > 0 );
+        assertEquals( 7, footprint.getLookups().size());
+        assertTrue( footprint.estimate(footprint.getPersons() *10L) > footprint.estimate(footprint.getPersons()));
+        var report = footprint.report(100000);
+        assertTrue( report.contains(CredentialsTable.SHEET_NAME));
+        assertTrue( report.contains("Estimated for 100000 persons"));
+    }
+
+    /** Test that a workbook is measured through the off heap storage with its memory reserved outside the heap and the file left unchanged.
+     *
+     */
+    @Test void measureStorage( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("generated.xlsx");
+        new WorkbookGenerator(200, 1, 1).write(file);
+        var original = Files.readAllBytes(file);
+        var footprint = HeapFootprint.measure(file, WorkbookStorage.Type.OFF_HEAP, null);
+        assertArrayEquals( original, Files.readAllBytes(file));
+        // the row with the definitions is counted as in the sheet by sheet measurement.
+        assertTrue( footprint.persons() >= 200 );
+        assertTrue( footprint.offHeapBytes() > 0 );
+        assertEquals( 7, footprint.lookups().size());
+        assertEquals( 2 * footprint.offHeapBytes(), footprint.estimate(footprint.persons() *2L, footprint.offHeapBytes()));
+        assertTrue( footprint.dictionary().count() > 0 );
+        assertEquals( footprint.getTotal(), footprint.estimateHeap(footprint.persons()));
+        assertTrue( footprint.report(1000).contains("Estimated for 1000 persons"));
+        assertTrue( footprint.report(0).contains("String dictionary"));
+        assertEquals( 0, HeapFootprint.measure(file, WorkbookStorage.Type.SHEET, null).offHeapBytes());
+    }
+
+    /** Test formatting bytes with binary units.
+     *
+     */
+    @Test void formatBytes() {
+        assertEquals( "512 B", HeapFootprint.formatBytes(512));
+        assertEquals( "1.5 KiB", HeapFootprint.formatBytes(1536));
+        assertEquals( "2.0 GiB", HeapFootprint.formatBytes(2L * 1024 * 1024 * 1024));
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.UUID;
+
+/** Tests for the IdGenerator implementations.
+ * @author Otto Hylli
+ *
+ */
+class IdGeneratorTest {
+
+    /** Test that time ordered ids are unique version 7 UUIDs whose timestamp does not decrease.
+     *
+     */
+    @Test void timeOrdered() {
+        var session = new IdGenerator.TimeOrdered().start(null);
+        var ids = new HashSet<>();
+        long previousTime = 0;
+        for ( int i = 0; i < 1000; i++ ) {
+            var id = session.next("credential");
+            assertEquals( 7, id.version());
+            assertEquals( 2, id.variant());
+            long time = id.getMostSignificantBits() >>> 16;
+            assertTrue( time >= previousTime );
+            previousTime = time;
+            assertTrue( ids.add(id));
+        }
+    }
+
+    /** Test that deterministic ids repeat for the same seed and differ by seed, type and position.
+     *
+     */
+    @Test void deterministic() {
+        var generator = new IdGenerator.Deterministic();
+        var first = generator.start("row 1");
+        var second = generator.start("row 1");
+        var outcome1 = first.next("learningOutcome");
+        assertEquals( 8, outcome1.version());
+        assertEquals( 2, outcome1.variant());
+        assertEquals( outcome1, second.next("learningOutcome"));
+        var outcome2 = first.next("learningOutcome");
+        assertNotEquals( outcome1, outcome2);
+        assertEquals( outcome2, second.next("learningOutcome"));
+        assertNotEquals( outcome1, generator.start("row 2").next("learningOutcome"));
+        assertNotEquals( outcome1, generator.start("row 1").next("learningActivity"));
+    }
+
+    /** Test that the generator is selected by the idGenerator config option.
+     *
+     */
+    @Test void fromConfig( @TempDir Path directory ) throws IOException {
+        assertTrue( IdGenerator.fromConfig(config(directory, "")) instanceof IdGenerator.RandomUuid );
+        assertTrue( IdGenerator.fromConfig(config(directory, "idGenerator=random")) instanceof IdGenerator.RandomUuid );
+        assertTrue( IdGenerator.fromConfig(config(directory, "idGenerator=timeOrdered")) instanceof IdGenerator.TimeOrdered );
+        assertTrue( IdGenerator.fromConfig(config(directory, "idGenerator=deterministic")) instanceof IdGenerator.Deterministic );
+        assertTrue( IdGenerator.fromConfig(config(directory, "idGenerator=fi.tuni.microblock.edclexcel2ebsi.IdGenerator$Deterministic")) instanceof IdGenerator.Deterministic );
+        assertThrows( IllegalArgumentException.class, () -> IdGenerator.fromConfig(config(directory, "idGenerator=java.lang.String")));
+    }
+
+    /** Test that deterministic ids are the same whether the workbook is loaded whole, projected to the declared columns or off heap.
+     *
+     */
+    @Test void sameIdsWithProjection() throws Exception {
+        var whole = new CredentialData( SheetStorage.open(Path.of(CredentialData.DEFAULT_FILE_NAME)));
+        var projected = new CredentialData();
+        var offHeap = new CredentialData( CredentialData.DEFAULT_FILE_NAME, WorkbookStorage.Type.OFF_HEAP, null );
+        var expected = credentialId(whole);
+        assertEquals( expected, credentialId(projected));
+        assertEquals( expected, credentialId(offHeap));
+    }
+
+    private static UUID credentialId( CredentialData data ) throws Exception {
+        var credential = data.getCredential("anna.makkara@tautest.edu", "Data and Software Business module");
+        var seed = "diploma" +DiplomaDataProvider.rowSeed(credential) +DiplomaDataProvider.rowSeed(data.getPerson(credential));
+        return new IdGenerator.Deterministic().start(seed).next("credential");
+    }
+
+    private static Config config( Path directory, String content ) throws IOException {
+        var file = directory.resolve("config.properties");
+        Files.writeString(file, content);
+        return new Config(file.toString());
+    }
+}
@@ -0,0 +1,64 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+/** Tests for the IssuerRegistry class.
+ * @author Otto Hylli
+ *
+ */
+class IssuerRegistryTest {
+
+    private final IssuerRegistry registry = new IssuerRegistry( "did:ebsi:default", "did:ebsi:holder", 1,
+            Map.of( "FI-12345678", "did:ebsi:tuni" ), Map.of( "did:ebsi:tuni", "tuni.json" ));
+
+    /** Test that an organisation's issuer is found by its legal identifier.
+     *
+     */
+    @Test void configuredIssuer() {
+        assertEquals( "did:ebsi:tuni", registry.getIssuerDid("FI-12345678"));
+        assertEquals( "did:ebsi:tuni", registry.getIssuerDid(" FI-12345678 "));
+    }
+
+    /** Test that a legal identifier that is a did is used as the issuer did.
+     *
+     */
+    @Test void legalIdentifierDid() {
+        assertEquals( "did:ebsi:faculty", registry.getIssuerDid("did:ebsi:faculty"));
+        assertEquals( "did:ebsi:faculty", registry.getIssuerDid(" did:ebsi:faculty "));
+    }
+
+    /** Test that organisations without a legal identifier use the default issuer.
+     *
+     */
+    @Test void defaultIssuer() {
+        assertEquals( "did:ebsi:default", registry.getIssuerDid(""));
+        assertEquals( "did:ebsi:default", registry.getIssuerDid(null));
+    }
+
+    /** Test that an organisation whose legal identifier is not a did and has no configured issuer has no issuer.
+     *
+     */
+    @Test void noIssuer() {
+        assertTrue( registry.findIssuerDid("FI-87654321").isEmpty());
+        assertThrows( DiplomaDataProvider.RequiredDataNotFoundException.class, () -> registry.getIssuerDid("FI-87654321"));
+        assertThrows( DiplomaDataProvider.RequiredDataNotFoundException.class, () -> registry.getSignerForOrganisation("FI-87654321"));
+    }
+
+    /** Test that each issuer has one signer pool.
+     *
+     */
+    @Test void signerPerIssuer() {
+        var signer = registry.getSignerForOrganisation("FI-12345678");
+        assertSame( signer, registry.getSigner("did:ebsi:tuni"));
+        assertNotSame( signer, registry.getSigner("did:ebsi:default"));
+    }
+}
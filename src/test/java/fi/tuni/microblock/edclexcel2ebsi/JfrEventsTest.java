@@ -0,0 +1,55 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import jdk.jfr.consumer.RecordingFile;
+
+/** Tests for the JFR events.
+ * @author Otto Hylli
+ *
+ */
+class JfrEventsTest {
+
+    /** Test that loading the excel during a recording emits the workbook and sheet events.
+     *
+     */
+    @Test void workbookLoadIsRecorded( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("run.jfr");
+        try ( var recording = JfrEvents.startRecording(file)) {
+            new CredentialData();
+            recording.stop();
+        }
+
+        var sheets = new HashSet<String>();
+        int workbooks = 0;
+        for ( var event : RecordingFile.readAllEvents(file)) {
+            var name = event.getEventType().getName();
+            if ( name.equals("edclexcel2ebsi.WorkbookLoad")) {
+                assertEquals( CredentialData.DEFAULT_FILE_NAME, event.getString("file"));
+                workbooks++;
+            }
+
+            else if ( name.equals("edclexcel2ebsi.SheetLoad")) {
+                sheets.add(event.getString("sheet"));
+                assertTrue( event.getInt("rows") > 0 );
+                assertEquals( WorkbookStorage.Type.SHEET.name(), event.getString("storage"));
+            }
+        }
+
+        assertEquals( 1, workbooks );
+        assertTrue( sheets.contains(PersonsTable.SHEET_NAME));
+        assertTrue( sheets.contains(CredentialsTable.SHEET_NAME));
+    }
+}
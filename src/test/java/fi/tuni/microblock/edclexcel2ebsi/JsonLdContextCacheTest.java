@@ -0,0 +1,100 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.danubetech.verifiablecredentials.jsonld.VerifiableCredentialContexts;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import foundation.identity.jsonld.ConfigurableDocumentLoader;
+import foundation.identity.jsonld.JsonLDObject;
+import info.weboftrust.ldsignatures.jsonld.LDSecurityContexts;
+
+/** Tests for the preloaded JSON-LD contexts.
+ * @author Otto Hylli
+ *
+ */
+class JsonLdContextCacheTest {
+
+    /** Test that every context of the credential templates is available without fetching it.
+     *
+     */
+    @Test void templateContextsBundled() throws IOException {
+        var cache = new JsonLdContextCache();
+        var urls = getContexts(CredentialTemplates.newEuropass().encode());
+        urls.addAll(getContexts(CredentialTemplates.newVerifiableId().encode()));
+        assertFalse( urls.isEmpty());
+        assertEquals( List.of(), cache.getMissingContexts(urls));
+    }
+
+    /** Test that the templates can be canonicalized for an LD proof with fetching contexts disabled.
+     *
+     */
+    @Test void canonicalizeOffline() throws Exception {
+        new JsonLdContextCache().install();
+        var loaders = List.of( (ConfigurableDocumentLoader)LDSecurityContexts.DOCUMENT_LOADER, (ConfigurableDocumentLoader)VerifiableCredentialContexts.DOCUMENT_LOADER );
+        var http = new boolean[loaders.size()];
+        var https = new boolean[loaders.size()];
+        for ( int i = 0; i < loaders.size(); i++ ) {
+            http[i] = loaders.get(i).isEnableHttp();
+            https[i] = loaders.get(i).isEnableHttps();
+            loaders.get(i).setEnableHttp(false);
+            loaders.get(i).setEnableHttps(false);
+        }
+
+        try {
+            for ( var json : List.of( CredentialTemplates.newEuropass().encode(), CredentialTemplates.newVerifiableId().encode())) {
+                var document = JsonLDObject.fromJson(json);
+                document.setDocumentLoader(VerifiableCredentialContexts.DOCUMENT_LOADER);
+                assertFalse( document.normalize("urdna2015").isEmpty());
+            }
+        }
+
+        finally {
+            for ( int i = 0; i < loaders.size(); i++ ) {
+                loaders.get(i).setEnableHttp(http[i]);
+                loaders.get(i).setEnableHttps(https[i]);
+            }
+        }
+    }
+
+    /** Test that contexts are read from the operator's directory.
+     *
+     */
+    @Test void operatorDirectory( @TempDir Path directory ) throws IOException {
+        Files.writeString(directory.resolve(JsonLdContextCache.INDEX_FILE), "https\\://example.org/contexts/v1=example-v1.jsonld\n");
+        Files.writeString(directory.resolve("example-v1.jsonld"), "{\"@context\":{\"name\":\"https://schema.org/name\"}}");
+        var cache = new JsonLdContextCache(directory);
+        assertEquals( new JsonLdContextCache().size() +1, cache.size());
+        assertEquals( List.of("https://example.org/contexts/v2"), cache.getMissingContexts(List.of( "https://example.org/contexts/v1", "https://example.org/contexts/v2" )));
+    }
+
+    private static List<String> getContexts( String credential ) throws IOException {
+        var urls = new ArrayList<String>();
+        var contexts = new ObjectMapper().readTree(credential).path("@context");
+        if ( contexts.isTextual()) {
+            urls.add(contexts.asText());
+        }
+
+        for ( var context : contexts ) {
+            if ( context.isTextual()) {
+                urls.add(context.asText());
+            }
+        }
+
+        return urls;
+    }
+}
@@ -0,0 +1,64 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests for the LatencyHistogram class.
+ * @author Otto Hylli
+ *
+ */
+class LatencyHistogramTest {
+
+    /** Test that count, mean and max are exact.
+     *
+     */
+    @Test void countMeanAndMax() {
+        var histogram = new LatencyHistogram();
+        for ( long value = 1; value <= 100; value++ ) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals( 100, histogram.getCount());
+        assertEquals( 50500.0, histogram.getMean());
+        assertEquals( 100000, histogram.getMax());
+    }
+
+    /** Test that percentiles are within the precision of the buckets.
+     *
+     */
+    @Test void percentiles() {
+        var histogram = new LatencyHistogram();
+        for ( long value = 1; value <= 10000; value++ ) {
+            histogram.record(value);
+        }
+
+        var median = histogram.getPercentile(50);
+        assertTrue( median >= 5000 && median <= 5000 * 17 / 16, "median was " +median );
+        var p99 = histogram.getPercentile(99);
+        assertTrue( p99 >= 9900 && p99 <= 9900 * 17 / 16, "p99 was " +p99 );
+        assertEquals( 10000, histogram.getPercentile(100));
+    }
+
+    /** Test that an empty histogram reports zeros and merging adds the values of the other histogram.
+     *
+     */
+    @Test void emptyAndAdd() {
+        var first = new LatencyHistogram();
+        assertEquals( 0, first.getPercentile(50));
+        assertEquals( 0.0, first.getMean());
+        var second = new LatencyHistogram();
+        second.record(10);
+        second.record(20);
+        first.record(30);
+        first.add(second);
+        assertEquals( 3, first.getCount());
+        assertEquals( 60, first.getTotal());
+        assertEquals( 30, first.getMax());
+    }
+}
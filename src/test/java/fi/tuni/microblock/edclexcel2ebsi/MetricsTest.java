@@ -0,0 +1,88 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Tests for the Metrics registry.
+ * @author Otto Hylli
+ *
+ */
+class MetricsTest {
+
+    /** Test that timers and counters are reported and exported in the Prometheus text format.
+     *
+     */
+    @Test void reportAndPrometheus() {
+        var metrics = new Metrics();
+        assertSame( metrics.timer("lookup.Persons"), metrics.timer("lookup.Persons"));
+        metrics.timer("lookup.Persons").record(TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.counter("credentials.issued").add(3);
+        metrics.timer("unused");
+        var report = metrics.report();
+        assertTrue( report.contains("lookup.Persons"));
+        assertTrue( report.contains("credentials.issued"));
+        assertFalse( report.contains("unused"));
+        var text = metrics.toPrometheus();
+        assertTrue( text.contains("# TYPE edclexcel2ebsi_lookup_persons_seconds summary\n"));
+        assertTrue( text.contains("edclexcel2ebsi_lookup_persons_seconds_count 1\n"));
+        assertTrue( text.contains("edclexcel2ebsi_lookup_persons_seconds{quantile=\"0.99\"} 0.002\n"));
+        assertTrue( text.contains("# TYPE edclexcel2ebsi_credentials_issued_total counter\nedclexcel2ebsi_credentials_issued_total 3\n"));
+        assertEquals( "edclexcel2ebsi_lookup_europass_credentials", Metrics.prometheusName("lookup.Europass Credentials"));
+    }
+
+    /** Test that the metrics are written to a file and served over HTTP.
+     *
+     */
+    @Test void export( @TempDir Path directory ) throws IOException, InterruptedException {
+        var metrics = new Metrics();
+        metrics.counter("credentials.issued").increment();
+        var file = directory.resolve("edclexcel2ebsi.prom");
+        try ( var export = metrics.exportPeriodically(file, 60000)) {
+            metrics.counter("credentials.issued").increment();
+        }
+
+        assertTrue( Files.readString(file).contains("edclexcel2ebsi_credentials_issued_total 2\n"));
+        var server = metrics.serve(0);
+        try {
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:" +server.getAddress().getPort() +"/metrics")).build();
+            var response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals( 200, response.statusCode());
+            assertEquals( metrics.toPrometheus(), response.body());
+        }
+
+        finally {
+            server.stop(0);
+        }
+    }
+
+    /** Test that reading the excel records the load and lookup timers of the default registry.
+     *
+     */
+    @Test void excelIsInstrumented() {
+        var metrics = Metrics.getDefault();
+        long loads = metrics.timer("workbook.load").getCount();
+        var data = new CredentialData();
+        assertEquals( loads +1, metrics.timer("workbook.load").getCount());
+        long lookups = metrics.timer("lookup." +PersonsTable.SHEET_NAME).getCount();
+        long scanned = metrics.counter("lookup.rowsScanned").sum();
+        data.personsTable.getRowForPerson("anna.makkara@tautest.edu");
+        assertEquals( lookups +1, metrics.timer("lookup." +PersonsTable.SHEET_NAME).getCount());
+        assertTrue( metrics.counter("lookup.rowsScanned").sum() > scanned );
+    }
+}
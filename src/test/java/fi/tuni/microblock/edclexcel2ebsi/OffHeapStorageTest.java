@@ -0,0 +1,132 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.poi.ss.usermodel.CellType;
+
+/** Tests for the off heap workbook storage and its streaming loader.
+ * @author Otto Hylli
+ *
+ */
+class OffHeapStorageTest {
+
+    private static final Path FILE = Path.of(CredentialData.DEFAULT_FILE_NAME);
+
+    /** Test that every cell of the sheets used by the DataTables reads the same from both storages.
+     *
+     */
+    @Test void sameCellsAsSheetStorage() throws IOException {
+        var sheets = SheetStorage.open(FILE);
+        try ( var offHeap = new StreamingWorkbookLoader(null).load(FILE)) {
+            assertTrue( offHeap.getOffHeapBytes() > 0 );
+            for ( var table : new CredentialData().getTables()) {
+                assertSameCells( sheets.getTable(table.getSheetName()), offHeap.getTable(table.getSheetName()));
+            }
+        }
+    }
+
+    /** Test that a generated workbook loads to memory mapped files which do not remain after the storage is closed.
+     *
+     */
+    @Test void mappedFiles( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("generated.xlsx");
+        new WorkbookGenerator(200, 1, 1).write(file);
+        var mapped = directory.resolve("mapped");
+        Files.createDirectory(mapped);
+        var sheets = SheetStorage.open(file);
+        try ( var offHeap = new StreamingWorkbookLoader(mapped).load(file)) {
+            assertTrue( offHeap.getOffHeapBytes() > 0 );
+            assertSameCells( sheets.getTable(PersonsTable.SHEET_NAME), offHeap.getTable(PersonsTable.SHEET_NAME));
+            assertSameCells( sheets.getTable(CredentialsTable.SHEET_NAME), offHeap.getTable(CredentialsTable.SHEET_NAME));
+        }
+
+        assertEquals( 0, Files.list(mapped).count());
+    }
+
+    /** Test the credential data lookups with the off heap storage.
+     *
+     */
+    @Test void credentialDataOffHeap() {
+        var data = new CredentialData( CredentialData.DEFAULT_FILE_NAME, WorkbookStorage.Type.OFF_HEAP, null );
+        var sheetData = new CredentialData();
+        assertEquals( "FI-12345678", data.getIssuingOrganisation("anna.makkara@tautest.edu", "Data and Software Business module"));
+        assertEquals( sheetData.getCredential("anna.makkara@tautest.edu", "Data and Software Business module").getRowNum(), data.getCredential("anna.makkara@tautest.edu", "Data and Software Business module").getRowNum());
+        data.personsTable.setCurrentRow(data.personsTable.getRowForPerson("anna.makkara@tautest.edu"));
+        sheetData.personsTable.setCurrentRow(sheetData.personsTable.getRowForPerson("anna.makkara@tautest.edu"));
+        assertEquals( sheetData.personsTable.getAssesments(), data.personsTable.getAssesments());
+        assertEquals( sheetData.personsTable.getDateOfBirth(), data.personsTable.getDateOfBirth());
+    }
+
+    /** Test that both storages load only the declared sheets and columns and read the same cells from them.
+     *
+     */
+    @Test void onlyDeclaredColumnsLoaded() throws IOException {
+        var columns = CredentialData.TABLE_COLUMNS;
+        var sheets = SheetStorage.open(FILE, columns);
+        try ( var offHeap = new StreamingWorkbookLoader(null, columns).load(FILE);
+                var unprojected = new StreamingWorkbookLoader(null).load(FILE)) {
+            assertTrue( offHeap.getOffHeapBytes() < unprojected.getOffHeapBytes());
+            for ( var table : columns ) {
+                var projected = offHeap.getTable(table.sheetName());
+                assertSameCells( sheets.getTable(table.sheetName()), projected );
+                assertEquals( 0, projected.getCellCount(table.headerRowNum() -1), table.sheetName());
+                int headerRowNum = table.headerRowNum();
+                for ( int column = 0; column < projected.getCellCount(headerRowNum); column++ ) {
+                    if ( projected.getCellType(headerRowNum, column) == CellType.STRING ) {
+                        assertTrue( table.contains(projected.getString(headerRowNum, column)), table.sheetName() +" column " +column );
+                    }
+                }
+            }
+
+            assertThrows( DiplomaDataProvider.ExcelStructureException.class, () -> offHeap.getTable("Instructions"));
+            assertThrows( DiplomaDataProvider.ExcelStructureException.class, () -> sheets.getTable("Instructions"));
+        }
+    }
+
+    /** Test the unknown storage names are rejected.
+     *
+     */
+    @Test void storageTypeFromConfig() {
+        assertEquals( WorkbookStorage.Type.SHEET, WorkbookStorage.Type.fromConfig(null));
+        assertEquals( WorkbookStorage.Type.OFF_HEAP, WorkbookStorage.Type.fromConfig("offHeap"));
+        assertThrows( IllegalArgumentException.class, () -> WorkbookStorage.Type.fromConfig("disk"));
+    }
+
+    /** Test decoding the escapes of control characters in strings.
+     *
+     */
+    @Test void decodeEscapes() {
+        assertEquals( "a\tb", StreamingWorkbookLoader.decodeEscapes("a_x0009_b"));
+        assertEquals( "_x12_", StreamingWorkbookLoader.decodeEscapes("_x12_"));
+        assertEquals( "plain", StreamingWorkbookLoader.decodeEscapes("plain"));
+    }
+
+    private static void assertSameCells( TableStorage expected, TableStorage actual ) {
+        assertEquals( expected.getLastRowNum(), actual.getLastRowNum(), expected.getSheetName());
+        for ( int row = 0; row <= expected.getLastRowNum() +1; row++ ) {
+            assertEquals( expected.getCellCount(row), actual.getCellCount(row), expected.getSheetName() +" row " +row );
+            for ( int column = 0; column <= expected.getCellCount(row); column++ ) {
+                var location = expected.getSheetName() +" row " +row +" column " +column;
+                var type = expected.getCellType(row, column);
+                assertEquals( type, actual.getCellType(row, column), location );
+                assertEquals( expected.getString(row, column), actual.getString(row, column), location );
+                if ( type == CellType.NUMERIC ) {
+                    assertEquals( expected.getNumber(row, column), actual.getNumber(row, column), location );
+                    assertEquals( expected.getDate(row, column), actual.getDate(row, column), location );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Tests for the ShardedCredentialWriter and CredentialManifest classes.
+ * @author Otto Hylli
+ *
+ */
+class ShardedCredentialWriterTest {
+
+    private static final String CREDENTIAL = "{\"id\":\"urn:uuid:1\",\"title\":\"Data and Software Business\"}";
+
+    /** Test that a credential is written to a shard directory and found by id and by student.
+     *
+     */
+    @Test void writesAndFinds( @TempDir Path directory ) throws IOException {
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            writer.write("urn:uuid:1", "anna.makkara@tautest.edu", "Data and Software Business module", CREDENTIAL );
+            var entry = writer.find("urn:uuid:1").orElseThrow();
+            assertTrue( entry.file().matches("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.json"), entry.file());
+            assertEquals( CREDENTIAL, Files.readString(writer.resolve(entry), StandardCharsets.UTF_8));
+            assertEquals( entry, writer.find("anna.makkara@tautest.edu", "Data and Software Business module").orElseThrow());
+            assertTrue( writer.find("urn:uuid:2").isEmpty());
+        }
+    }
+
+    /** Test that a credential larger than the write buffer is written completely.
+     *
+     */
+    @Test void writesLargeCredential( @TempDir Path directory ) throws IOException {
+        var large = "{\"id\":\"urn:uuid:2\",\"data\":\"" +"x".repeat(200 * 1024) +"\"}";
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            writer.write("urn:uuid:2", "a@test.fi", "title", large );
+            assertEquals( large, Files.readString(writer.resolve(writer.find("urn:uuid:2").orElseThrow()), StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Test that the manifest is read back when the directory is opened again and values with tabs survive.
+     *
+     */
+    @Test void manifestSurvivesReopen( @TempDir Path directory ) throws IOException {
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title\twith tab", CREDENTIAL );
+            writer.write("urn:uuid:3", "b@test.fi", "title", "a.b.c" );
+        }
+
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            assertEquals( 2, writer.size());
+            assertEquals( "title\twith tab", writer.find("urn:uuid:1").orElseThrow().title());
+            assertTrue( writer.find("urn:uuid:3").orElseThrow().file().endsWith(".jwt"));
+        }
+    }
+
+    /** Test that a partial last line of the manifest is ignored and overwritten.
+     *
+     */
+    @Test void ignoresPartialLine( @TempDir Path directory ) throws IOException {
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title", CREDENTIAL );
+        }
+
+        Files.writeString(directory.resolve(CredentialManifest.FILE_NAME), "urn:uuid:9\tb@test", StandardOpenOption.APPEND);
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            assertEquals( 1, writer.size());
+            writer.write("urn:uuid:3", "b@test.fi", "title", CREDENTIAL );
+        }
+
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            assertEquals( 2, writer.size());
+            assertTrue( writer.find("urn:uuid:9").isEmpty());
+        }
+    }
+
+    /** Test that resuming removes the manifest entries and files of credentials not kept and credential files missing from the manifest.
+     *
+     */
+    @Test void resumeRemovesUncommitted( @TempDir Path directory ) throws IOException {
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            writer.write("urn:uuid:1", "a@test.fi", "title", CREDENTIAL );
+            writer.write("urn:uuid:2", "b@test.fi", "title", CREDENTIAL );
+        }
+
+        // a file written just before an interruption whose manifest line was never flushed.
+        var orphan = directory.resolve("ab").resolve("cd").resolve("abcd" +"0".repeat(60) +".json");
+        Files.createDirectories(orphan.getParent());
+        Files.writeString(orphan, CREDENTIAL);
+        Path dropped;
+        try ( var writer = new ShardedCredentialWriter(directory)) {
+            dropped = writer.resolve(writer.find("urn:uuid:2").orElseThrow());
+        }
+
+        try ( var writer = ShardedCredentialWriter.resume(directory, "urn:uuid:1"::equals)) {
+            assertEquals( 1, writer.size());
+            assertTrue( Files.exists(writer.resolve(writer.find("urn:uuid:1").orElseThrow())));
+            assertFalse( Files.exists(dropped));
+            assertFalse( Files.exists(orphan));
+            writer.write("urn:uuid:2", "b@test.fi", "title", CREDENTIAL );
+        }
+
+        var lines = Files.readAllLines(directory.resolve(CredentialManifest.FILE_NAME), StandardCharsets.UTF_8);
+        assertEquals( 2, lines.size());
+        assertTrue( lines.get(1).startsWith("urn:uuid:2\t"));
+    }
+}
@@ -0,0 +1,80 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/** Tests for the string dictionary and finding rows with it.
+ * @author Otto Hylli
+ *
+ */
+class StringDictionaryTest {
+
+    /** Test that strings equal ignoring case fold to the same code.
+     *
+     */
+    @Test void encodeAndFold() {
+        var dictionary = new StringDictionary();
+        int upper = dictionary.encode("Tampere University");
+        assertEquals( upper, dictionary.encode("Tampere University"));
+        int lower = dictionary.encode("tampere university");
+        assertNotEquals( upper, lower );
+        assertEquals( dictionary.fold(upper), dictionary.fold(lower));
+        assertEquals( lower, dictionary.findFolded("TAMPERE UNIVERSITY"));
+        assertEquals( "Tampere University", dictionary.get(upper));
+        assertEquals( -1, dictionary.find("Tampere"));
+        assertEquals( 2, dictionary.size());
+        for ( int i = 0; i < 200; i++ ) {
+            assertEquals( i +2, dictionary.encode("value" +i));
+        }
+
+        assertEquals( "value199", dictionary.get(dictionary.find("value199")));
+        dictionary.truncate(2);
+        assertEquals( 2, dictionary.size());
+        assertEquals( -1, dictionary.find("value0"));
+        assertEquals( 2, dictionary.encode("Value0"));
+        assertEquals( dictionary.fold(2), dictionary.find("value0"));
+    }
+
+    /** Test that rows are found ignoring case and a value that no row has is found without scanning the rows.
+     *
+     */
+    @Test void findRowsWithEncodedColumns() {
+        var data = new CredentialData();
+        var email = "anna.makkara@tautest.edu";
+        var row = data.personsTable.getRowWithValues(Map.of( PersonsTable.EMAIL_COLUMN, email.toUpperCase())).getRowNum();
+        assertEquals( email, data.personsTable.getCellValueString(row, PersonsTable.EMAIL_COLUMN));
+        assertTrue( data.getDictionary().find(email) >= 0 );
+        assertEquals( data.personsTable.getRowsWithValues(Map.of( PersonsTable.EMAIL_COLUMN, email )).size(), data.listCredentialsForStudent(email).size());
+
+        var scanned = Metrics.getDefault().counter("lookup.rowsScanned");
+        long before = scanned.sum();
+        assertTrue( data.personsTable.findRowWithValues(Map.of( PersonsTable.EMAIL_COLUMN, "nobody@tautest.edu" )).isEmpty());
+        assertEquals( before, scanned.sum());
+    }
+
+    /** Test that a column with a unique value on every row is not kept in the dictionary but its rows are still found.
+     *
+     */
+    @Test void uniqueColumnNotEncoded( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("generated.xlsx");
+        new WorkbookGenerator(2000, 1, 1).write(file);
+        var data = new CredentialData( file.toString());
+        int before = data.getDictionary().size();
+        var email = WorkbookGenerator.email(1500);
+        var row = data.personsTable.getRowWithValues(Map.of( PersonsTable.EMAIL_COLUMN, email.toUpperCase())).getRowNum();
+        assertEquals( email, data.personsTable.getCellValueString(row, PersonsTable.EMAIL_COLUMN));
+        assertEquals( -1, data.getDictionary().find(email));
+        assertEquals( before, data.getDictionary().size());
+    }
+}
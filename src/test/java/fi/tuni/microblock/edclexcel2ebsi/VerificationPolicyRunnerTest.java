@@ -0,0 +1,164 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import id.walt.auditor.VerificationPolicy;
+import id.walt.vclib.credentials.VerifiableId;
+import id.walt.vclib.model.VerifiableCredential;
+
+/** Tests for running verification policies with the different verification modes.
+ * @author Otto Hylli
+ *
+ */
+class VerificationPolicyRunnerTest {
+
+    private final VerifiableCredential credential = new VerifiableId();
+
+    /** Test that fail fast mode runs the policies cheapest first according to their measured cost.
+     *
+     */
+    @Test void costOrder() {
+        var slow = new TestPolicy("Slow", true, 30);
+        var fast = new TestPolicy("Fast", true, 0);
+        var signature = new TestPolicy("SignaturePolicy", true, 0);
+        var runner = new VerificationPolicyRunner(List.of( signature, slow, fast ));
+        // before any measurements the signature policy is estimated to be the most expensive.
+        assertEquals( signature, runner.getPoliciesByCost().get(2));
+        var result = runner.verify(credential, VerificationMode.FULL, null);
+        assertTrue( result.getValid());
+        assertTrue( runner.getCost("Slow") > runner.getCost("Fast"));
+        // measured costs replace the estimates so the slow policy is now the most expensive.
+        assertEquals( slow, runner.getPoliciesByCost().get(2));
+    }
+
+    /** Test that fail fast mode stops at the first failed policy while full mode runs all of them.
+     *
+     */
+    @Test void failFastStopsAtFailure() {
+        var failing = new TestPolicy("Failing", false, 0);
+        var signature = new TestPolicy("SignaturePolicy", true, 0);
+        var runner = new VerificationPolicyRunner(List.of( signature, failing ));
+        var result = runner.verify(credential, VerificationMode.FAIL_FAST, null);
+        assertFalse( result.getValid());
+        assertEquals( Map.of( "Failing", false ), result.getPolicyResults());
+        assertEquals( 0, signature.runs.get());
+
+        result = runner.verify(credential, VerificationMode.FULL, null);
+        assertFalse( result.getValid());
+        assertEquals( List.of( "SignaturePolicy", "Failing" ), List.copyOf(result.getPolicyResults().keySet()));
+        assertEquals( 1, signature.runs.get());
+    }
+
+    /** Test that concurrent mode runs every policy and returns the results in policy order.
+     *
+     */
+    @Test void concurrentAllPass() {
+        var runner = new VerificationPolicyRunner(List.of( new TestPolicy("First", true, 20), new TestPolicy("Second", true, 0)));
+        try {
+            var result = runner.verify(credential, VerificationMode.CONCURRENT, null);
+            assertTrue( result.getValid());
+            assertEquals( List.of( "First", "Second" ), List.copyOf(result.getPolicyResults().keySet()));
+        }
+
+        finally {
+            runner.shutdown();
+        }
+    }
+
+    /** Test that concurrent mode returns at the first failure and interrupts the policies still running.
+     *
+     */
+    @Test void concurrentFailureCancelsRunning() throws InterruptedException {
+        var blocking = new BlockingPolicy();
+        var runner = new VerificationPolicyRunner(List.of( blocking, new TestPolicy("Failing", false, 0)));
+        try {
+            long start = System.nanoTime();
+            var result = runner.verify(credential, VerificationMode.CONCURRENT, null);
+            assertTrue( System.nanoTime() -start < TimeUnit.SECONDS.toNanos(10));
+            assertFalse( result.getValid());
+            assertEquals( Map.of( "Failing", false ), result.getPolicyResults());
+            assertTrue( blocking.interrupted.await(10, TimeUnit.SECONDS));
+        }
+
+        finally {
+            runner.shutdown();
+        }
+    }
+
+    /** Policy with a fixed result that takes the given time. */
+    private static class TestPolicy extends VerificationPolicy {
+
+        private final String id;
+        private final boolean result;
+        private final long millis;
+        private final AtomicInteger runs = new AtomicInteger();
+
+        TestPolicy( String id, boolean result, long millis ) {
+            this.id = id;
+            this.result = result;
+            this.millis = millis;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getDescription() {
+            return id;
+        }
+
+        @Override
+        protected boolean doVerify( VerifiableCredential vc ) {
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(millis);
+            }
+
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+            return result;
+        }
+    }
+
+    /** Policy that blocks until it is interrupted. */
+    private static class BlockingPolicy extends VerificationPolicy {
+
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        public String getDescription() {
+            return "Blocks until interrupted";
+        }
+
+        @Override
+        protected boolean doVerify( VerifiableCredential vc ) {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            }
+
+            catch ( InterruptedException e ) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+
+            return true;
+        }
+    }
+}
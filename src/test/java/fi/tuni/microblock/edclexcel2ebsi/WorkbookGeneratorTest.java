@@ -0,0 +1,119 @@
+/* Copyright 2021 Tampere University
+ * This software was developed as a part of the MicroBlock project: https://www.tuni.fi/en/research/microblock-advancing-exchange-micro-credentials-ebsi
+ * This source code is licensed under the MIT license. See LICENSE in the repository root directory.
+ * Author(s): Otto Hylli <otto.hylli@tuni.fi>
+*/
+package fi.tuni.microblock.edclexcel2ebsi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests for the WorkbookGenerator.
+ * @author Otto Hylli
+ *
+ */
+class WorkbookGeneratorTest {
+
+    /** Test that the generated workbook can be read and its links and grades are consistent.
+     *
+     */
+    @Test void generatedWorkbookIsConsistent( @TempDir Path directory ) throws IOException {
+        var file = directory.resolve("generated.xlsx");
+        var generator = new WorkbookGenerator( 20, 3, 2, 2, 4, 2, 42 );
+        generator.write(file);
+        var data = new CredentialData( file.toString());
+        for ( int person : new int[] { 0, 10, 19 } ) {
+            var email = WorkbookGenerator.email(person);
+            int achievement = generator.achievementOf(person);
+            var title = WorkbookGenerator.credentialTitle(achievement);
+            assertEquals( WorkbookGenerator.legalIdentifier(generator.organisationOf(achievement)), data.getIssuingOrganisation(email, title));
+            var credential = data.getCredential(email, title);
+            data.personsTable.setCurrentRow(data.getPerson(credential).getRowNum());
+            assertEquals( WorkbookGenerator.achievementTitle(achievement), data.personsTable.getAchievement());
+            data.achievementsTable.setCurrentRow(data.achievementsTable.getRowForAchievement(data.personsTable.getAchievement()));
+            assertEquals( data.achievementsTable.getActivities(), data.personsTable.getLearningActivities());
+            assertEquals( 4, data.achievementsTable.getLearningOutcomes().size());
+            for ( var outcome : data.achievementsTable.getLearningOutcomes()) {
+                data.outcomesTable.setCurrentRow(data.outcomesTable.getRowForLearningOutcome(outcome));
+                assertEquals( 3, data.outcomesTable.getEscoSkills().size());
+            }
+
+            for ( var activity : data.achievementsTable.getActivities()) {
+                data.activitiesTable.setCurrentRow(data.activitiesTable.getRowForActivity(activity));
+                assertNotNull( data.activitiesTable.getActivityType());
+            }
+
+            var overall = data.achievementsTable.getAssessment();
+            data.assessmentsTable.setCurrentRow(data.assessmentsTable.getRowForAssessment(overall));
+            var subAssessments = data.assessmentsTable.getSubAssessments();
+            assertEquals( 2, subAssessments.size());
+            var grades = data.personsTable.getAssesments();
+            double sum = 0;
+            for ( var sub : subAssessments ) {
+                double grade = grades.get(sub);
+                assertTrue( grade >= 1 && grade <= 5 );
+                sum += grade;
+            }
+
+            assertEquals( Math.round(sum / subAssessments.size()), grades.get(overall));
+            data.credentialsTable.setCurrentRow(credential.getRowNum());
+            assertNotNull( data.credentialsTable.getValidFrom());
+        }
+
+        assertTrue( data.findCredential(WorkbookGenerator.email(20), WorkbookGenerator.credentialTitle(0)).isEmpty());
+    }
+
+    /** Test that the same seed gives the same workbook content with the default and a given seed and that another seed gives other content.
+     *
+     */
+    @Test void sameSeedSameData( @TempDir Path directory ) throws IOException {
+        var first = write( directory.resolve("first.xlsx"), new WorkbookGenerator( 5, 1, 1 ));
+        var second = write( directory.resolve("second.xlsx"), new WorkbookGenerator( 5, 1, 1 ));
+        assertEquals( readPersons(first, 5), readPersons(second, 5));
+        assertTrue( Files.size(first) > 0 );
+
+        var seeded = write( directory.resolve("seeded.xlsx"), new WorkbookGenerator( 5, 1, 3, 3, 3, 1, 7 ));
+        var seededAgain = write( directory.resolve("seeded-again.xlsx"), new WorkbookGenerator( 5, 1, 3, 3, 3, 1, 7 ));
+        assertEquals( readPersons(seeded, 5), readPersons(seededAgain, 5));
+        assertNotEquals( readPersons(first, 5), readPersons(seeded, 5));
+    }
+
+    /** Test that sizes that do not fit a workbook are rejected.
+     *
+     */
+    @Test void invalidSize() {
+        assertThrows( IllegalArgumentException.class, () -> new WorkbookGenerator( 0, 1, 1 ));
+        assertThrows( IllegalArgumentException.class, () -> new WorkbookGenerator( WorkbookGenerator.MAX_PERSONS +1, 1, 1 ));
+        assertThrows( IllegalArgumentException.class, () -> new WorkbookGenerator( 10, 10000, 3, 3, 3, 1, 1 ));
+        assertThrows( IllegalArgumentException.class, () -> new WorkbookGenerator( 10, 5000, 1, 300, 1, 1, 1 ));
+    }
+
+    private static Path write( Path file, WorkbookGenerator generator ) throws IOException {
+        generator.write(file);
+        return file;
+    }
+
+    /** Read the family name and grades of the first persons of the given workbook.
+     * @param file generated workbook
+     * @param persons number of persons read.
+     * @return family name and grades of each person.
+     */
+    private static List<List<Object>> readPersons( Path file, int persons ) {
+        var data = new CredentialData( file.toString());
+        List<List<Object>> values = new ArrayList<>();
+        for ( int person = 0; person < persons; person++ ) {
+            data.personsTable.setCurrentRow(data.personsTable.getRowForPerson(WorkbookGenerator.email(person)));
+            values.add( List.of( data.personsTable.getFamilyName(), data.personsTable.getAssesments()));
+        }
+
+        return values;
+    }
+}